@@ -0,0 +1,131 @@
+package edu.ucsb.cs156.example.config;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * The `JobExecutorConfig` class defines the executors that run jobs launched through the
+ * JobService: one for interactive jobs and a separate, smaller one for bulk jobs (see {@link
+ * edu.ucsb.cs156.example.entities.JobPriority}).
+ *
+ * <p>Each pool has a fixed number of worker threads and a bounded queue. When both are full, new
+ * jobs are rejected rather than piling up unbounded work on the JVM.
+ *
+ * <p>When {@code spring.threads.virtual.enabled} is true (which also switches Tomcat's request
+ * threads to virtual threads), the workers are virtual threads. The pool size then limits how many
+ * jobs run at once, and so how many database connections they hold, rather than how many platform
+ * threads the JVM has to create.
+ *
+ * <p>It also defines the schedulers for {@code @Scheduled} methods. Spring's default scheduler has
+ * a single thread, so one slow task (such as sending to a log stream) would hold up all the others;
+ * the shared scheduler has {@code spring.task.scheduling.pool.size} threads instead, and the lease
+ * heartbeat ({@link edu.ucsb.cs156.example.services.jobs.JobService#renewLeases()}) has a thread of
+ * its own so that running jobs keep their leases however busy the others are.
+ */
+@Configuration
+public class JobExecutorConfig {
+
+  public static final String JOB_EXECUTOR = "jobExecutor";
+
+  public static final String BULK_JOB_EXECUTOR = "bulkJobExecutor";
+
+  /** The name Spring looks up for the scheduler of {@code @Scheduled} methods. */
+  public static final String TASK_SCHEDULER = "taskScheduler";
+
+  public static final String LEASE_HEARTBEAT_SCHEDULER = "leaseHeartbeatScheduler";
+
+  @Value("${app.jobs.executor.poolSize:4}")
+  private int poolSize;
+
+  @Value("${app.jobs.executor.queueCapacity:100}")
+  private int queueCapacity;
+
+  @Value("${app.jobs.executor.bulkPoolSize:1}")
+  private int bulkPoolSize;
+
+  @Value("${app.jobs.executor.bulkQueueCapacity:1000}")
+  private int bulkQueueCapacity;
+
+  @Value("${spring.threads.virtual.enabled:false}")
+  private boolean virtualThreads;
+
+  @Value("${spring.task.scheduling.pool.size:4}")
+  private int schedulerPoolSize;
+
+  /**
+   * The executor used by {@code @Async(JobExecutorConfig.JOB_EXECUTOR)} methods.
+   *
+   * @return a thread pool with {@code poolSize} workers and a queue of {@code queueCapacity} jobs
+   */
+  @Bean(name = JOB_EXECUTOR)
+  public ThreadPoolTaskExecutor jobExecutor() {
+    return buildJobExecutor(poolSize, queueCapacity, virtualThreads);
+  }
+
+  /**
+   * The executor used by {@code @Async(JobExecutorConfig.BULK_JOB_EXECUTOR)} methods.
+   *
+   * @return a thread pool with {@code bulkPoolSize} workers and a queue of {@code
+   *     bulkQueueCapacity} jobs
+   */
+  @Bean(name = BULK_JOB_EXECUTOR)
+  public ThreadPoolTaskExecutor bulkJobExecutor() {
+    ThreadPoolTaskExecutor executor =
+        buildJobExecutor(bulkPoolSize, bulkQueueCapacity, virtualThreads);
+    executor.setThreadNamePrefix("bulk-job-");
+    return executor;
+  }
+
+  /**
+   * The scheduler used by {@code @Scheduled} methods that do not name another one.
+   *
+   * @return a scheduler with {@code spring.task.scheduling.pool.size} threads
+   */
+  @Bean(name = TASK_SCHEDULER)
+  public ThreadPoolTaskScheduler taskScheduler() {
+    return buildScheduler(schedulerPoolSize, "scheduling-");
+  }
+
+  /**
+   * The scheduler used only by the lease heartbeat.
+   *
+   * @return a scheduler with one thread
+   */
+  @Bean(name = LEASE_HEARTBEAT_SCHEDULER)
+  public ThreadPoolTaskScheduler leaseHeartbeatScheduler() {
+    return buildScheduler(1, "lease-heartbeat-");
+  }
+
+  private static ThreadPoolTaskScheduler buildScheduler(int poolSize, String threadNamePrefix) {
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setPoolSize(poolSize);
+    scheduler.setThreadNamePrefix(threadNamePrefix);
+    return scheduler;
+  }
+
+  /**
+   * Build (but do not initialize) a job executor.
+   *
+   * @param poolSize the number of workers
+   * @param queueCapacity the number of jobs that may wait for a worker
+   * @param virtualThreads whether the workers are virtual threads rather than platform threads
+   * @return the executor; the caller must call {@code initialize()} unless it is a Spring bean
+   */
+  public static ThreadPoolTaskExecutor buildJobExecutor(
+      int poolSize, int queueCapacity, boolean virtualThreads) {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(poolSize);
+    executor.setMaxPoolSize(poolSize);
+    executor.setQueueCapacity(queueCapacity);
+    executor.setThreadNamePrefix("job-");
+    if (virtualThreads) {
+      executor.setThreadFactory(Thread.ofVirtual().name("job-", 1).factory());
+    }
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+    return executor;
+  }
+}
@@ -1,20 +1,56 @@
 package edu.ucsb.cs156.example.controllers;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import edu.ucsb.cs156.example.entities.Versioned;
+import edu.ucsb.cs156.example.errors.BatchTooLargeException;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.errors.InvalidCursorException;
+import edu.ucsb.cs156.example.errors.InvalidPatchException;
+import edu.ucsb.cs156.example.errors.InvalidSearchPatternException;
+import edu.ucsb.cs156.example.errors.InvalidSortKeyException;
+import edu.ucsb.cs156.example.errors.InvalidWorkflowException;
+import edu.ucsb.cs156.example.errors.JobQueueFullException;
+import edu.ucsb.cs156.example.errors.JobRateLimitException;
 import edu.ucsb.cs156.example.models.CurrentUser;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.repositories.KeysetPager;
 import edu.ucsb.cs156.example.services.CurrentUserService;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.List;
 import java.util.Map;
+import java.util.function.ToIntFunction;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.ServletWebRequest;
 
 /** This is an abstract class that provides common functionality for all API controllers. */
 @Slf4j
 public abstract class ApiController {
+  /** The header in which an /all endpoint puts the cursor for the rows it left out. */
+  public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
   @Autowired private CurrentUserService currentUserService;
 
+  @Value("${app.api.page.maxSize:500}")
+  private int maxPageSize;
+
+  @Value("${app.api.all.maxSize:1000}")
+  private int maxAllSize;
+
+  @Value("${app.api.batch.maxSize:1000}")
+  private int maxBatchSize;
+
   /**
    * This method returns the current user.
    *
@@ -34,6 +70,185 @@ public abstract class ApiController {
     return Map.of("message", message);
   }
 
+  /**
+   * This method returns the message for a PATCH endpoint.
+   *
+   * @param entityType the class of the entity patched, e.g. HelpRequest.class
+   * @param id the id of the row patched
+   * @param updated whether the row was changed
+   * @return a map with the message
+   */
+  protected Object patchMessage(Class<?> entityType, Object id, boolean updated) {
+    return genericMessage(
+        "%s with id %s %s"
+            .formatted(entityType.getSimpleName(), id, updated ? "updated" : "unchanged"));
+  }
+
+  /**
+   * This method deletes rows by id for a bulk DELETE endpoint, with a single DELETE statement. Ids
+   * that match no row are skipped.
+   *
+   * @param <ID> the type of the ids
+   * @param entityType the class of the entity deleted, e.g. HelpRequest.class
+   * @param ids the ids of the rows to delete; at most {@code app.api.batch.maxSize} of them
+   * @param deleteByIdIn the repository method that deletes rows by id
+   * @return a map with a message and the number of rows deleted
+   * @throws BatchTooLargeException if there are more than {@code app.api.batch.maxSize} ids
+   */
+  protected <ID> Object deleteByIds(
+      Class<?> entityType, List<ID> ids, ToIntFunction<List<ID>> deleteByIdIn) {
+    if (ids.size() > maxBatchSize) {
+      throw new BatchTooLargeException(ids.size(), maxBatchSize);
+    }
+    // nothing to delete, so skip the round trip
+    int count = ids.isEmpty() ? 0 : deleteByIdIn.applyAsInt(ids);
+    return deletedMessage(entityType, count);
+  }
+
+  /**
+   * This method returns the message for a bulk DELETE endpoint.
+   *
+   * @param entityType the class of the entity deleted, e.g. HelpRequest.class
+   * @param count the number of rows deleted
+   * @return a map with the message and the number of rows deleted
+   */
+  protected Object deletedMessage(Class<?> entityType, int count) {
+    return Map.of(
+        "message",
+        "%d %s rows deleted".formatted(count, entityType.getSimpleName()),
+        "count",
+        count);
+  }
+
+  /**
+   * This method returns one page of a table, with at most {@code app.api.page.maxSize} rows.
+   *
+   * @param <T> the type of entity listed
+   * @param pager the pager of the table
+   * @param repository the repository of the table
+   * @param sort the attribute to sort by, or null to sort by id
+   * @param direction whether to sort in ascending or descending order
+   * @param cursor nextCursor of the previous page, or null for the first page
+   * @param size the number of rows the client asked for
+   * @return the page
+   */
+  protected <T> KeysetPage<T> keysetPage(
+      KeysetPager<T> pager,
+      JpaSpecificationExecutor<T> repository,
+      String sort,
+      Sort.Direction direction,
+      String cursor,
+      int size) {
+    int pageSize = Math.min(Math.max(size, 1), maxPageSize);
+    return pager.page(repository, sort, direction, cursor, pageSize);
+  }
+
+  /**
+   * This method returns the rows of a table for an unpaginated /all endpoint. At most {@code
+   * app.api.all.maxSize} rows are returned, in id order; if there are more, the cursor for the rest
+   * is put in the X-Next-Cursor header, to be passed on to the matching /page endpoint.
+   *
+   * @param <T> the type of entity listed
+   * @param pager the pager of the table
+   * @param repository the repository of the table
+   * @param response the response, on which the X-Next-Cursor header is set
+   * @return the rows
+   */
+  protected <T> List<T> allRows(
+      KeysetPager<T> pager, JpaSpecificationExecutor<T> repository, HttpServletResponse response) {
+    KeysetPage<T> page = pager.page(repository, null, Sort.Direction.ASC, null, maxAllSize);
+    if (page.getNextCursor() != null) {
+      response.setHeader(NEXT_CURSOR_HEADER, page.getNextCursor());
+    }
+    return page.getContent();
+  }
+
+  /**
+   * This method inserts a batch of new rows in one transaction. Since ids come from a pooled
+   * sequence rather than an identity column, Hibernate sends the inserts as JDBC batches of {@code
+   * hibernate.jdbc.batch_size} rows instead of one statement per row.
+   *
+   * @param <T> the type of entity inserted
+   * @param repository the repository of the table
+   * @param rows the rows to insert, with their ids cleared
+   * @return the saved rows, with their ids set
+   * @throws BatchTooLargeException if there are more than {@code app.api.batch.maxSize} rows
+   */
+  protected <T> Iterable<T> saveBatch(CrudRepository<T, ?> repository, List<T> rows) {
+    if (rows.size() > maxBatchSize) {
+      throw new BatchTooLargeException(rows.size(), maxBatchSize);
+    }
+    return repository.saveAll(rows);
+  }
+
+  /**
+   * This method checks whether the client already has the current state of some rows, and sets the
+   * ETag header to a strong validator of the rows. If the client's If-None-Match header matches,
+   * the status is set to 304 and the caller should return null, so that no body is built.
+   *
+   * <p>No Last-Modified header is set for a list of rows: deleting a row changes the list without
+   * changing the last modified time of any row that is left.
+   *
+   * @param <T> the type of entity listed
+   * @param request the request, whose If-None-Match header is checked
+   * @param pager the pager of the table, which knows the id of each row
+   * @param rows the rows that would be returned
+   * @return true if the client already has the rows
+   */
+  protected <T extends Versioned> boolean notModified(
+      ServletWebRequest request, KeysetPager<T> pager, List<T> rows) {
+    mustRevalidate(request);
+    return request.checkNotModified(etag(pager, rows));
+  }
+
+  /**
+   * This method checks whether the client already has the current state of a row, and sets the ETag
+   * and Last-Modified headers. If the client's If-None-Match header matches, or it has no
+   * If-None-Match header and the row has not changed since its If-Modified-Since header, the status
+   * is set to 304 and the caller should return null, so that no body is built.
+   *
+   * @param <T> the type of entity
+   * @param request the request, whose If-None-Match and If-Modified-Since headers are checked
+   * @param pager the pager of the table, which knows the id of the row
+   * @param row the row that would be returned
+   * @return true if the client already has the row
+   */
+  protected <T extends Versioned> boolean notModified(
+      ServletWebRequest request, KeysetPager<T> pager, T row) {
+    mustRevalidate(request);
+    long lastModified =
+        row.getLastModified() != null ? row.getLastModified().toInstant().toEpochMilli() : -1;
+    return request.checkNotModified(etag(pager, List.of(row)), lastModified);
+  }
+
+  /**
+   * Let browsers keep responses, as long as they check with the server before using them again.
+   * Without this, Spring Security sends Cache-Control: no-store, and browsers never send the
+   * validators back.
+   */
+  private static void mustRevalidate(ServletWebRequest request) {
+    String cacheControl = CacheControl.noCache().cachePrivate().getHeaderValue();
+    request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+  }
+
+  /**
+   * Compute a strong ETag for some rows. Every update of a row increments its version, so the ETag
+   * changes whenever a row is added, removed or changed.
+   */
+  static <T extends Versioned> String etag(KeysetPager<T> pager, List<T> rows) {
+    StringBuilder validators = new StringBuilder();
+    for (T row : rows) {
+      validators
+          .append(pager.idOf(row))
+          .append(':')
+          .append(row.getVersion())
+          .append(':')
+          .append(row.getLastModified() != null ? row.getLastModified().toInstant() : "")
+          .append('\n');
+    }
+    return "\"" + DigestUtils.md5DigestAsHex(validators.toString().getBytes(UTF_8)) + "\"";
+  }
+
   /**
    * This method handles the EntityNotFoundException.
    *
@@ -47,4 +262,118 @@ public abstract class ApiController {
         "type", e.getClass().getSimpleName(),
         "message", e.getMessage());
   }
+
+  /**
+   * This method handles the JobQueueFullException.
+   *
+   * @param e the exception
+   * @return a map with the type and message of the exception
+   */
+  @ExceptionHandler({JobQueueFullException.class})
+  @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+  public Object handleJobQueueFullException(Throwable e) {
+    return Map.of(
+        "type", e.getClass().getSimpleName(),
+        "message", e.getMessage());
+  }
+
+  /**
+   * This method handles the InvalidCursorException.
+   *
+   * @param e the exception
+   * @return a map with the type and message of the exception
+   */
+  @ExceptionHandler({InvalidCursorException.class})
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  public Object handleInvalidCursorException(Throwable e) {
+    return Map.of(
+        "type", e.getClass().getSimpleName(),
+        "message", e.getMessage());
+  }
+
+  /**
+   * This method handles the InvalidSortKeyException.
+   *
+   * @param e the exception
+   * @return a map with the type and message of the exception
+   */
+  @ExceptionHandler({InvalidSortKeyException.class})
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  public Object handleInvalidSortKeyException(Throwable e) {
+    return Map.of(
+        "type", e.getClass().getSimpleName(),
+        "message", e.getMessage());
+  }
+
+  /**
+   * This method handles the BatchTooLargeException.
+   *
+   * @param e the exception
+   * @return a map with the type and message of the exception
+   */
+  @ExceptionHandler({BatchTooLargeException.class})
+  @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+  public Object handleBatchTooLargeException(Throwable e) {
+    return Map.of(
+        "type", e.getClass().getSimpleName(),
+        "message", e.getMessage());
+  }
+
+  /**
+   * This method handles the InvalidPatchException.
+   *
+   * @param e the exception
+   * @return a map with the type and message of the exception
+   */
+  @ExceptionHandler({InvalidPatchException.class})
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  public Object handleInvalidPatchException(Throwable e) {
+    return Map.of(
+        "type", e.getClass().getSimpleName(),
+        "message", e.getMessage());
+  }
+
+  /**
+   * This method handles the InvalidWorkflowException.
+   *
+   * @param e the exception
+   * @return a map with the type and message of the exception
+   */
+  @ExceptionHandler({InvalidWorkflowException.class})
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  public Object handleInvalidWorkflowException(Throwable e) {
+    return Map.of(
+        "type", e.getClass().getSimpleName(),
+        "message", e.getMessage());
+  }
+
+  /**
+   * This method handles the InvalidSearchPatternException.
+   *
+   * @param e the exception
+   * @return a map with the type and message of the exception
+   */
+  @ExceptionHandler({InvalidSearchPatternException.class})
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  public Object handleInvalidSearchPatternException(Throwable e) {
+    return Map.of(
+        "type", e.getClass().getSimpleName(),
+        "message", e.getMessage());
+  }
+
+  /**
+   * This method handles the JobRateLimitException, telling the client when it may try again.
+   *
+   * @param e the exception
+   * @param response the response, on which the Retry-After header is set
+   * @return a map with the type and message of the exception
+   */
+  @ExceptionHandler({JobRateLimitException.class})
+  @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+  public Object handleJobRateLimitException(JobRateLimitException e, HttpServletResponse response) {
+    response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()));
+    return Map.of(
+        "type", e.getClass().getSimpleName(),
+        "message", e.getMessage());
+  }
 }
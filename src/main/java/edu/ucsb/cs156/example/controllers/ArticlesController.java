@@ -3,24 +3,36 @@ package edu.ucsb.cs156.example.controllers;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import edu.ucsb.cs156.example.entities.Articles;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.KeysetPage;
 import edu.ucsb.cs156.example.repositories.ArticlesRepository;
+import edu.ucsb.cs156.example.repositories.KeysetPager;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 /** This is a REST controller for Articles */
 @Tag(name = "Articles")
@@ -31,17 +43,75 @@ public class ArticlesController extends ApiController {
 
   @Autowired ArticlesRepository articlesRepository;
 
+  @Autowired JsonExportService jsonExportService;
+
+  @Autowired PartialUpdateService partialUpdateService;
+
+  private static final KeysetPager<Articles> PAGER =
+      KeysetPager.<Articles>byId("id", Articles::getId, Long::valueOf)
+          .sortKey("title", Articles::getTitle, Function.identity())
+          .sortKey("email", Articles::getEmail, Function.identity())
+          .sortKey("dateAdded", Articles::getDateAdded, LocalDateTime::parse);
+
   /**
    * List all Articles
    *
+   * <p>At most app.api.all.maxSize rows are returned; use /page to list the rest.
+   *
+   * @param request the request, whose If-None-Match header is checked
+   * @param response the response, on which the X-Next-Cursor header is set if not all rows fit
    * @return an iterable of Article
    */
   @Operation(summary = "List all articles")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("/all")
-  public Iterable<Articles> allArticles() {
-    Iterable<Articles> articles = articlesRepository.findAll();
-    return articles;
+  public Iterable<Articles> allArticles(ServletWebRequest request, HttpServletResponse response) {
+    List<Articles> articles = allRows(PAGER, articlesRepository, response);
+    return notModified(request, PAGER, articles) ? null : articles;
+  }
+
+  /**
+   * List articles one page at a time, sorted by id, title, email or dateAdded.
+   *
+   * @param sort the attribute to sort by; id if omitted
+   * @param direction whether to sort in ascending (ASC) or descending (DESC) order
+   * @param cursor nextCursor of the previous page; omitted for the first page
+   * @param size the number of articles per page
+   * @return a page of articles
+   */
+  @Operation(summary = "List articles, one page at a time")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/page")
+  public KeysetPage<Articles> pageOfArticles(
+      @Parameter(name = "sort", description = "id (default), title, email or dateAdded")
+          @RequestParam(required = false)
+          String sort,
+      @Parameter(name = "direction", description = "ASC (default) or DESC")
+          @RequestParam(defaultValue = "ASC")
+          Sort.Direction direction,
+      @Parameter(name = "cursor", description = "nextCursor of the previous page; omit for first")
+          @RequestParam(required = false)
+          String cursor,
+      @Parameter(name = "size", description = "number of articles per page")
+          @RequestParam(defaultValue = "${app.api.page.defaultSize:50}")
+          int size) {
+    return keysetPage(PAGER, articlesRepository, sort, direction, cursor, size);
+  }
+
+  /**
+   * Export all articles as a JSON array, in id order.
+   *
+   * <p>Unlike /all, there is no limit on the number of rows: they are written to the response as
+   * they are read from the database.
+   *
+   * @param response the response to write the articles to
+   * @throws IOException if the response cannot be written
+   */
+  @Operation(summary = "Export all articles")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/export")
+  public void exportArticles(HttpServletResponse response) throws IOException {
+    jsonExportService.writeJsonArray(articlesRepository::streamAllByOrderByIdAsc, response);
   }
 
   /**
@@ -87,22 +157,39 @@ public class ArticlesController extends ApiController {
     return savedArticles;
   }
 
+  /**
+   * This method creates many articles at once, in a single transaction, so that loading a large
+   * number of them does not take one request and one insert statement per row. Accessible only to
+   * users with the role "ROLE_ADMIN".
+   *
+   * @param articles the articles to create; any ids they have are ignored
+   * @return the saved articles (with their id fields set by the database)
+   */
+  @Operation(summary = "Create many articles at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PostMapping("/post/batch")
+  public Iterable<Articles> postArticlesBatch(@RequestBody List<Articles> articles) {
+    articles.forEach(article -> article.setId(0));
+    return saveBatch(articlesRepository, articles);
+  }
+
   /**
    * Get a single articles
    *
    * @param id the id of the articles
+   * @param request the request, whose If-None-Match and If-Modified-Since headers are checked
    * @return an Articles
    */
   @Operation(summary = "Get a single articles")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("")
-  public Articles getById(@Parameter(name = "id") @RequestParam Long id) {
+  public Articles getById(
+      @Parameter(name = "id") @RequestParam Long id, ServletWebRequest request) {
     Articles articles =
         articlesRepository
             .findById(id)
             .orElseThrow(() -> new EntityNotFoundException(Articles.class, id));
-
-    return articles;
+    return notModified(request, PAGER, articles) ? null : articles;
   }
 
   @Operation(summary = "Update a single Articles")
@@ -127,6 +214,24 @@ public class ArticlesController extends ApiController {
     return articles;
   }
 
+  /**
+   * Update some fields of an article, leaving the others as they are. Only the fields given are
+   * written, in a single UPDATE statement, and nothing is written if they already have the values
+   * given.
+   *
+   * @param id id of the article to update
+   * @param changes the new values of the fields to change, by field name
+   * @return a message saying whether the article was changed
+   */
+  @Operation(summary = "Update some fields of an article")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PatchMapping("")
+  public Object patchArticles(
+      @Parameter(name = "id") @RequestParam Long id, @RequestBody Map<String, Object> changes) {
+    boolean updated = partialUpdateService.update(Articles.class, id, changes);
+    return patchMessage(Articles.class, id, updated);
+  }
+
   @Operation(summary = "Delete a Articles")
   @PreAuthorize("hasRole('ROLE_ADMIN')")
   @DeleteMapping("")
@@ -139,4 +244,18 @@ public class ArticlesController extends ApiController {
     articlesRepository.delete(articles);
     return genericMessage("Articles with id %s deleted".formatted(id));
   }
+
+  /**
+   * Delete many articles at once, with a single DELETE statement. Accessible only to users with the
+   * role "ROLE_ADMIN".
+   *
+   * @param ids ids of the articles to delete; ids that match nothing are skipped
+   * @return a message saying how many articles were deleted
+   */
+  @Operation(summary = "Delete many articles at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @DeleteMapping("/bulk")
+  public Object bulkDeleteArticles(@RequestBody List<Long> ids) {
+    return deleteByIds(Articles.class, ids, articlesRepository::deleteByIdIn);
+  }
 }
@@ -3,24 +3,36 @@ package edu.ucsb.cs156.example.controllers;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import edu.ucsb.cs156.example.entities.HelpRequest;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.KeysetPage;
 import edu.ucsb.cs156.example.repositories.HelpRequestRepository;
+import edu.ucsb.cs156.example.repositories.KeysetPager;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 @Tag(name = "HelpRequest")
 @RequestMapping("/api/helprequest")
@@ -30,35 +42,95 @@ public class HelpRequestController extends ApiController {
 
   @Autowired HelpRequestRepository helpRequestRepository;
 
+  @Autowired JsonExportService jsonExportService;
+
+  @Autowired PartialUpdateService partialUpdateService;
+
+  private static final KeysetPager<HelpRequest> PAGER =
+      KeysetPager.<HelpRequest>byId("id", HelpRequest::getId, Long::valueOf)
+          .sortKey("requesterEmail", HelpRequest::getRequesterEmail, Function.identity())
+          .sortKey("teamId", HelpRequest::getTeamId, Function.identity())
+          .sortKey("requestTime", HelpRequest::getRequestTime, LocalDateTime::parse);
+
   /**
    * List all Help Requests
    *
+   * <p>At most app.api.all.maxSize rows are returned; use /page to list the rest.
+   *
+   * @param request the request, whose If-None-Match header is checked
+   * @param response the response, on which the X-Next-Cursor header is set if not all rows fit
    * @return an iterable of helpRequest
    */
   @Operation(summary = "List all help requests")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("/all")
-  public Iterable<HelpRequest> allHelpRequest() {
-    Iterable<HelpRequest> helpRequest = helpRequestRepository.findAll();
-    return helpRequest;
+  public Iterable<HelpRequest> allHelpRequest(
+      ServletWebRequest request, HttpServletResponse response) {
+    List<HelpRequest> helpRequest = allRows(PAGER, helpRequestRepository, response);
+    return notModified(request, PAGER, helpRequest) ? null : helpRequest;
+  }
+
+  /**
+   * List help requests one page at a time, sorted by id, requesterEmail, teamId or requestTime.
+   *
+   * @param sort the attribute to sort by; id if omitted
+   * @param direction whether to sort in ascending (ASC) or descending (DESC) order
+   * @param cursor nextCursor of the previous page; omitted for the first page
+   * @param size the number of help requests per page
+   * @return a page of help requests
+   */
+  @Operation(summary = "List help requests, one page at a time")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/page")
+  public KeysetPage<HelpRequest> pageOfHelpRequests(
+      @Parameter(name = "sort", description = "id (default), requesterEmail, teamId or requestTime")
+          @RequestParam(required = false)
+          String sort,
+      @Parameter(name = "direction", description = "ASC (default) or DESC")
+          @RequestParam(defaultValue = "ASC")
+          Sort.Direction direction,
+      @Parameter(name = "cursor", description = "nextCursor of the previous page; omit for first")
+          @RequestParam(required = false)
+          String cursor,
+      @Parameter(name = "size", description = "number of help requests per page")
+          @RequestParam(defaultValue = "${app.api.page.defaultSize:50}")
+          int size) {
+    return keysetPage(PAGER, helpRequestRepository, sort, direction, cursor, size);
+  }
+
+  /**
+   * Export all help requests as a JSON array, in id order.
+   *
+   * <p>Unlike /all, there is no limit on the number of rows: they are written to the response as
+   * they are read from the database.
+   *
+   * @param response the response to write the help requests to
+   * @throws IOException if the response cannot be written
+   */
+  @Operation(summary = "Export all help requests")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/export")
+  public void exportHelpRequests(HttpServletResponse response) throws IOException {
+    jsonExportService.writeJsonArray(helpRequestRepository::streamAllByOrderByIdAsc, response);
   }
 
   /**
    * Get a single help request by id
    *
    * @param id the id of the help request
+   * @param request the request, whose If-None-Match and If-Modified-Since headers are checked
    * @return a HelpRequest
    */
   @Operation(summary = "Get a single help request")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("")
-  public HelpRequest getById(@Parameter(name = "id") @RequestParam Long id) {
+  public HelpRequest getById(
+      @Parameter(name = "id") @RequestParam Long id, ServletWebRequest request) {
     HelpRequest helpRequest =
         helpRequestRepository
             .findById(id)
             .orElseThrow(() -> new EntityNotFoundException(HelpRequest.class, id));
-
-    return helpRequest;
+    return notModified(request, PAGER, helpRequest) ? null : helpRequest;
   }
 
   /**
@@ -108,6 +180,22 @@ public class HelpRequestController extends ApiController {
     return savedHelpRequest;
   }
 
+  /**
+   * This method creates many help requests at once, in a single transaction, so that loading a
+   * large number of them does not take one request and one insert statement per row. Accessible
+   * only to users with the role "ROLE_ADMIN".
+   *
+   * @param helpRequests the help requests to create; any ids they have are ignored
+   * @return the saved help requests (with their id fields set by the database)
+   */
+  @Operation(summary = "Create many help requests at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PostMapping("/post/batch")
+  public Iterable<HelpRequest> postHelpRequestBatch(@RequestBody List<HelpRequest> helpRequests) {
+    helpRequests.forEach(helpRequest -> helpRequest.setId(0));
+    return saveBatch(helpRequestRepository, helpRequests);
+  }
+
   /**
    * Delete a help request
    *
@@ -127,6 +215,38 @@ public class HelpRequestController extends ApiController {
     return genericMessage("HelpRequest with id %s deleted".formatted(id));
   }
 
+  /**
+   * Delete many help requests at once, with a single DELETE statement. Accessible only to users
+   * with the role "ROLE_USER".
+   *
+   * @param ids ids of the help requests to delete; ids that match nothing are skipped
+   * @return a message saying how many help requests were deleted
+   */
+  @Operation(summary = "Delete many help requests at once")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @DeleteMapping("/bulk")
+  public Object bulkDeleteHelpRequests(@RequestBody List<Long> ids) {
+    return deleteByIds(HelpRequest.class, ids, helpRequestRepository::deleteByIdIn);
+  }
+
+  /**
+   * Delete the solved help requests made before a given time, with a single DELETE statement.
+   * Accessible only to users with the role "ROLE_ADMIN".
+   *
+   * @param before the time before which solved help requests are deleted
+   * @return a message saying how many help requests were deleted
+   */
+  @Operation(summary = "Delete solved help requests made before a given time")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @DeleteMapping("/solved")
+  public Object deleteSolvedHelpRequests(
+      @Parameter(name = "before", description = "date (in iso format, e.g. YYYY-mm-ddTHH:MM:SS)")
+          @RequestParam("before")
+          @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+          LocalDateTime before) {
+    return deletedMessage(HelpRequest.class, helpRequestRepository.deleteSolvedBefore(before));
+  }
+
   /**
    * Update a single help request
    *
@@ -156,4 +276,22 @@ public class HelpRequestController extends ApiController {
 
     return helpRequest;
   }
+
+  /**
+   * Update some fields of a help request, leaving the others as they are. Only the fields given are
+   * written, in a single UPDATE statement, and nothing is written if they already have the values
+   * given.
+   *
+   * @param id id of the help request to update
+   * @param changes the new values of the fields to change, by field name
+   * @return a message saying whether the help request was changed
+   */
+  @Operation(summary = "Update some fields of a help request")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @PatchMapping("")
+  public Object patchHelpRequest(
+      @Parameter(name = "id") @RequestParam Long id, @RequestBody Map<String, Object> changes) {
+    boolean updated = partialUpdateService.update(HelpRequest.class, id, changes);
+    return patchMessage(HelpRequest.class, id, updated);
+  }
 }
@@ -3,34 +3,76 @@ package edu.ucsb.cs156.example.controllers;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobPriority;
+import edu.ucsb.cs156.example.entities.Workflow;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.errors.InvalidCursorException;
+import edu.ucsb.cs156.example.errors.InvalidSearchPatternException;
 import edu.ucsb.cs156.example.jobs.TestJob;
+import edu.ucsb.cs156.example.jobs.TestJobFactory;
+import edu.ucsb.cs156.example.models.JobExecutorStatus;
+import edu.ucsb.cs156.example.models.JobLogMatch;
+import edu.ucsb.cs156.example.models.JobSummary;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.models.WorkflowStatus;
+import edu.ucsb.cs156.example.models.WorkflowStep;
 import edu.ucsb.cs156.example.repositories.JobsRepository;
+import edu.ucsb.cs156.example.services.jobs.JobEventStreamService;
+import edu.ucsb.cs156.example.services.jobs.JobLogSearchService;
+import edu.ucsb.cs156.example.services.jobs.JobLogStreamService;
+import edu.ucsb.cs156.example.services.jobs.JobQueueService;
 import edu.ucsb.cs156.example.services.jobs.JobService;
+import edu.ucsb.cs156.example.services.jobs.WorkflowService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @Tag(name = "Jobs")
 @RequestMapping("/api/jobs")
 @RestController
 @Slf4j
 public class JobsController extends ApiController {
+  private static final int MAX_PAGE_SIZE = 500;
+  private static final int MAX_SEARCH_MATCHES = 1000;
+
   @Autowired private JobsRepository jobsRepository;
 
   @Autowired private JobService jobService;
 
+  @Autowired private JobQueueService jobQueueService;
+
+  @Autowired private JobLogStreamService jobLogStreamService;
+
+  @Autowired private JobEventStreamService jobEventStreamService;
+
+  @Autowired private JobLogSearchService jobLogSearchService;
+
+  @Autowired private WorkflowService workflowService;
+
   @Autowired ObjectMapper mapper;
 
   @Operation(summary = "List all jobs")
@@ -41,6 +83,40 @@ public class JobsController extends ApiController {
     return jobs;
   }
 
+  @Operation(summary = "List jobs newest first, one page at a time, without their logs")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @GetMapping("/page")
+  public KeysetPage<JobSummary> pageOfJobs(
+      @Parameter(name = "status", description = "only list jobs with this status")
+          @RequestParam(required = false)
+          String status,
+      @Parameter(name = "createdById", description = "only list jobs created by this user id")
+          @RequestParam(required = false)
+          Long createdById,
+      @Parameter(name = "cursor", description = "nextCursor of the previous page; omit for first")
+          @RequestParam(required = false)
+          String cursor,
+      @Parameter(name = "size", description = "number of jobs per page (at most 500)")
+          @RequestParam(defaultValue = "50")
+          int size) {
+
+    int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+    long beforeId = Long.MAX_VALUE;
+    if (cursor != null) {
+      try {
+        beforeId = Long.parseLong(cursor);
+      } catch (NumberFormatException e) {
+        throw new InvalidCursorException(cursor);
+      }
+    }
+
+    List<JobSummary> jobs =
+        jobsRepository.findSummaries(beforeId, status, createdById, PageRequest.of(0, pageSize));
+    String nextCursor =
+        jobs.size() == pageSize ? Long.toString(jobs.get(jobs.size() - 1).getId()) : null;
+    return KeysetPage.<JobSummary>builder().content(jobs).nextCursor(nextCursor).build();
+  }
+
   @Operation(summary = "Delete all job records")
   @PreAuthorize("hasRole('ROLE_ADMIN')")
   @DeleteMapping("/all")
@@ -73,22 +149,206 @@ public class JobsController extends ApiController {
     return Map.of("message", String.format("Job with id %d deleted", id));
   }
 
+  @Operation(summary = "Get pool size, active workers and queued jobs of the job executor")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @GetMapping("/executor")
+  public JobExecutorStatus getExecutorStatus(
+      @Parameter(name = "priority", description = "which executor to describe")
+          @RequestParam(defaultValue = "INTERACTIVE")
+          JobPriority priority) {
+    return jobService.getExecutorStatus(priority);
+  }
+
+  @Operation(summary = "Cancel a queued or running job")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PostMapping("/cancel")
+  public Map<String, String> cancelJob(@Parameter(name = "id") @RequestParam Long id) {
+    if (!jobsRepository.existsById(id)) {
+      throw new EntityNotFoundException(Job.class, id);
+    }
+    if (!jobService.cancelJob(id)) {
+      return Map.of("message", String.format("Job with id %d is not queued or running", id));
+    }
+    return Map.of("message", String.format("Job with id %d cancelled", id));
+  }
+
   @Operation(summary = "Launch Test Job (click fail if you want to test exception handling)")
   @PreAuthorize("hasRole('ROLE_ADMIN')")
   @PostMapping("/launch/testjob")
   public Job launchTestJob(
       @Parameter(name = "fail") @RequestParam Boolean fail,
-      @Parameter(name = "sleepMs") @RequestParam Integer sleepMs) {
+      @Parameter(name = "sleepMs") @RequestParam Integer sleepMs,
+      @Parameter(name = "timeoutSeconds", description = "stop the job if it runs longer than this")
+          @RequestParam(required = false)
+          Long timeoutSeconds,
+      @Parameter(
+              name = "coalesce",
+              description = "return the same test job if one is already queued or running")
+          @RequestParam(defaultValue = "false")
+          boolean coalesce,
+      @Parameter(name = "priority", description = "BULK jobs run on a separate, smaller pool")
+          @RequestParam(defaultValue = "INTERACTIVE")
+          JobPriority priority)
+      throws JsonProcessingException {
 
     TestJob testJob = TestJob.builder().fail(fail).sleepMs(sleepMs).build();
-    return jobService.runAsJob(testJob);
+    Duration timeout =
+        timeoutSeconds != null
+            ? Duration.ofSeconds(timeoutSeconds)
+            : jobService.getDefaultTimeout();
+    String coalesceKey =
+        coalesce
+            ? JobService.coalesceKey(TestJobFactory.JOB_TYPE, testJobParameters(fail, sleepMs))
+            : null;
+    return jobService.runAsJob(TestJobFactory.JOB_TYPE, testJob, timeout, coalesceKey, priority);
+  }
+
+  @Operation(
+      summary =
+          "Queue Test Job in the database, to be run by whichever instance has a free worker"
+              + " (survives restarts)")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PostMapping("/launch/testjob/queued")
+  public Job queueTestJob(
+      @Parameter(name = "fail") @RequestParam Boolean fail,
+      @Parameter(name = "sleepMs") @RequestParam Integer sleepMs,
+      @Parameter(
+              name = "coalesce",
+              description = "return the same test job if one is already queued or running")
+          @RequestParam(defaultValue = "false")
+          boolean coalesce,
+      @Parameter(name = "priority", description = "BULK jobs run on a separate, smaller pool")
+          @RequestParam(defaultValue = "INTERACTIVE")
+          JobPriority priority)
+      throws JsonProcessingException {
+
+    return jobQueueService.enqueue(
+        TestJobFactory.JOB_TYPE, testJobParameters(fail, sleepMs), coalesce, priority);
+  }
+
+  @Operation(
+      summary =
+          "Start a workflow of queued jobs; each step starts as soon as the steps in its dependsOn"
+              + " have completed, and independent steps run in parallel")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PostMapping("/workflows")
+  public Workflow startWorkflow(
+      @Parameter(name = "name") @RequestParam String name, @RequestBody List<WorkflowStep> steps)
+      throws JsonProcessingException {
+    return workflowService.start(name, steps);
+  }
+
+  @Operation(summary = "Get the status of a workflow and each of its steps")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @GetMapping("/workflows/{id}")
+  public WorkflowStatus getWorkflowStatus(
+      @Parameter(name = "id", description = "Workflow ID") @PathVariable Long id) {
+    return workflowService.getStatus(id);
+  }
+
+  @Operation(summary = "Get the logs of every step of a workflow")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @GetMapping("/workflows/{id}/logs")
+  public void getWorkflowLogs(
+      @Parameter(name = "id", description = "Workflow ID") @PathVariable Long id,
+      HttpServletResponse response)
+      throws IOException {
+    // look the steps up first, so that an unknown workflow is reported before the response starts
+    List<Job> steps = workflowService.getSteps(id);
+    response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    workflowService.writeLogs(steps, response.getWriter());
+  }
+
+  private static Map<String, Object> testJobParameters(Boolean fail, Integer sleepMs) {
+    return Map.of("fail", fail, "sleepMs", sleepMs);
   }
 
   @Operation(summary = "Get long job logs")
   @PreAuthorize("hasRole('ROLE_ADMIN')")
   @GetMapping("/logs/{id}")
-  public String getJobLogs(@Parameter(name = "id", description = "Job ID") @PathVariable Long id) {
+  public void getJobLogs(
+      @Parameter(name = "id", description = "Job ID") @PathVariable Long id,
+      HttpServletResponse response)
+      throws IOException {
+    try (Reader log = jobService.openJobLogs(id)) {
+      response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+      response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+      log.transferTo(response.getWriter());
+    }
+  }
+
+  @Operation(
+      summary =
+          "Search a job log for lines that contain a substring (or match a regular expression),"
+              + " returning the matching lines with their line numbers")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @GetMapping("/logs/{id}/search")
+  public List<JobLogMatch> searchJobLogs(
+      @Parameter(name = "id", description = "Job ID") @PathVariable Long id,
+      @Parameter(name = "query", description = "text to look for in each line") @RequestParam
+          String query,
+      @Parameter(name = "regex", description = "treat query as a Java regular expression")
+          @RequestParam(defaultValue = "false")
+          boolean regex,
+      @Parameter(name = "fromLine", description = "first line number to search")
+          @RequestParam(defaultValue = "0")
+          long fromLine,
+      @Parameter(name = "toLine", description = "last line number to search; omit for the end")
+          @RequestParam(required = false)
+          Long toLine,
+      @Parameter(name = "limit", description = "most matching lines to return (at most 1000)")
+          @RequestParam(defaultValue = "100")
+          int limit) {
 
-    return jobService.getJobLogs(id);
+    Pattern pattern;
+    try {
+      pattern = Pattern.compile(query, regex ? 0 : Pattern.LITERAL);
+    } catch (PatternSyntaxException e) {
+      throw new InvalidSearchPatternException(query);
+    }
+    return jobLogSearchService.search(
+        id,
+        pattern,
+        fromLine,
+        toLine != null ? toLine : Long.MAX_VALUE,
+        Math.min(Math.max(limit, 1), MAX_SEARCH_MATCHES));
+  }
+
+  @Operation(
+      summary =
+          "Stream job log lines as Server-Sent Events, starting at line offset (or after"
+              + " Last-Event-ID); the stream closes when the job finishes")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @GetMapping(value = "/logs/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamJobLogs(
+      @Parameter(name = "id", description = "Job ID") @PathVariable Long id,
+      @Parameter(name = "offset", description = "first line number to send (0 = whole log)")
+          @RequestParam(defaultValue = "0")
+          Long offset,
+      @Parameter(hidden = true) @RequestHeader(value = "Last-Event-ID", required = false)
+          Long lastEventId) {
+
+    if (!jobsRepository.existsById(id)) {
+      throw new EntityNotFoundException(Job.class, id);
+    }
+    long firstLine = lastEventId != null ? lastEventId + 1 : offset;
+    return jobLogStreamService.subscribe(id, firstLine);
+  }
+
+  @Operation(
+      summary =
+          "Stream job status changes (queued, running, complete, error, ...) as Server-Sent"
+              + " Events, optionally only those of one job type or of the jobs of one user")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamJobEvents(
+      @Parameter(name = "jobType", description = "only send events of jobs of this type")
+          @RequestParam(required = false)
+          String jobType,
+      @Parameter(name = "createdById", description = "only send events of jobs this user created")
+          @RequestParam(required = false)
+          Long createdById) {
+    return jobEventStreamService.subscribe(jobType, createdById);
   }
 }
@@ -3,24 +3,35 @@ package edu.ucsb.cs156.example.controllers;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import edu.ucsb.cs156.example.entities.MenuItemReview;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.repositories.KeysetPager;
 import edu.ucsb.cs156.example.repositories.MenuItemReviewRepository;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 /** This is a REST controller for MenuItemReviews */
 @Tag(name = "MenuItemReviews")
@@ -30,35 +41,95 @@ import org.springframework.web.bind.annotation.RestController;
 public class MenuItemReviewController extends ApiController {
   @Autowired MenuItemReviewRepository menuItemReviewRepository;
 
+  @Autowired JsonExportService jsonExportService;
+
+  @Autowired PartialUpdateService partialUpdateService;
+
+  private static final KeysetPager<MenuItemReview> PAGER =
+      KeysetPager.<MenuItemReview>byId("id", MenuItemReview::getId, Long::valueOf)
+          .sortKey("itemId", MenuItemReview::getItemId, Long::valueOf)
+          .sortKey("stars", MenuItemReview::getStars, Integer::valueOf)
+          .sortKey("dateReviewed", MenuItemReview::getDateReviewed, LocalDateTime::parse);
+
   /**
    * List all Menu Item Reviews
    *
+   * <p>At most app.api.all.maxSize rows are returned; use /page to list the rest.
+   *
+   * @param request the request, whose If-None-Match header is checked
+   * @param response the response, on which the X-Next-Cursor header is set if not all rows fit
    * @return an iterable of MenuItemReview
    */
   @Operation(summary = "List all menu item reviews")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("/all")
-  public Iterable<MenuItemReview> allMenuItemReviews() {
-    Iterable<MenuItemReview> reviews = menuItemReviewRepository.findAll();
-    return reviews;
+  public Iterable<MenuItemReview> allMenuItemReviews(
+      ServletWebRequest request, HttpServletResponse response) {
+    List<MenuItemReview> reviews = allRows(PAGER, menuItemReviewRepository, response);
+    return notModified(request, PAGER, reviews) ? null : reviews;
+  }
+
+  /**
+   * List menu item reviews one page at a time, sorted by id, itemId, stars or dateReviewed.
+   *
+   * @param sort the attribute to sort by; id if omitted
+   * @param direction whether to sort in ascending (ASC) or descending (DESC) order
+   * @param cursor nextCursor of the previous page; omitted for the first page
+   * @param size the number of menu item reviews per page
+   * @return a page of menu item reviews
+   */
+  @Operation(summary = "List menu item reviews, one page at a time")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/page")
+  public KeysetPage<MenuItemReview> pageOfMenuItemReviews(
+      @Parameter(name = "sort", description = "id (default), itemId, stars or dateReviewed")
+          @RequestParam(required = false)
+          String sort,
+      @Parameter(name = "direction", description = "ASC (default) or DESC")
+          @RequestParam(defaultValue = "ASC")
+          Sort.Direction direction,
+      @Parameter(name = "cursor", description = "nextCursor of the previous page; omit for first")
+          @RequestParam(required = false)
+          String cursor,
+      @Parameter(name = "size", description = "number of menu item reviews per page")
+          @RequestParam(defaultValue = "${app.api.page.defaultSize:50}")
+          int size) {
+    return keysetPage(PAGER, menuItemReviewRepository, sort, direction, cursor, size);
+  }
+
+  /**
+   * Export all menu item reviews as a JSON array, in id order.
+   *
+   * <p>Unlike /all, there is no limit on the number of rows: they are written to the response as
+   * they are read from the database.
+   *
+   * @param response the response to write the menu item reviews to
+   * @throws IOException if the response cannot be written
+   */
+  @Operation(summary = "Export all menu item reviews")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/export")
+  public void exportMenuItemReviews(HttpServletResponse response) throws IOException {
+    jsonExportService.writeJsonArray(menuItemReviewRepository::streamAllByOrderByIdAsc, response);
   }
 
   /**
    * Get a single menu item review by id
    *
    * @param id the id of the menu item review
+   * @param request the request, whose If-None-Match and If-Modified-Since headers are checked
    * @return a MenuItemReview
    */
   @Operation(summary = "Get a single menu item review")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("")
-  public MenuItemReview getById(@Parameter(name = "id") @RequestParam Long id) {
+  public MenuItemReview getById(
+      @Parameter(name = "id") @RequestParam Long id, ServletWebRequest request) {
     MenuItemReview menuItemReview =
         menuItemReviewRepository
             .findById(id)
             .orElseThrow(() -> new EntityNotFoundException(MenuItemReview.class, id));
-
-    return menuItemReview;
+    return notModified(request, PAGER, menuItemReview) ? null : menuItemReview;
   }
 
   /**
@@ -105,6 +176,23 @@ public class MenuItemReviewController extends ApiController {
     return savedMenuItemReview;
   }
 
+  /**
+   * This method creates many menu item reviews at once, in a single transaction, so that loading a
+   * large number of them does not take one request and one insert statement per row. Accessible
+   * only to users with the role "ROLE_ADMIN".
+   *
+   * @param menuItemReviews the menu item reviews to create; any ids they have are ignored
+   * @return the saved menu item reviews (with their id fields set by the database)
+   */
+  @Operation(summary = "Create many menu item reviews at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PostMapping("/post/batch")
+  public Iterable<MenuItemReview> postMenuItemReviewBatch(
+      @RequestBody List<MenuItemReview> menuItemReviews) {
+    menuItemReviews.forEach(menuItemReview -> menuItemReview.setId(0));
+    return saveBatch(menuItemReviewRepository, menuItemReviews);
+  }
+
   /**
    * Update a single menu item review
    *
@@ -134,6 +222,24 @@ public class MenuItemReviewController extends ApiController {
     return menuItemReview;
   }
 
+  /**
+   * Update some fields of a menu item review, leaving the others as they are. Only the fields given
+   * are written, in a single UPDATE statement, and nothing is written if they already have the
+   * values given.
+   *
+   * @param id id of the menu item review to update
+   * @param changes the new values of the fields to change, by field name
+   * @return a message saying whether the menu item review was changed
+   */
+  @Operation(summary = "Update some fields of a menu item review")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PatchMapping("")
+  public Object patchMenuItemReview(
+      @Parameter(name = "id") @RequestParam Long id, @RequestBody Map<String, Object> changes) {
+    boolean updated = partialUpdateService.update(MenuItemReview.class, id, changes);
+    return patchMessage(MenuItemReview.class, id, updated);
+  }
+
   /**
    * Delete a MenuItemReview
    *
@@ -152,4 +258,18 @@ public class MenuItemReviewController extends ApiController {
     menuItemReviewRepository.delete(menuItemReview);
     return genericMessage("MenuItemReview with id %s deleted".formatted(id));
   }
+
+  /**
+   * Delete many menu item reviews at once, with a single DELETE statement. Accessible only to users
+   * with the role "ROLE_ADMIN".
+   *
+   * @param ids ids of the menu item reviews to delete; ids that match nothing are skipped
+   * @return a message saying how many menu item reviews were deleted
+   */
+  @Operation(summary = "Delete many menu item reviews at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @DeleteMapping("/bulk")
+  public Object bulkDeleteMenuItemReviews(@RequestBody List<Long> ids) {
+    return deleteByIds(MenuItemReview.class, ids, menuItemReviewRepository::deleteByIdIn);
+  }
 }
@@ -3,24 +3,36 @@ package edu.ucsb.cs156.example.controllers;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import edu.ucsb.cs156.example.entities.RecommendationRequest;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.repositories.KeysetPager;
 import edu.ucsb.cs156.example.repositories.RecommendationRequestRepository;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 /** This is a REST controller for RecommendationRequest */
 @Tag(name = "RecommendationRequest")
@@ -31,36 +43,102 @@ public class RecommendationRequestController extends ApiController {
 
   @Autowired RecommendationRequestRepository recommendationRequestRepository;
 
+  @Autowired JsonExportService jsonExportService;
+
+  @Autowired PartialUpdateService partialUpdateService;
+
+  private static final KeysetPager<RecommendationRequest> PAGER =
+      KeysetPager.<RecommendationRequest>byId("id", RecommendationRequest::getId, Long::valueOf)
+          .sortKey("requesteremail", RecommendationRequest::getRequesteremail, Function.identity())
+          .sortKey("professoremail", RecommendationRequest::getProfessoremail, Function.identity())
+          .sortKey("daterequested", RecommendationRequest::getDaterequested, LocalDateTime::parse)
+          .sortKey("dateneeded", RecommendationRequest::getDateneeded, LocalDateTime::parse);
+
   /**
    * List all Recommendation Requests
    *
+   * <p>At most app.api.all.maxSize rows are returned; use /page to list the rest.
+   *
+   * @param request the request, whose If-None-Match header is checked
+   * @param response the response, on which the X-Next-Cursor header is set if not all rows fit
    * @return an iterable of RecommendationRequest
    */
   @Operation(summary = "List all recommendation requests")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("/all")
-  public Iterable<RecommendationRequest> allRecommendationRequests() {
-    Iterable<RecommendationRequest> recommendationRequests =
-        recommendationRequestRepository.findAll();
-    return recommendationRequests;
+  public Iterable<RecommendationRequest> allRecommendationRequests(
+      ServletWebRequest request, HttpServletResponse response) {
+    List<RecommendationRequest> recommendationRequests =
+        allRows(PAGER, recommendationRequestRepository, response);
+    return notModified(request, PAGER, recommendationRequests) ? null : recommendationRequests;
+  }
+
+  /**
+   * List recommendation requests one page at a time, sorted by id, requesteremail, professoremail,
+   * daterequested or dateneeded.
+   *
+   * @param sort the attribute to sort by; id if omitted
+   * @param direction whether to sort in ascending (ASC) or descending (DESC) order
+   * @param cursor nextCursor of the previous page; omitted for the first page
+   * @param size the number of recommendation requests per page
+   * @return a page of recommendation requests
+   */
+  @Operation(summary = "List recommendation requests, one page at a time")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/page")
+  public KeysetPage<RecommendationRequest> pageOfRecommendationRequests(
+      @Parameter(
+              name = "sort",
+              description =
+                  "id (default), requesteremail, professoremail, daterequested or dateneeded")
+          @RequestParam(required = false)
+          String sort,
+      @Parameter(name = "direction", description = "ASC (default) or DESC")
+          @RequestParam(defaultValue = "ASC")
+          Sort.Direction direction,
+      @Parameter(name = "cursor", description = "nextCursor of the previous page; omit for first")
+          @RequestParam(required = false)
+          String cursor,
+      @Parameter(name = "size", description = "number of recommendation requests per page")
+          @RequestParam(defaultValue = "${app.api.page.defaultSize:50}")
+          int size) {
+    return keysetPage(PAGER, recommendationRequestRepository, sort, direction, cursor, size);
+  }
+
+  /**
+   * Export all recommendation requests as a JSON array, in id order.
+   *
+   * <p>Unlike /all, there is no limit on the number of rows: they are written to the response as
+   * they are read from the database.
+   *
+   * @param response the response to write the recommendation requests to
+   * @throws IOException if the response cannot be written
+   */
+  @Operation(summary = "Export all recommendation requests")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/export")
+  public void exportRecommendationRequests(HttpServletResponse response) throws IOException {
+    jsonExportService.writeJsonArray(
+        recommendationRequestRepository::streamAllByOrderByIdAsc, response);
   }
 
   /**
    * Get a single request by id
    *
    * @param id the id of the request
+   * @param request the request, whose If-None-Match and If-Modified-Since headers are checked
    * @return a RecommendationRequest
    */
   @Operation(summary = "Get a single recommendation request")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("")
-  public RecommendationRequest getById(@Parameter(name = "id") @RequestParam Long id) {
+  public RecommendationRequest getById(
+      @Parameter(name = "id") @RequestParam Long id, ServletWebRequest request) {
     RecommendationRequest recommendationRequest =
         recommendationRequestRepository
             .findById(id)
             .orElseThrow(() -> new EntityNotFoundException(RecommendationRequest.class, id));
-
-    return recommendationRequest;
+    return notModified(request, PAGER, recommendationRequest) ? null : recommendationRequest;
   }
 
   /**
@@ -117,6 +195,24 @@ public class RecommendationRequestController extends ApiController {
     return savedRecRequest;
   }
 
+  /**
+   * This method creates many recommendation requests at once, in a single transaction, so that
+   * loading a large number of them does not take one request and one insert statement per row.
+   * Accessible only to users with the role "ROLE_ADMIN".
+   *
+   * @param recommendationRequests the recommendation requests to create; any ids they have are
+   *     ignored
+   * @return the saved recommendation requests (with their id fields set by the database)
+   */
+  @Operation(summary = "Create many recommendation requests at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PostMapping("/post/batch")
+  public Iterable<RecommendationRequest> postRecommendationRequestBatch(
+      @RequestBody List<RecommendationRequest> recommendationRequests) {
+    recommendationRequests.forEach(recommendationRequest -> recommendationRequest.setId(0));
+    return saveBatch(recommendationRequestRepository, recommendationRequests);
+  }
+
   /**
    * Delete a RecommendationRequest
    *
@@ -136,6 +232,41 @@ public class RecommendationRequestController extends ApiController {
     return genericMessage("RecommendationRequest with id %s deleted".formatted(id));
   }
 
+  /**
+   * Delete many recommendation requests at once, with a single DELETE statement. Accessible only to
+   * users with the role "ROLE_ADMIN".
+   *
+   * @param ids ids of the recommendation requests to delete; ids that match nothing are skipped
+   * @return a message saying how many recommendation requests were deleted
+   */
+  @Operation(summary = "Delete many recommendation requests at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @DeleteMapping("/bulk")
+  public Object bulkDeleteRecommendationRequests(@RequestBody List<Long> ids) {
+    return deleteByIds(
+        RecommendationRequest.class, ids, recommendationRequestRepository::deleteByIdIn);
+  }
+
+  /**
+   * Delete the recommendation requests that are done and were requested before a given time, with a
+   * single DELETE statement. Accessible only to users with the role "ROLE_ADMIN".
+   *
+   * @param before the time before which done recommendation requests are deleted
+   * @return a message saying how many recommendation requests were deleted
+   */
+  @Operation(summary = "Delete done recommendation requests made before a given time")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @DeleteMapping("/done")
+  public Object deleteDoneRecommendationRequests(
+      @Parameter(name = "before", description = "date (in iso format, e.g. YYYY-mm-ddTHH:MM:SS)")
+          @RequestParam("before")
+          @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+          LocalDateTime before) {
+    return deletedMessage(
+        RecommendationRequest.class,
+        recommendationRequestRepository.deleteDoneRequestedBefore(before));
+  }
+
   /**
    * Update a single recommendation request
    *
@@ -166,4 +297,22 @@ public class RecommendationRequestController extends ApiController {
 
     return recRequest;
   }
+
+  /**
+   * Update some fields of a recommendation request, leaving the others as they are. Only the fields
+   * given are written, in a single UPDATE statement, and nothing is written if they already have
+   * the values given.
+   *
+   * @param id id of the recommendation request to update
+   * @param changes the new values of the fields to change, by field name
+   * @return a message saying whether the recommendation request was changed
+   */
+  @Operation(summary = "Update some fields of a recommendation request")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PatchMapping("")
+  public Object patchRecommendationRequest(
+      @Parameter(name = "id") @RequestParam Long id, @RequestBody Map<String, Object> changes) {
+    boolean updated = partialUpdateService.update(RecommendationRequest.class, id, changes);
+    return patchMessage(RecommendationRequest.class, id, updated);
+  }
 }
@@ -2,21 +2,33 @@ package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.Restaurant;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.repositories.KeysetPager;
 import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 /** This is a REST controller for Restaurants */
 @Tag(name = "Restaurants")
@@ -26,35 +38,93 @@ public class RestaurantsController extends ApiController {
 
   @Autowired RestaurantRepository restaurantRepository;
 
+  @Autowired JsonExportService jsonExportService;
+
+  @Autowired PartialUpdateService partialUpdateService;
+
+  private static final KeysetPager<Restaurant> PAGER =
+      KeysetPager.<Restaurant>byId("id", Restaurant::getId, Long::valueOf)
+          .sortKey("name", Restaurant::getName, Function.identity());
+
   /**
    * This method returns a list of all restaurants.
    *
+   * <p>At most app.api.all.maxSize rows are returned; use /page to list the rest.
+   *
+   * @param request the request, whose If-None-Match header is checked
+   * @param response the response, on which the X-Next-Cursor header is set if not all rows fit
    * @return a list of all restaurants
    */
   @Operation(summary = "List all restaurants")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("/all")
-  public Iterable<Restaurant> allRestaurants() {
-    Iterable<Restaurant> restaurants = restaurantRepository.findAll();
-    return restaurants;
+  public Iterable<Restaurant> allRestaurants(
+      ServletWebRequest request, HttpServletResponse response) {
+    List<Restaurant> restaurants = allRows(PAGER, restaurantRepository, response);
+    return notModified(request, PAGER, restaurants) ? null : restaurants;
+  }
+
+  /**
+   * List restaurants one page at a time, sorted by id or name.
+   *
+   * @param sort the attribute to sort by; id if omitted
+   * @param direction whether to sort in ascending (ASC) or descending (DESC) order
+   * @param cursor nextCursor of the previous page; omitted for the first page
+   * @param size the number of restaurants per page
+   * @return a page of restaurants
+   */
+  @Operation(summary = "List restaurants, one page at a time")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/page")
+  public KeysetPage<Restaurant> pageOfRestaurants(
+      @Parameter(name = "sort", description = "id (default) or name")
+          @RequestParam(required = false)
+          String sort,
+      @Parameter(name = "direction", description = "ASC (default) or DESC")
+          @RequestParam(defaultValue = "ASC")
+          Sort.Direction direction,
+      @Parameter(name = "cursor", description = "nextCursor of the previous page; omit for first")
+          @RequestParam(required = false)
+          String cursor,
+      @Parameter(name = "size", description = "number of restaurants per page")
+          @RequestParam(defaultValue = "${app.api.page.defaultSize:50}")
+          int size) {
+    return keysetPage(PAGER, restaurantRepository, sort, direction, cursor, size);
+  }
+
+  /**
+   * Export all restaurants as a JSON array, in id order.
+   *
+   * <p>Unlike /all, there is no limit on the number of rows: they are written to the response as
+   * they are read from the database.
+   *
+   * @param response the response to write the restaurants to
+   * @throws IOException if the response cannot be written
+   */
+  @Operation(summary = "Export all restaurants")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/export")
+  public void exportRestaurants(HttpServletResponse response) throws IOException {
+    jsonExportService.writeJsonArray(restaurantRepository::streamAllByOrderByIdAsc, response);
   }
 
   /**
    * This method returns a single restaurant.
    *
    * @param id id of the restaurant to get
+   * @param request the request, whose If-None-Match and If-Modified-Since headers are checked
    * @return a single restaurant
    */
   @Operation(summary = "Get a single restaurant")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("")
-  public Restaurant getById(@Parameter(name = "id") @RequestParam Long id) {
+  public Restaurant getById(
+      @Parameter(name = "id") @RequestParam Long id, ServletWebRequest request) {
     Restaurant restaurant =
         restaurantRepository
             .findById(id)
             .orElseThrow(() -> new EntityNotFoundException(Restaurant.class, id));
-
-    return restaurant;
+    return notModified(request, PAGER, restaurant) ? null : restaurant;
   }
 
   /**
@@ -79,6 +149,22 @@ public class RestaurantsController extends ApiController {
     return savedrestaurant;
   }
 
+  /**
+   * This method creates many restaurants at once, in a single transaction, so that loading a large
+   * number of them does not take one request and one insert statement per row. Accessible only to
+   * users with the role "ROLE_ADMIN".
+   *
+   * @param restaurants the restaurants to create; any ids they have are ignored
+   * @return the saved restaurants (with their id fields set by the database)
+   */
+  @Operation(summary = "Create many restaurants at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PostMapping("/post/batch")
+  public Iterable<Restaurant> postRestaurantBatch(@RequestBody List<Restaurant> restaurants) {
+    restaurants.forEach(restaurant -> restaurant.setId(0));
+    return saveBatch(restaurantRepository, restaurants);
+  }
+
   /**
    * Deletes a restaurant. Accessible only to users with the role "ROLE_ADMIN".
    *
@@ -98,6 +184,20 @@ public class RestaurantsController extends ApiController {
     return genericMessage("Restaurant with id %s deleted".formatted(id));
   }
 
+  /**
+   * Delete many restaurants at once, with a single DELETE statement. Accessible only to users with
+   * the role "ROLE_ADMIN".
+   *
+   * @param ids ids of the restaurants to delete; ids that match nothing are skipped
+   * @return a message saying how many restaurants were deleted
+   */
+  @Operation(summary = "Delete many restaurants at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @DeleteMapping("/bulk")
+  public Object bulkDeleteRestaurants(@RequestBody List<Long> ids) {
+    return deleteByIds(Restaurant.class, ids, restaurantRepository::deleteByIdIn);
+  }
+
   /**
    * Update a single restaurant. Accessible only to users with the role "ROLE_ADMIN".
    *
@@ -123,4 +223,22 @@ public class RestaurantsController extends ApiController {
 
     return restaurant;
   }
+
+  /**
+   * Update some fields of a restaurant, leaving the others as they are. Only the fields given are
+   * written, in a single UPDATE statement, and nothing is written if they already have the values
+   * given.
+   *
+   * @param id id of the restaurant to update
+   * @param changes the new values of the fields to change, by field name
+   * @return a message saying whether the restaurant was changed
+   */
+  @Operation(summary = "Update some fields of a restaurant")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PatchMapping("")
+  public Object patchRestaurant(
+      @Parameter(name = "id") @RequestParam Long id, @RequestBody Map<String, Object> changes) {
+    boolean updated = partialUpdateService.update(Restaurant.class, id, changes);
+    return patchMessage(Restaurant.class, id, updated);
+  }
 }
@@ -3,24 +3,36 @@ package edu.ucsb.cs156.example.controllers;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import edu.ucsb.cs156.example.entities.UCSBDate;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.repositories.KeysetPager;
 import edu.ucsb.cs156.example.repositories.UCSBDateRepository;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 /** This is a REST controller for UCSBDates */
 @Tag(name = "UCSBDates")
@@ -31,35 +43,94 @@ public class UCSBDatesController extends ApiController {
 
   @Autowired UCSBDateRepository ucsbDateRepository;
 
+  @Autowired JsonExportService jsonExportService;
+
+  @Autowired PartialUpdateService partialUpdateService;
+
+  private static final KeysetPager<UCSBDate> PAGER =
+      KeysetPager.<UCSBDate>byId("id", UCSBDate::getId, Long::valueOf)
+          .sortKey("quarterYYYYQ", UCSBDate::getQuarterYYYYQ, Function.identity())
+          .sortKey("name", UCSBDate::getName, Function.identity())
+          .sortKey("localDateTime", UCSBDate::getLocalDateTime, LocalDateTime::parse);
+
   /**
    * List all UCSB dates
    *
+   * <p>At most app.api.all.maxSize rows are returned; use /page to list the rest.
+   *
+   * @param request the request, whose If-None-Match header is checked
+   * @param response the response, on which the X-Next-Cursor header is set if not all rows fit
    * @return an iterable of UCSBDate
    */
   @Operation(summary = "List all ucsb dates")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("/all")
-  public Iterable<UCSBDate> allUCSBDates() {
-    Iterable<UCSBDate> dates = ucsbDateRepository.findAll();
-    return dates;
+  public Iterable<UCSBDate> allUCSBDates(ServletWebRequest request, HttpServletResponse response) {
+    List<UCSBDate> dates = allRows(PAGER, ucsbDateRepository, response);
+    return notModified(request, PAGER, dates) ? null : dates;
+  }
+
+  /**
+   * List ucsb dates one page at a time, sorted by id, quarterYYYYQ, name or localDateTime.
+   *
+   * @param sort the attribute to sort by; id if omitted
+   * @param direction whether to sort in ascending (ASC) or descending (DESC) order
+   * @param cursor nextCursor of the previous page; omitted for the first page
+   * @param size the number of ucsb dates per page
+   * @return a page of ucsb dates
+   */
+  @Operation(summary = "List ucsb dates, one page at a time")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/page")
+  public KeysetPage<UCSBDate> pageOfUCSBDates(
+      @Parameter(name = "sort", description = "id (default), quarterYYYYQ, name or localDateTime")
+          @RequestParam(required = false)
+          String sort,
+      @Parameter(name = "direction", description = "ASC (default) or DESC")
+          @RequestParam(defaultValue = "ASC")
+          Sort.Direction direction,
+      @Parameter(name = "cursor", description = "nextCursor of the previous page; omit for first")
+          @RequestParam(required = false)
+          String cursor,
+      @Parameter(name = "size", description = "number of ucsb dates per page")
+          @RequestParam(defaultValue = "${app.api.page.defaultSize:50}")
+          int size) {
+    return keysetPage(PAGER, ucsbDateRepository, sort, direction, cursor, size);
+  }
+
+  /**
+   * Export all ucsb dates as a JSON array, in id order.
+   *
+   * <p>Unlike /all, there is no limit on the number of rows: they are written to the response as
+   * they are read from the database.
+   *
+   * @param response the response to write the ucsb dates to
+   * @throws IOException if the response cannot be written
+   */
+  @Operation(summary = "Export all ucsb dates")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/export")
+  public void exportUCSBDates(HttpServletResponse response) throws IOException {
+    jsonExportService.writeJsonArray(ucsbDateRepository::streamAllByOrderByIdAsc, response);
   }
 
   /**
    * Get a single date by id
    *
    * @param id the id of the date
+   * @param request the request, whose If-None-Match and If-Modified-Since headers are checked
    * @return a UCSBDate
    */
   @Operation(summary = "Get a single date")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("")
-  public UCSBDate getById(@Parameter(name = "id") @RequestParam Long id) {
+  public UCSBDate getById(
+      @Parameter(name = "id") @RequestParam Long id, ServletWebRequest request) {
     UCSBDate ucsbDate =
         ucsbDateRepository
             .findById(id)
             .orElseThrow(() -> new EntityNotFoundException(UCSBDate.class, id));
-
-    return ucsbDate;
+    return notModified(request, PAGER, ucsbDate) ? null : ucsbDate;
   }
 
   /**
@@ -100,6 +171,22 @@ public class UCSBDatesController extends ApiController {
     return savedUcsbDate;
   }
 
+  /**
+   * This method creates many dates at once, in a single transaction, so that loading a large number
+   * of them does not take one request and one insert statement per row. Accessible only to users
+   * with the role "ROLE_ADMIN".
+   *
+   * @param ucsbDates the dates to create; any ids they have are ignored
+   * @return the saved dates (with their id fields set by the database)
+   */
+  @Operation(summary = "Create many dates at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PostMapping("/post/batch")
+  public Iterable<UCSBDate> postUCSBDateBatch(@RequestBody List<UCSBDate> ucsbDates) {
+    ucsbDates.forEach(ucsbDate -> ucsbDate.setId(0));
+    return saveBatch(ucsbDateRepository, ucsbDates);
+  }
+
   /**
    * Delete a UCSBDate
    *
@@ -119,6 +206,20 @@ public class UCSBDatesController extends ApiController {
     return genericMessage("UCSBDate with id %s deleted".formatted(id));
   }
 
+  /**
+   * Delete many dates at once, with a single DELETE statement. Accessible only to users with the
+   * role "ROLE_ADMIN".
+   *
+   * @param ids ids of the dates to delete; ids that match nothing are skipped
+   * @return a message saying how many dates were deleted
+   */
+  @Operation(summary = "Delete many dates at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @DeleteMapping("/bulk")
+  public Object bulkDeleteUCSBDates(@RequestBody List<Long> ids) {
+    return deleteByIds(UCSBDate.class, ids, ucsbDateRepository::deleteByIdIn);
+  }
+
   /**
    * Update a single date
    *
@@ -145,4 +246,22 @@ public class UCSBDatesController extends ApiController {
 
     return ucsbDate;
   }
+
+  /**
+   * Update some fields of a date, leaving the others as they are. Only the fields given are
+   * written, in a single UPDATE statement, and nothing is written if they already have the values
+   * given.
+   *
+   * @param id id of the date to update
+   * @param changes the new values of the fields to change, by field name
+   * @return a message saying whether the date was changed
+   */
+  @Operation(summary = "Update some fields of a date")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PatchMapping("")
+  public Object patchUCSBDate(
+      @Parameter(name = "id") @RequestParam Long id, @RequestBody Map<String, Object> changes) {
+    boolean updated = partialUpdateService.update(UCSBDate.class, id, changes);
+    return patchMessage(UCSBDate.class, id, updated);
+  }
 }
@@ -2,22 +2,34 @@ package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.repositories.KeysetPager;
 import edu.ucsb.cs156.example.repositories.UCSBDiningCommonsRepository;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 /** This is a REST controller for UCSBDiningCommons */
 @Tag(name = "UCSBDiningCommons")
@@ -28,35 +40,94 @@ public class UCSBDiningCommonsController extends ApiController {
 
   @Autowired UCSBDiningCommonsRepository ucsbDiningCommonsRepository;
 
+  @Autowired JsonExportService jsonExportService;
+
+  @Autowired PartialUpdateService partialUpdateService;
+
+  private static final KeysetPager<UCSBDiningCommons> PAGER =
+      KeysetPager.<UCSBDiningCommons>byId("code", UCSBDiningCommons::getCode, Function.identity())
+          .sortKey("name", UCSBDiningCommons::getName, Function.identity());
+
   /**
    * THis method returns a list of all ucsbdiningcommons.
    *
+   * <p>At most app.api.all.maxSize rows are returned; use /page to list the rest.
+   *
+   * @param request the request, whose If-None-Match header is checked
+   * @param response the response, on which the X-Next-Cursor header is set if not all rows fit
    * @return a list of all ucsbdiningcommons
    */
   @Operation(summary = "List all ucsb dining commons")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("/all")
-  public Iterable<UCSBDiningCommons> allCommonss() {
-    Iterable<UCSBDiningCommons> commons = ucsbDiningCommonsRepository.findAll();
-    return commons;
+  public Iterable<UCSBDiningCommons> allCommonss(
+      ServletWebRequest request, HttpServletResponse response) {
+    List<UCSBDiningCommons> commons = allRows(PAGER, ucsbDiningCommonsRepository, response);
+    return notModified(request, PAGER, commons) ? null : commons;
+  }
+
+  /**
+   * List ucsb dining commons one page at a time, sorted by code or name.
+   *
+   * @param sort the attribute to sort by; code if omitted
+   * @param direction whether to sort in ascending (ASC) or descending (DESC) order
+   * @param cursor nextCursor of the previous page; omitted for the first page
+   * @param size the number of ucsb dining commons per page
+   * @return a page of ucsb dining commons
+   */
+  @Operation(summary = "List ucsb dining commons, one page at a time")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/page")
+  public KeysetPage<UCSBDiningCommons> pageOfCommons(
+      @Parameter(name = "sort", description = "code (default) or name")
+          @RequestParam(required = false)
+          String sort,
+      @Parameter(name = "direction", description = "ASC (default) or DESC")
+          @RequestParam(defaultValue = "ASC")
+          Sort.Direction direction,
+      @Parameter(name = "cursor", description = "nextCursor of the previous page; omit for first")
+          @RequestParam(required = false)
+          String cursor,
+      @Parameter(name = "size", description = "number of ucsb dining commons per page")
+          @RequestParam(defaultValue = "${app.api.page.defaultSize:50}")
+          int size) {
+    return keysetPage(PAGER, ucsbDiningCommonsRepository, sort, direction, cursor, size);
+  }
+
+  /**
+   * Export all ucsb dining commons as a JSON array, in code order.
+   *
+   * <p>Unlike /all, there is no limit on the number of rows: they are written to the response as
+   * they are read from the database.
+   *
+   * @param response the response to write the ucsb dining commons to
+   * @throws IOException if the response cannot be written
+   */
+  @Operation(summary = "Export all ucsb dining commons")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/export")
+  public void exportCommons(HttpServletResponse response) throws IOException {
+    jsonExportService.writeJsonArray(
+        ucsbDiningCommonsRepository::streamAllByOrderByCodeAsc, response);
   }
 
   /**
    * This method returns a single diningcommons.
    *
    * @param code code of the diningcommons
+   * @param request the request, whose If-None-Match and If-Modified-Since headers are checked
    * @return a single diningcommons
    */
   @Operation(summary = "Get a single commons")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("")
-  public UCSBDiningCommons getById(@Parameter(name = "code") @RequestParam String code) {
+  public UCSBDiningCommons getById(
+      @Parameter(name = "code") @RequestParam String code, ServletWebRequest request) {
     UCSBDiningCommons commons =
         ucsbDiningCommonsRepository
             .findById(code)
             .orElseThrow(() -> new EntityNotFoundException(UCSBDiningCommons.class, code));
-
-    return commons;
+    return notModified(request, PAGER, commons) ? null : commons;
   }
 
   /**
@@ -116,6 +187,20 @@ public class UCSBDiningCommonsController extends ApiController {
     return genericMessage("UCSBDiningCommons with id %s deleted".formatted(code));
   }
 
+  /**
+   * Delete many dining commons at once, with a single DELETE statement. Accessible only to users
+   * with the role "ROLE_ADMIN".
+   *
+   * @param codes codes of the dining commons to delete; codes that match nothing are skipped
+   * @return a message saying how many dining commons were deleted
+   */
+  @Operation(summary = "Delete many dining commons at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @DeleteMapping("/bulk")
+  public Object bulkDeleteCommons(@RequestBody List<String> codes) {
+    return deleteByIds(UCSBDiningCommons.class, codes, ucsbDiningCommonsRepository::deleteByCodeIn);
+  }
+
   /**
    * Update a single diningcommons. Accessible only to users with the role "ROLE_ADMIN".
    *
@@ -146,4 +231,23 @@ public class UCSBDiningCommonsController extends ApiController {
 
     return commons;
   }
+
+  /**
+   * Update some fields of a commons, leaving the others as they are. Only the fields given are
+   * written, in a single UPDATE statement, and nothing is written if they already have the values
+   * given.
+   *
+   * @param code code of the commons to update
+   * @param changes the new values of the fields to change, by field name
+   * @return a message saying whether the commons was changed
+   */
+  @Operation(summary = "Update some fields of a commons")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PatchMapping("")
+  public Object patchCommons(
+      @Parameter(name = "code") @RequestParam String code,
+      @RequestBody Map<String, Object> changes) {
+    boolean updated = partialUpdateService.update(UCSBDiningCommons.class, code, changes);
+    return patchMessage(UCSBDiningCommons.class, code, updated);
+  }
 }
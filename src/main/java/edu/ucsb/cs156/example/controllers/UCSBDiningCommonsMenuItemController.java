@@ -3,22 +3,34 @@ package edu.ucsb.cs156.example.controllers;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import edu.ucsb.cs156.example.entities.UCSBDiningCommonsMenuItem;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.repositories.KeysetPager;
 import edu.ucsb.cs156.example.repositories.UCSBDiningCommonsMenuItemRepository;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 /** This is a REST controller for UCSBDiningCommonsMenuItem */
 @Tag(name = "UCSBDiningCommonsMenuItem")
@@ -29,18 +41,83 @@ public class UCSBDiningCommonsMenuItemController extends ApiController {
 
   @Autowired UCSBDiningCommonsMenuItemRepository ucsbDiningCommonsMenuItemRepository;
 
+  @Autowired JsonExportService jsonExportService;
+
+  @Autowired PartialUpdateService partialUpdateService;
+
+  private static final KeysetPager<UCSBDiningCommonsMenuItem> PAGER =
+      KeysetPager.<UCSBDiningCommonsMenuItem>byId(
+              "id", UCSBDiningCommonsMenuItem::getId, Long::valueOf)
+          .sortKey(
+              "diningcommonscode",
+              UCSBDiningCommonsMenuItem::getDiningcommonscode,
+              Function.identity())
+          .sortKey("name", UCSBDiningCommonsMenuItem::getName, Function.identity())
+          .sortKey("station", UCSBDiningCommonsMenuItem::getStation, Function.identity());
+
   /**
    * List all UCSB diningcommonsmenuitems
    *
+   * <p>At most app.api.all.maxSize rows are returned; use /page to list the rest.
+   *
+   * @param request the request, whose If-None-Match header is checked
+   * @param response the response, on which the X-Next-Cursor header is set if not all rows fit
    * @return an iterable of UCSBDiningCommonMenuItem
    */
   @Operation(summary = "List all ucsb dining commons menu items")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("/all")
-  public Iterable<UCSBDiningCommonsMenuItem> allUCSBDiningCommonsMenuItems() {
-    Iterable<UCSBDiningCommonsMenuItem> diningCommonsMenuItems =
-        ucsbDiningCommonsMenuItemRepository.findAll();
-    return diningCommonsMenuItems;
+  public Iterable<UCSBDiningCommonsMenuItem> allUCSBDiningCommonsMenuItems(
+      ServletWebRequest request, HttpServletResponse response) {
+    List<UCSBDiningCommonsMenuItem> diningCommonsMenuItems =
+        allRows(PAGER, ucsbDiningCommonsMenuItemRepository, response);
+    return notModified(request, PAGER, diningCommonsMenuItems) ? null : diningCommonsMenuItems;
+  }
+
+  /**
+   * List ucsb dining commons menu items one page at a time, sorted by id, diningcommonscode, name
+   * or station.
+   *
+   * @param sort the attribute to sort by; id if omitted
+   * @param direction whether to sort in ascending (ASC) or descending (DESC) order
+   * @param cursor nextCursor of the previous page; omitted for the first page
+   * @param size the number of ucsb dining commons menu items per page
+   * @return a page of ucsb dining commons menu items
+   */
+  @Operation(summary = "List ucsb dining commons menu items, one page at a time")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/page")
+  public KeysetPage<UCSBDiningCommonsMenuItem> pageOfUCSBDiningCommonsMenuItems(
+      @Parameter(name = "sort", description = "id (default), diningcommonscode, name or station")
+          @RequestParam(required = false)
+          String sort,
+      @Parameter(name = "direction", description = "ASC (default) or DESC")
+          @RequestParam(defaultValue = "ASC")
+          Sort.Direction direction,
+      @Parameter(name = "cursor", description = "nextCursor of the previous page; omit for first")
+          @RequestParam(required = false)
+          String cursor,
+      @Parameter(name = "size", description = "number of ucsb dining commons menu items per page")
+          @RequestParam(defaultValue = "${app.api.page.defaultSize:50}")
+          int size) {
+    return keysetPage(PAGER, ucsbDiningCommonsMenuItemRepository, sort, direction, cursor, size);
+  }
+
+  /**
+   * Export all ucsb dining commons menu items as a JSON array, in id order.
+   *
+   * <p>Unlike /all, there is no limit on the number of rows: they are written to the response as
+   * they are read from the database.
+   *
+   * @param response the response to write the ucsb dining commons menu items to
+   * @throws IOException if the response cannot be written
+   */
+  @Operation(summary = "Export all ucsb dining commons menu items")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/export")
+  public void exportUCSBDiningCommonsMenuItems(HttpServletResponse response) throws IOException {
+    jsonExportService.writeJsonArray(
+        ucsbDiningCommonsMenuItemRepository::streamAllByOrderByIdAsc, response);
   }
 
   /**
@@ -71,22 +148,42 @@ public class UCSBDiningCommonsMenuItemController extends ApiController {
     return savedUcsbDiningCommonsMenuItem;
   }
 
+  /**
+   * This method creates many dining commons menu items at once, in a single transaction, so that
+   * loading a large number of them does not take one request and one insert statement per row.
+   * Accessible only to users with the role "ROLE_ADMIN".
+   *
+   * @param menuItems the dining commons menu items to create; any ids they have are ignored
+   * @return the saved dining commons menu items (with their id fields set by the database)
+   */
+  @Operation(summary = "Create many dining commons menu items at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PostMapping("/post/batch")
+  public Iterable<UCSBDiningCommonsMenuItem> postUCSBDiningCommonsMenuItemBatch(
+      @RequestBody List<UCSBDiningCommonsMenuItem> menuItems) {
+    menuItems.forEach(menuItem -> menuItem.setId(0));
+    return saveBatch(ucsbDiningCommonsMenuItemRepository, menuItems);
+  }
+
   /**
    * Get a single diningcommonsmenuitem by id
    *
    * @param id the id of the dining commons menu item
+   * @param request the request, whose If-None-Match and If-Modified-Since headers are checked
    * @return a UCSBDiningCommonsMenuItem
    */
   @Operation(summary = "Get a single dining commons menu item")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("")
-  public UCSBDiningCommonsMenuItem getById(@Parameter(name = "id") @RequestParam Long id) {
+  public UCSBDiningCommonsMenuItem getById(
+      @Parameter(name = "id") @RequestParam Long id, ServletWebRequest request) {
     UCSBDiningCommonsMenuItem ucsbDiningCommonsMenuItem =
         ucsbDiningCommonsMenuItemRepository
             .findById(id)
             .orElseThrow(() -> new EntityNotFoundException(UCSBDiningCommonsMenuItem.class, id));
-
-    return ucsbDiningCommonsMenuItem;
+    return notModified(request, PAGER, ucsbDiningCommonsMenuItem)
+        ? null
+        : ucsbDiningCommonsMenuItem;
   }
 
   /**
@@ -117,6 +214,24 @@ public class UCSBDiningCommonsMenuItemController extends ApiController {
     return ucsbDiningCommonsMenuItem;
   }
 
+  /**
+   * Update some fields of a dining commons menu item, leaving the others as they are. Only the
+   * fields given are written, in a single UPDATE statement, and nothing is written if they already
+   * have the values given.
+   *
+   * @param id id of the dining commons menu item to update
+   * @param changes the new values of the fields to change, by field name
+   * @return a message saying whether the dining commons menu item was changed
+   */
+  @Operation(summary = "Update some fields of a dining commons menu item")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PatchMapping("")
+  public Object patchUCSBDiningCommonsMenuItem(
+      @Parameter(name = "id") @RequestParam Long id, @RequestBody Map<String, Object> changes) {
+    boolean updated = partialUpdateService.update(UCSBDiningCommonsMenuItem.class, id, changes);
+    return patchMessage(UCSBDiningCommonsMenuItem.class, id, updated);
+  }
+
   /**
    * Delete a UCSBDiningCommonsMenuItem
    *
@@ -135,4 +250,19 @@ public class UCSBDiningCommonsMenuItemController extends ApiController {
     ucsbDiningCommonsMenuItemRepository.delete(ucsbDiningCommonsMenuItem);
     return genericMessage("UCSBDiningCommonsMenuItem with id %s deleted".formatted(id));
   }
+
+  /**
+   * Delete many dining commons menu items at once, with a single DELETE statement. Accessible only
+   * to users with the role "ROLE_ADMIN".
+   *
+   * @param ids ids of the dining commons menu items to delete; ids that match nothing are skipped
+   * @return a message saying how many dining commons menu items were deleted
+   */
+  @Operation(summary = "Delete many dining commons menu items at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @DeleteMapping("/bulk")
+  public Object bulkDeleteUCSBDiningCommonsMenuItems(@RequestBody List<Long> ids) {
+    return deleteByIds(
+        UCSBDiningCommonsMenuItem.class, ids, ucsbDiningCommonsMenuItemRepository::deleteByIdIn);
+  }
 }
@@ -2,22 +2,34 @@ package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.UCSBOrganization;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.repositories.KeysetPager;
 import edu.ucsb.cs156.example.repositories.UCSBOrganizationRepository;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 @Tag(name = "UCSBOrganization")
 @RequestMapping("/api/ucsborganization")
@@ -27,35 +39,96 @@ public class UCSBOrganizationController extends ApiController {
 
   @Autowired UCSBOrganizationRepository ucsbOrganizationRepository;
 
+  @Autowired JsonExportService jsonExportService;
+
+  @Autowired PartialUpdateService partialUpdateService;
+
+  private static final KeysetPager<UCSBOrganization> PAGER =
+      KeysetPager.<UCSBOrganization>byId(
+              "orgcode", UCSBOrganization::getOrgcode, Function.identity())
+          .sortKey(
+              "orgTranslationShort", UCSBOrganization::getOrgTranslationShort, Function.identity());
+
   /**
    * This method returns a list of all UCSB Organizations
    *
+   * <p>At most app.api.all.maxSize rows are returned; use /page to list the rest.
+   *
+   * @param request the request, whose If-None-Match header is checked
+   * @param response the response, on which the X-Next-Cursor header is set if not all rows fit
    * @return a list of all ucsborganizations
    */
   @Operation(summary = "List all ucsb organizations")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("/all")
-  public Iterable<UCSBOrganization> allOrganizations() {
-    Iterable<UCSBOrganization> organizations = ucsbOrganizationRepository.findAll();
-    return organizations;
+  public Iterable<UCSBOrganization> allOrganizations(
+      ServletWebRequest request, HttpServletResponse response) {
+    List<UCSBOrganization> organizations = allRows(PAGER, ucsbOrganizationRepository, response);
+    return notModified(request, PAGER, organizations) ? null : organizations;
+  }
+
+  /**
+   * List ucsb organizations one page at a time, sorted by orgcode or orgTranslationShort.
+   *
+   * @param sort the attribute to sort by; orgcode if omitted
+   * @param direction whether to sort in ascending (ASC) or descending (DESC) order
+   * @param cursor nextCursor of the previous page; omitted for the first page
+   * @param size the number of ucsb organizations per page
+   * @return a page of ucsb organizations
+   */
+  @Operation(summary = "List ucsb organizations, one page at a time")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/page")
+  public KeysetPage<UCSBOrganization> pageOfOrganizations(
+      @Parameter(name = "sort", description = "orgcode (default) or orgTranslationShort")
+          @RequestParam(required = false)
+          String sort,
+      @Parameter(name = "direction", description = "ASC (default) or DESC")
+          @RequestParam(defaultValue = "ASC")
+          Sort.Direction direction,
+      @Parameter(name = "cursor", description = "nextCursor of the previous page; omit for first")
+          @RequestParam(required = false)
+          String cursor,
+      @Parameter(name = "size", description = "number of ucsb organizations per page")
+          @RequestParam(defaultValue = "${app.api.page.defaultSize:50}")
+          int size) {
+    return keysetPage(PAGER, ucsbOrganizationRepository, sort, direction, cursor, size);
+  }
+
+  /**
+   * Export all ucsb organizations as a JSON array, in orgcode order.
+   *
+   * <p>Unlike /all, there is no limit on the number of rows: they are written to the response as
+   * they are read from the database.
+   *
+   * @param response the response to write the ucsb organizations to
+   * @throws IOException if the response cannot be written
+   */
+  @Operation(summary = "Export all ucsb organizations")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/export")
+  public void exportOrganizations(HttpServletResponse response) throws IOException {
+    jsonExportService.writeJsonArray(
+        ucsbOrganizationRepository::streamAllByOrderByOrgcodeAsc, response);
   }
 
   /**
    * This method returns a single organization.
    *
    * @param orgcode code of the organization
+   * @param request the request, whose If-None-Match and If-Modified-Since headers are checked
    * @return a single organization
    */
   @Operation(summary = "Get a single organization")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("")
-  public UCSBOrganization getById(@Parameter(name = "orgcode") @RequestParam String orgcode) {
+  public UCSBOrganization getById(
+      @Parameter(name = "orgcode") @RequestParam String orgcode, ServletWebRequest request) {
     UCSBOrganization organization =
         ucsbOrganizationRepository
             .findById(orgcode)
             .orElseThrow(() -> new EntityNotFoundException(UCSBOrganization.class, orgcode));
-
-    return organization;
+    return notModified(request, PAGER, organization) ? null : organization;
   }
 
   /**
@@ -106,6 +179,22 @@ public class UCSBOrganizationController extends ApiController {
     return genericMessage("UCSBOrganization with id %s deleted".formatted(orgcode));
   }
 
+  /**
+   * Delete many organizations at once, with a single DELETE statement. Accessible only to users
+   * with the role "ROLE_ADMIN".
+   *
+   * @param orgcodes orgcodes of the organizations to delete; orgcodes that match nothing are
+   *     skipped
+   * @return a message saying how many organizations were deleted
+   */
+  @Operation(summary = "Delete many organizations at once")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @DeleteMapping("/bulk")
+  public Object bulkDeleteOrganizations(@RequestBody List<String> orgcodes) {
+    return deleteByIds(
+        UCSBOrganization.class, orgcodes, ucsbOrganizationRepository::deleteByOrgcodeIn);
+  }
+
   /**
    * Update a single organization. Accessible only to users with the role "ROLE_ADMIN".
    *
@@ -132,4 +221,23 @@ public class UCSBOrganizationController extends ApiController {
 
     return organization;
   }
+
+  /**
+   * Update some fields of an organization, leaving the others as they are. Only the fields given
+   * are written, in a single UPDATE statement, and nothing is written if they already have the
+   * values given.
+   *
+   * @param orgcode orgcode of the organization to update
+   * @param changes the new values of the fields to change, by field name
+   * @return a message saying whether the organization was changed
+   */
+  @Operation(summary = "Update some fields of an organization")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PatchMapping("")
+  public Object patchOrganization(
+      @Parameter(name = "orgcode") @RequestParam String orgcode,
+      @RequestBody Map<String, Object> changes) {
+    boolean updated = partialUpdateService.update(UCSBOrganization.class, orgcode, changes);
+    return patchMessage(UCSBOrganization.class, orgcode, updated);
+  }
 }
@@ -4,6 +4,8 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EntityListeners;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
@@ -41,10 +43,71 @@ public class Job {
 
   private String status;
 
+  @Enumerated(EnumType.STRING)
+  @Builder.Default
+  private JobPriority priority = JobPriority.INTERACTIVE;
+
   // 1048576 is 2^20, which is the max size of a mediumtext in MySQL
   @Column(
       columnDefinition = "TEXT",
       length = 1048576) // needed for long strings, i.e. log entries longer than 255
   // characters
   private String log;
+
+  /**
+   * The type of work the job does: for jobs in the durable queue, the {@code JobFactory} type that
+   * runs it; for other jobs, the type given to {@code JobService.runAsJob}.
+   */
+  private String jobType;
+
+  /**
+   * For jobs in the durable queue, the parameters passed to the {@code JobFactory} as JSON; null
+   * for other jobs, which is how the queue tells them apart.
+   */
+  @Column(columnDefinition = "TEXT")
+  private String parameters;
+
+  /** How many times a worker has claimed this job from the durable queue. */
+  private int attempts;
+
+  /** The instance whose worker holds this job, while it is queued in memory or running. */
+  @JsonIgnore private String leaseOwner;
+
+  /** The lease is renewed by heartbeats; once it expires, the job is recovered. */
+  @JsonIgnore private ZonedDateTime leaseExpiresAt;
+
+  /**
+   * Identifies the work a job does (its type and parameters) while it is queued or running, so that
+   * launching the same work again returns this job instead. Null once the job has finished, and for
+   * jobs launched without coalescing; the column has a unique index.
+   */
+  @JsonIgnore private String coalesceKey;
+
+  /**
+   * Total size in UTF-8 bytes of the messages of this job in job_log_lines, saved when the job
+   * finishes, so that large logs can be found for archiving without adding up their lines. Zero
+   * while the job runs, once its log has been archived, and for jobs failed by lease recovery.
+   */
+  @JsonIgnore private long logSize;
+
+  private ZonedDateTime startedAt;
+  private ZonedDateTime finishedAt;
+
+  /** Time from when the job was created until a worker started it. */
+  private Long queueWaitMs;
+
+  /** Wall-clock time the job ran for. */
+  private Long runTimeMs;
+
+  /** CPU time used by the job's worker thread and its subtasks; null if it cannot be measured. */
+  private Long cpuTimeMs;
+
+  /** Bytes allocated on the heap by the job's worker thread and its subtasks; null if unknown. */
+  private Long allocatedBytes;
+
+  /** For steps of a {@link Workflow}, the id of the workflow; otherwise null. */
+  private Long workflowId;
+
+  /** For steps of a workflow, the name of the step, which is unique within the workflow. */
+  private String stepName;
 }
@@ -0,0 +1,34 @@
+package edu.ucsb.cs156.example.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import java.time.ZonedDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a JPA entity that holds the whole log of a finished job, compressed with gzip.
+ *
+ * <p>Once a large log has been archived, its rows in job_log_lines are deleted. The archive keeps
+ * the log as it is served by {@code /api/jobs/logs/{id}}: the messages of the lines, in order, one
+ * per line.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "job_log_archives")
+public class JobLogArchive {
+  @Id private long jobId;
+
+  private long lineCount;
+
+  /** Size of the log before it was compressed, in bytes of UTF-8. */
+  private long logSize;
+
+  private ZonedDateTime archivedAt;
+
+  private byte[] content;
+}
@@ -0,0 +1,42 @@
+package edu.ucsb.cs156.example.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import java.time.ZonedDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a JPA entity that represents a single line of a job log.
+ *
+ * <p>Log lines are only ever inserted, never updated, so the cost of logging does not grow with the
+ * length of the log. A sequence (rather than an identity column) is used for the id so that
+ * Hibernate can send a batch of lines as a single JDBC batch.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "job_log_lines")
+public class JobLogLine {
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "job_log_lines_seq")
+  @SequenceGenerator(
+      name = "job_log_lines_seq",
+      sequenceName = "job_log_lines_seq",
+      allocationSize = 50)
+  private long id;
+
+  private long jobId;
+  private long lineNumber;
+  private ZonedDateTime loggedAt;
+
+  @Column(columnDefinition = "TEXT")
+  private String message;
+}
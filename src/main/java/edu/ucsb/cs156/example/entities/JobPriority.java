@@ -0,0 +1,13 @@
+package edu.ucsb.cs156.example.entities;
+
+/**
+ * The priority class of a job, which decides which pool of workers runs it.
+ *
+ * <p>Interactive jobs (the default) are short jobs that someone is waiting for. Bulk jobs, such as
+ * large imports, run on a separate, smaller pool, so they never hold up interactive jobs, and
+ * interactive jobs never starve them.
+ */
+public enum JobPriority {
+  INTERACTIVE,
+  BULK
+}
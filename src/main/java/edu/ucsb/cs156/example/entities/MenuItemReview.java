@@ -1,14 +1,19 @@
 package edu.ucsb.cs156.example.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Version;
 import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
 
 /**
  * This is a JPA entity that represents a MenuItemReview, i.e. an entry that comes from the UCSB API
@@ -19,9 +24,13 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @Builder
 @Entity(name = "menuitemreviews")
-public class MenuItemReview {
+public class MenuItemReview implements Versioned {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "menuitemreviews_seq")
+  @SequenceGenerator(
+      name = "menuitemreviews_seq",
+      sequenceName = "menuitemreviews_seq",
+      allocationSize = 50)
   private long id;
 
   private long itemId;
@@ -29,4 +38,8 @@ public class MenuItemReview {
   private int stars;
   private LocalDateTime dateReviewed;
   private String comments;
+
+  @JsonIgnore @Version private long version;
+
+  @JsonIgnore @UpdateTimestamp private ZonedDateTime lastModified;
 }
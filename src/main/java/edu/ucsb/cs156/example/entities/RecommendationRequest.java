@@ -1,14 +1,19 @@
 package edu.ucsb.cs156.example.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Version;
 import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
 
 /**
  * This is a JPA entity that represents a Recommendation Request, i.e. an entry that comes from the
@@ -19,9 +24,13 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @Builder
 @Entity(name = "recommendationrequest")
-public class RecommendationRequest {
+public class RecommendationRequest implements Versioned {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "recommendationrequest_seq")
+  @SequenceGenerator(
+      name = "recommendationrequest_seq",
+      sequenceName = "recommendationrequest_seq",
+      allocationSize = 50)
   private long id;
 
   private String requesteremail;
@@ -30,4 +39,8 @@ public class RecommendationRequest {
   private LocalDateTime daterequested;
   private LocalDateTime dateneeded;
   private boolean done;
+
+  @JsonIgnore @Version private long version;
+
+  @JsonIgnore @UpdateTimestamp private ZonedDateTime lastModified;
 }
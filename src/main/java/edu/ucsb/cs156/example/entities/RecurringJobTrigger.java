@@ -0,0 +1,29 @@
+package edu.ucsb.cs156.example.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import java.time.ZonedDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a JPA entity that holds the schedule state of one recurring job.
+ *
+ * <p>There is one row per recurring job, shared by every instance, so that each fire time of the
+ * job starts exactly one run no matter how many instances are up.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "recurring_job_triggers")
+public class RecurringJobTrigger {
+  @Id private String name;
+
+  private ZonedDateTime nextFireAt;
+
+  /** The id of the job started by the most recent run, or null if it has not run yet. */
+  private Long lastJobId;
+}
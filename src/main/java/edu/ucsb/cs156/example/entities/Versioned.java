@@ -0,0 +1,28 @@
+package edu.ucsb.cs156.example.entities;
+
+import java.time.ZonedDateTime;
+
+/**
+ * A Versioned entity records when it was last changed, so that clients that already have its
+ * current state can be told so instead of being sent it again.
+ *
+ * <p>The version should be a JPA {@code @Version} attribute, which is incremented every time the
+ * entity is updated, and the last modified time a Hibernate {@code @UpdateTimestamp}. Neither is
+ * part of the JSON of the entity: clients see them only through the ETag and Last-Modified headers.
+ */
+public interface Versioned {
+  /**
+   * Get the version of the entity.
+   *
+   * @return the number of times the entity has been updated
+   */
+  long getVersion();
+
+  /**
+   * Get the time the entity was last saved.
+   *
+   * @return the time the entity was last saved, or null if it has not been saved since the column
+   *     was added
+   */
+  ZonedDateTime getLastModified();
+}
@@ -0,0 +1,17 @@
+package edu.ucsb.cs156.example.errors;
+
+/**
+ * This is an error class for a custom RuntimeException in Java that is used to indicate that a
+ * client sent more rows in one batch than a batch may hold.
+ */
+public class BatchTooLargeException extends RuntimeException {
+  /**
+   * Constructor for the exception
+   *
+   * @param size the number of rows the client sent
+   * @param maxSize the number of rows a batch may hold
+   */
+  public BatchTooLargeException(int size, int maxSize) {
+    super("Batch of %d rows is too large; send at most %d rows per batch".formatted(size, maxSize));
+  }
+}
@@ -0,0 +1,18 @@
+package edu.ucsb.cs156.example.errors;
+
+/**
+ * This is an error class for a custom RuntimeException in Java that is used to indicate that a
+ * client asked to change a field that cannot be changed, or to give a field a value it cannot hold.
+ */
+public class InvalidPatchException extends RuntimeException {
+  /**
+   * Constructor for the exception
+   *
+   * @param entityType the class of the entity being patched, e.g. HelpRequest.class
+   * @param field the name of the field the client asked to change
+   * @param reason why the field cannot be changed as asked
+   */
+  public InvalidPatchException(Class<?> entityType, String field, String reason) {
+    super("Cannot patch %s.%s: %s".formatted(entityType.getSimpleName(), field, reason));
+  }
+}
@@ -0,0 +1,16 @@
+package edu.ucsb.cs156.example.errors;
+
+/**
+ * This is an error class for a custom RuntimeException in Java that is used to indicate that a
+ * regular expression passed by a client to search with could not be compiled.
+ */
+public class InvalidSearchPatternException extends RuntimeException {
+  /**
+   * Constructor for the exception
+   *
+   * @param pattern the pattern that could not be compiled
+   */
+  public InvalidSearchPatternException(String pattern) {
+    super("Invalid search pattern: %s".formatted(pattern));
+  }
+}
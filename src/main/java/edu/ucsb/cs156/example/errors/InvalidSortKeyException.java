@@ -0,0 +1,19 @@
+package edu.ucsb.cs156.example.errors;
+
+import java.util.Collection;
+
+/**
+ * This is an error class for a custom RuntimeException in Java that is used to indicate that a
+ * client asked to sort a listing by an attribute it cannot be sorted by.
+ */
+public class InvalidSortKeyException extends RuntimeException {
+  /**
+   * Constructor for the exception
+   *
+   * @param sort the attribute the client asked to sort by
+   * @param sortKeys the attributes the listing can be sorted by
+   */
+  public InvalidSortKeyException(String sort, Collection<String> sortKeys) {
+    super("Invalid sort key: %s; sort by one of %s".formatted(sort, String.join(", ", sortKeys)));
+  }
+}
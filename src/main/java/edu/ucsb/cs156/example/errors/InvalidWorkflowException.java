@@ -0,0 +1,16 @@
+package edu.ucsb.cs156.example.errors;
+
+/**
+ * This is an error class for a custom RuntimeException in Java that is used to indicate that the
+ * steps of a workflow passed by a client do not form a valid workflow.
+ */
+public class InvalidWorkflowException extends RuntimeException {
+  /**
+   * Constructor for the exception
+   *
+   * @param message what is wrong with the workflow
+   */
+  public InvalidWorkflowException(String message) {
+    super("Invalid workflow: %s".formatted(message));
+  }
+}
@@ -0,0 +1,16 @@
+package edu.ucsb.cs156.example.errors;
+
+/**
+ * This is an error class for a custom RuntimeException in Java that is used to indicate that a job
+ * could not be launched because every job worker is busy and the job queue is full.
+ */
+public class JobQueueFullException extends RuntimeException {
+  /**
+   * Constructor for the exception
+   *
+   * @param jobId the id of the job that was rejected
+   */
+  public JobQueueFullException(long jobId) {
+    super("Job %d rejected: job queue is full, try again later".formatted(jobId));
+  }
+}
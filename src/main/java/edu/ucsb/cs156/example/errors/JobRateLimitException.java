@@ -0,0 +1,24 @@
+package edu.ucsb.cs156.example.errors;
+
+import lombok.Getter;
+
+/**
+ * This is an error class for a custom RuntimeException in Java that is used to indicate that a job
+ * could not be launched because too many jobs of its type have been launched recently.
+ */
+@Getter
+public class JobRateLimitException extends RuntimeException {
+  private final long retryAfterSeconds;
+
+  /**
+   * Constructor for the exception
+   *
+   * @param jobType the type of job that was not launched
+   * @param retryAfterSeconds how long to wait before launching it again
+   */
+  public JobRateLimitException(String jobType, long retryAfterSeconds) {
+    super(
+        "Too many %s jobs launched, try again in %d seconds".formatted(jobType, retryAfterSeconds));
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+}
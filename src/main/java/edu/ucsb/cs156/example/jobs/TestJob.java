@@ -14,6 +14,7 @@ public class TestJob implements JobContextConsumer {
   public void accept(JobContext ctx) throws Exception {
     ctx.log("Hello World! from test job!");
     Thread.sleep(sleepMs);
+    ctx.checkCancelled();
     if (fail) {
       throw new Exception("Fail!");
     }
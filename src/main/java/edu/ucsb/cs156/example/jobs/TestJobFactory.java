@@ -0,0 +1,26 @@
+package edu.ucsb.cs156.example.jobs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import edu.ucsb.cs156.example.services.jobs.JobContextConsumer;
+import edu.ucsb.cs156.example.services.jobs.JobFactory;
+import org.springframework.stereotype.Component;
+
+/** Builds {@link TestJob}s from the durable job queue. */
+@Component
+public class TestJobFactory implements JobFactory {
+
+  public static final String JOB_TYPE = "TestJob";
+
+  @Override
+  public String getJobType() {
+    return JOB_TYPE;
+  }
+
+  @Override
+  public JobContextConsumer create(JsonNode parameters) {
+    return TestJob.builder()
+        .fail(parameters.path("fail").asBoolean())
+        .sleepMs(parameters.path("sleepMs").asInt())
+        .build();
+  }
+}
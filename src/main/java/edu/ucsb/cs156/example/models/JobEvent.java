@@ -0,0 +1,26 @@
+package edu.ucsb.cs156.example.models;
+
+import edu.ucsb.cs156.example.entities.JobPriority;
+import java.time.ZonedDateTime;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a model class that represents a change in the status of a job. The {@code JobService}
+ * publishes one as an application event each time it saves a job with a new status.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class JobEvent {
+  private long jobId;
+  private String status; // the status the job has just moved to
+  private String jobType; // the type of the job, e.g. TestJob
+  private JobPriority priority;
+  private Long createdById;
+  private ZonedDateTime at;
+}
@@ -0,0 +1,25 @@
+package edu.ucsb.cs156.example.models;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a model class that represents a snapshot of the job executor.
+ *
+ * <p>It shows how much of the executor is in use, so that admins can tell when it is saturated.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class JobExecutorStatus {
+  private int poolSize; // number of worker threads that currently exist
+  private int maxPoolSize;
+  private int activeCount; // number of workers currently running a job
+  private int queuedCount; // number of jobs waiting for a worker
+  private int queueCapacity;
+  private long rejectedCount; // number of jobs rejected since startup
+}
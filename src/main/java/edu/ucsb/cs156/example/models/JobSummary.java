@@ -0,0 +1,32 @@
+package edu.ucsb.cs156.example.models;
+
+import edu.ucsb.cs156.example.entities.JobPriority;
+import java.time.ZonedDateTime;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a model class that represents a job without its log.
+ *
+ * <p>It is used for listing jobs, where loading the log of every job would be wasteful.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class JobSummary {
+  private Long id;
+  private Long createdById;
+  private ZonedDateTime createdAt;
+  private ZonedDateTime updatedAt;
+  private String status;
+  private JobPriority priority;
+  private String jobType;
+  private Long queueWaitMs;
+  private Long runTimeMs;
+  private Long cpuTimeMs;
+  private Long allocatedBytes;
+}
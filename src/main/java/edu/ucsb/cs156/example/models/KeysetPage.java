@@ -0,0 +1,25 @@
+package edu.ucsb.cs156.example.models;
+
+import java.util.List;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a model class that represents one page of a keyset-paginated listing.
+ *
+ * <p>Rather than a page number, the client passes back {@code nextCursor} to get the following
+ * page, so each page is found with an index seek no matter how deep into the listing it is.
+ *
+ * @param <T> the type of the items on the page
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class KeysetPage<T> {
+  private List<T> content;
+  private String nextCursor; // null on the last page
+}
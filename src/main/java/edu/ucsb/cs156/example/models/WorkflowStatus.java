@@ -0,0 +1,27 @@
+package edu.ucsb.cs156.example.models;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a model class that represents the state of a workflow and each of its steps.
+ *
+ * <p>The status of the workflow is "error" if any step failed, "cancelled" if any step was
+ * cancelled, "complete" once every step has completed, and "running" otherwise.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class WorkflowStatus {
+  private long id;
+  private String name;
+  private ZonedDateTime createdAt;
+  private String status;
+  private List<WorkflowStepStatus> steps;
+}
@@ -0,0 +1,25 @@
+package edu.ucsb.cs156.example.models;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import edu.ucsb.cs156.example.entities.JobPriority;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a model class that describes one step of a workflow to be started: a durable job and the
+ * names of the steps that must complete before it can run.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class WorkflowStep {
+  private String name; // unique within the workflow
+  private String jobType; // the type of the JobFactory that runs the step
+  private JsonNode parameters;
+  private List<String> dependsOn; // null or empty if the step can run straight away
+  private JobPriority priority; // null for INTERACTIVE
+}
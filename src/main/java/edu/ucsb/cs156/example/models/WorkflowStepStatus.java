@@ -0,0 +1,23 @@
+package edu.ucsb.cs156.example.models;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** This is a model class that represents the state of one step of a workflow. */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class WorkflowStepStatus {
+  private String name;
+  private long jobId;
+  private String status; // "waiting" until every step in dependsOn has completed
+  private List<String> dependsOn;
+  private ZonedDateTime startedAt;
+  private ZonedDateTime finishedAt;
+}
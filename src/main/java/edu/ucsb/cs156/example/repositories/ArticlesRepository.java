@@ -1,9 +1,44 @@
 package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.Articles;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 /** The ArticlesRepository is a repository for Articles entities */
 @Repository
-public interface ArticlesRepository extends CrudRepository<Articles, Long> {}
+public interface ArticlesRepository
+    extends CrudRepository<Articles, Long>, JpaSpecificationExecutor<Articles> {
+  /**
+   * This method streams all of the articles, ordered by id, for exports. It must be called inside a
+   * transaction, and the stream must be closed. Rows are fetched from the database 500 at a time,
+   * and are not checked for changes when the transaction ends.
+   *
+   * @return all of the articles, ordered by id
+   */
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  Stream<Articles> streamAllByOrderByIdAsc();
+
+  /**
+   * This method deletes articles with a single DELETE statement, without loading them first.
+   *
+   * @param ids the ids of the articles to delete
+   * @return the number of articles deleted
+   */
+  @Modifying
+  @Transactional
+  @Query("delete from articles a where a.id in :ids")
+  int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
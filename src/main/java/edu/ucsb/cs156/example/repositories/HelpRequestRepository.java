@@ -1,9 +1,57 @@
 package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.HelpRequest;
+import jakarta.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 /** The RestaurantRepository is a repository for Restaurant entities */
 @Repository
-public interface HelpRequestRepository extends CrudRepository<HelpRequest, Long> {}
+public interface HelpRequestRepository
+    extends CrudRepository<HelpRequest, Long>, JpaSpecificationExecutor<HelpRequest> {
+  /**
+   * This method streams all of the help requests, ordered by id, for exports. It must be called
+   * inside a transaction, and the stream must be closed. Rows are fetched from the database 500 at
+   * a time, and are not checked for changes when the transaction ends.
+   *
+   * @return all of the help requests, ordered by id
+   */
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  Stream<HelpRequest> streamAllByOrderByIdAsc();
+
+  /**
+   * This method deletes help requests with a single DELETE statement, without loading them first.
+   *
+   * @param ids the ids of the help requests to delete
+   * @return the number of help requests deleted
+   */
+  @Modifying
+  @Transactional
+  @Query("delete from helprequest h where h.id in :ids")
+  int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+  /**
+   * This method deletes the solved help requests made before a given time, with a single DELETE
+   * statement.
+   *
+   * @param before the time before which solved help requests are deleted
+   * @return the number of help requests deleted
+   */
+  @Modifying
+  @Transactional
+  @Query("delete from helprequest h where h.solved = true and h.requestTime < :before")
+  int deleteSolvedBefore(@Param("before") LocalDateTime before);
+}
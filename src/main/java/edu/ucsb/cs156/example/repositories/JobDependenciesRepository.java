@@ -0,0 +1,19 @@
+package edu.ucsb.cs156.example.repositories;
+
+import edu.ucsb.cs156.example.entities.JobDependency;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+/** The JobDependenciesRepository is a repository for JobDependency entities. */
+@Repository
+public interface JobDependenciesRepository extends CrudRepository<JobDependency, Long> {
+  /**
+   * This method returns the dependencies of some jobs.
+   *
+   * @param jobIds ids of the dependent jobs
+   * @return the dependencies of those jobs
+   */
+  List<JobDependency> findByJobIdIn(Collection<Long> jobIds);
+}
@@ -0,0 +1,25 @@
+package edu.ucsb.cs156.example.repositories;
+
+import edu.ucsb.cs156.example.entities.JobLogArchive;
+import java.util.Collection;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/** The JobLogArchivesRepository is a repository for JobLogArchive entities. */
+@Repository
+public interface JobLogArchivesRepository extends CrudRepository<JobLogArchive, Long> {
+  /**
+   * This method deletes the archived logs of some jobs with a single DELETE statement.
+   *
+   * @param jobIds the ids of the jobs whose archived logs should be deleted
+   * @return the number of archived logs deleted
+   */
+  @Modifying
+  @Transactional
+  @Query("delete from job_log_archives a where a.jobId in :jobIds")
+  int deleteByJobIdIn(@Param("jobIds") Collection<Long> jobIds);
+}
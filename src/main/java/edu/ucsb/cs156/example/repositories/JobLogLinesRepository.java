@@ -0,0 +1,46 @@
+package edu.ucsb.cs156.example.repositories;
+
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/** The JobLogLinesRepository is a repository for JobLogLine entities. */
+@Repository
+public interface JobLogLinesRepository extends CrudRepository<JobLogLine, Long> {
+  /**
+   * This method streams all of the log lines for a job, in the order they were written. It must be
+   * called inside a transaction, and the stream must be closed.
+   *
+   * @param jobId id of the job
+   * @return the log lines of the job, ordered by line number
+   */
+  Stream<JobLogLine> streamByJobIdOrderByLineNumberAsc(long jobId);
+
+  /**
+   * This method returns the next log lines of a job, starting at a given line number.
+   *
+   * @param jobId id of the job
+   * @param lineNumber the first line number to return
+   * @return up to 500 log lines of the job, ordered by line number
+   */
+  List<JobLogLine> findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+      long jobId, long lineNumber);
+
+  /**
+   * This method deletes the log lines of some jobs with a single DELETE statement.
+   *
+   * @param jobIds the ids of the jobs whose log lines should be deleted
+   * @return the number of log lines deleted
+   */
+  @Modifying
+  @Transactional
+  @Query("delete from job_log_lines l where l.jobId in :jobIds")
+  int deleteByJobIdIn(@Param("jobIds") Collection<Long> jobIds);
+}
@@ -1,8 +1,334 @@
 package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobPriority;
+import edu.ucsb.cs156.example.models.JobSummary;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+/** The JobsRepository is a repository for Job entities. */
 @Repository
-public interface JobsRepository extends CrudRepository<Job, Long> {}
+public interface JobsRepository extends CrudRepository<Job, Long> {
+  /**
+   * A condition that leaves out the steps of a workflow while any of its steps is still queued,
+   * running or waiting. Deleting a finished step earlier would also delete (by cascade) the
+   * dependencies on it, and a step waiting for it would then look ready to run.
+   */
+  String NOT_IN_UNFINISHED_WORKFLOW =
+      " and (j.workflowId is null or not exists (select s.id from jobs s"
+          + " where s.workflowId = j.workflowId and s.status in ('queued', 'running', 'waiting')))";
+
+  /**
+   * This method returns the status of a job without loading the rest of the row.
+   *
+   * @param id id of the job
+   * @return Optional of the status (empty if there is no such job)
+   */
+  @Query("select j.status from jobs j where j.id = :id")
+  Optional<String> findStatusById(@Param("id") long id);
+
+  /**
+   * This method returns the queued or running job with a given coalesce key.
+   *
+   * @param coalesceKey the key
+   * @return Optional of the job (empty if no job with this key is in flight)
+   */
+  Optional<Job> findByCoalesceKey(String coalesceKey);
+
+  /**
+   * This method returns a page of jobs, newest first, without their logs but with the resources
+   * they used.
+   *
+   * @param beforeId only jobs with an id less than this are returned
+   * @param status if not null, only jobs with this status are returned
+   * @param createdById if not null, only jobs created by the user with this id are returned
+   * @param pageable the page size (the page number should always be 0)
+   * @return the jobs, ordered by id descending
+   */
+  @Query(
+      "select new edu.ucsb.cs156.example.models.JobSummary("
+          + "j.id, u.id, j.createdAt, j.updatedAt, j.status, j.priority, j.jobType,"
+          + " j.queueWaitMs, j.runTimeMs, j.cpuTimeMs, j.allocatedBytes)"
+          + " from jobs j left join j.createdBy u"
+          + " where j.id < :beforeId"
+          + " and (:status is null or j.status = :status)"
+          + " and (:createdById is null or u.id = :createdById)"
+          + " order by j.id desc")
+  List<JobSummary> findSummaries(
+      @Param("beforeId") long beforeId,
+      @Param("status") String status,
+      @Param("createdById") Long createdById,
+      Pageable pageable);
+
+  /**
+   * This method returns the ids of jobs with one of the given statuses that were last updated
+   * before a cutoff, leaving out the steps of unfinished workflows.
+   *
+   * @param statuses the statuses to look for
+   * @param cutoff only jobs last updated before this are returned
+   * @param pageable the maximum number of ids to return
+   * @return the ids, in ascending order
+   */
+  @Query(
+      "select j.id from jobs j where j.status in :statuses and j.updatedAt < :cutoff"
+          + NOT_IN_UNFINISHED_WORKFLOW
+          + " order by j.id")
+  List<Long> findIdsByStatusInAndUpdatedAtBefore(
+      @Param("statuses") Collection<String> statuses,
+      @Param("cutoff") ZonedDateTime cutoff,
+      Pageable pageable);
+
+  /**
+   * This method returns the ids of jobs with a given status, newest first.
+   *
+   * @param status the status to look for
+   * @param pageable the page of ids to return
+   * @return the ids, in descending order
+   */
+  @Query("select j.id from jobs j where j.status = :status order by j.id desc")
+  List<Long> findIdsByStatusNewestFirst(@Param("status") String status, Pageable pageable);
+
+  /**
+   * This method returns the ids of jobs with a given status whose id is at most maxId, leaving out
+   * the steps of unfinished workflows.
+   *
+   * @param status the status to look for
+   * @param maxId the largest id to return
+   * @param pageable the maximum number of ids to return
+   * @return the ids, in ascending order
+   */
+  @Query(
+      "select j.id from jobs j where j.status = :status and j.id <= :maxId"
+          + NOT_IN_UNFINISHED_WORKFLOW
+          + " order by j.id")
+  List<Long> findIdsByStatusAndIdAtMost(
+      @Param("status") String status, @Param("maxId") long maxId, Pageable pageable);
+
+  /**
+   * This method returns the ids of jobs that finished before a cutoff and whose log lines add up to
+   * at least a given number of bytes, as recorded in {@link Job#getLogSize()}.
+   *
+   * @param cutoff only jobs that finished before this are returned
+   * @param minSize the smallest total size in bytes of the messages of a job
+   * @param pageable the page size (the page number should always be 0)
+   * @return the ids of the jobs
+   */
+  @Query("select j.id from jobs j where j.finishedAt < :cutoff and j.logSize >= :minSize")
+  List<Long> findIdsWithLargeLogs(
+      @Param("cutoff") ZonedDateTime cutoff, @Param("minSize") long minSize, Pageable pageable);
+
+  /**
+   * This method returns a job whose log is still at least a given number of bytes (that is, has not
+   * been archived since it was found), and locks its row.
+   *
+   * <p>It must be called in a transaction. A row already locked by another instance is skipped, so
+   * instances archiving at the same time do not archive the same log twice.
+   *
+   * @param id the id of the job
+   * @param minSize the smallest total size in bytes of the messages of the job
+   * @return the job, or empty if its log has been archived or another instance is archiving it
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+  @Query("select j from jobs j where j.id = :id and j.logSize >= :minSize")
+  Optional<Job> findWithLargeLogForUpdate(@Param("id") long id, @Param("minSize") long minSize);
+
+  /**
+   * This method records that the log lines of a job have been archived, so that the job is no
+   * longer returned by {@link #findIdsWithLargeLogs}.
+   *
+   * @param id the id of the job
+   * @return the number of jobs updated
+   */
+  @Modifying
+  @Transactional
+  @Query("update jobs j set j.logSize = 0 where j.id = :id")
+  int clearLogSize(@Param("id") long id);
+
+  /**
+   * This method marks a job as running and renews its lease, but only if the lease is still held by
+   * the given owner (see {@link #finishIfLeaseHeld}).
+   *
+   * @param job the job, with status "running", its start time, time spent waiting and new lease
+   *     expiry
+   * @param owner the id of the instance about to run the job
+   * @return the number of jobs updated: 1, or 0 if the lease is no longer held by {@code owner}
+   */
+  @Modifying
+  @Transactional
+  @Query(
+      "update jobs j set j.status = :#{#job.status}, j.startedAt = :#{#job.startedAt},"
+          + " j.updatedAt = :#{#job.startedAt}, j.queueWaitMs = :#{#job.queueWaitMs},"
+          + " j.leaseExpiresAt = :#{#job.leaseExpiresAt}"
+          + " where j.id = :#{#job.id} and j.leaseOwner = :owner")
+  int startIfLeaseHeld(@Param("job") Job job, @Param("owner") String owner);
+
+  /**
+   * This method saves the outcome of a finished job and gives up its lease, but only if the lease
+   * is still held by the given owner. If the lease expired and the job was recovered (and perhaps
+   * claimed again by another instance) in the meantime, nothing is written, so a worker that lost
+   * its lease cannot overwrite the job's newer state.
+   *
+   * @param job the finished job, with its final status, finish time, log size and usage
+   * @param owner the id of the instance that ran the job
+   * @return the number of jobs updated: 1, or 0 if the lease is no longer held by {@code owner}
+   */
+  @Modifying
+  @Transactional
+  @Query(
+      "update jobs j set j.status = :#{#job.status}, j.finishedAt = :#{#job.finishedAt},"
+          + " j.updatedAt = :#{#job.finishedAt}, j.logSize = :#{#job.logSize},"
+          + " j.runTimeMs = :#{#job.runTimeMs}, j.cpuTimeMs = :#{#job.cpuTimeMs},"
+          + " j.allocatedBytes = :#{#job.allocatedBytes}, j.coalesceKey = null,"
+          + " j.leaseOwner = null, j.leaseExpiresAt = null"
+          + " where j.id = :#{#job.id} and j.leaseOwner = :owner")
+  int finishIfLeaseHeld(@Param("job") Job job, @Param("owner") String owner);
+
+  /**
+   * This method deletes jobs with a single DELETE statement, without loading them first.
+   *
+   * @param ids the ids of the jobs to delete
+   * @return the number of jobs deleted
+   */
+  @Modifying
+  @Transactional
+  @Query("delete from jobs j where j.id in :ids")
+  int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+  /**
+   * This method returns the oldest jobs of a priority class waiting in the durable queue and locks
+   * their rows.
+   *
+   * <p>It must be called in a transaction. Rows already locked by another instance are skipped
+   * (SELECT ... FOR UPDATE SKIP LOCKED on databases that support it), so instances polling at the
+   * same time claim different jobs instead of waiting on each other.
+   *
+   * @param priority the priority class
+   * @param pageable the maximum number of jobs to return
+   * @return the jobs, oldest first
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+  @Query(
+      "select j from jobs j where j.status = 'queued' and j.parameters is not null"
+          + " and j.priority = :priority order by j.id")
+  List<Job> findQueuedForUpdate(@Param("priority") JobPriority priority, Pageable pageable);
+
+  /**
+   * This method renews the leases an instance holds on its jobs.
+   *
+   * @param owner the instance holding the leases
+   * @param ids the ids of the jobs
+   * @param expiresAt the new expiry time
+   * @return the number of leases renewed
+   */
+  @Modifying
+  @Transactional
+  @Query(
+      "update jobs j set j.leaseExpiresAt = :expiresAt"
+          + " where j.leaseOwner = :owner and j.id in :ids")
+  int renewLeases(
+      @Param("owner") String owner,
+      @Param("ids") Collection<Long> ids,
+      @Param("expiresAt") ZonedDateTime expiresAt);
+
+  /**
+   * This method expires every lease held by an instance, e.g. one that has just restarted and so
+   * cannot still be running those jobs.
+   *
+   * @param owner the instance holding the leases
+   * @param now the current time
+   * @return the number of leases expired
+   */
+  @Modifying
+  @Transactional
+  @Query(
+      "update jobs j set j.leaseExpiresAt = :now"
+          + " where j.leaseOwner = :owner and j.status in ('queued', 'running')")
+  int expireLeases(@Param("owner") String owner, @Param("now") ZonedDateTime now);
+
+  /**
+   * This method returns the jobs whose lease has expired, because the instance holding it has
+   * stopped, and locks their rows.
+   *
+   * <p>It must be called in a transaction. Rows already locked by another instance are skipped, so
+   * instances recovering at the same time recover different jobs.
+   *
+   * @param now the current time
+   * @return the jobs, in the order they were created
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+  @Query(
+      "select j from jobs j where j.status in ('queued', 'running') and j.leaseExpiresAt < :now"
+          + " order by j.id")
+  List<Job> findExpiredLeasesForUpdate(@Param("now") ZonedDateTime now);
+
+  /**
+   * This method cancels a job that is still waiting in the durable queue, or a workflow step that
+   * is waiting for its dependencies.
+   *
+   * @param id id of the job
+   * @param now the current time
+   * @return 1 if the job was cancelled, 0 if it is not waiting in the durable queue
+   */
+  @Modifying
+  @Transactional
+  @Query(
+      "update jobs j set j.status = 'cancelled', j.coalesceKey = null, j.updatedAt = :now"
+          + " where j.id = :id and j.status in ('queued', 'waiting') and j.parameters is not null"
+          + " and j.leaseOwner is null")
+  int cancelQueued(@Param("id") long id, @Param("now") ZonedDateTime now);
+
+  /**
+   * This method returns the steps of a workflow.
+   *
+   * @param workflowId id of the workflow
+   * @return the steps, in the order they were created
+   */
+  List<Job> findByWorkflowIdOrderByIdAsc(long workflowId);
+
+  /**
+   * This method returns the workflow steps that are waiting for dependencies which have now all
+   * completed, and locks their rows. It must be called in a transaction; rows already locked by
+   * another instance are skipped.
+   *
+   * @return the steps, in the order they were created
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+  @Query(
+      "select j from jobs j where j.status = 'waiting' and not exists ("
+          + "select d.id from job_dependencies d join jobs u on u.id = d.dependsOnJobId"
+          + " where d.jobId = j.id and u.status <> 'complete') order by j.id")
+  List<Job> findReadyWorkflowStepsForUpdate();
+
+  /**
+   * This method returns the workflow steps that are waiting for a dependency which has finished
+   * without completing, and so will never be able to run, and locks their rows. It must be called
+   * in a transaction; rows already locked by another instance are skipped.
+   *
+   * @return the steps, in the order they were created
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+  @Query(
+      "select j from jobs j where j.status = 'waiting' and exists ("
+          + "select d.id from job_dependencies d join jobs u on u.id = d.dependsOnJobId"
+          + " where d.jobId = j.id"
+          + " and u.status in ('error', 'rejected', 'cancelled', 'timed_out')) order by j.id")
+  List<Job> findBlockedWorkflowStepsForUpdate();
+}
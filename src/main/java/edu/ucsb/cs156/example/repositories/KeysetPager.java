@@ -0,0 +1,275 @@
+package edu.ucsb.cs156.example.repositories;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import edu.ucsb.cs156.example.errors.InvalidCursorException;
+import edu.ucsb.cs156.example.errors.InvalidSortKeyException;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.hibernate.query.SortDirection;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.criteria.JpaExpression;
+import org.hibernate.query.criteria.JpaOrder;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+
+/**
+ * A KeysetPager lists a table one page at a time, sorted by one of a fixed set of attributes.
+ *
+ * <p>Each page is read with a query for the rows that sort after the last row of the previous page,
+ * rather than with an offset, so a page deep into the table costs no more than the first. Ties
+ * between rows with the same sort value are broken by id, so no row is skipped or repeated. The
+ * cursor handed to the client holds the sort value and id of the last row of the page.
+ *
+ * <p>Rows whose sort value is null come last, in either direction, ordered by id among themselves.
+ * The rows with a value and the rows without one are read with separate queries, each a single
+ * range of an index on the attribute and id: a page that runs out of rows with a value is filled up
+ * from the start of the rows without one. As neither query mixes nulls with other values, the order
+ * does not depend on where the database puts nulls by default.
+ *
+ * @param <T> the type of entity listed
+ */
+public class KeysetPager<T> {
+
+  private record SortKey<T>(Function<T, ?> getter, Function<String, ?> parser) {}
+
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+  // stands for a null sort value in a cursor; it is not in the Base64 URL alphabet
+  private static final String NULL_VALUE = "~";
+
+  private final String idAttribute;
+
+  private final Map<String, SortKey<T>> sortKeys = new LinkedHashMap<>();
+
+  private KeysetPager(String idAttribute) {
+    this.idAttribute = idAttribute;
+  }
+
+  /**
+   * Create a pager for a table, sorted by id unless the client asks for another sort key.
+   *
+   * @param <T> the type of entity listed
+   * @param idAttribute the name of the id attribute of the entity
+   * @param getter gets the id of an entity
+   * @param parser turns the string form of an id back into an id
+   * @return the pager
+   */
+  public static <T> KeysetPager<T> byId(
+      String idAttribute, Function<T, ?> getter, Function<String, ?> parser) {
+    return new KeysetPager<T>(idAttribute).sortKey(idAttribute, getter, parser);
+  }
+
+  /**
+   * Allow the listing to be sorted by another attribute. The attribute may be null, and should be
+   * indexed together with the id.
+   *
+   * @param attribute the name of the attribute
+   * @param getter gets the value of the attribute from an entity
+   * @param parser turns the string form of a value back into a value
+   * @return this pager
+   */
+  public KeysetPager<T> sortKey(
+      String attribute, Function<T, ?> getter, Function<String, ?> parser) {
+    sortKeys.put(attribute, new SortKey<>(getter, parser));
+    return this;
+  }
+
+  /**
+   * Read one page of the table.
+   *
+   * @param repository the repository of the table
+   * @param sort the attribute to sort by, or null to sort by id
+   * @param direction whether to sort in ascending or descending order
+   * @param cursor nextCursor of the previous page, or null for the first page
+   * @param size the number of rows per page
+   * @return the page
+   * @throws InvalidSortKeyException if the listing cannot be sorted by {@code sort}
+   * @throws InvalidCursorException if the cursor cannot be parsed
+   */
+  public KeysetPage<T> page(
+      JpaSpecificationExecutor<T> repository,
+      String sort,
+      Sort.Direction direction,
+      String cursor,
+      int size) {
+    String attribute = sort != null ? sort : idAttribute;
+    SortKey<T> sortKey = sortKeys.get(attribute);
+    if (sortKey == null) {
+      throw new InvalidSortKeyException(attribute, sortKeys.keySet());
+    }
+    Cursor position = cursor != null ? parse(attribute, cursor) : null;
+
+    List<T> rows;
+    if (attribute.equals(idAttribute)) {
+      Specification<T> spec = sortedBy(attribute, direction);
+      if (position != null) {
+        spec = spec.and(after(attribute, direction, position.value(), position.id()));
+      }
+      rows = find(repository, spec, size + 1);
+    } else {
+      rows = new ArrayList<>();
+      if (position == null || position.value() != null) {
+        Specification<T> withValue =
+            sortedBy(attribute, direction)
+                .and(
+                    position != null
+                        ? after(attribute, direction, position.value(), position.id())
+                        : hasValue(attribute));
+        rows.addAll(find(repository, withValue, size + 1));
+      }
+      if (rows.size() <= size) {
+        Comparable<?> afterId = position != null && position.value() == null ? position.id() : null;
+        Specification<T> withoutValue =
+            sortedBy(idAttribute, direction).and(nullAfter(attribute, direction, afterId));
+        rows.addAll(find(repository, withoutValue, size + 1 - rows.size()));
+      }
+    }
+    if (rows.size() <= size) {
+      return KeysetPage.<T>builder().content(rows).build();
+    }
+    T last = rows.get(size - 1);
+    Object lastValue = sortKey.getter().apply(last);
+    String nextCursor =
+        (lastValue != null ? encode(lastValue) : NULL_VALUE) + "." + encode(idOf(last));
+    return KeysetPage.<T>builder().content(rows.subList(0, size)).nextCursor(nextCursor).build();
+  }
+
+  /**
+   * Get the id of an entity.
+   *
+   * @param row the entity
+   * @return the id of the entity
+   */
+  public Object idOf(T row) {
+    return sortKeys.get(idAttribute).getter().apply(row);
+  }
+
+  private List<T> find(JpaSpecificationExecutor<T> repository, Specification<T> spec, int limit) {
+    return repository.findBy(spec, query -> query.limit(limit).all());
+  }
+
+  /** The sort value (possibly null) and id of the last row of a page. */
+  private record Cursor(Comparable<?> value, Comparable<?> id) {}
+
+  private Cursor parse(String attribute, String cursor) {
+    String[] parts = cursor.split("\\.", -1);
+    if (parts.length != 2) {
+      throw new InvalidCursorException(cursor);
+    }
+    try {
+      Object value =
+          parts[0].equals(NULL_VALUE)
+              ? null
+              : sortKeys.get(attribute).parser().apply(decode(parts[0]));
+      Object id = sortKeys.get(idAttribute).parser().apply(decode(parts[1]));
+      return new Cursor((Comparable<?>) value, (Comparable<?>) id);
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      throw new InvalidCursorException(cursor);
+    }
+  }
+
+  /**
+   * Build the order of the rows: by the attribute, then by id.
+   *
+   * @param attribute the attribute the rows are sorted by
+   * @param direction whether the rows are sorted in ascending or descending order
+   * @return a condition that matches every row, and sets the order of the query
+   */
+  Specification<T> sortedBy(String attribute, Sort.Direction direction) {
+    return (root, query, cb) -> {
+      HibernateCriteriaBuilder hcb = (HibernateCriteriaBuilder) cb;
+      SortDirection order =
+          direction.isAscending() ? SortDirection.ASCENDING : SortDirection.DESCENDING;
+      JpaOrder byId = hcb.sort((JpaExpression<?>) root.get(idAttribute), order);
+      if (attribute.equals(idAttribute)) {
+        query.orderBy(byId);
+      } else {
+        JpaExpression<?> path = (JpaExpression<?>) root.get(attribute);
+        query.orderBy(hcb.sort(path, order), byId);
+      }
+      return null;
+    };
+  }
+
+  /**
+   * Build the condition for the rows that sort after a given row and have a sort value, or, when
+   * sorting by id, for all the rows after it. Rather than {@code value > v or (value = v and id >
+   * i)}, the condition is written as {@code value >= v and (value > v or id > i)}, so that the
+   * database can read it as one range of an index on the attribute and id, starting at {@code v}.
+   *
+   * @param attribute the attribute the rows are sorted by
+   * @param direction whether the rows are sorted in ascending or descending order
+   * @param value the value of the attribute in the given row, which is not null
+   * @param id the id of the given row
+   * @return the condition
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  Specification<T> after(
+      String attribute, Sort.Direction direction, Comparable value, Comparable id) {
+    return (root, query, cb) -> {
+      Path<Comparable> idPath = root.get(idAttribute);
+      Predicate idBeyond =
+          direction.isAscending() ? cb.greaterThan(idPath, id) : cb.lessThan(idPath, id);
+      if (attribute.equals(idAttribute)) {
+        return idBeyond;
+      }
+      Path<Comparable> path = root.get(attribute);
+      Predicate from =
+          direction.isAscending()
+              ? cb.greaterThanOrEqualTo(path, value)
+              : cb.lessThanOrEqualTo(path, value);
+      Predicate beyond =
+          direction.isAscending() ? cb.greaterThan(path, value) : cb.lessThan(path, value);
+      return cb.and(from, cb.or(beyond, idBeyond));
+    };
+  }
+
+  /**
+   * Build the condition for the first page of the rows that have a sort value.
+   *
+   * @param attribute the attribute the rows are sorted by
+   * @return the condition
+   */
+  Specification<T> hasValue(String attribute) {
+    return (root, query, cb) -> cb.isNotNull(root.get(attribute));
+  }
+
+  /**
+   * Build the condition for the rows without a sort value, which come after all the others.
+   *
+   * @param attribute the attribute the rows are sorted by
+   * @param direction whether the rows are sorted in ascending or descending order
+   * @param id the id of the last row read without a sort value, or null to start with the first
+   * @return the condition
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  Specification<T> nullAfter(String attribute, Sort.Direction direction, Comparable id) {
+    return (root, query, cb) -> {
+      Predicate isNull = cb.isNull(root.get(attribute));
+      if (id == null) {
+        return isNull;
+      }
+      Path<Comparable> idPath = root.get(idAttribute);
+      return cb.and(
+          isNull, direction.isAscending() ? cb.greaterThan(idPath, id) : cb.lessThan(idPath, id));
+    };
+  }
+
+  private static String encode(Object value) {
+    return ENCODER.encodeToString(value.toString().getBytes(UTF_8));
+  }
+
+  private static String decode(String part) {
+    return new String(Base64.getUrlDecoder().decode(part), UTF_8);
+  }
+}
@@ -1,9 +1,45 @@
 package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.MenuItemReview;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 /** The MenuItemReviewRepository is a repository for MenuItemReview entities */
 @Repository
-public interface MenuItemReviewRepository extends CrudRepository<MenuItemReview, Long> {}
+public interface MenuItemReviewRepository
+    extends CrudRepository<MenuItemReview, Long>, JpaSpecificationExecutor<MenuItemReview> {
+  /**
+   * This method streams all of the menu item reviews, ordered by id, for exports. It must be called
+   * inside a transaction, and the stream must be closed. Rows are fetched from the database 500 at
+   * a time, and are not checked for changes when the transaction ends.
+   *
+   * @return all of the menu item reviews, ordered by id
+   */
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  Stream<MenuItemReview> streamAllByOrderByIdAsc();
+
+  /**
+   * This method deletes menu item reviews with a single DELETE statement, without loading them
+   * first.
+   *
+   * @param ids the ids of the menu item reviews to delete
+   * @return the number of menu item reviews deleted
+   */
+  @Modifying
+  @Transactional
+  @Query("delete from menuitemreviews m where m.id in :ids")
+  int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
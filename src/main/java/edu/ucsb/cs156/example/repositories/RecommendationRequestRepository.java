@@ -1,10 +1,59 @@
 package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.RecommendationRequest;
+import jakarta.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 /** The UserRepository is a repository for RecommendationRequest entities. */
 @Repository
 public interface RecommendationRequestRepository
-    extends CrudRepository<RecommendationRequest, Long> {}
+    extends CrudRepository<RecommendationRequest, Long>,
+        JpaSpecificationExecutor<RecommendationRequest> {
+  /**
+   * This method streams all of the recommendation requests, ordered by id, for exports. It must be
+   * called inside a transaction, and the stream must be closed. Rows are fetched from the database
+   * 500 at a time, and are not checked for changes when the transaction ends.
+   *
+   * @return all of the recommendation requests, ordered by id
+   */
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  Stream<RecommendationRequest> streamAllByOrderByIdAsc();
+
+  /**
+   * This method deletes recommendation requests with a single DELETE statement, without loading
+   * them first.
+   *
+   * @param ids the ids of the recommendation requests to delete
+   * @return the number of recommendation requests deleted
+   */
+  @Modifying
+  @Transactional
+  @Query("delete from recommendationrequest r where r.id in :ids")
+  int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+  /**
+   * This method deletes the recommendation requests that are done and were requested before a given
+   * time, with a single DELETE statement.
+   *
+   * @param before the time before which done recommendation requests are deleted
+   * @return the number of recommendation requests deleted
+   */
+  @Modifying
+  @Transactional
+  @Query("delete from recommendationrequest r where r.done = true and r.daterequested < :before")
+  int deleteDoneRequestedBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,47 @@
+package edu.ucsb.cs156.example.repositories;
+
+import edu.ucsb.cs156.example.entities.RecurringJobTrigger;
+import java.time.ZonedDateTime;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/** The RecurringJobTriggersRepository is a repository for RecurringJobTrigger entities. */
+@Repository
+public interface RecurringJobTriggersRepository
+    extends CrudRepository<RecurringJobTrigger, String> {
+  /**
+   * This method claims a due fire time of a recurring job by moving its next fire time forward. The
+   * update only matches while the trigger is still due at {@code dueAt}, so when several instances
+   * try to claim the same fire time, only one of them succeeds.
+   *
+   * @param name name of the recurring job
+   * @param dueAt the fire time being claimed, as read from the trigger
+   * @param nextFireAt the fire time after this one
+   * @return 1 if this caller claimed the fire time, 0 if another caller already had
+   */
+  @Modifying
+  @Transactional
+  @Query(
+      "update recurring_job_triggers t set t.nextFireAt = :nextFireAt"
+          + " where t.name = :name and t.nextFireAt = :dueAt")
+  int claim(
+      @Param("name") String name,
+      @Param("dueAt") ZonedDateTime dueAt,
+      @Param("nextFireAt") ZonedDateTime nextFireAt);
+
+  /**
+   * This method records the job started by the latest run of a recurring job.
+   *
+   * @param name name of the recurring job
+   * @param jobId id of the job
+   * @return the number of triggers updated
+   */
+  @Modifying
+  @Transactional
+  @Query("update recurring_job_triggers t set t.lastJobId = :jobId where t.name = :name")
+  int recordRun(@Param("name") String name, @Param("jobId") long jobId);
+}
@@ -1,9 +1,44 @@
 package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.Restaurant;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 /** The RestaurantRepository is a repository for Restaurant entities */
 @Repository
-public interface RestaurantRepository extends CrudRepository<Restaurant, Long> {}
+public interface RestaurantRepository
+    extends CrudRepository<Restaurant, Long>, JpaSpecificationExecutor<Restaurant> {
+  /**
+   * This method streams all of the restaurants, ordered by id, for exports. It must be called
+   * inside a transaction, and the stream must be closed. Rows are fetched from the database 500 at
+   * a time, and are not checked for changes when the transaction ends.
+   *
+   * @return all of the restaurants, ordered by id
+   */
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  Stream<Restaurant> streamAllByOrderByIdAsc();
+
+  /**
+   * This method deletes restaurants with a single DELETE statement, without loading them first.
+   *
+   * @param ids the ids of the restaurants to delete
+   * @return the number of restaurants deleted
+   */
+  @Modifying
+  @Transactional
+  @Query("delete from restaurants r where r.id in :ids")
+  int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -1,9 +1,44 @@
 package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 /** The UCSBDiningCommonsRepository is a repository for UCSBDiningCommons entities */
 @Repository
-public interface UCSBDiningCommonsRepository extends CrudRepository<UCSBDiningCommons, String> {}
+public interface UCSBDiningCommonsRepository
+    extends CrudRepository<UCSBDiningCommons, String>, JpaSpecificationExecutor<UCSBDiningCommons> {
+  /**
+   * This method streams all of the dining commons, ordered by code, for exports. It must be called
+   * inside a transaction, and the stream must be closed. Rows are fetched from the database 500 at
+   * a time, and are not checked for changes when the transaction ends.
+   *
+   * @return all of the dining commons, ordered by code
+   */
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  Stream<UCSBDiningCommons> streamAllByOrderByCodeAsc();
+
+  /**
+   * This method deletes dining commons with a single DELETE statement, without loading them first.
+   *
+   * @param codes the codes of the dining commons to delete
+   * @return the number of dining commons deleted
+   */
+  @Modifying
+  @Transactional
+  @Query("delete from ucsbdiningcommons c where c.code in :codes")
+  int deleteByCodeIn(@Param("codes") Collection<String> codes);
+}
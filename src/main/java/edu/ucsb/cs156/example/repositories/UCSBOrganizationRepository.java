@@ -1,8 +1,43 @@
 package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.UCSBOrganization;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
-public interface UCSBOrganizationRepository extends CrudRepository<UCSBOrganization, String> {}
+public interface UCSBOrganizationRepository
+    extends CrudRepository<UCSBOrganization, String>, JpaSpecificationExecutor<UCSBOrganization> {
+  /**
+   * This method streams all of the organizations, ordered by orgcode, for exports. It must be
+   * called inside a transaction, and the stream must be closed. Rows are fetched from the database
+   * 500 at a time, and are not checked for changes when the transaction ends.
+   *
+   * @return all of the organizations, ordered by orgcode
+   */
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  Stream<UCSBOrganization> streamAllByOrderByOrgcodeAsc();
+
+  /**
+   * This method deletes organizations with a single DELETE statement, without loading them first.
+   *
+   * @param orgcodes the orgcodes of the organizations to delete
+   * @return the number of organizations deleted
+   */
+  @Modifying
+  @Transactional
+  @Query("delete from ucsborganization o where o.orgcode in :orgcodes")
+  int deleteByOrgcodeIn(@Param("orgcodes") Collection<String> orgcodes);
+}
@@ -0,0 +1,9 @@
+package edu.ucsb.cs156.example.repositories;
+
+import edu.ucsb.cs156.example.entities.Workflow;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+/** The WorkflowsRepository is a repository for Workflow entities. */
+@Repository
+public interface WorkflowsRepository extends CrudRepository<Workflow, Long> {}
@@ -0,0 +1,57 @@
+package edu.ucsb.cs156.example.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The JsonExportService writes whole tables to a response as JSON arrays, one row at a time.
+ *
+ * <p>Rows are read from a repository {@code Stream} query. Each row is written to the response as
+ * soon as it is read, then detached from the persistence context, so the heap used by an export
+ * stays the same however large the table is. The query runs in a read-only transaction: the
+ * PostgreSQL driver only honours the fetch size of a query when autocommit is off, and otherwise
+ * reads every row before returning the first.
+ */
+@Service
+public class JsonExportService {
+
+  @Autowired private EntityManager entityManager;
+
+  @Autowired private ObjectMapper mapper;
+
+  /**
+   * Write rows to a response as a JSON array.
+   *
+   * @param <T> the type of entity written
+   * @param rows opens the stream of rows; it is called inside the transaction, and the stream is
+   *     closed once written
+   * @param response the response to write to
+   * @throws IOException if the response cannot be written
+   */
+  @Transactional(readOnly = true)
+  public <T> void writeJsonArray(Supplier<Stream<T>> rows, HttpServletResponse response)
+      throws IOException {
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    try (Stream<T> stream = rows.get();
+        JsonGenerator json = mapper.createGenerator(response.getOutputStream())) {
+      json.writeStartArray();
+      Iterator<T> it = stream.iterator();
+      while (it.hasNext()) {
+        T row = it.next();
+        json.writePOJO(row);
+        entityManager.detach(row);
+      }
+      json.writeEndArray();
+    }
+  }
+}
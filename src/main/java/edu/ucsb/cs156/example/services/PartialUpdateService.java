@@ -0,0 +1,142 @@
+package edu.ucsb.cs156.example.services;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.errors.InvalidPatchException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Id;
+import jakarta.persistence.Version;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.lang.reflect.Field;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.hibernate.annotations.UpdateTimestamp;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The PartialUpdateService changes some fields of a row without reading the row first.
+ *
+ * <p>The changes are made with a single UPDATE statement that sets only the given fields, and only
+ * matches the row if at least one of them differs from the value given, so nothing is written when
+ * nothing would change. The statement also increments the {@code @Version} of the row and sets its
+ * {@code @UpdateTimestamp}, which Hibernate would otherwise do on save, so that clients holding an
+ * ETag for the row see it change. The row is only read when no row was updated, to tell a row that
+ * was already up to date from one that does not exist.
+ *
+ * <p>The fields that may be changed are those in the JSON of the entity, other than its id. Each
+ * new value is checked against the Bean Validation constraints of its field before anything is
+ * written, as PUT checks the whole entity with {@code @Valid}; like {@code @Valid}, this is skipped
+ * when there is no Bean Validation provider.
+ */
+@Service
+public class PartialUpdateService {
+
+  @Autowired private EntityManager entityManager;
+
+  @Autowired private ObjectMapper mapper;
+
+  @Autowired private ObjectProvider<Validator> validator;
+
+  /**
+   * Change some fields of a row.
+   *
+   * @param <T> the type of entity changed
+   * @param entityClass the class of the entity, e.g. HelpRequest.class
+   * @param id the id of the row
+   * @param changes the new values of the fields to change, by field name; values are given as in
+   *     the JSON of the entity
+   * @return true if the row was changed, false if the fields already had the values given
+   * @throws InvalidPatchException if a field cannot be changed, cannot hold the value given, or the
+   *     value breaks a constraint of the field
+   * @throws EntityNotFoundException if there is no row with the given id
+   */
+  @Transactional
+  public <T> boolean update(Class<T> entityClass, Object id, Map<String, Object> changes) {
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+    CriteriaUpdate<T> update = cb.createCriteriaUpdate(entityClass);
+    Root<T> root = update.from(entityClass);
+
+    List<Predicate> differences = new ArrayList<>();
+    for (Map.Entry<String, Object> change : changes.entrySet()) {
+      Field field = editableField(entityClass, change.getKey());
+      Object value = convert(entityClass, field, change.getValue());
+      validate(entityClass, field, value);
+      Path<Object> path = root.get(field.getName());
+      update.set(path, value);
+      differences.add(
+          value == null ? cb.isNotNull(path) : cb.or(cb.isNull(path), cb.notEqual(path, value)));
+    }
+
+    if (!differences.isEmpty()) {
+      String idName = null;
+      for (Field field : entityClass.getDeclaredFields()) {
+        if (field.isAnnotationPresent(Id.class)) {
+          idName = field.getName();
+        } else if (field.isAnnotationPresent(Version.class)) {
+          Path<Long> version = root.get(field.getName());
+          update.set(version, cb.sum(version, 1L));
+        } else if (field.isAnnotationPresent(UpdateTimestamp.class)) {
+          update.set(field.getName(), ZonedDateTime.now());
+        }
+      }
+      update.where(cb.equal(root.get(idName), id), cb.or(differences.toArray(Predicate[]::new)));
+      if (entityManager.createQuery(update).executeUpdate() > 0) {
+        return true;
+      }
+    }
+
+    if (entityManager.find(entityClass, id) == null) {
+      throw new EntityNotFoundException(entityClass, id);
+    }
+    return false;
+  }
+
+  private static Field editableField(Class<?> entityClass, String name) {
+    try {
+      Field field = entityClass.getDeclaredField(name);
+      if (!field.isAnnotationPresent(Id.class) && !field.isAnnotationPresent(JsonIgnore.class)) {
+        return field;
+      }
+    } catch (NoSuchFieldException e) {
+      // reported below, the same way as a field that exists but cannot be changed
+    }
+    throw new InvalidPatchException(entityClass, name, "there is no such editable field");
+  }
+
+  private Object convert(Class<?> entityClass, Field field, Object value) {
+    if (value == null && field.getType().isPrimitive()) {
+      throw new InvalidPatchException(entityClass, field.getName(), "it cannot be null");
+    }
+    try {
+      return mapper.convertValue(value, field.getType());
+    } catch (IllegalArgumentException e) {
+      throw new InvalidPatchException(entityClass, field.getName(), "invalid value " + value);
+    }
+  }
+
+  private <T> void validate(Class<T> entityClass, Field field, Object value) {
+    Validator fieldValidator = validator.getIfAvailable();
+    if (fieldValidator == null) {
+      return;
+    }
+    Set<ConstraintViolation<T>> violations =
+        fieldValidator.validateValue(entityClass, field.getName(), value);
+    if (!violations.isEmpty()) {
+      throw new InvalidPatchException(
+          entityClass, field.getName(), violations.iterator().next().getMessage());
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+/**
+ * Thrown by {@link JobContext#checkCancelled()} when the job has been cancelled or has run past its
+ * timeout. Jobs should let it propagate so that the job ends promptly.
+ */
+public class JobCancelledException extends Exception {
+  /**
+   * Constructor for the exception
+   *
+   * @param status the status the job will end with, i.e. "cancelled" or "timed_out"
+   */
+  public JobCancelledException(String status) {
+    super("Job stopped: " + status);
+  }
+}
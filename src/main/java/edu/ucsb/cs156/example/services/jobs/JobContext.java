@@ -1,20 +1,443 @@
 package edu.ucsb.cs156.example.services.jobs;
 
 import edu.ucsb.cs156.example.entities.Job;
-import edu.ucsb.cs156.example.repositories.JobsRepository;
-import lombok.AllArgsConstructor;
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
+import edu.ucsb.cs156.example.services.jobs.ThreadUsageMeter.Usage;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
 
-@AllArgsConstructor
+/**
+ * The JobContext is handed to a running job so that it can write to its log and find out whether it
+ * has been asked to stop.
+ *
+ * <p>Log lines are appended to the job_log_lines table rather than rewriting the jobs.log column.
+ * Lines are buffered in memory and written in batches: a batch is written when it reaches {@code
+ * batchSize} lines, when at least {@code flushIntervalMs} has passed since the last write (checked
+ * on each log call and by a timer, see {@link #flushIfDue()}), or when {@link #flush()} is called
+ * at the end of the job. Until then, {@link #getBufferedLines()} lets readers see the lines.
+ *
+ * <p>The buffer holds at most {@code bufferCapacity} lines. If the lines cannot be written, they
+ * stay in the buffer to be retried at the next flush, and the job carries on; once the buffer is
+ * full, the oldest lines are dropped. The last flush, when the job ends, is retried a few times
+ * (see {@link #flushFinal(int, long)}), since no later flush would pick up what it leaves behind.
+ *
+ * <p>A lock rather than {@code synchronized} guards the buffer, so that a job running on a virtual
+ * thread does not pin its carrier thread while it waits for the database.
+ *
+ * <p>A job is stopped by {@link #cancel(String)}, either because an admin cancelled it or because
+ * it ran past its timeout. Cancelling interrupts the worker thread, so blocking calls such as
+ * {@code Thread.sleep} end right away; long-running loops should also call {@link
+ * #checkCancelled()} regularly.
+ *
+ * <p>A job can split its work into subtasks that run in parallel with {@link #parallelForEach(List,
+ * int, JobSubtask)}. Subtasks may call {@link #log(String)} and {@link #checkCancelled()} too. They
+ * run on virtual threads when the job's own workers do ({@code spring.threads.virtual.enabled}, see
+ * {@link edu.ucsb.cs156.example.config.JobExecutorConfig}), otherwise on platform threads.
+ */
 @Slf4j
 public class JobContext {
-  private JobsRepository jobsRepository;
-  private Job job;
+  private static final ThreadUsageMeter METER = new ThreadUsageMeter();
+
+  static final int DEFAULT_BUFFER_CAPACITY = 10_000;
+
+  private final JobLogLinesRepository jobLogLinesRepository;
+  private final Job job;
+  private final int batchSize;
+  private final long flushIntervalMs;
+  private final int bufferCapacity;
+  private final Duration timeout;
+  private final boolean virtualThreads;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final ArrayDeque<JobLogLine> pending = new ArrayDeque<>();
+  private long nextLineNumber = 0;
+  private long lastFlushMs = 0;
+  private long droppedLines = 0;
+  private long logSize = 0;
+  private boolean writeFailed = false;
+
+  private final ReentrantLock workerLock = new ReentrantLock();
+  private Thread worker;
+  private long deadlineNanos;
+  private volatile String cancelledStatus;
+
+  private final AtomicReference<Usage> subtaskUsage = new AtomicReference<>(Usage.NONE);
+
+  public JobContext(
+      JobLogLinesRepository jobLogLinesRepository, Job job, int batchSize, long flushIntervalMs) {
+    this(jobLogLinesRepository, job, batchSize, flushIntervalMs, null);
+  }
+
+  public JobContext(
+      JobLogLinesRepository jobLogLinesRepository,
+      Job job,
+      int batchSize,
+      long flushIntervalMs,
+      Duration timeout) {
+    this(jobLogLinesRepository, job, batchSize, flushIntervalMs, DEFAULT_BUFFER_CAPACITY, timeout);
+  }
+
+  public JobContext(
+      JobLogLinesRepository jobLogLinesRepository,
+      Job job,
+      int batchSize,
+      long flushIntervalMs,
+      int bufferCapacity,
+      Duration timeout) {
+    this(jobLogLinesRepository, job, batchSize, flushIntervalMs, bufferCapacity, timeout, false);
+  }
+
+  public JobContext(
+      JobLogLinesRepository jobLogLinesRepository,
+      Job job,
+      int batchSize,
+      long flushIntervalMs,
+      int bufferCapacity,
+      Duration timeout,
+      boolean virtualThreads) {
+    this.jobLogLinesRepository = jobLogLinesRepository;
+    this.job = job;
+    this.batchSize = batchSize;
+    this.flushIntervalMs = flushIntervalMs;
+    this.bufferCapacity = bufferCapacity;
+    this.timeout = timeout;
+    this.virtualThreads = virtualThreads;
+  }
+
+  public Job getJob() {
+    return job;
+  }
+
+  /**
+   * @return true if the job has been cancelled or has timed out
+   */
+  public boolean isCancelled() {
+    return cancelledStatus != null;
+  }
+
+  /**
+   * @return "cancelled" or "timed_out" if the job has been stopped, otherwise null
+   */
+  public String getCancelledStatus() {
+    return cancelledStatus;
+  }
+
+  /**
+   * Throw if the job has been cancelled or has timed out.
+   *
+   * @throws JobCancelledException if the job should stop
+   */
+  public void checkCancelled() throws JobCancelledException {
+    String status = cancelledStatus;
+    if (status != null) {
+      throw new JobCancelledException(status);
+    }
+  }
+
+  /**
+   * Ask the job to stop, and interrupt its worker thread if it is running.
+   *
+   * @param status the status the job should end with, i.e. "cancelled" or "timed_out"
+   * @return false if the job had already been stopped
+   */
+  public boolean cancel(String status) {
+    workerLock.lock();
+    try {
+      if (cancelledStatus != null) {
+        return false;
+      }
+      cancelledStatus = status;
+      if (worker != null) {
+        worker.interrupt();
+      }
+      return true;
+    } finally {
+      workerLock.unlock();
+    }
+  }
+
+  /** Called by the worker thread when it starts running the job. */
+  void start() {
+    workerLock.lock();
+    try {
+      worker = Thread.currentThread();
+      if (timeout != null) {
+        deadlineNanos = System.nanoTime() + timeout.toNanos();
+      }
+    } finally {
+      workerLock.unlock();
+    }
+  }
+
+  /** Called by the worker thread when the job has finished, before it goes on to other work. */
+  void finish() {
+    workerLock.lock();
+    try {
+      worker = null;
+    } finally {
+      workerLock.unlock();
+    }
+    // clear an interrupt from a cancel that arrived just as the job was finishing
+    Thread.interrupted();
+  }
+
+  /**
+   * @param nowNanos the current value of {@code System.nanoTime()}
+   * @return true if the job is running and has passed its timeout
+   */
+  boolean isPastDeadline(long nowNanos) {
+    workerLock.lock();
+    try {
+      return worker != null && timeout != null && nowNanos - deadlineNanos > 0;
+    } finally {
+      workerLock.unlock();
+    }
+  }
+
+  /**
+   * Run a subtask for each item, on up to {@code parallelism} threads at once, and wait for them to
+   * finish.
+   *
+   * <p>Progress is written to the job's log as each tenth of the subtasks completes, as is the
+   * error of any subtask that fails. After the first failure no more subtasks are started, the ones
+   * still running are interrupted, and a {@link JobSubtasksFailedException} is thrown, so the job
+   * ends with status "error" unless it handles the exception. If the job is cancelled while it
+   * waits, the subtasks are interrupted and an {@link InterruptedException} is thrown.
+   *
+   * @param <T> the type of the items
+   * @param items the items to process
+   * @param parallelism the maximum number of subtasks that run at once, on platform and virtual
+   *     threads alike
+   * @param subtask the work to do for each item
+   * @throws JobSubtasksFailedException if any subtask failed
+   * @throws InterruptedException if the job was cancelled while the subtasks were running
+   */
+  public <T> void parallelForEach(List<T> items, int parallelism, JobSubtask<T> subtask)
+      throws JobSubtasksFailedException, InterruptedException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    int total = items.size();
+    if (total == 0) {
+      return;
+    }
+
+    String threadName = "job-" + job.getId() + "-subtask-";
+    ExecutorService pool =
+        Executors.newFixedThreadPool(
+            Math.min(parallelism, total),
+            virtualThreads
+                ? Thread.ofVirtual().name(threadName, 0).factory()
+                : Thread.ofPlatform().daemon().name(threadName, 0).factory());
+    CompletionService<Void> completions = new ExecutorCompletionService<>(pool);
+    Map<Future<Void>, Integer> indexes = new HashMap<>();
+    try {
+      for (int i = 0; i < total; i++) {
+        T item = items.get(i);
+        Future<Void> future =
+            completions.submit(
+                () -> {
+                  Usage start = METER.current();
+                  try {
+                    subtask.accept(item);
+                  } finally {
+                    subtaskUsage.accumulateAndGet(METER.current().minus(start), Usage::plus);
+                  }
+                  return null;
+                });
+        indexes.put(future, i);
+      }
+
+      int failed = 0;
+      int stopped = 0;
+      Throwable firstFailure = null;
+      for (int done = 1; done <= total; done++) {
+        Future<Void> future = completions.take();
+        try {
+          future.get();
+        } catch (CancellationException e) {
+          stopped++;
+        } catch (ExecutionException e) {
+          failed++;
+          log("Subtask %d failed: %s".formatted(indexes.get(future), e.getCause().getMessage()));
+          if (firstFailure == null) {
+            firstFailure = e.getCause();
+            indexes.keySet().forEach(f -> f.cancel(true));
+          }
+        }
+        if (done * 10L / total != (done - 1) * 10L / total) {
+          log("Subtasks: %d of %d done".formatted(done, total));
+        }
+      }
+
+      if (stopped > 0) {
+        log("Stopped %d other subtasks after a failure".formatted(stopped));
+      }
+      if (firstFailure != null) {
+        throw new JobSubtasksFailedException(failed, total, firstFailure);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * @return the CPU time and allocated bytes of all the subtasks run by {@link #parallelForEach}
+   */
+  Usage getSubtaskUsage() {
+    return subtaskUsage.get();
+  }
 
   public void log(String message) {
     log.info("Job %s: %s".formatted(job.getId(), message));
-    String previousLog = job.getLog() == null ? "" : (job.getLog() + "\n");
-    job.setLog(previousLog + message);
-    if (jobsRepository != null) jobsRepository.save(job);
+    lock.lock();
+    try {
+      if (pending.size() >= bufferCapacity) {
+        pending.removeFirst();
+        droppedLines++;
+      }
+      pending.add(
+          JobLogLine.builder()
+              .jobId(job.getId())
+              .lineNumber(nextLineNumber++)
+              .loggedAt(ZonedDateTime.now())
+              .message(message)
+              .build());
+      if ((pending.size() >= batchSize && !writeFailed)
+          || System.currentTimeMillis() - lastFlushMs >= flushIntervalMs) {
+        flush();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Write any buffered log lines to the database. If they cannot be written, they are kept for the
+   * next flush.
+   */
+  public void flush() {
+    lock.lock();
+    try {
+      lastFlushMs = System.currentTimeMillis();
+      if (pending.isEmpty()) {
+        return;
+      }
+      if (jobLogLinesRepository != null) jobLogLinesRepository.saveAll(new ArrayList<>(pending));
+      for (JobLogLine line : pending) {
+        logSize +=
+            line.getMessage() != null
+                ? line.getMessage().getBytes(StandardCharsets.UTF_8).length
+                : 0;
+      }
+      pending.clear();
+      if (droppedLines > 0) {
+        log.warn(
+            "Job {}: dropped {} log lines while the log could not be written",
+            job.getId(),
+            droppedLines);
+        droppedLines = 0;
+      }
+      writeFailed = false;
+    } catch (DataAccessException e) {
+      // until a write succeeds, only retry once per flush interval
+      writeFailed = true;
+      log.warn(
+          "Job {}: could not write {} log lines: {}", job.getId(), pending.size(), e.getMessage());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Write the buffered log lines at the end of the job, trying up to {@code attempts} times, {@code
+   * retryDelayMs} apart, while they cannot be written.
+   *
+   * @param attempts the most times to try; the lines are always tried at least once
+   * @param retryDelayMs how long to wait between attempts
+   * @return true if every line was written, false if some were lost
+   */
+  boolean flushFinal(int attempts, long retryDelayMs) {
+    for (int attempt = 1; ; attempt++) {
+      flush();
+      int left = getBufferedLineCount();
+      if (left == 0) {
+        return true;
+      }
+      if (attempt >= attempts) {
+        log.error("Job {}: lost {} log lines that could not be written", job.getId(), left);
+        return false;
+      }
+      try {
+        Thread.sleep(retryDelayMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        log.error("Job {}: lost {} log lines that could not be written", job.getId(), left);
+        return false;
+      }
+    }
+  }
+
+  /** Write the buffered log lines if {@code flushIntervalMs} has passed since the last write. */
+  void flushIfDue() {
+    lock.lock();
+    try {
+      if (System.currentTimeMillis() - lastFlushMs >= flushIntervalMs) {
+        flush();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the total size in UTF-8 bytes of the messages written to the database so far
+   */
+  long getLogSize() {
+    lock.lock();
+    try {
+      return logSize;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private int getBufferedLineCount() {
+    lock.lock();
+    try {
+      return pending.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the log lines that have not been written to the database yet, oldest first
+   */
+  List<JobLogLine> getBufferedLines() {
+    lock.lock();
+    try {
+      return new ArrayList<>(pending);
+    } finally {
+      lock.unlock();
+    }
   }
 }
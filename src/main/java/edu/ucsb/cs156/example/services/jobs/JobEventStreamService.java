@@ -0,0 +1,129 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import edu.ucsb.cs156.example.models.JobEvent;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * This service streams {@link JobEvent}s to clients as Server-Sent Events, so that dashboards can
+ * follow jobs without polling the jobs table.
+ *
+ * <p>Each subscriber may ask for the events of one job type, or of the jobs of one user, or both.
+ * Events are queued for each subscriber as they are published, without blocking the job that
+ * published them, and sent as "job" events every {@code app.jobs.events.streamPollMs}. If a
+ * subscriber falls more than {@code MAX_PENDING_EVENTS} events behind, an "overflow" event is sent
+ * and the stream is closed, so that the client can reload the jobs and subscribe again.
+ *
+ * <p>Events are published in-process, so a subscriber sees the events of the jobs saved by this
+ * instance only.
+ */
+@Service
+@Slf4j
+public class JobEventStreamService {
+
+  static final int MAX_PENDING_EVENTS = 1000;
+
+  @Value("${app.jobs.events.streamTimeoutMs:1800000}")
+  private long streamTimeoutMs;
+
+  private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+  private static class Subscription {
+    private final String jobType;
+    private final Long createdById;
+    private final SseEmitter emitter;
+    private final BlockingQueue<JobEvent> pending = new ArrayBlockingQueue<>(MAX_PENDING_EVENTS);
+    private volatile boolean overflowed;
+
+    Subscription(String jobType, Long createdById, SseEmitter emitter) {
+      this.jobType = jobType;
+      this.createdById = createdById;
+      this.emitter = emitter;
+    }
+
+    boolean wants(JobEvent event) {
+      return (jobType == null || jobType.equals(event.getJobType()))
+          && (createdById == null || createdById.equals(event.getCreatedById()));
+    }
+  }
+
+  /**
+   * Start streaming job events.
+   *
+   * @param jobType if not null, only events of jobs of this type are sent
+   * @param createdById if not null, only events of jobs created by the user with this id are sent
+   * @return the emitter that the events will be sent on
+   */
+  public SseEmitter subscribe(String jobType, Long createdById) {
+    SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+    subscribe(jobType, createdById, emitter);
+    return emitter;
+  }
+
+  void subscribe(String jobType, Long createdById, SseEmitter emitter) {
+    Subscription subscription = new Subscription(jobType, createdById, emitter);
+    subscriptions.add(subscription);
+    emitter.onCompletion(() -> subscriptions.remove(subscription));
+    emitter.onTimeout(() -> subscriptions.remove(subscription));
+    emitter.onError(e -> subscriptions.remove(subscription));
+  }
+
+  int getSubscriptionCount() {
+    return subscriptions.size();
+  }
+
+  /**
+   * Queue a job event for every subscriber that wants it. An event published inside a transaction
+   * is only queued once the transaction commits, so subscribers never hear of a job that was rolled
+   * back.
+   *
+   * @param event the event
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onJobEvent(JobEvent event) {
+    for (Subscription subscription : subscriptions) {
+      if (subscription.wants(event) && !subscription.pending.offer(event)) {
+        subscription.overflowed = true;
+      }
+    }
+  }
+
+  /** Send the queued events to every subscriber. */
+  @Scheduled(fixedDelayString = "${app.jobs.events.streamPollMs:500}")
+  public void sendPendingEvents() {
+    for (Subscription subscription : subscriptions) {
+      send(subscription);
+    }
+  }
+
+  private void send(Subscription subscription) {
+    try {
+      for (JobEvent event = subscription.pending.poll();
+          event != null;
+          event = subscription.pending.poll()) {
+        subscription.emitter.send(
+            SseEmitter.event().name("job").data(event, MediaType.APPLICATION_JSON));
+      }
+      if (subscription.overflowed) {
+        log.info("Job event stream closed: more than {} events behind", MAX_PENDING_EVENTS);
+        subscriptions.remove(subscription);
+        subscription.emitter.send(SseEmitter.event().name("overflow").data(MAX_PENDING_EVENTS));
+        subscription.emitter.complete();
+      }
+    } catch (IOException e) {
+      log.info("Job event stream closed by client: {}", e.getMessage());
+      subscriptions.remove(subscription);
+      subscription.emitter.completeWithError(e);
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A JobFactory rebuilds a job from its type and parameters, so that jobs in the durable queue can
+ * be run by any instance, including one started after the job was queued.
+ *
+ * <p>Implementations are Spring beans; the {@link JobQueueService} finds them by {@link
+ * #getJobType()}.
+ */
+public interface JobFactory {
+  /**
+   * @return the value stored in jobs.job_type for jobs built by this factory
+   */
+  String getJobType();
+
+  /**
+   * Build the job function for a queued job.
+   *
+   * @param parameters the parameters the job was queued with
+   * @return the job function
+   * @throws Exception if the parameters are not valid
+   */
+  JobContextConsumer create(JsonNode parameters) throws Exception;
+}
@@ -0,0 +1,184 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobLogArchive;
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import edu.ucsb.cs156.example.repositories.JobLogArchivesRepository;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
+import edu.ucsb.cs156.example.repositories.JobsRepository;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * This service compresses the logs of finished jobs so that they take less space in the database.
+ *
+ * <p>A job whose log lines add up to at least {@code app.jobs.log.archive.minSize} bytes, and that
+ * finished more than {@code app.jobs.log.archive.minAgeMinutes} minutes ago, has its log written to
+ * the job_log_archives table as gzip, and its rows in job_log_lines deleted, in one transaction.
+ * Jobs are found by the size of their log recorded when they finished (see {@link
+ * Job#getLogSize()}), so the lines themselves are not read to find them. Waiting a while after the
+ * job finishes leaves time for clients streaming the log to read its last lines. Small logs are
+ * left as they are, since they gain little from compression.
+ *
+ * <p>Archiving runs on the shared scheduler (see {@link
+ * edu.ucsb.cs156.example.config.JobExecutorConfig}) on the schedule given by {@code
+ * app.jobs.log.archive.cron}, in batches of {@code app.jobs.log.archive.batchSize} jobs. It is not
+ * a {@link RecurringJob}, since most runs find nothing to archive and a job record for each would
+ * only clutter the jobs table. Every instance runs it; each job is locked while its log is
+ * archived, and instances skip the jobs that another one has locked.
+ */
+@Service
+@Slf4j
+public class JobLogArchiveService {
+
+  @Autowired private JobLogLinesRepository jobLogLinesRepository;
+
+  @Autowired private JobLogArchivesRepository jobLogArchivesRepository;
+
+  @Autowired private JobsRepository jobsRepository;
+
+  @Lazy @Autowired private JobLogArchiveService self;
+
+  @Value("${app.jobs.log.archive.minSize:65536}")
+  private long minSize;
+
+  @Value("${app.jobs.log.archive.minAgeMinutes:10}")
+  private long minAgeMinutes;
+
+  @Value("${app.jobs.log.archive.batchSize:100}")
+  private int batchSize;
+
+  /**
+   * Archive the large logs of finished jobs on the schedule.
+   *
+   * @throws IOException if a log cannot be compressed
+   */
+  @Scheduled(cron = "${app.jobs.log.archive.cron:0 */10 * * * *}")
+  public void archiveOnSchedule() throws IOException {
+    int archived = archiveLogs();
+    if (archived > 0) {
+      log.info("Archived the logs of {} jobs", archived);
+    }
+  }
+
+  /**
+   * Archive the logs of every finished job whose log is large enough.
+   *
+   * @return the number of logs archived
+   * @throws IOException if a log cannot be compressed
+   */
+  public int archiveLogs() throws IOException {
+    int archived = 0;
+    List<Long> jobIds = nextBatch();
+    while (!jobIds.isEmpty()) {
+      int archivedInBatch = 0;
+      for (long jobId : jobIds) {
+        if (self.archive(jobId)) {
+          archivedInBatch++;
+        }
+      }
+      if (archivedInBatch == 0) {
+        // another instance is archiving every one of them
+        break;
+      }
+      archived += archivedInBatch;
+      jobIds = nextBatch();
+    }
+    return archived;
+  }
+
+  private List<Long> nextBatch() {
+    ZonedDateTime cutoff = ZonedDateTime.now().minusMinutes(minAgeMinutes);
+    return jobsRepository.findIdsWithLargeLogs(cutoff, minSize, PageRequest.of(0, batchSize));
+  }
+
+  /**
+   * Compress the log lines of a job into an archive, and delete the lines, unless another instance
+   * is archiving them or already has.
+   *
+   * @param jobId id of the job
+   * @return true if the log was archived
+   * @throws IOException if the log cannot be compressed
+   */
+  @Transactional
+  public boolean archive(long jobId) throws IOException {
+    if (jobsRepository.findWithLargeLogForUpdate(jobId, minSize).isEmpty()) {
+      return false;
+    }
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    long lineCount = 0;
+    long logSize = 0;
+    try (Stream<JobLogLine> lines = jobLogLinesRepository.streamByJobIdOrderByLineNumberAsc(jobId);
+        Writer gzip =
+            new OutputStreamWriter(new GZIPOutputStream(content), StandardCharsets.UTF_8)) {
+      Iterator<JobLogLine> it = lines.iterator();
+      while (it.hasNext()) {
+        String line = (lineCount > 0 ? "\n" : "") + it.next().getMessage();
+        gzip.write(line);
+        logSize += line.getBytes(StandardCharsets.UTF_8).length;
+        lineCount++;
+      }
+    }
+
+    jobLogArchivesRepository.save(
+        JobLogArchive.builder()
+            .jobId(jobId)
+            .lineCount(lineCount)
+            .logSize(logSize)
+            .archivedAt(ZonedDateTime.now())
+            .content(content.toByteArray())
+            .build());
+    jobLogLinesRepository.deleteByJobIdIn(List.of(jobId));
+    jobsRepository.clearLogSize(jobId);
+    return true;
+  }
+
+  /**
+   * Open the archived log of a job, so that it can be read a little at a time. The log is
+   * decompressed as it is read, so that a large log is never held in memory as a whole.
+   *
+   * @param jobId id of the job
+   * @return a reader of the log, which the caller must close, or empty if the log of the job is not
+   *     archived
+   * @throws UncheckedIOException if the archive cannot be decompressed
+   */
+  public Optional<Reader> open(long jobId) {
+    return jobLogArchivesRepository.findById(jobId).map(JobLogArchiveService::decompressing);
+  }
+
+  private static Reader decompressing(JobLogArchive archive) {
+    try {
+      return new InputStreamReader(
+          new GZIPInputStream(new ByteArrayInputStream(archive.getContent())),
+          StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw unreadable(archive.getJobId(), e);
+    }
+  }
+
+  static UncheckedIOException unreadable(long jobId, IOException e) {
+    return new UncheckedIOException("Archived log of job %d cannot be read".formatted(jobId), e);
+  }
+}
@@ -0,0 +1,114 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the log lines of a job, in line number order, without holding the whole log in
+ * memory.
+ *
+ * <p>The lines are read from the job_log_lines table 500 at a time, followed by the lines that were
+ * still buffered in memory when the iterator was created and have not been read from the table. The
+ * buffer should be taken before the table is first read, so that lines flushed in between are in
+ * one or the other.
+ */
+class JobLogLineIterator implements Iterator<JobLogLine> {
+
+  static final int PAGE_SIZE = 500;
+
+  private final JobLogLinesRepository jobLogLinesRepository;
+  private final long jobId;
+  private final List<JobLogLine> buffered;
+
+  private long nextLineNumber;
+  private List<JobLogLine> page = List.of();
+  private int index;
+  private boolean tableRead;
+
+  /**
+   * @param jobLogLinesRepository the repository to read the lines from
+   * @param jobId id of the job
+   * @param fromLine the first line number to return
+   * @param buffered the lines of the job still buffered in memory, oldest first
+   */
+  JobLogLineIterator(
+      JobLogLinesRepository jobLogLinesRepository,
+      long jobId,
+      long fromLine,
+      List<JobLogLine> buffered) {
+    this.jobLogLinesRepository = jobLogLinesRepository;
+    this.jobId = jobId;
+    this.nextLineNumber = fromLine;
+    this.buffered = buffered;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (index < page.size() || tableRead) {
+      return index < page.size();
+    }
+    page =
+        jobLogLinesRepository.findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+            jobId, nextLineNumber);
+    index = 0;
+    if (page.size() < PAGE_SIZE) {
+      tableRead = true;
+      long afterTable =
+          page.isEmpty() ? nextLineNumber : page.get(page.size() - 1).getLineNumber() + 1;
+      List<JobLogLine> rest = new ArrayList<>(page);
+      buffered.stream().filter(line -> line.getLineNumber() >= afterTable).forEach(rest::add);
+      page = rest;
+    }
+    return index < page.size();
+  }
+
+  @Override
+  public JobLogLine next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    JobLogLine line = page.get(index++);
+    nextLineNumber = line.getLineNumber() + 1;
+    return line;
+  }
+
+  /**
+   * @return a reader of the messages of the remaining lines, separated by newlines
+   */
+  Reader asReader() {
+    return new Reader() {
+      private String text = "";
+      private int position;
+      private boolean first = true;
+
+      @Override
+      public int read(char[] buffer, int offset, int length) {
+        if (length == 0) {
+          return 0;
+        }
+        while (position == text.length()) {
+          if (!hasNext()) {
+            return -1;
+          }
+          text = (first ? "" : "\n") + next().getMessage();
+          position = 0;
+          first = false;
+        }
+        int count = Math.min(length, text.length() - position);
+        text.getChars(position, position + count, buffer, offset);
+        position += count;
+        return count;
+      }
+
+      @Override
+      public void close() {
+        // nothing to release: each page is read in a query of its own
+      }
+    };
+  }
+}
@@ -0,0 +1,136 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.JobLogMatch;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
+import edu.ucsb.cs156.example.repositories.JobsRepository;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * This service searches job logs for lines that match a pattern.
+ *
+ * <p>The log is read a page of lines at a time from the job_log_lines table (followed by any lines
+ * still buffered in memory), or a line at a time from its compressed archive, and the search stops
+ * as soon as the limit on matches is reached or the end of the line range is passed. So only the
+ * matching lines are ever held in memory, however long the log is.
+ *
+ * <p>Line numbers are those of the log lines. In archived logs, and in the log column of jobs run
+ * before log lines were stored separately, they are counted from 0 down the text of the log.
+ */
+@Service
+public class JobLogSearchService {
+
+  @Autowired private JobsRepository jobsRepository;
+
+  @Autowired private JobLogLinesRepository jobLogLinesRepository;
+
+  @Autowired private JobLogArchiveService jobLogArchiveService;
+
+  @Autowired private JobService jobService;
+
+  /**
+   * Search the log of a job.
+   *
+   * @param jobId id of the job
+   * @param pattern the pattern to look for anywhere in each line
+   * @param fromLine the first line number to search
+   * @param toLine the last line number to search
+   * @param limit the most matches to return
+   * @return the matching lines, in order
+   * @throws EntityNotFoundException if there is no such job
+   * @throws UncheckedIOException if the archived log cannot be read
+   */
+  public List<JobLogMatch> search(
+      long jobId, Pattern pattern, long fromLine, long toLine, int limit) {
+    Matches matches = new Matches(pattern, fromLine, toLine, limit);
+    if (searchLines(jobId, matches)) {
+      return matches.found;
+    }
+
+    Optional<Reader> archived = jobLogArchiveService.open(jobId);
+    if (archived.isPresent()) {
+      searchText(jobId, archived.get(), matches);
+      return matches.found;
+    }
+    Job job =
+        jobsRepository
+            .findById(jobId)
+            .orElseThrow(() -> new EntityNotFoundException(Job.class, jobId));
+    if (job.getLog() != null) {
+      searchText(jobId, new StringReader(job.getLog()), matches);
+    }
+    return matches.found;
+  }
+
+  /**
+   * @return false if no log lines were found in the line range
+   */
+  private boolean searchLines(long jobId, Matches matches) {
+    JobLogLineIterator lines =
+        new JobLogLineIterator(
+            jobLogLinesRepository, jobId, matches.fromLine, jobService.getBufferedLogLines(jobId));
+    boolean found = false;
+    while (lines.hasNext()) {
+      JobLogLine line = lines.next();
+      found = true;
+      if (!matches.add(line.getLineNumber(), line.getMessage())) {
+        break;
+      }
+    }
+    return found;
+  }
+
+  private static void searchText(long jobId, Reader text, Matches matches) {
+    try (BufferedReader reader = new BufferedReader(text)) {
+      long lineNumber = 0;
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (!matches.add(lineNumber++, line)) {
+          break;
+        }
+      }
+    } catch (IOException e) {
+      throw JobLogArchiveService.unreadable(jobId, e);
+    }
+  }
+
+  /** The matches found so far, and when to stop looking for more. */
+  private static class Matches {
+    private final Pattern pattern;
+    private final long fromLine;
+    private final long toLine;
+    private final int limit;
+    private final List<JobLogMatch> found = new ArrayList<>();
+
+    Matches(Pattern pattern, long fromLine, long toLine, int limit) {
+      this.pattern = pattern;
+      this.fromLine = fromLine;
+      this.toLine = toLine;
+      this.limit = limit;
+    }
+
+    /**
+     * @return false if there is no need to look at any further lines
+     */
+    boolean add(long lineNumber, String message) {
+      if (lineNumber > toLine) {
+        return false;
+      }
+      if (lineNumber >= fromLine && message != null && pattern.matcher(message).find()) {
+        found.add(JobLogMatch.builder().lineNumber(lineNumber).message(message).build());
+      }
+      return found.size() < limit;
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
+import edu.ucsb.cs156.example.repositories.JobsRepository;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * This service streams job logs to clients as Server-Sent Events.
+ *
+ * <p>Each subscriber remembers the next line number it needs. On every poll, the new lines of the
+ * job are read from the job_log_lines table, followed by those of a job running on this instance
+ * that are still buffered in memory (see {@link JobLogLineIterator}), and sent as "log" events
+ * whose id is the line number, so that a client can resume from where it left off. Once the job has
+ * reached a terminal status and all of its lines have been sent, a final "status" event is sent and
+ * the stream is closed.
+ *
+ * <p>The lines of a finished job may have been moved to its archive (see {@link
+ * JobLogArchiveService}); in that case the remaining lines are read from the archive, where line i
+ * of the text is line number i, before the stream is closed.
+ */
+@Service
+@Slf4j
+public class JobLogStreamService {
+
+  @Autowired private JobsRepository jobsRepository;
+
+  @Autowired private JobLogLinesRepository jobLogLinesRepository;
+
+  @Autowired private JobLogArchiveService jobLogArchiveService;
+
+  @Autowired private JobService jobService;
+
+  @Value("${app.jobs.log.streamTimeoutMs:1800000}")
+  private long streamTimeoutMs;
+
+  private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+  private static class Subscription {
+    private final long jobId;
+    private final SseEmitter emitter;
+    private long nextLineNumber;
+
+    Subscription(long jobId, long nextLineNumber, SseEmitter emitter) {
+      this.jobId = jobId;
+      this.nextLineNumber = nextLineNumber;
+      this.emitter = emitter;
+    }
+  }
+
+  /**
+   * Start streaming the log of a job.
+   *
+   * @param jobId id of the job
+   * @param offset the first line number to send
+   * @return the emitter that the lines will be sent on
+   */
+  public SseEmitter subscribe(long jobId, long offset) {
+    SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+    subscribe(jobId, offset, emitter);
+    return emitter;
+  }
+
+  void subscribe(long jobId, long offset, SseEmitter emitter) {
+    Subscription subscription = new Subscription(jobId, offset, emitter);
+    subscriptions.add(subscription);
+    emitter.onCompletion(() -> subscriptions.remove(subscription));
+    emitter.onTimeout(() -> subscriptions.remove(subscription));
+    emitter.onError(e -> subscriptions.remove(subscription));
+  }
+
+  int getSubscriptionCount() {
+    return subscriptions.size();
+  }
+
+  /** Send any new log lines to every subscriber. */
+  @Scheduled(fixedDelayString = "${app.jobs.log.streamPollMs:500}")
+  public void pollSubscriptions() {
+    for (Subscription subscription : subscriptions) {
+      poll(subscription);
+    }
+  }
+
+  private void poll(Subscription subscription) {
+    try {
+      // Read the status first: a job writes all of its lines before it saves a terminal status,
+      // so if the status is terminal, the lines read below are the last ones.
+      String status = jobsRepository.findStatusById(subscription.jobId).orElse(null);
+
+      JobLogLineIterator lines =
+          new JobLogLineIterator(
+              jobLogLinesRepository,
+              subscription.jobId,
+              subscription.nextLineNumber,
+              jobService.getBufferedLogLines(subscription.jobId));
+      while (lines.hasNext()) {
+        JobLogLine line = lines.next();
+        subscription.emitter.send(
+            SseEmitter.event()
+                .id(Long.toString(line.getLineNumber()))
+                .name("log")
+                .data(line.getMessage()));
+        subscription.nextLineNumber = line.getLineNumber() + 1;
+      }
+
+      if (status == null || JobService.TERMINAL_STATUSES.contains(status)) {
+        subscriptions.remove(subscription);
+        if (status != null) {
+          sendArchivedLines(subscription);
+        }
+        subscription.emitter.send(
+            SseEmitter.event().name("status").data(status == null ? "deleted" : status));
+        subscription.emitter.complete();
+      }
+    } catch (IOException e) {
+      log.info("Job {}: log stream closed by client: {}", subscription.jobId, e.getMessage());
+      subscriptions.remove(subscription);
+      subscription.emitter.completeWithError(e);
+    }
+  }
+
+  private void sendArchivedLines(Subscription subscription) throws IOException {
+    Optional<Reader> archived = jobLogArchiveService.open(subscription.jobId);
+    if (archived.isEmpty()) {
+      return;
+    }
+    try (BufferedReader reader = new BufferedReader(archived.get())) {
+      long lineNumber = 0;
+      for (String line = reader.readLine(); line != null; line = reader.readLine(), lineNumber++) {
+        if (lineNumber >= subscription.nextLineNumber) {
+          subscription.emitter.send(
+              SseEmitter.event().id(Long.toString(lineNumber)).name("log").data(line));
+          subscription.nextLineNumber = lineNumber + 1;
+        }
+      }
+    }
+  }
+}
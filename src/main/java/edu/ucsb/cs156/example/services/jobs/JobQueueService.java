@@ -0,0 +1,356 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobPriority;
+import edu.ucsb.cs156.example.entities.User;
+import edu.ucsb.cs156.example.errors.JobRateLimitException;
+import edu.ucsb.cs156.example.repositories.JobsRepository;
+import edu.ucsb.cs156.example.services.CurrentUserService;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The JobQueueService keeps jobs in the database until a worker on some instance is free to run
+ * them, so that queued work survives restarts and is shared between instances.
+ *
+ * <p>A job is queued by {@link #enqueue(String, Object)} with the type of a {@link JobFactory} and
+ * its parameters as JSON. Every instance polls the queue and claims as many jobs as it has idle
+ * workers, locking the rows it claims so that no two instances claim the same job.
+ *
+ * <p>A claimed job holds a lease owned by the claiming instance, which the {@link JobService}
+ * renews with a heartbeat while the job runs. If an instance dies, its leases expire and any
+ * instance's recovery pass puts the jobs back in the queue (or fails them once they have been
+ * attempted {@code app.jobs.queue.maxAttempts} times). Recovery also runs at startup, when the
+ * instance first expires any leases still held under its own id; that only finds anything when
+ * {@code app.jobs.queue.instanceId} is the same across restarts.
+ *
+ * <p>Steps of a workflow (see {@link WorkflowService}) wait with status "waiting" until each poll
+ * finds that their dependencies have completed, and are then queued like any other job.
+ */
+@Service
+@Slf4j
+public class JobQueueService {
+
+  @Autowired private JobsRepository jobsRepository;
+
+  @Autowired private JobService jobService;
+
+  @Autowired private CurrentUserService currentUserService;
+
+  @Autowired private JobRateLimiter jobRateLimiter;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  @Lazy @Autowired private JobQueueService self;
+
+  private Map<String, JobFactory> jobFactories = Map.of();
+
+  @Value("${app.jobs.queue.maxAttempts:3}")
+  private int maxAttempts;
+
+  @Autowired
+  void setJobFactories(List<JobFactory> factories) {
+    jobFactories =
+        factories.stream().collect(Collectors.toMap(JobFactory::getJobType, Function.identity()));
+  }
+
+  /**
+   * Put a job in the durable queue.
+   *
+   * @param jobType the type of the {@link JobFactory} that will run the job
+   * @param parameters the parameters for the factory; they are stored as JSON
+   * @return the queued job
+   * @throws JsonProcessingException if the parameters cannot be written as JSON
+   */
+  public Job enqueue(String jobType, Object parameters) throws JsonProcessingException {
+    return enqueue(jobType, parameters, false);
+  }
+
+  /**
+   * Put a job in the durable queue, unless (when {@code coalesce} is true) a job of the same type
+   * with the same parameters is already queued or running.
+   *
+   * @param jobType the type of the {@link JobFactory} that will run the job
+   * @param parameters the parameters for the factory; they are stored as JSON
+   * @param coalesce whether to return a job already doing the same work instead of queueing another
+   * @return the queued job, or the job already doing the same work
+   * @throws JsonProcessingException if the parameters cannot be written as JSON
+   */
+  public Job enqueue(String jobType, Object parameters, boolean coalesce)
+      throws JsonProcessingException {
+    return enqueue(jobType, parameters, coalesce, JobPriority.INTERACTIVE);
+  }
+
+  /**
+   * Put a job in the durable queue with the given priority, unless (when {@code coalesce} is true)
+   * a job of the same type with the same parameters is already queued or running.
+   *
+   * @param jobType the type of the {@link JobFactory} that will run the job
+   * @param parameters the parameters for the factory; they are stored as JSON
+   * @param coalesce whether to return a job already doing the same work instead of queueing another
+   * @param priority which pool of workers runs the job
+   * @return the queued job, or the job already doing the same work
+   * @throws JsonProcessingException if the parameters cannot be written as JSON
+   * @throws JobRateLimitException if the user has launched too many jobs of this type recently
+   */
+  public Job enqueue(String jobType, Object parameters, boolean coalesce, JobPriority priority)
+      throws JsonProcessingException {
+    return launch(newJob(jobType, parameters, coalesce, priority));
+  }
+
+  /**
+   * Launch a job built by {@link #newJob}: unless the same work is already in flight, take a token
+   * for it from the {@link JobRateLimiter}, then save it (publishing its creation). A launch that
+   * is coalesced into a job in flight takes no token, or gives it back if the other job got in
+   * flight while this one was being saved.
+   *
+   * @param job the new job
+   * @return the saved job, or the job already doing the same work
+   * @throws JobRateLimitException if the user has launched too many jobs of this type recently
+   */
+  Job launch(Job job) {
+    Optional<Job> inFlight = jobService.findInFlight(job.getCoalesceKey());
+    if (inFlight.isPresent()) {
+      return inFlight.get();
+    }
+    jobRateLimiter.acquire(job.getJobType(), job.getCreatedBy());
+    inFlight = jobService.saveOrFindInFlight(job);
+    if (inFlight.isPresent()) {
+      jobRateLimiter.release(List.of(job.getJobType()), job.getCreatedBy());
+      return inFlight.get();
+    }
+    return job;
+  }
+
+  /**
+   * Launch several jobs built by {@link #newJob} for the same user, such as the steps of a
+   * workflow, so that either all of them are launched or none is. The tokens for all of them are
+   * taken before any is saved; if the transaction saving them rolls back, the tokens are given
+   * back, and since the events of a job are only published once it commits, no one hears of them.
+   *
+   * @param jobs the new jobs, in the order they should be saved
+   * @throws JobRateLimitException if the user has launched too many jobs of one of the types
+   *     recently
+   */
+  void launchAll(List<Job> jobs) {
+    List<String> jobTypes = jobs.stream().map(Job::getJobType).toList();
+    User user = jobs.get(0).getCreatedBy();
+    jobRateLimiter.acquire(jobTypes, user);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+              if (status != STATUS_COMMITTED) {
+                jobRateLimiter.release(jobTypes, user);
+              }
+            }
+          });
+    }
+    jobs.forEach(jobService::saveUnlessInFlight);
+  }
+
+  /**
+   * Build, but do not save, a job for the durable queue.
+   *
+   * @param jobType the type of the {@link JobFactory} that will run the job
+   * @param parameters the parameters for the factory; they are stored as JSON
+   * @param coalesce whether to set the job's coalesce key
+   * @param priority which pool of workers runs the job
+   * @return the job, with status "queued"
+   * @throws JsonProcessingException if the parameters cannot be written as JSON
+   */
+  Job newJob(String jobType, Object parameters, boolean coalesce, JobPriority priority)
+      throws JsonProcessingException {
+    if (!jobFactories.containsKey(jobType)) {
+      throw new IllegalArgumentException("Unknown job type: " + jobType);
+    }
+    return Job.builder()
+        .createdBy(currentUserService.getUser())
+        .status("queued")
+        .priority(priority)
+        .jobType(jobType)
+        .parameters(objectMapper.writeValueAsString(parameters))
+        .coalesceKey(coalesce ? JobService.coalesceKey(jobType, parameters) : null)
+        .build();
+  }
+
+  /**
+   * Queue the workflow steps whose dependencies have completed; then, for each priority class,
+   * claim as many queued jobs as it has idle workers, and start them.
+   */
+  @Scheduled(fixedDelayString = "${app.jobs.queue.pollMs:1000}")
+  public void pollQueue() {
+    advanceWorkflows();
+    for (JobPriority priority : JobPriority.values()) {
+      int idle = jobService.getIdleWorkerCount(priority);
+      if (idle == 0) {
+        continue;
+      }
+      for (Job job : self.claimQueuedJobs(priority, idle)) {
+        if (!jobService.runQueuedJob(job, jobFunction(job))) {
+          // another job took the worker first; the rest stay in the queue for the next poll
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Cancel the workflow steps that depend on a step that did not complete, repeating until
+   * everything downstream of it is cancelled, then queue the steps whose dependencies have all
+   * completed. Doing this in the poll, rather than when a step finishes, also covers steps that
+   * were failed by lease recovery or finished on another instance.
+   */
+  private void advanceWorkflows() {
+    List<Job> steps = self.advanceWorkflowSteps();
+    long released = steps.stream().filter(job -> "queued".equals(job.getStatus())).count();
+    if (released > 0) {
+      log.info("Queued {} workflow steps whose dependencies have completed", released);
+    }
+    steps.forEach(jobService::publishEvent);
+  }
+
+  /**
+   * Cancel or queue the workflow steps that no longer need to wait (see {@link
+   * #advanceWorkflows()}). The rows of the steps are locked until the transaction ends, and the
+   * changes to the (managed) jobs are written when it commits.
+   *
+   * @return the steps that were cancelled or queued, with their new status
+   */
+  @Transactional
+  public List<Job> advanceWorkflowSteps() {
+    ZonedDateTime now = ZonedDateTime.now();
+    List<Job> steps = new ArrayList<>();
+    List<Job> blocked = jobsRepository.findBlockedWorkflowStepsForUpdate();
+    while (!blocked.isEmpty()) {
+      for (Job job : blocked) {
+        job.setStatus("cancelled");
+        job.setFinishedAt(now);
+      }
+      steps.addAll(blocked);
+      // the query flushes the cancellations first, so it finds the steps that depend on them
+      blocked = jobsRepository.findBlockedWorkflowStepsForUpdate();
+    }
+    for (Job job : jobsRepository.findReadyWorkflowStepsForUpdate()) {
+      job.setStatus("queued");
+      steps.add(job);
+    }
+    return steps;
+  }
+
+  /**
+   * Claim queued jobs for this instance. The claimed rows are locked until the transaction ends,
+   * and the changes to the (managed) jobs are written when it commits, so by the time the locks are
+   * released the jobs are marked as running under this instance's lease.
+   *
+   * @param priority the priority class of the jobs to claim
+   * @param max the maximum number of jobs to claim
+   * @return the claimed jobs
+   */
+  @Transactional
+  public List<Job> claimQueuedJobs(JobPriority priority, int max) {
+    List<Job> jobs = jobsRepository.findQueuedForUpdate(priority, PageRequest.of(0, max));
+    for (Job job : jobs) {
+      job.setStatus("running");
+      job.setAttempts(job.getAttempts() + 1);
+      jobService.acquireLease(job);
+    }
+    return jobs;
+  }
+
+  private JobContextConsumer jobFunction(Job job) {
+    try {
+      JobFactory factory = jobFactories.get(job.getJobType());
+      if (factory == null) {
+        throw new IllegalStateException("Unknown job type: " + job.getJobType());
+      }
+      return factory.create(objectMapper.readTree(job.getParameters()));
+    } catch (Exception e) {
+      // run a job that fails straight away, so the error ends up in the job's log
+      return ctx -> {
+        throw e;
+      };
+    }
+  }
+
+  /**
+   * Recover jobs left behind by an earlier run of this instance, then any others.
+   *
+   * <p>An earlier run is only recognised by its instance id, so this requires a stable {@code
+   * app.jobs.queue.instanceId} (set with {@code JOBS_INSTANCE_ID}). With the default, a random id
+   * on every start, no lease matches and the jobs of the earlier run wait for their leases to
+   * expire like those of any other stopped instance.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void recoverOnStartup() {
+    int expired = jobsRepository.expireLeases(jobService.getInstanceId(), ZonedDateTime.now());
+    if (expired > 0) {
+      log.warn("Expired {} leases left over from a previous run of this instance", expired);
+    }
+    recoverExpiredLeases();
+  }
+
+  /** Requeue (or fail) jobs whose lease has expired because their instance has stopped. */
+  @Scheduled(
+      fixedDelayString = "${app.jobs.queue.recoveryMs:60000}",
+      initialDelayString = "${app.jobs.queue.recoveryMs:60000}")
+  public void recoverExpiredLeases() {
+    List<Job> jobs = self.recoverJobsWithExpiredLeases(ZonedDateTime.now());
+    if (!jobs.isEmpty()) {
+      long requeued = jobs.stream().filter(job -> "queued".equals(job.getStatus())).count();
+      log.warn(
+          "Recovered jobs with expired leases: {} requeued, {} failed",
+          requeued,
+          jobs.size() - requeued);
+    }
+    jobs.forEach(jobService::publishEvent);
+  }
+
+  /**
+   * Put jobs in the durable queue whose lease has expired back in the queue, unless they have
+   * already been attempted {@code app.jobs.queue.maxAttempts} times, and mark the rest (including
+   * jobs that were not in the durable queue, which cannot be run again) as failed, finished at
+   * {@code now}. Every recovered job is marked as updated at {@code now}, which is what the {@link
+   * JobRetentionService} ages jobs by. The rows are locked until the transaction ends, and the
+   * changes to the (managed) jobs are written when it commits.
+   *
+   * @param now the current time
+   * @return the recovered jobs, with their new status
+   */
+  @Transactional
+  public List<Job> recoverJobsWithExpiredLeases(ZonedDateTime now) {
+    List<Job> jobs = jobsRepository.findExpiredLeasesForUpdate(now);
+    for (Job job : jobs) {
+      if (job.getParameters() != null && job.getAttempts() < maxAttempts) {
+        job.setStatus("queued");
+      } else {
+        job.setStatus("error");
+        job.setCoalesceKey(null);
+        job.setFinishedAt(now);
+      }
+      job.setUpdatedAt(now);
+      JobService.releaseLease(job);
+    }
+    return jobs;
+  }
+}
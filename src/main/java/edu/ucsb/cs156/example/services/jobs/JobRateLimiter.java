@@ -0,0 +1,236 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import edu.ucsb.cs156.example.entities.User;
+import edu.ucsb.cs156.example.errors.JobRateLimitException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+/**
+ * This service limits how fast users can launch jobs, with token buckets.
+ *
+ * <p>A launch takes a token from each of these buckets, and is refused if any of them is empty:
+ *
+ * <ul>
+ *   <li>the bucket of the user for the job type, limited by {@code
+ *       app.jobs.rateLimit.types.<jobType>.perUserPerMinute} and {@code perUserBurst}, or by {@code
+ *       app.jobs.rateLimit.perUserPerMinute} and {@code perUserBurst} for types without their own;
+ *   <li>the bucket of the job type, shared by all users, limited by {@code
+ *       app.jobs.rateLimit.types.<jobType>.globalPerMinute} and {@code globalBurst} (no limit if
+ *       they are not set);
+ *   <li>the global bucket, shared by all users and job types, limited by {@code
+ *       app.jobs.rateLimit.globalPerMinute} and {@code globalBurst}.
+ * </ul>
+ *
+ * <p>A bucket holds up to {@code burst} tokens, and gets {@code perMinute} new tokens a minute. A
+ * rate of 0 (the default) means no limit. Only launches by a logged-in user are limited, so jobs
+ * started by the application itself, such as recurring jobs, always start. The buckets are kept in
+ * memory, so each instance enforces the limits on its own launches; buckets that have refilled
+ * completely are dropped, since a new bucket starts out full anyway.
+ */
+@Service
+public class JobRateLimiter {
+
+  private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  @Autowired private Environment environment;
+
+  private LongSupplier nanoClock = System::nanoTime;
+
+  private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+  /** When the buckets were last swept, or {@link Long#MIN_VALUE} if they have not been yet. */
+  private final AtomicLong sweptAt = new AtomicLong(Long.MIN_VALUE);
+
+  /**
+   * Take a token for a launch from the user's bucket for the job type, the bucket of the job type,
+   * and the global bucket.
+   *
+   * @param jobType the type of job being launched, as saved in {@code Job.jobType}
+   * @param user the user launching it, or null if it is launched by the application itself
+   * @throws JobRateLimitException if any of the buckets is empty
+   */
+  public void acquire(String jobType, User user) {
+    acquire(List.of(jobType), user);
+  }
+
+  /**
+   * Take the tokens for several launches by the same user at once: either all of them are taken,
+   * or, if any bucket runs out, none is.
+   *
+   * @param jobTypes the type of each job being launched, as saved in {@code Job.jobType}
+   * @param user the user launching them, or null if they are launched by the application itself
+   * @throws JobRateLimitException if any of the buckets runs out
+   */
+  public void acquire(List<String> jobTypes, User user) {
+    if (user == null) {
+      return;
+    }
+    long now = nanoClock.getAsLong();
+    sweep(now);
+    List<Limit> taken = new ArrayList<>();
+    for (String jobType : jobTypes) {
+      for (Limit limit : limits(jobType, user)) {
+        long waitNanos = tryTake(limit, now);
+        if (waitNanos > 0) {
+          taken.forEach(this::giveBack);
+          long seconds =
+              TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1);
+          throw new JobRateLimitException(jobType, seconds);
+        }
+        taken.add(limit);
+      }
+    }
+  }
+
+  /**
+   * Give back the tokens taken by {@link #acquire(List, User)} for launches that did not happen,
+   * e.g. because the transaction saving the jobs rolled back.
+   *
+   * @param jobTypes the type of each job that was not launched
+   * @param user the user who tried to launch them, or null
+   */
+  public void release(List<String> jobTypes, User user) {
+    if (user == null) {
+      return;
+    }
+    for (String jobType : jobTypes) {
+      limits(jobType, user).forEach(this::giveBack);
+    }
+  }
+
+  /** A bucket of {@link #buckets}, and the limits it is created with. */
+  private record Limit(String key, long perMinute, long burst) {}
+
+  /**
+   * @return the limits that apply to a launch, leaving out those without a rate, which need no
+   *     bucket
+   */
+  private List<Limit> limits(String jobType, User user) {
+    String prefix = "app.jobs.rateLimit.types." + jobType + ".";
+    return Stream.of(
+            new Limit(
+                jobType + "|user:" + user.getId(),
+                limit(prefix + "perUserPerMinute", "app.jobs.rateLimit.perUserPerMinute"),
+                limit(prefix + "perUserBurst", "app.jobs.rateLimit.perUserBurst")),
+            new Limit(
+                jobType + "|all",
+                limit(prefix + "globalPerMinute", null),
+                limit(prefix + "globalBurst", null)),
+            new Limit(
+                "global",
+                limit("app.jobs.rateLimit.globalPerMinute", null),
+                limit("app.jobs.rateLimit.globalBurst", null)))
+        .filter(limit -> limit.perMinute() > 0)
+        .toList();
+  }
+
+  /**
+   * Take a token from the bucket of a limit, creating the bucket if there is none. This runs inside
+   * {@link ConcurrentHashMap#compute}, so that {@link #sweep(long)} cannot remove the bucket while
+   * the token is being taken.
+   *
+   * @return 0 if a token was taken; otherwise how many nanoseconds until one is available
+   */
+  private long tryTake(Limit limit, long now) {
+    long[] waitNanos = new long[1];
+    buckets.compute(
+        limit.key(),
+        (key, bucket) -> {
+          TokenBucket current =
+              bucket != null ? bucket : new TokenBucket(limit.perMinute(), limit.burst(), now);
+          waitNanos[0] = current.tryTake(now);
+          return current;
+        });
+    return waitNanos[0];
+  }
+
+  /** Give back a token; a bucket that has been swept away was full, so there is nothing to do. */
+  private void giveBack(Limit limit) {
+    buckets.computeIfPresent(
+        limit.key(),
+        (key, bucket) -> {
+          bucket.giveBack();
+          return bucket;
+        });
+  }
+
+  /**
+   * Remove the buckets that have refilled completely, at most once a minute. A full bucket is the
+   * same as a new one, so removing it changes no limit, and the map only holds the buckets of users
+   * and job types launched recently.
+   */
+  private void sweep(long now) {
+    long last = sweptAt.get();
+    if (last != Long.MIN_VALUE && now - last < SWEEP_INTERVAL_NANOS
+        || !sweptAt.compareAndSet(last, now)) {
+      return;
+    }
+    for (String key : buckets.keySet()) {
+      buckets.computeIfPresent(key, (k, bucket) -> bucket.isFull(now) ? null : bucket);
+    }
+  }
+
+  /**
+   * @return the number of buckets held in memory
+   */
+  int getBucketCount() {
+    return buckets.size();
+  }
+
+  private long limit(String name, String fallbackName) {
+    long fallback =
+        fallbackName != null ? environment.getProperty(fallbackName, Long.class, 0L) : 0L;
+    return environment.getProperty(name, Long.class, fallback);
+  }
+
+  /** A bucket that refills continuously at a fixed rate, up to its burst size. */
+  static class TokenBucket {
+    private final double burst;
+    private final double nanosPerToken;
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(long perMinute, long burst, long now) {
+      this.burst = Math.max(burst, 1);
+      this.nanosPerToken = perMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / (double) perMinute : 0;
+      this.tokens = this.burst;
+      this.refilledAt = now;
+    }
+
+    /**
+     * @return 0 if a token was taken; otherwise how many nanoseconds until one is available
+     */
+    synchronized long tryTake(long now) {
+      if (nanosPerToken == 0) {
+        return 0;
+      }
+      tokens = Math.min(burst, tokens + (now - refilledAt) / nanosPerToken);
+      refilledAt = now;
+      if (tokens >= 1) {
+        tokens -= 1;
+        return 0;
+      }
+      return (long) Math.ceil((1 - tokens) * nanosPerToken);
+    }
+
+    synchronized void giveBack() {
+      tokens = Math.min(burst, tokens + 1);
+    }
+
+    /**
+     * @return true if the bucket has refilled to its burst size by {@code now}
+     */
+    synchronized boolean isFull(long now) {
+      return nanosPerToken == 0 || tokens + (now - refilledAt) / nanosPerToken >= burst;
+    }
+  }
+}
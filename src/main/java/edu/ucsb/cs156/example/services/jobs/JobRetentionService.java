@@ -0,0 +1,109 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import edu.ucsb.cs156.example.repositories.JobLogArchivesRepository;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
+import edu.ucsb.cs156.example.repositories.JobsRepository;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+/**
+ * This service deletes old job records so that the jobs table stays small.
+ *
+ * <p>Only jobs in a terminal status are deleted. A job is deleted if it was last updated more than
+ * {@code app.jobs.retention.maxAgeDays} days ago, or if there are more than {@code
+ * app.jobs.retention.maxCountPerStatus} newer jobs with the same status. The steps of a workflow
+ * are kept until none of its steps is queued, running or waiting any more, so that a step is never
+ * started because a dependency it was waiting for was deleted; they are then deleted with the rest.
+ *
+ * <p>Deletes are done in batches of {@code app.jobs.retention.batchSize} jobs. Each batch is one
+ * set-based DELETE of log lines, one of archived logs and one of jobs, each in its own short
+ * transaction, so the sweep never holds locks on a large part of the table.
+ *
+ * <p>The sweep runs as a {@link RecurringJob} on the schedule given by {@code
+ * app.jobs.retention.cron}, so it runs on one instance only and leaves a job record and log.
+ */
+@Service
+public class JobRetentionService implements RecurringJob {
+
+  @Autowired private JobsRepository jobsRepository;
+
+  @Autowired private JobLogLinesRepository jobLogLinesRepository;
+
+  @Autowired private JobLogArchivesRepository jobLogArchivesRepository;
+
+  @Value("${app.jobs.retention.cron:0 0 3 * * *}")
+  private String cron;
+
+  @Value("${app.jobs.retention.maxAgeDays:30}")
+  private int maxAgeDays;
+
+  @Value("${app.jobs.retention.maxCountPerStatus:1000}")
+  private int maxCountPerStatus;
+
+  @Value("${app.jobs.retention.batchSize:100}")
+  private int batchSize;
+
+  @Override
+  public String getName() {
+    return "JobRetention";
+  }
+
+  @Override
+  public String getCron() {
+    return cron;
+  }
+
+  /** Run the sweep as a job. */
+  @Override
+  public void accept(JobContext ctx) {
+    int deleted = sweep();
+    ctx.log("Job retention sweep deleted %d jobs".formatted(deleted));
+  }
+
+  /**
+   * Delete the jobs that fall outside the retention policy.
+   *
+   * @return the number of jobs deleted
+   */
+  public int sweep() {
+    ZonedDateTime cutoff = ZonedDateTime.now().minusDays(maxAgeDays);
+    int deleted =
+        deleteInBatches(
+            () ->
+                jobsRepository.findIdsByStatusInAndUpdatedAtBefore(
+                    JobService.TERMINAL_STATUSES, cutoff, PageRequest.of(0, batchSize)));
+
+    for (String status : JobService.TERMINAL_STATUSES) {
+      // the newest job that is over the limit; it and every older job are deleted
+      List<Long> firstOverLimit =
+          jobsRepository.findIdsByStatusNewestFirst(status, PageRequest.of(maxCountPerStatus, 1));
+      if (firstOverLimit.isEmpty()) {
+        continue;
+      }
+      long maxId = firstOverLimit.get(0);
+      deleted +=
+          deleteInBatches(
+              () ->
+                  jobsRepository.findIdsByStatusAndIdAtMost(
+                      status, maxId, PageRequest.of(0, batchSize)));
+    }
+    return deleted;
+  }
+
+  private int deleteInBatches(Supplier<List<Long>> nextBatch) {
+    int deleted = 0;
+    List<Long> ids = nextBatch.get();
+    while (!ids.isEmpty()) {
+      jobLogLinesRepository.deleteByJobIdIn(ids);
+      jobLogArchivesRepository.deleteByJobIdIn(ids);
+      deleted += jobsRepository.deleteByIdIn(ids);
+      ids = nextBatch.get();
+    }
+    return deleted;
+  }
+}
@@ -1,53 +1,594 @@
 package edu.ucsb.cs156.example.services.jobs;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import edu.ucsb.cs156.example.config.JobExecutorConfig;
 import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import edu.ucsb.cs156.example.entities.JobPriority;
+import edu.ucsb.cs156.example.entities.User;
+import edu.ucsb.cs156.example.errors.JobQueueFullException;
+import edu.ucsb.cs156.example.errors.JobRateLimitException;
+import edu.ucsb.cs156.example.models.JobEvent;
+import edu.ucsb.cs156.example.models.JobExecutorStatus;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
 import edu.ucsb.cs156.example.repositories.JobsRepository;
 import edu.ucsb.cs156.example.services.CurrentUserService;
+import edu.ucsb.cs156.example.services.jobs.ThreadUsageMeter.Usage;
+import java.io.Reader;
+import java.io.StringReader;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
 @Service
+@Slf4j
 public class JobService {
+  /** Statuses after which a job will not change any more. */
+  public static final Set<String> TERMINAL_STATUSES =
+      Set.of("complete", "error", "rejected", "cancelled", "timed_out");
+
+  private static final ObjectMapper CANONICAL_JSON =
+      JsonMapper.builder()
+          .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+          .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+          .build();
+
   @Autowired private JobsRepository jobsRepository;
 
+  @Autowired private JobLogLinesRepository jobLogLinesRepository;
+
+  @Autowired private JobLogArchiveService jobLogArchiveService;
+
   @Autowired private CurrentUserService currentUserService;
 
+  @Autowired private ApplicationEventPublisher eventPublisher;
+
+  @Autowired private JobRateLimiter jobRateLimiter;
+
   @Lazy @Autowired private JobService self;
 
-  public Job runAsJob(JobContextConsumer jobFunction) {
-    Job job = Job.builder().createdBy(currentUserService.getUser()).status("running").build();
+  @Autowired
+  @Qualifier(JobExecutorConfig.JOB_EXECUTOR)
+  private ThreadPoolTaskExecutor jobExecutor;
+
+  @Autowired
+  @Qualifier(JobExecutorConfig.BULK_JOB_EXECUTOR)
+  private ThreadPoolTaskExecutor bulkJobExecutor;
+
+  private final Map<JobPriority, AtomicLong> rejectedCounts =
+      Arrays.stream(JobPriority.values())
+          .collect(Collectors.toMap(priority -> priority, priority -> new AtomicLong()));
+
+  private ThreadUsageMeter threadUsageMeter = new ThreadUsageMeter();
+
+  /** Jobs that are queued or running on this instance, by job id. */
+  private final Map<Long, JobContext> activeJobs = new ConcurrentHashMap<>();
+
+  @Value("${app.jobs.log.batchSize:100}")
+  private int logBatchSize;
+
+  @Value("${app.jobs.log.flushIntervalMs:1000}")
+  private long logFlushIntervalMs;
+
+  @Value("${app.jobs.log.bufferCapacity:10000}")
+  private int logBufferCapacity;
 
-    jobsRepository.save(job);
-    self.runJobAsync(job, jobFunction);
+  @Value("${app.jobs.log.finalFlushAttempts:3}")
+  private int logFinalFlushAttempts;
+
+  @Value("${app.jobs.log.finalFlushRetryMs:1000}")
+  private long logFinalFlushRetryMs;
+
+  @Value("${spring.threads.virtual.enabled:false}")
+  private boolean virtualThreads;
+
+  @Value("${app.jobs.defaultTimeoutSeconds:3600}")
+  private long defaultTimeoutSeconds;
+
+  @Value("${app.jobs.queue.instanceId:${random.uuid}}")
+  private String instanceId;
+
+  @Value("${app.jobs.queue.leaseSeconds:60}")
+  private long leaseSeconds;
+
+  /**
+   * Create a job with the default timeout ({@code app.jobs.defaultTimeoutSeconds}) and hand it to
+   * the job executor.
+   *
+   * @param jobType the type of the job, e.g. TestJob
+   * @param jobFunction the work to be done by the job
+   * @return the queued job
+   * @see #runAsJob(String, JobContextConsumer, Duration, String, JobPriority)
+   */
+  public Job runAsJob(String jobType, JobContextConsumer jobFunction) {
+    return runAsJob(jobType, jobFunction, getDefaultTimeout());
+  }
+
+  /**
+   * Create a job and hand it to the job executor.
+   *
+   * @param jobType the type of the job, e.g. TestJob
+   * @param jobFunction the work to be done by the job
+   * @param timeout how long the job may run before it is stopped with status "timed_out"
+   * @return the queued job
+   * @see #runAsJob(String, JobContextConsumer, Duration, String, JobPriority)
+   */
+  public Job runAsJob(String jobType, JobContextConsumer jobFunction, Duration timeout) {
+    return runAsJob(jobType, jobFunction, timeout, null, JobPriority.INTERACTIVE);
+  }
+
+  /**
+   * Create a job and hand it to the job executor, unless the same work is already in flight.
+   *
+   * <p>The job is saved with status "queued"; it becomes "running" once a worker from the pool for
+   * its priority picks it up. If that pool is saturated, the job is saved with status "rejected"
+   * and a {@link JobQueueFullException} is thrown so that the caller can back off and retry.
+   *
+   * <p>If {@code coalesceKey} is not null and a job with the same key is still queued or running,
+   * that job is returned and nothing new is started.
+   *
+   * <p>The job type is saved as the job's {@code jobType}, so that its events can be filtered by
+   * type like those of jobs in the durable queue. Launches by a user are rate limited by the {@link
+   * JobRateLimiter} under the same job type; a launch that is coalesced or rejected does not use up
+   * a token.
+   *
+   * @param jobType the type of the job, e.g. TestJob
+   * @param jobFunction the work to be done by the job
+   * @param timeout how long the job may run before it is stopped with status "timed_out"
+   * @param coalesceKey null, or a key from {@link #coalesceKey(String, Object)}
+   * @param priority which pool of workers runs the job
+   * @return the queued job, or the job already doing the same work
+   * @throws JobRateLimitException if the user has launched too many jobs of this type recently
+   */
+  public Job runAsJob(
+      String jobType,
+      JobContextConsumer jobFunction,
+      Duration timeout,
+      String coalesceKey,
+      JobPriority priority) {
+    Optional<Job> inFlight = findInFlight(coalesceKey);
+    if (inFlight.isPresent()) {
+      return inFlight.get();
+    }
+    User user = currentUserService.getUser();
+    jobRateLimiter.acquire(jobType, user);
+    Job job =
+        Job.builder()
+            .createdBy(user)
+            .status("queued")
+            .priority(priority)
+            .jobType(jobType)
+            .coalesceKey(coalesceKey)
+            .build();
+    acquireLease(job);
+
+    inFlight = saveOrFindInFlight(job);
+    if (inFlight.isPresent()) {
+      jobRateLimiter.release(List.of(jobType), user);
+      return inFlight.get();
+    }
+    try {
+      submit(job, jobFunction, timeout);
+    } catch (TaskRejectedException e) {
+      log.warn("Job {} rejected: {}", job.getId(), e.getMessage());
+      jobRateLimiter.release(List.of(jobType), user);
+      job.setStatus("rejected");
+      job.setCoalesceKey(null);
+      releaseLease(job);
+      jobsRepository.save(job);
+      publishEvent(job);
+      throw new JobQueueFullException(job.getId());
+    }
 
     return job;
   }
 
-  @Async
-  public void runJobAsync(Job job, JobContextConsumer jobFunction) {
-    JobContext context = new JobContext(jobsRepository, job);
+  /**
+   * Build the key that identifies a job's work, for coalescing duplicate launches.
+   *
+   * <p>The parameters are written as JSON with properties and map entries in sorted order, so the
+   * key does not depend on the order in which they were put together.
+   *
+   * @param jobType the type of job, e.g. the type of its {@link JobFactory}
+   * @param parameters the parameters of the job
+   * @return the job type followed by a hash of the parameters
+   * @throws JsonProcessingException if the parameters cannot be written as JSON
+   */
+  public static String coalesceKey(String jobType, Object parameters)
+      throws JsonProcessingException {
+    byte[] json = CANONICAL_JSON.writeValueAsBytes(parameters);
+    return jobType + ":" + UUID.nameUUIDFromBytes(json);
+  }
+
+  /**
+   * Save a new job, unless it has a coalesce key and a job with the same key is in flight.
+   *
+   * @param job the new job
+   * @return the job already in flight, or empty if the new job was saved
+   */
+  Optional<Job> saveUnlessInFlight(Job job) {
+    Optional<Job> inFlight = findInFlight(job.getCoalesceKey());
+    return inFlight.isPresent() ? inFlight : saveOrFindInFlight(job);
+  }
+
+  /**
+   * Find the job in flight with a coalesce key, so that a launch of the same work can return it
+   * without taking a rate limit token or saving a job of its own.
+   *
+   * @param coalesceKey null, or a key from {@link #coalesceKey(String, Object)}
+   * @return the job in flight with the key, or empty if there is none (or the key is null)
+   */
+  Optional<Job> findInFlight(String coalesceKey) {
+    if (coalesceKey == null) {
+      return Optional.empty();
+    }
+    Optional<Job> inFlight = jobsRepository.findByCoalesceKey(coalesceKey);
+    inFlight.ifPresent(job -> log.info("Launch coalesced into job {}", job.getId()));
+    return inFlight;
+  }
+
+  /**
+   * Save a new job that {@link #findInFlight(String)} found nothing in flight for.
+   *
+   * <p>The unique index on the coalesce key closes the race between two launches (possibly on
+   * different instances) that both find no job in flight: the second insert fails, and the job
+   * saved by the first is returned.
+   *
+   * @param job the new job
+   * @return the job that got in flight first, or empty if the new job was saved
+   */
+  Optional<Job> saveOrFindInFlight(Job job) {
+    try {
+      jobsRepository.save(job);
+      publishEvent(job);
+      return Optional.empty();
+    } catch (DataIntegrityViolationException e) {
+      String key = job.getCoalesceKey();
+      if (key == null) {
+        throw e;
+      }
+      return Optional.of(jobsRepository.findByCoalesceKey(key).orElseThrow(() -> e));
+    }
+  }
+
+  /**
+   * @return the timeout for jobs launched without one ({@code app.jobs.defaultTimeoutSeconds})
+   */
+  public Duration getDefaultTimeout() {
+    return Duration.ofSeconds(defaultTimeoutSeconds);
+  }
+
+  /**
+   * Run a job claimed from the durable queue, with the default timeout.
+   *
+   * @param job the claimed job, which must hold a lease for this instance
+   * @param jobFunction the work to be done by the job
+   * @return true if the job was handed to the executor, false if the executor was full and the job
+   *     has been put back in the queue
+   */
+  boolean runQueuedJob(Job job, JobContextConsumer jobFunction) {
+    try {
+      submit(job, jobFunction, getDefaultTimeout());
+      return true;
+    } catch (TaskRejectedException e) {
+      job.setStatus("queued");
+      releaseLease(job);
+      jobsRepository.save(job);
+      publishEvent(job);
+      return false;
+    }
+  }
+
+  private void submit(Job job, JobContextConsumer jobFunction, Duration timeout) {
+    JobContext context =
+        new JobContext(
+            jobLogLinesRepository,
+            job,
+            logBatchSize,
+            logFlushIntervalMs,
+            logBufferCapacity,
+            timeout,
+            virtualThreads);
+    activeJobs.put(job.getId(), context);
+    try {
+      if (job.getPriority() == JobPriority.BULK) {
+        self.runBulkJobAsync(context, jobFunction);
+      } else {
+        self.runJobAsync(context, jobFunction);
+      }
+    } catch (TaskRejectedException e) {
+      activeJobs.remove(job.getId(), context);
+      rejectedCounts.get(job.getPriority()).incrementAndGet();
+      throw e;
+    }
+  }
+
+  /**
+   * Take (or renew) a lease on a job for this instance. Jobs whose lease is not renewed by {@link
+   * #renewLeases()} are recovered by the {@link JobQueueService}.
+   *
+   * @param job the job, which is not saved
+   */
+  void acquireLease(Job job) {
+    job.setLeaseOwner(instanceId);
+    job.setLeaseExpiresAt(ZonedDateTime.now().plusSeconds(leaseSeconds));
+  }
+
+  /**
+   * Give up the lease on a job, once it has finished or is back in the queue.
+   *
+   * @param job the job, which is not saved
+   */
+  static void releaseLease(Job job) {
+    job.setLeaseOwner(null);
+    job.setLeaseExpiresAt(null);
+  }
+
+  /**
+   * @return the id this instance uses as the owner of its leases
+   */
+  String getInstanceId() {
+    return instanceId;
+  }
+
+  /**
+   * @param priority the priority class
+   * @return how many more jobs of this priority can start right away, without queueing them in
+   *     memory
+   */
+  int getIdleWorkerCount(JobPriority priority) {
+    ThreadPoolTaskExecutor executor = executorFor(priority);
+    return Math.max(
+        0, executor.getMaxPoolSize() - executor.getActiveCount() - executor.getQueueSize());
+  }
+
+  private ThreadPoolTaskExecutor executorFor(JobPriority priority) {
+    return priority == JobPriority.BULK ? bulkJobExecutor : jobExecutor;
+  }
+
+  /**
+   * Heartbeat: renew the leases on every job queued or running on this instance.
+   *
+   * <p>It runs on its own scheduler thread (see {@link JobExecutorConfig}), so that slow scheduled
+   * tasks such as log streams cannot hold it up until leases expire. The new expiry is also set on
+   * the jobs in memory, so that saving a job later does not put back the expiry it was claimed
+   * with.
+   */
+  @Scheduled(
+      fixedDelayString = "${app.jobs.queue.heartbeatMs:15000}",
+      scheduler = JobExecutorConfig.LEASE_HEARTBEAT_SCHEDULER)
+  public void renewLeases() {
+    if (activeJobs.isEmpty()) {
+      return;
+    }
+    ZonedDateTime expiresAt = ZonedDateTime.now().plusSeconds(leaseSeconds);
+    jobsRepository.renewLeases(instanceId, activeJobs.keySet(), expiresAt);
+    for (JobContext context : activeJobs.values()) {
+      context.getJob().setLeaseExpiresAt(expiresAt);
+    }
+  }
+
+  @Async(JobExecutorConfig.BULK_JOB_EXECUTOR)
+  public void runBulkJobAsync(JobContext context, JobContextConsumer jobFunction) {
+    runJob(context, jobFunction);
+  }
+
+  @Async(JobExecutorConfig.JOB_EXECUTOR)
+  public void runJobAsync(JobContext context, JobContextConsumer jobFunction) {
+    runJob(context, jobFunction);
+  }
+
+  private void runJob(JobContext context, JobContextConsumer jobFunction) {
+    Job job = context.getJob();
+    String status;
 
+    try {
+      if (context.isCancelled()) {
+        // cancelled while it was still in the queue
+        status = context.getCancelledStatus();
+      } else {
+        job.setStatus("running");
+        job.setStartedAt(ZonedDateTime.now());
+        if (job.getCreatedAt() != null) {
+          job.setQueueWaitMs(Duration.between(job.getCreatedAt(), job.getStartedAt()).toMillis());
+        }
+        acquireLease(job);
+        if (jobsRepository.startIfLeaseHeld(job, instanceId) == 0) {
+          log.warn("Job {} lost its lease before it started; it is not run here", job.getId());
+          return;
+        }
+        publishEvent(job);
+        context.start();
+        long startNanos = System.nanoTime();
+        Usage startUsage = threadUsageMeter.current();
+        status = runJobFunction(context, jobFunction);
+        Usage usage = threadUsageMeter.current().minus(startUsage).plus(context.getSubtaskUsage());
+        recordUsage(job, System.nanoTime() - startNanos, usage);
+      }
+    } finally {
+      context.finish();
+      activeJobs.remove(job.getId(), context);
+    }
+
+    context.flushFinal(logFinalFlushAttempts, logFinalFlushRetryMs);
+    job.setLogSize(context.getLogSize());
+    job.setStatus(status);
+    job.setCoalesceKey(null);
+    job.setFinishedAt(ZonedDateTime.now());
+    if (jobsRepository.finishIfLeaseHeld(job, instanceId) == 0) {
+      // the lease expired and the job was recovered, so its row belongs to someone else now
+      log.warn(
+          "Job {} lost its lease before it finished; its result ({}) is discarded",
+          job.getId(),
+          status);
+      return;
+    }
+    releaseLease(job);
+    publishEvent(job);
+  }
+
+  /**
+   * Publish a {@link JobEvent} for the status a job has just been saved with. Listeners run on the
+   * thread that saved the job, so they should hand the event off rather than do slow work. If the
+   * job was saved in a transaction, {@link JobEventStreamService} only hears of it once the
+   * transaction commits.
+   *
+   * @param job the job, with the status it has just been saved with
+   */
+  void publishEvent(Job job) {
+    User createdBy = job.getCreatedBy();
+    eventPublisher.publishEvent(
+        JobEvent.builder()
+            .jobId(job.getId())
+            .status(job.getStatus())
+            .jobType(job.getJobType())
+            .priority(job.getPriority())
+            .createdById(createdBy != null ? createdBy.getId() : null)
+            .at(ZonedDateTime.now())
+            .build());
+  }
+
+  private static void recordUsage(Job job, long runNanos, Usage usage) {
+    job.setRunTimeMs(Duration.ofNanos(runNanos).toMillis());
+    job.setCpuTimeMs(usage.cpuNanos() < 0 ? null : Duration.ofNanos(usage.cpuNanos()).toMillis());
+    job.setAllocatedBytes(usage.allocatedBytes() < 0 ? null : usage.allocatedBytes());
+  }
+
+  private String runJobFunction(JobContext context, JobContextConsumer jobFunction) {
     try {
       jobFunction.accept(context);
     } catch (Exception e) {
-      job.setStatus("error");
-      context.log(e.getMessage());
-      return;
+      if (!context.isCancelled()) {
+        context.log(e.getMessage());
+        return "error";
+      }
+    }
+    if (context.isCancelled()) {
+      context.log("Job stopped: " + context.getCancelledStatus());
+      return context.getCancelledStatus();
+    }
+    return "complete";
+  }
+
+  /**
+   * Cancel a job that is waiting in the durable queue, or is queued or running on this instance.
+   *
+   * @param jobId id of the job
+   * @return true if the job was cancelled, false if it is not queued or running here
+   */
+  public boolean cancelJob(long jobId) {
+    JobContext context = activeJobs.get(jobId);
+    if (context != null) {
+      return context.cancel("cancelled");
+    }
+    if (jobsRepository.cancelQueued(jobId, ZonedDateTime.now()) == 0) {
+      return false;
     }
+    jobsRepository.findById(jobId).ifPresent(this::publishEvent);
+    return true;
+  }
+
+  /** Write the buffered log lines of jobs on this instance that have waited long enough. */
+  @Scheduled(fixedDelayString = "${app.jobs.log.flushIntervalMs:1000}")
+  public void flushLogs() {
+    for (JobContext context : activeJobs.values()) {
+      context.flushIfDue();
+    }
+  }
+
+  /** Stop any running job that has passed its timeout. */
+  @Scheduled(fixedDelayString = "${app.jobs.timeoutCheckMs:1000}")
+  public void enforceTimeouts() {
+    long now = System.nanoTime();
+    for (JobContext context : activeJobs.values()) {
+      if (context.isPastDeadline(now) && context.cancel("timed_out")) {
+        log.warn("Job {} timed out", context.getJob().getId());
+      }
+    }
+  }
 
-    job.setStatus("complete");
-    jobsRepository.save(job);
+  /**
+   * Get a snapshot of how busy the executor for a priority class is.
+   *
+   * @param priority the priority class
+   * @return the current pool size, active workers, queued jobs and rejections
+   */
+  public JobExecutorStatus getExecutorStatus(JobPriority priority) {
+    ThreadPoolTaskExecutor executor = executorFor(priority);
+    return JobExecutorStatus.builder()
+        .poolSize(executor.getPoolSize())
+        .maxPoolSize(executor.getMaxPoolSize())
+        .activeCount(executor.getActiveCount())
+        .queuedCount(executor.getQueueSize())
+        .queueCapacity(executor.getQueueCapacity())
+        .rejectedCount(rejectedCounts.get(priority).get())
+        .build();
   }
 
-  public String getJobLogs(Long jobId) {
+  /**
+   * Open the log of a job, so that it can be read a little at a time.
+   *
+   * <p>The log is read from the job_log_lines table a page at a time as the reader is read,
+   * followed by any lines of a job running on this instance that are still buffered in memory.
+   * Large logs of finished jobs are decompressed from their archive as they are read instead (see
+   * {@link JobLogArchiveService}), so that they are never held in memory as a whole. Jobs that were
+   * run before log lines were stored separately fall back to the log column of the job itself.
+   *
+   * @param jobId id of the job
+   * @return a reader of the log of the job, one line per log message, which the caller must close
+   * @throws IllegalArgumentException if there is no such job
+   */
+  public Reader openJobLogs(Long jobId) {
+    JobLogLineIterator lines =
+        new JobLogLineIterator(jobLogLinesRepository, jobId, 0, getBufferedLogLines(jobId));
+    if (lines.hasNext()) {
+      return lines.asReader();
+    }
+    Optional<Reader> archived = jobLogArchiveService.open(jobId);
+    if (archived.isPresent()) {
+      return archived.get();
+    }
+
     Job job =
         jobsRepository
             .findById(jobId)
             .orElseThrow(() -> new IllegalArgumentException("Job not found"));
 
     String log = job.getLog();
-    return log != null ? log : "";
+    return new StringReader(log != null ? log : "");
+  }
+
+  /**
+   * @param jobId id of a job
+   * @return the log lines of the job that are still buffered in memory on this instance, oldest
+   *     first; empty if the job is not queued or running here
+   */
+  List<JobLogLine> getBufferedLogLines(long jobId) {
+    JobContext context = activeJobs.get(jobId);
+    return context != null ? context.getBufferedLines() : List.of();
   }
 }
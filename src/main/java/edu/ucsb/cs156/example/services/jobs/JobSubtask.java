@@ -0,0 +1,11 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+/**
+ * One piece of work in a {@link JobContext#parallelForEach(java.util.List, int, JobSubtask)}.
+ *
+ * @param <T> the type of the items being processed
+ */
+@FunctionalInterface
+public interface JobSubtask<T> {
+  void accept(T item) throws Exception;
+}
@@ -0,0 +1,18 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+/**
+ * Thrown by {@link JobContext#parallelForEach(java.util.List, int, JobSubtask)} when one or more
+ * subtasks fail. The failure of each subtask has already been written to the job's log.
+ */
+public class JobSubtasksFailedException extends Exception {
+  /**
+   * Constructor for the exception
+   *
+   * @param failed the number of subtasks that failed
+   * @param total the number of subtasks
+   * @param cause the first failure
+   */
+  public JobSubtasksFailedException(int failed, int total, Throwable cause) {
+    super("%d of %d subtasks failed".formatted(failed, total), cause);
+  }
+}
@@ -0,0 +1,19 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+/**
+ * A RecurringJob is a job that the {@link RecurringJobService} starts on a cron schedule, such as a
+ * cache warmer, an aggregate rebuild or a cleanup task.
+ *
+ * <p>Implementations are Spring beans, each with a unique {@link #getName()}.
+ */
+public interface RecurringJob extends JobContextConsumer {
+  /**
+   * @return the name of the job, which identifies its schedule across instances and restarts
+   */
+  String getName();
+
+  /**
+   * @return a Spring cron expression for when the job runs, or "-" to never run it
+   */
+  String getCron();
+}
@@ -0,0 +1,108 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobPriority;
+import edu.ucsb.cs156.example.entities.RecurringJobTrigger;
+import edu.ucsb.cs156.example.errors.JobQueueFullException;
+import edu.ucsb.cs156.example.repositories.RecurringJobTriggersRepository;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Service;
+
+/**
+ * The RecurringJobService starts each {@link RecurringJob} bean on its cron schedule. Runs go
+ * through the {@link JobService}, so every run gets a job record and a log like any other job.
+ *
+ * <p>The next fire time of each recurring job is kept in the recurring_job_triggers table. Every
+ * instance checks the table every {@code app.jobs.recurring.pollMs}. An instance that finds a
+ * trigger due claims it by moving the next fire time forward with a conditional UPDATE; only the
+ * instance whose update matches starts the run. Fire times missed while no instance was up are run
+ * once, not once per missed time.
+ *
+ * <p>Runs are BULK priority, so they never take workers from interactive jobs, and are coalesced by
+ * name, so a run that is still going when the next one is due is not started a second time.
+ */
+@Service
+@Slf4j
+public class RecurringJobService {
+
+  private record Registration(RecurringJob job, CronExpression cron) {}
+
+  @Autowired private RecurringJobTriggersRepository triggersRepository;
+
+  @Autowired private JobService jobService;
+
+  private List<Registration> registrations = List.of();
+
+  @Autowired
+  void setRecurringJobs(List<RecurringJob> recurringJobs) {
+    long names = recurringJobs.stream().map(RecurringJob::getName).distinct().count();
+    if (names != recurringJobs.size()) {
+      throw new IllegalStateException("Recurring job names must be unique");
+    }
+    registrations =
+        recurringJobs.stream()
+            .filter(job -> !Scheduled.CRON_DISABLED.equals(job.getCron()))
+            .map(job -> new Registration(job, CronExpression.parse(job.getCron())))
+            .toList();
+  }
+
+  /**
+   * Start every recurring job that is due, unless another instance has already started it. A job
+   * that cannot be started, e.g. because the database is briefly unavailable, is logged and does
+   * not stop the others from starting.
+   */
+  @Scheduled(fixedDelayString = "${app.jobs.recurring.pollMs:10000}")
+  public void fireDueJobs() {
+    ZonedDateTime now = ZonedDateTime.now();
+    for (Registration registration : registrations) {
+      try {
+        fireIfDue(registration.job(), registration.cron(), now);
+      } catch (RuntimeException e) {
+        log.error("Recurring job {} could not be started", registration.job().getName(), e);
+      }
+    }
+  }
+
+  private void fireIfDue(RecurringJob recurringJob, CronExpression cron, ZonedDateTime now) {
+    String name = recurringJob.getName();
+    Optional<RecurringJobTrigger> trigger = triggersRepository.findById(name);
+    if (trigger.isEmpty()) {
+      createTrigger(name, cron.next(now));
+      return;
+    }
+    ZonedDateTime dueAt = trigger.get().getNextFireAt();
+    if (dueAt.isAfter(now) || triggersRepository.claim(name, dueAt, cron.next(now)) == 0) {
+      return;
+    }
+    try {
+      Job job =
+          jobService.runAsJob(
+              name,
+              recurringJob,
+              jobService.getDefaultTimeout(),
+              "recurring:" + name,
+              JobPriority.BULK);
+      triggersRepository.recordRun(name, job.getId());
+      log.info("Recurring job {} started as job {}", name, job.getId());
+    } catch (JobQueueFullException e) {
+      log.warn("Recurring job {} skipped: {}", name, e.getMessage());
+    }
+  }
+
+  private void createTrigger(String name, ZonedDateTime nextFireAt) {
+    try {
+      triggersRepository.save(
+          RecurringJobTrigger.builder().name(name).nextFireAt(nextFireAt).build());
+      log.info("Recurring job {} first runs at {}", name, nextFireAt);
+    } catch (DataIntegrityViolationException e) {
+      // another instance created it first
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reads the CPU time and heap allocation counters of the current thread, so that the resources used
+ * by a job can be recorded on its row.
+ *
+ * <p>The counters are not available on every JVM, and not for virtual threads; {@code -1} stands
+ * for a value that could not be measured.
+ */
+class ThreadUsageMeter {
+
+  /** CPU time and allocated bytes, either as totals for a thread or as the difference of two. */
+  record Usage(long cpuNanos, long allocatedBytes) {
+    static final Usage NONE = new Usage(0, 0);
+
+    Usage minus(Usage start) {
+      return new Usage(
+          difference(cpuNanos, start.cpuNanos), difference(allocatedBytes, start.allocatedBytes));
+    }
+
+    Usage plus(Usage other) {
+      return new Usage(sum(cpuNanos, other.cpuNanos), sum(allocatedBytes, other.allocatedBytes));
+    }
+
+    private static long difference(long end, long start) {
+      return end < 0 || start < 0 ? -1 : end - start;
+    }
+
+    private static long sum(long a, long b) {
+      return a < 0 || b < 0 ? -1 : a + b;
+    }
+  }
+
+  private final ThreadMXBean threads;
+
+  ThreadUsageMeter() {
+    this((ThreadMXBean) ManagementFactory.getThreadMXBean());
+  }
+
+  ThreadUsageMeter(ThreadMXBean threads) {
+    this.threads = threads;
+  }
+
+  /**
+   * @return the CPU time and allocated bytes of the current thread so far
+   */
+  Usage current() {
+    long cpuNanos =
+        threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled()
+            ? threads.getCurrentThreadCpuTime()
+            : -1;
+    long allocatedBytes =
+        threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()
+            ? threads.getCurrentThreadAllocatedBytes()
+            : -1;
+    return new Usage(cpuNanos, allocatedBytes);
+  }
+}
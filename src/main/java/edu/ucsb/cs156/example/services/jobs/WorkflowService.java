@@ -0,0 +1,276 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobDependency;
+import edu.ucsb.cs156.example.entities.JobPriority;
+import edu.ucsb.cs156.example.entities.Workflow;
+import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.errors.InvalidWorkflowException;
+import edu.ucsb.cs156.example.errors.JobRateLimitException;
+import edu.ucsb.cs156.example.models.WorkflowStatus;
+import edu.ucsb.cs156.example.models.WorkflowStep;
+import edu.ucsb.cs156.example.models.WorkflowStepStatus;
+import edu.ucsb.cs156.example.repositories.JobDependenciesRepository;
+import edu.ucsb.cs156.example.repositories.JobsRepository;
+import edu.ucsb.cs156.example.repositories.WorkflowsRepository;
+import edu.ucsb.cs156.example.services.CurrentUserService;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The WorkflowService starts workflows: sets of durable jobs (steps) in which a step may depend on
+ * other steps, as long as the dependencies do not form a cycle.
+ *
+ * <p>Every step is saved when the workflow starts. Steps with no dependencies are queued straight
+ * away; the others are saved with status "waiting", and the {@link JobQueueService} queues each of
+ * them as soon as all of its dependencies have completed. Queued steps are claimed by whichever
+ * workers are free, so independent branches of a workflow run in parallel. A step whose dependency
+ * fails or is cancelled is cancelled too.
+ */
+@Service
+@Slf4j
+public class WorkflowService {
+  private static final Set<String> FAILED_STATUSES = Set.of("error", "rejected", "timed_out");
+
+  @Autowired private WorkflowsRepository workflowsRepository;
+
+  @Autowired private JobsRepository jobsRepository;
+
+  @Autowired private JobDependenciesRepository jobDependenciesRepository;
+
+  @Autowired private JobQueueService jobQueueService;
+
+  @Autowired private JobService jobService;
+
+  @Autowired private CurrentUserService currentUserService;
+
+  /**
+   * Start a workflow. The workflow and all of its steps are saved in one transaction, so no step
+   * starts before the whole workflow has been saved. The steps are launched together through {@link
+   * JobQueueService#launchAll(List)}, so the rate limit is checked for every step before anything
+   * is saved, and the creation of each step is published once the transaction commits.
+   *
+   * @param name a name for the workflow
+   * @param steps the steps of the workflow
+   * @return the saved workflow
+   * @throws InvalidWorkflowException if the steps do not form a valid workflow
+   * @throws JsonProcessingException if the parameters of a step cannot be written as JSON
+   * @throws JobRateLimitException if the user has launched too many jobs of a step's type recently
+   */
+  @Transactional
+  public Workflow start(String name, List<WorkflowStep> steps) throws JsonProcessingException {
+    List<WorkflowStep> ordered = dependencyOrder(steps);
+    Workflow workflow =
+        workflowsRepository.save(
+            Workflow.builder().name(name).createdBy(currentUserService.getUser()).build());
+
+    List<Job> jobs = new ArrayList<>();
+    for (WorkflowStep step : ordered) {
+      Job job = newStepJob(step);
+      job.setWorkflowId(workflow.getId());
+      job.setStepName(step.getName());
+      if (!dependsOn(step).isEmpty()) {
+        job.setStatus("waiting");
+      }
+      jobs.add(job);
+    }
+    jobQueueService.launchAll(jobs);
+
+    Map<String, Long> jobIds = new HashMap<>();
+    List<JobDependency> dependencies = new ArrayList<>();
+    for (int i = 0; i < ordered.size(); i++) {
+      WorkflowStep step = ordered.get(i);
+      Job job = jobs.get(i);
+      jobIds.put(step.getName(), job.getId());
+      for (String dependency : dependsOn(step)) {
+        dependencies.add(
+            JobDependency.builder()
+                .jobId(job.getId())
+                .dependsOnJobId(jobIds.get(dependency))
+                .build());
+      }
+    }
+    jobDependenciesRepository.saveAll(dependencies);
+    log.info("Workflow {} started with {} steps", workflow.getId(), ordered.size());
+    return workflow;
+  }
+
+  private Job newStepJob(WorkflowStep step) throws JsonProcessingException {
+    JobPriority priority =
+        step.getPriority() != null ? step.getPriority() : JobPriority.INTERACTIVE;
+    try {
+      return jobQueueService.newJob(step.getJobType(), step.getParameters(), false, priority);
+    } catch (IllegalArgumentException e) {
+      throw new InvalidWorkflowException(e.getMessage());
+    }
+  }
+
+  private static List<String> dependsOn(WorkflowStep step) {
+    return step.getDependsOn() != null ? step.getDependsOn() : List.of();
+  }
+
+  /**
+   * Check that the steps form a valid workflow, and put them in an order in which every step comes
+   * after the steps it depends on.
+   *
+   * @param steps the steps of a workflow
+   * @return the same steps, with dependencies first
+   * @throws InvalidWorkflowException if there are no steps, a step name is missing or repeated, a
+   *     step depends on an unknown step, or the dependencies form a cycle
+   */
+  static List<WorkflowStep> dependencyOrder(List<WorkflowStep> steps) {
+    if (steps.isEmpty()) {
+      throw new InvalidWorkflowException("a workflow needs at least one step");
+    }
+    Map<String, WorkflowStep> byName = new LinkedHashMap<>();
+    for (WorkflowStep step : steps) {
+      if (step.getName() == null) {
+        throw new InvalidWorkflowException("every step needs a name");
+      }
+      if (byName.put(step.getName(), step) != null) {
+        throw new InvalidWorkflowException("duplicate step name " + step.getName());
+      }
+    }
+
+    Map<String, Integer> unmet = new HashMap<>();
+    Map<String, List<String>> dependents = new HashMap<>();
+    for (WorkflowStep step : steps) {
+      for (String dependency : dependsOn(step)) {
+        if (!byName.containsKey(dependency)) {
+          throw new InvalidWorkflowException(
+              "step %s depends on unknown step %s".formatted(step.getName(), dependency));
+        }
+        dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(step.getName());
+        unmet.merge(step.getName(), 1, Integer::sum);
+      }
+    }
+
+    Deque<WorkflowStep> ready = new ArrayDeque<>();
+    steps.stream().filter(step -> !unmet.containsKey(step.getName())).forEach(ready::add);
+    List<WorkflowStep> ordered = new ArrayList<>();
+    while (!ready.isEmpty()) {
+      WorkflowStep step = ready.removeFirst();
+      ordered.add(step);
+      for (String dependent : dependents.getOrDefault(step.getName(), List.of())) {
+        if (unmet.merge(dependent, -1, Integer::sum) == 0) {
+          ready.add(byName.get(dependent));
+        }
+      }
+    }
+    if (ordered.size() < steps.size()) {
+      throw new InvalidWorkflowException("the dependencies between steps form a cycle");
+    }
+    return ordered;
+  }
+
+  /**
+   * Get the status of a workflow and of each of its steps.
+   *
+   * @param workflowId id of the workflow
+   * @return the status of the workflow
+   * @throws EntityNotFoundException if there is no such workflow
+   */
+  public WorkflowStatus getStatus(long workflowId) {
+    Workflow workflow = findWorkflow(workflowId);
+    List<Job> jobs = jobsRepository.findByWorkflowIdOrderByIdAsc(workflowId);
+    Map<Long, String> stepNames =
+        jobs.stream().collect(Collectors.toMap(Job::getId, Job::getStepName));
+    Map<Long, List<String>> dependsOn =
+        jobDependenciesRepository.findByJobIdIn(stepNames.keySet()).stream()
+            .collect(
+                Collectors.groupingBy(
+                    JobDependency::getJobId,
+                    Collectors.mapping(
+                        d -> stepNames.get(d.getDependsOnJobId()), Collectors.toList())));
+
+    List<WorkflowStepStatus> steps =
+        jobs.stream()
+            .map(
+                job ->
+                    WorkflowStepStatus.builder()
+                        .name(job.getStepName())
+                        .jobId(job.getId())
+                        .status(job.getStatus())
+                        .dependsOn(dependsOn.getOrDefault(job.getId(), List.of()))
+                        .startedAt(job.getStartedAt())
+                        .finishedAt(job.getFinishedAt())
+                        .build())
+            .toList();
+    return WorkflowStatus.builder()
+        .id(workflow.getId())
+        .name(workflow.getName())
+        .createdAt(workflow.getCreatedAt())
+        .status(workflowStatus(jobs.stream().map(Job::getStatus).toList()))
+        .steps(steps)
+        .build();
+  }
+
+  static String workflowStatus(Collection<String> stepStatuses) {
+    if (stepStatuses.stream().anyMatch(FAILED_STATUSES::contains)) {
+      return "error";
+    }
+    if (stepStatuses.contains("cancelled")) {
+      return "cancelled";
+    }
+    if (stepStatuses.stream().allMatch("complete"::equals)) {
+      return "complete";
+    }
+    return "running";
+  }
+
+  /**
+   * Get the steps of a workflow.
+   *
+   * @param workflowId id of the workflow
+   * @return the jobs that run the steps, in the order the steps were created
+   * @throws EntityNotFoundException if there is no such workflow
+   */
+  public List<Job> getSteps(long workflowId) {
+    findWorkflow(workflowId);
+    return jobsRepository.findByWorkflowIdOrderByIdAsc(workflowId);
+  }
+
+  /**
+   * Write the logs of some steps of a workflow, each under a heading with its name and status. The
+   * log of each step is copied to the writer as it is read, so that large logs are never held in
+   * memory as a whole.
+   *
+   * @param steps the jobs that run the steps, as returned by {@link #getSteps(long)}
+   * @param out where to write the logs of the steps
+   * @throws IOException if the logs cannot be read or written
+   */
+  public void writeLogs(List<Job> steps, Writer out) throws IOException {
+    boolean first = true;
+    for (Job job : steps) {
+      out.write(
+          "%s=== %s (job %d): %s ===\n"
+              .formatted(first ? "" : "\n", job.getStepName(), job.getId(), job.getStatus()));
+      try (Reader log = jobService.openJobLogs(job.getId())) {
+        log.transferTo(out);
+      }
+      first = false;
+    }
+  }
+
+  private Workflow findWorkflow(long workflowId) {
+    return workflowsRepository
+        .findById(workflowId)
+        .orElseThrow(() -> new EntityNotFoundException(Workflow.class, workflowId));
+  }
+}
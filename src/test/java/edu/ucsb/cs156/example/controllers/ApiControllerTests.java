@@ -53,4 +53,21 @@ public class ApiControllerTests extends ControllerTestCase {
     assertEquals("EntityNotFoundException", json.get("type"));
     assertEquals("String with id 7 not found", json.get("message"));
   }
+
+  @Test
+  public void test_that_job_queue_full_returns_service_unavailable() throws Exception {
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(get("/dummycontroller/jobqueuefull?id=7"))
+            .andExpect(status().isServiceUnavailable())
+            .andReturn();
+
+    // assert
+
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("JobQueueFullException", json.get("type"));
+    assertEquals("Job 7 rejected: job queue is full, try again later", json.get("message"));
+  }
 }
@@ -9,24 +9,35 @@ import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.Articles;
+import edu.ucsb.cs156.example.models.KeysetPage;
 import edu.ucsb.cs156.example.repositories.ArticlesRepository;
 import edu.ucsb.cs156.example.repositories.UserRepository;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
@@ -37,6 +48,10 @@ public class ArticlesControllerTests extends ControllerTestCase {
 
   @MockBean ArticlesRepository articlesRepository;
 
+  @MockBean JsonExportService jsonExportService;
+
+  @MockBean PartialUpdateService partialUpdateService;
+
   @MockBean UserRepository userRepository;
 
   @Test
@@ -46,9 +61,15 @@ public class ArticlesControllerTests extends ControllerTestCase {
         .andExpect(status().is(403)); // logged out users can't get all
   }
 
+  @Test
+  public void logged_out_users_cannot_get_a_page() throws Exception {
+    mockMvc.perform(get("/api/articles/page")).andExpect(status().is(403));
+  }
+
   @WithMockUser(roles = {"USER"})
   @Test
   public void logged_in_users_can_get_all() throws Exception {
+    when(articlesRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
     mockMvc.perform(get("/api/articles/all")).andExpect(status().is(200)); // logged
   }
 
@@ -87,7 +108,7 @@ public class ArticlesControllerTests extends ControllerTestCase {
     ArrayList<Articles> expectedArticles = new ArrayList<>();
     expectedArticles.addAll(Arrays.asList(articles1, articles2));
 
-    when(articlesRepository.findAll()).thenReturn(expectedArticles);
+    when(articlesRepository.findBy(any(Specification.class), any())).thenReturn(expectedArticles);
 
     // act
     MvcResult response =
@@ -95,12 +116,45 @@ public class ArticlesControllerTests extends ControllerTestCase {
 
     // assert
 
-    verify(articlesRepository, times(1)).findAll();
+    verify(articlesRepository, times(1)).findBy(any(Specification.class), any());
     String expectedJson = mapper.writeValueAsString(expectedArticles);
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
   }
 
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void logged_in_user_can_get_a_page_sorted_by_dateAdded() throws Exception {
+
+    // arrange
+
+    Articles article1 =
+        Articles.builder().id(2L).dateAdded(LocalDateTime.parse("2022-01-03T00:00:00")).build();
+    Articles article2 =
+        Articles.builder().id(1L).dateAdded(LocalDateTime.parse("2022-01-04T00:00:00")).build();
+    Articles article3 =
+        Articles.builder().id(3L).dateAdded(LocalDateTime.parse("2022-01-05T00:00:00")).build();
+    when(articlesRepository.findBy(any(Specification.class), any()))
+        .thenReturn(List.of(article1, article2, article3));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/articles/page?sort=dateAdded&size=2"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    String expectedJson =
+        mapper.writeValueAsString(
+            KeysetPage.<Articles>builder()
+                .content(List.of(article1, article2))
+                .nextCursor("MjAyMi0wMS0wNFQwMDowMA.MQ")
+                .build());
+    String responseString = response.getResponse().getContentAsString();
+    assertEquals(expectedJson, responseString);
+  }
+
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void an_admin_user_can_post_a_new_articles() throws Exception {
@@ -306,7 +360,7 @@ public class ArticlesControllerTests extends ControllerTestCase {
 
     // assert
     verify(articlesRepository, times(1)).findById(15L);
-    verify(articlesRepository, times(1)).delete(any());
+    verify(articlesRepository, times(1)).delete(any(Articles.class));
 
     Map<String, Object> json = responseToJson(response);
     assertEquals("Articles with id 15 deleted", json.get("message"));
@@ -332,4 +386,243 @@ public class ArticlesControllerTests extends ControllerTestCase {
     Map<String, Object> json = responseToJson(response);
     assertEquals("Articles with id 15 not found", json.get("message"));
   }
+
+  @Test
+  public void logged_out_users_cannot_export() throws Exception {
+    mockMvc.perform(get("/api/articles/export")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  @SuppressWarnings("unchecked")
+  public void logged_in_users_can_export_all_articles() throws Exception {
+
+    // act
+    mockMvc.perform(get("/api/articles/export")).andExpect(status().isOk());
+
+    // assert
+    ArgumentCaptor<Supplier<Stream<Articles>>> rows = ArgumentCaptor.forClass(Supplier.class);
+    verify(jsonExportService, times(1)).writeJsonArray(rows.capture(), any());
+    rows.getValue().get();
+    verify(articlesRepository, times(1)).streamAllByOrderByIdAsc();
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_by_id_returns_304_when_the_client_has_the_current_version() throws Exception {
+
+    // arrange
+
+    Articles current =
+        Articles.builder()
+            .id(7L)
+            .version(3L)
+            .lastModified(ZonedDateTime.parse("2025-01-02T03:04:05Z"))
+            .build();
+    when(articlesRepository.findById(eq(7L))).thenReturn(Optional.of(current));
+    String etag =
+        mockMvc
+            .perform(get("/api/articles?id=7"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getHeader(HttpHeaders.ETAG);
+
+    // act
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/articles?id=7").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andReturn();
+
+    // assert
+
+    assertEquals("", response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_all_returns_304_when_the_client_has_the_current_articles() throws Exception {
+
+    // arrange
+
+    Articles current =
+        Articles.builder()
+            .id(7L)
+            .version(3L)
+            .lastModified(ZonedDateTime.parse("2025-01-02T03:04:05Z"))
+            .build();
+    when(articlesRepository.findBy(any(Specification.class), any())).thenReturn(List.of(current));
+    String etag =
+        mockMvc
+            .perform(get("/api/articles/all"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getHeader(HttpHeaders.ETAG);
+
+    // act
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/articles/all").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andReturn();
+
+    // assert
+
+    assertEquals("", response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void logged_in_regular_users_cannot_post_a_batch() throws Exception {
+    mockMvc
+        .perform(
+            post("/api/articles/post/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("[]")
+                .with(csrf()))
+        .andExpect(status().is(403)); // only admins can post
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void an_admin_user_can_post_a_batch_of_articles() throws Exception {
+    // arrange
+
+    List<Articles> incoming =
+        List.of(
+            Articles.builder()
+                .id(17L)
+                .title("Using testing-playground")
+                .email("phtcon@ucsb.edu")
+                .build(),
+            Articles.builder()
+                .id(18L)
+                .title("Handy Spring Utility Classes")
+                .email("cgaucho@ucsb.edu")
+                .build());
+
+    List<Articles> unsaved =
+        List.of(
+            Articles.builder().title("Using testing-playground").email("phtcon@ucsb.edu").build(),
+            Articles.builder()
+                .title("Handy Spring Utility Classes")
+                .email("cgaucho@ucsb.edu")
+                .build());
+
+    List<Articles> saved =
+        List.of(
+            Articles.builder()
+                .id(1L)
+                .title("Using testing-playground")
+                .email("phtcon@ucsb.edu")
+                .build(),
+            Articles.builder()
+                .id(2L)
+                .title("Handy Spring Utility Classes")
+                .email("cgaucho@ucsb.edu")
+                .build());
+
+    when(articlesRepository.saveAll(eq(unsaved))).thenReturn(saved);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                post("/api/articles/post/batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(incoming))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    // ids in the request are ignored
+    verify(articlesRepository, times(1)).saveAll(unsaved);
+    String expectedJson = mapper.writeValueAsString(saved);
+    String responseString = response.getResponse().getContentAsString();
+    assertEquals(expectedJson, responseString);
+  }
+
+  @Test
+  public void logged_out_users_cannot_patch() throws Exception {
+    mockMvc
+        .perform(
+            patch("/api/articles?id=7")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("{}")
+                .with(csrf()))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_patch_some_fields() throws Exception {
+    // arrange
+
+    Map<String, Object> changes = Map.of("title", "Handy Spring Utility Classes");
+    when(partialUpdateService.update(eq(Articles.class), eq(7L), eq(changes))).thenReturn(true);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                patch("/api/articles?id=7")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(changes))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(partialUpdateService, times(1)).update(Articles.class, 7L, changes);
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("Articles with id 7 updated", json.get("message"));
+  }
+
+  @Test
+  public void logged_out_users_cannot_bulk_delete() throws Exception {
+    mockMvc
+        .perform(
+            delete("/api/articles/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("[1, 2]")
+                .with(csrf()))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_delete_many_articles_at_once() throws Exception {
+    // arrange
+
+    List<Long> ids = List.of(15L, 16L, 17L);
+    when(articlesRepository.deleteByIdIn(eq(ids))).thenReturn(2);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                delete("/api/articles/bulk")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(ids))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(articlesRepository, times(1)).deleteByIdIn(ids);
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("2 Articles rows deleted", json.get("message"));
+    assertEquals(2, json.get("count"));
+  }
 }
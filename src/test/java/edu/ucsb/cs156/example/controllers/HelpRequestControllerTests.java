@@ -3,30 +3,45 @@ package edu.ucsb.cs156.example.controllers;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.HelpRequest;
+import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.errors.InvalidPatchException;
+import edu.ucsb.cs156.example.models.KeysetPage;
 import edu.ucsb.cs156.example.repositories.HelpRequestRepository;
 import edu.ucsb.cs156.example.repositories.UserRepository;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
@@ -37,6 +52,10 @@ public class HelpRequestControllerTests extends ControllerTestCase {
 
   @MockBean HelpRequestRepository helpRequestRepository;
 
+  @MockBean JsonExportService jsonExportService;
+
+  @MockBean PartialUpdateService partialUpdateService;
+
   @MockBean UserRepository userRepository;
 
   // test for GET /api/helprequest/all
@@ -69,29 +88,77 @@ public class HelpRequestControllerTests extends ControllerTestCase {
             .build();
 
     var expected = new ArrayList<>(Arrays.asList(hr1, hr2));
-    when(helpRequestRepository.findAll()).thenReturn(expected);
+    when(helpRequestRepository.findBy(any(Specification.class), any())).thenReturn(expected);
 
     // act
     MvcResult response =
         mockMvc.perform(get("/api/helprequest/all")).andExpect(status().isOk()).andReturn();
 
     // assert
-    verify(helpRequestRepository, times(1)).findAll();
+    verify(helpRequestRepository, times(1)).findBy(any(Specification.class), any());
     String expectedJson = mapper.writeValueAsString(expected);
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
   }
 
+  @Test
+  public void logged_out_users_cannot_get_a_page() throws Exception {
+    mockMvc.perform(get("/api/helprequest/page")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void logged_in_user_can_get_a_page_sorted_by_requestTime() throws Exception {
+
+    // arrange
+
+    HelpRequest helpRequest1 =
+        HelpRequest.builder()
+            .id(2L)
+            .requestTime(LocalDateTime.parse("2022-04-20T17:35:00"))
+            .build();
+    HelpRequest helpRequest2 =
+        HelpRequest.builder()
+            .id(1L)
+            .requestTime(LocalDateTime.parse("2022-04-20T18:31:00"))
+            .build();
+    HelpRequest helpRequest3 =
+        HelpRequest.builder()
+            .id(3L)
+            .requestTime(LocalDateTime.parse("2022-04-21T09:00:00"))
+            .build();
+    when(helpRequestRepository.findBy(any(Specification.class), any()))
+        .thenReturn(List.of(helpRequest1, helpRequest2, helpRequest3));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/helprequest/page?sort=requestTime&size=2"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    String expectedJson =
+        mapper.writeValueAsString(
+            KeysetPage.<HelpRequest>builder()
+                .content(List.of(helpRequest1, helpRequest2))
+                .nextCursor("MjAyMi0wNC0yMFQxODozMQ.MQ")
+                .build());
+    String responseString = response.getResponse().getContentAsString();
+    assertEquals(expectedJson, responseString);
+  }
+
   @WithMockUser(roles = {"USER"})
   @Test
   public void get_all_returns_empty_list_when_none_exist() throws Exception {
-    when(helpRequestRepository.findAll()).thenReturn(new ArrayList<>());
+    when(helpRequestRepository.findBy(any(Specification.class), any()))
+        .thenReturn(new ArrayList<>());
 
     MvcResult response =
         mockMvc.perform(get("/api/helprequest/all")).andExpect(status().isOk()).andReturn();
 
     assertEquals("[]", response.getResponse().getContentAsString());
-    verify(helpRequestRepository, times(1)).findAll();
+    verify(helpRequestRepository, times(1)).findBy(any(Specification.class), any());
   }
 
   // test for GET /api/helprequest?id=
@@ -223,7 +290,7 @@ public class HelpRequestControllerTests extends ControllerTestCase {
 
     // assert
     verify(helpRequestRepository, times(1)).findById(15L);
-    verify(helpRequestRepository, times(1)).delete(any());
+    verify(helpRequestRepository, times(1)).delete(any(HelpRequest.class));
 
     Map<String, Object> json = responseToJson(response);
     assertEquals("HelpRequest with id 15 deleted", json.get("message"));
@@ -340,4 +407,384 @@ public class HelpRequestControllerTests extends ControllerTestCase {
     assertEquals("EntityNotFoundException", json.get("type"));
     assertEquals("HelpRequest with id 67 not found", json.get("message"));
   }
+
+  @Test
+  public void logged_out_users_cannot_export() throws Exception {
+    mockMvc.perform(get("/api/helprequest/export")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  @SuppressWarnings("unchecked")
+  public void logged_in_users_can_export_all_help_requests() throws Exception {
+
+    // act
+    mockMvc.perform(get("/api/helprequest/export")).andExpect(status().isOk());
+
+    // assert
+    ArgumentCaptor<Supplier<Stream<HelpRequest>>> rows = ArgumentCaptor.forClass(Supplier.class);
+    verify(jsonExportService, times(1)).writeJsonArray(rows.capture(), any());
+    rows.getValue().get();
+    verify(helpRequestRepository, times(1)).streamAllByOrderByIdAsc();
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_by_id_returns_304_when_the_client_has_the_current_version() throws Exception {
+
+    // arrange
+
+    HelpRequest current =
+        HelpRequest.builder()
+            .id(7L)
+            .version(3L)
+            .lastModified(ZonedDateTime.parse("2025-01-02T03:04:05Z"))
+            .build();
+    when(helpRequestRepository.findById(eq(7L))).thenReturn(Optional.of(current));
+    String etag =
+        mockMvc
+            .perform(get("/api/helprequest?id=7"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getHeader(HttpHeaders.ETAG);
+
+    // act
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/helprequest?id=7").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andReturn();
+
+    // assert
+
+    assertEquals("", response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_all_returns_304_when_the_client_has_the_current_help_requests() throws Exception {
+
+    // arrange
+
+    HelpRequest current =
+        HelpRequest.builder()
+            .id(7L)
+            .version(3L)
+            .lastModified(ZonedDateTime.parse("2025-01-02T03:04:05Z"))
+            .build();
+    when(helpRequestRepository.findBy(any(Specification.class), any()))
+        .thenReturn(List.of(current));
+    String etag =
+        mockMvc
+            .perform(get("/api/helprequest/all"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getHeader(HttpHeaders.ETAG);
+
+    // act
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/helprequest/all").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andReturn();
+
+    // assert
+
+    assertEquals("", response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void logged_in_regular_users_cannot_post_a_batch() throws Exception {
+    mockMvc
+        .perform(
+            post("/api/helprequest/post/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("[]")
+                .with(csrf()))
+        .andExpect(status().is(403)); // only admins can post
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void an_admin_user_can_post_a_batch_of_help_requests() throws Exception {
+    // arrange
+
+    List<HelpRequest> incoming =
+        List.of(
+            HelpRequest.builder().id(17L).requesterEmail("test1@ucsb.edu").teamId("f25-01").build(),
+            HelpRequest.builder()
+                .id(18L)
+                .requesterEmail("test2@ucsb.edu")
+                .teamId("f25-02")
+                .build());
+
+    List<HelpRequest> unsaved =
+        List.of(
+            HelpRequest.builder().requesterEmail("test1@ucsb.edu").teamId("f25-01").build(),
+            HelpRequest.builder().requesterEmail("test2@ucsb.edu").teamId("f25-02").build());
+
+    List<HelpRequest> saved =
+        List.of(
+            HelpRequest.builder().id(1L).requesterEmail("test1@ucsb.edu").teamId("f25-01").build(),
+            HelpRequest.builder().id(2L).requesterEmail("test2@ucsb.edu").teamId("f25-02").build());
+
+    when(helpRequestRepository.saveAll(eq(unsaved))).thenReturn(saved);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                post("/api/helprequest/post/batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(incoming))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    // ids in the request are ignored
+    verify(helpRequestRepository, times(1)).saveAll(unsaved);
+    String expectedJson = mapper.writeValueAsString(saved);
+    String responseString = response.getResponse().getContentAsString();
+    assertEquals(expectedJson, responseString);
+  }
+
+  @Test
+  public void logged_out_users_cannot_patch() throws Exception {
+    mockMvc
+        .perform(
+            patch("/api/helprequest?id=7")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("{}")
+                .with(csrf()))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void logged_in_users_can_patch_some_fields() throws Exception {
+    // arrange
+
+    Map<String, Object> changes = Map.of("solved", true);
+    when(partialUpdateService.update(eq(HelpRequest.class), eq(7L), eq(changes))).thenReturn(true);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                patch("/api/helprequest?id=7")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(changes))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(partialUpdateService, times(1)).update(HelpRequest.class, 7L, changes);
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("HelpRequest with id 7 updated", json.get("message"));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void patch_that_changes_nothing_says_so() throws Exception {
+    // arrange
+
+    Map<String, Object> changes = Map.of("solved", true);
+    when(partialUpdateService.update(eq(HelpRequest.class), eq(7L), eq(changes))).thenReturn(false);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                patch("/api/helprequest?id=7")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(changes))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("HelpRequest with id 7 unchanged", json.get("message"));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void patch_of_a_help_request_that_does_not_exist_returns_404() throws Exception {
+    // arrange
+
+    Map<String, Object> changes = Map.of("solved", true);
+    when(partialUpdateService.update(eq(HelpRequest.class), eq(7L), eq(changes)))
+        .thenThrow(new EntityNotFoundException(HelpRequest.class, 7L));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                patch("/api/helprequest?id=7")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(changes))
+                    .with(csrf()))
+            .andExpect(status().isNotFound())
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("EntityNotFoundException", json.get("type"));
+    assertEquals("HelpRequest with id 7 not found", json.get("message"));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void patch_of_a_field_that_cannot_change_returns_400() throws Exception {
+    // arrange
+
+    Map<String, Object> changes = Map.of("version", 0);
+    when(partialUpdateService.update(eq(HelpRequest.class), eq(7L), eq(changes)))
+        .thenThrow(new InvalidPatchException(HelpRequest.class, "version", "no"));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                patch("/api/helprequest?id=7")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(changes))
+                    .with(csrf()))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("InvalidPatchException", json.get("type"));
+    assertEquals("Cannot patch HelpRequest.version: no", json.get("message"));
+  }
+
+  @Test
+  public void logged_out_users_cannot_bulk_delete() throws Exception {
+    mockMvc
+        .perform(
+            delete("/api/helprequest/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("[1, 2]")
+                .with(csrf()))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void logged_in_users_can_delete_many_help_requests_at_once() throws Exception {
+    // arrange
+
+    List<Long> ids = List.of(15L, 16L, 17L);
+    when(helpRequestRepository.deleteByIdIn(eq(ids))).thenReturn(2);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                delete("/api/helprequest/bulk")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(ids))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(helpRequestRepository, times(1)).deleteByIdIn(ids);
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("2 HelpRequest rows deleted", json.get("message"));
+    assertEquals(2, json.get("count"));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void bulk_delete_of_no_ids_does_not_touch_the_database() throws Exception {
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                delete("/api/helprequest/bulk")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(List.of()))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(helpRequestRepository, never()).deleteByIdIn(any());
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("0 HelpRequest rows deleted", json.get("message"));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void bulk_delete_of_more_than_max_size_ids_is_rejected() throws Exception {
+    // arrange
+
+    List<Long> ids = LongStream.range(0, 1001).boxed().toList();
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                delete("/api/helprequest/bulk")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(ids))
+                    .with(csrf()))
+            .andExpect(status().is(413))
+            .andReturn();
+
+    // assert
+    verify(helpRequestRepository, never()).deleteByIdIn(any());
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("BatchTooLargeException", json.get("type"));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void regular_users_cannot_delete_all_solved_help_requests() throws Exception {
+    mockMvc
+        .perform(delete("/api/helprequest/solved?before=2024-01-01T00:00:00").with(csrf()))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_delete_solved_help_requests_made_before_a_date() throws Exception {
+    // arrange
+
+    LocalDateTime before = LocalDateTime.parse("2024-01-01T00:00:00");
+    when(helpRequestRepository.deleteSolvedBefore(eq(before))).thenReturn(40);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(delete("/api/helprequest/solved?before=2024-01-01T00:00:00").with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(helpRequestRepository, times(1)).deleteSolvedBefore(before);
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("40 HelpRequest rows deleted", json.get("message"));
+    assertEquals(40, json.get("count"));
+  }
 }
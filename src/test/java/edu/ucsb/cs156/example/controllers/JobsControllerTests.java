@@ -3,10 +3,17 @@ package edu.ucsb.cs156.example.controllers;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -15,43 +22,99 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.ucsb.cs156.example.ControllerTestCase;
+import edu.ucsb.cs156.example.config.JobExecutorConfig;
 import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import edu.ucsb.cs156.example.entities.JobPriority;
 import edu.ucsb.cs156.example.entities.User;
+import edu.ucsb.cs156.example.entities.Workflow;
+import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.errors.InvalidWorkflowException;
+import edu.ucsb.cs156.example.errors.JobRateLimitException;
+import edu.ucsb.cs156.example.models.JobLogMatch;
+import edu.ucsb.cs156.example.models.JobSummary;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import edu.ucsb.cs156.example.models.WorkflowStatus;
+import edu.ucsb.cs156.example.models.WorkflowStep;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
 import edu.ucsb.cs156.example.repositories.JobsRepository;
 import edu.ucsb.cs156.example.repositories.UserRepository;
+import edu.ucsb.cs156.example.services.jobs.JobEventStreamService;
+import edu.ucsb.cs156.example.services.jobs.JobLogArchiveService;
+import edu.ucsb.cs156.example.services.jobs.JobLogSearchService;
+import edu.ucsb.cs156.example.services.jobs.JobLogStreamService;
+import edu.ucsb.cs156.example.services.jobs.JobQueueService;
+import edu.ucsb.cs156.example.services.jobs.JobRateLimiter;
 import edu.ucsb.cs156.example.services.jobs.JobService;
+import edu.ucsb.cs156.example.services.jobs.WorkflowService;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureDataJpa;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @Slf4j
 @WebMvcTest(controllers = JobsController.class)
-@Import(JobService.class)
+@Import({JobService.class, JobExecutorConfig.class})
 @AutoConfigureDataJpa
 public class JobsControllerTests extends ControllerTestCase {
 
   @MockitoBean JobsRepository jobsRepository;
 
+  @MockitoBean JobLogLinesRepository jobLogLinesRepository;
+
+  @MockitoBean JobLogArchiveService jobLogArchiveService;
+
+  @MockitoBean JobLogSearchService jobLogSearchService;
+
+  @MockitoBean JobEventStreamService jobEventStreamService;
+
+  @MockitoBean JobRateLimiter jobRateLimiter;
+
+  @MockitoBean JobLogStreamService jobLogStreamService;
+
+  @MockitoBean JobQueueService jobQueueService;
+
+  @MockitoBean WorkflowService workflowService;
+
   @MockitoBean UserRepository userRepository;
 
   @Autowired JobService jobService;
 
   @Autowired ObjectMapper objectMapper;
 
+  @BeforeEach
+  public void setup() {
+    // jobs started here hold their lease until they finish
+    when(jobsRepository.startIfLeaseHeld(any(), any())).thenReturn(1);
+    when(jobsRepository.finishIfLeaseHeld(any(), any())).thenReturn(1);
+  }
+
   @WithMockUser(roles = {"ADMIN"})
   @Test
   public void admin_can_get_all_jobs() throws Exception {
@@ -78,6 +141,84 @@ public class JobsControllerTests extends ControllerTestCase {
     assertEquals(expectedJson, responseString);
   }
 
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_can_get_first_page_of_jobs() throws Exception {
+
+    // arrange
+
+    JobSummary job9 = JobSummary.builder().id(9L).createdById(1L).status("complete").build();
+    JobSummary job8 = JobSummary.builder().id(8L).createdById(1L).status("complete").build();
+    when(jobsRepository.findSummaries(Long.MAX_VALUE, "complete", 1L, PageRequest.of(0, 2)))
+        .thenReturn(List.of(job9, job8));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/jobs/page?status=complete&createdById=1&size=2"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+
+    KeysetPage<JobSummary> expected =
+        KeysetPage.<JobSummary>builder().content(List.of(job9, job8)).nextCursor("8").build();
+    assertEquals(mapper.writeValueAsString(expected), response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_can_get_last_page_of_jobs() throws Exception {
+
+    // arrange
+
+    JobSummary job7 = JobSummary.builder().id(7L).status("error").build();
+    when(jobsRepository.findSummaries(8L, null, null, PageRequest.of(0, 500)))
+        .thenReturn(List.of(job7));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/jobs/page?cursor=8&size=100000"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+
+    KeysetPage<JobSummary> expected =
+        KeysetPage.<JobSummary>builder().content(List.of(job7)).nextCursor(null).build();
+    assertEquals(mapper.writeValueAsString(expected), response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void page_of_jobs_uses_page_size_of_at_least_one() throws Exception {
+
+    // act
+    mockMvc.perform(get("/api/jobs/page?size=0")).andExpect(status().isOk());
+
+    // assert
+    verify(jobsRepository, times(1))
+        .findSummaries(Long.MAX_VALUE, null, null, PageRequest.of(0, 1));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void page_of_jobs_rejects_invalid_cursor() throws Exception {
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/jobs/page?cursor=abc"))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("InvalidCursorException", json.get("type"));
+    assertEquals("Invalid cursor: abc", json.get("message"));
+  }
+
   @WithMockUser(roles = {"ADMIN"})
   @Test
   public void api_getJobLogById__admin_logged_in__returns_job_by_id() throws Exception {
@@ -177,6 +318,131 @@ public class JobsControllerTests extends ControllerTestCase {
         .andExpect(content().string(""));
   }
 
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_can_search_job_log_for_a_substring() throws Exception {
+    // Arrange
+    List<JobLogMatch> matches =
+        List.of(JobLogMatch.builder().lineNumber(7).message("a.b failed").build());
+    when(jobLogSearchService.search(eq(1L), any(), eq(0L), eq(Long.MAX_VALUE), eq(100)))
+        .thenReturn(matches);
+    ArgumentCaptor<Pattern> captor = ArgumentCaptor.forClass(Pattern.class);
+
+    // Act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/jobs/logs/{id}/search?query=a.b", 1L))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // Assert
+    verify(jobLogSearchService)
+        .search(eq(1L), captor.capture(), eq(0L), eq(Long.MAX_VALUE), eq(100));
+    assertEquals("a.b", captor.getValue().pattern());
+    assertEquals(Pattern.LITERAL, captor.getValue().flags());
+    assertEquals(mapper.writeValueAsString(matches), response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_can_search_part_of_a_job_log_with_a_regex() throws Exception {
+    // Arrange
+    ArgumentCaptor<Pattern> captor = ArgumentCaptor.forClass(Pattern.class);
+
+    // Act
+    mockMvc
+        .perform(
+            get("/api/jobs/logs/{id}/search", 1L)
+                .param("query", "error|fail")
+                .param("regex", "true")
+                .param("fromLine", "10")
+                .param("toLine", "20")
+                .param("limit", "5000"))
+        .andExpect(status().isOk());
+
+    // Assert
+    verify(jobLogSearchService).search(eq(1L), captor.capture(), eq(10L), eq(20L), eq(1000));
+    assertEquals("error|fail", captor.getValue().pattern());
+    assertEquals(0, captor.getValue().flags());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void search_job_log_rejects_invalid_regex() throws Exception {
+    // Act
+    MvcResult response =
+        mockMvc
+            .perform(
+                get("/api/jobs/logs/{id}/search", 1L).param("query", "(").param("regex", "true"))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+
+    // Assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("InvalidSearchPatternException", json.get("type"));
+    assertEquals("Invalid search pattern: (", json.get("message"));
+    verify(jobLogSearchService, never()).search(anyLong(), any(), anyLong(), anyLong(), anyInt());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_can_stream_job_log_from_offset() throws Exception {
+    // Arrange
+    when(jobsRepository.existsById(eq(1L))).thenReturn(true);
+    when(jobLogStreamService.subscribe(1L, 3L)).thenReturn(new SseEmitter());
+
+    // Act & Assert
+    mockMvc
+        .perform(get("/api/jobs/logs/{id}/stream?offset=3", 1L))
+        .andExpect(request().asyncStarted());
+    verify(jobLogStreamService, times(1)).subscribe(1L, 3L);
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_can_stream_job_events_of_one_type_and_user() throws Exception {
+    // Arrange
+    when(jobEventStreamService.subscribe("TestJob", 5L)).thenReturn(new SseEmitter());
+
+    // Act & Assert
+    mockMvc
+        .perform(get("/api/jobs/events?jobType=TestJob&createdById=5"))
+        .andExpect(request().asyncStarted());
+    verify(jobEventStreamService, times(1)).subscribe("TestJob", 5L);
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_can_resume_job_log_stream_after_last_event_id() throws Exception {
+    // Arrange
+    when(jobsRepository.existsById(eq(1L))).thenReturn(true);
+    when(jobLogStreamService.subscribe(1L, 8L)).thenReturn(new SseEmitter());
+
+    // Act & Assert
+    mockMvc
+        .perform(get("/api/jobs/logs/{id}/stream", 1L).header("Last-Event-ID", "7"))
+        .andExpect(request().asyncStarted());
+    verify(jobLogStreamService, times(1)).subscribe(1L, 8L);
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void stream_job_log_returns_not_found_for_missing_job() throws Exception {
+    // Arrange
+    when(jobsRepository.existsById(eq(2L))).thenReturn(false);
+
+    // Act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/jobs/logs/{id}/stream", 2L))
+            .andExpect(status().isNotFound())
+            .andReturn();
+
+    // Assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("Job with id 2 not found", json.get("message"));
+  }
+
   @WithMockUser(roles = {"ADMIN"})
   @Test
   public void admin_can_delete_specific_job() throws Exception {
@@ -239,7 +505,6 @@ public class JobsControllerTests extends ControllerTestCase {
             .createdAt(null)
             .updatedAt(null)
             .status("running")
-            .log("Hello World! from test job!")
             .build();
 
     Job jobCompleted =
@@ -249,7 +514,6 @@ public class JobsControllerTests extends ControllerTestCase {
             .createdAt(null)
             .updatedAt(null)
             .status("complete")
-            .log("Hello World! from test job!\nGoodbye from test job!")
             .build();
 
     when(jobsRepository.save(any(Job.class))).thenReturn(jobStarted).thenReturn(jobCompleted);
@@ -265,14 +529,23 @@ public class JobsControllerTests extends ControllerTestCase {
     String responseString = response.getResponse().getContentAsString();
     Job jobReturned = objectMapper.readValue(responseString, Job.class);
 
-    assertEquals("running", jobReturned.getStatus());
+    assertTrue(Set.of("queued", "running").contains(jobReturned.getStatus()));
 
     await()
         .atMost(1, SECONDS)
-        .untilAsserted(() -> verify(jobsRepository, times(2)).save(eq(jobStarted)));
+        .untilAsserted(
+            () ->
+                verify(jobsRepository, times(1))
+                    .startIfLeaseHeld(argThat(sameIdAndStatusAs(jobStarted)), any()));
     await()
         .atMost(10, SECONDS)
-        .untilAsserted(() -> verify(jobsRepository, times(4)).save(eq(jobCompleted)));
+        .untilAsserted(
+            () ->
+                verify(jobsRepository, times(1))
+                    .finishIfLeaseHeld(argThat(sameIdAndStatusAs(jobCompleted)), any()));
+
+    assertEquals(
+        List.of("Hello World! from test job!", "Goodbye from test job!"), loggedMessages());
   }
 
   @WithMockUser(roles = {"ADMIN"})
@@ -290,7 +563,6 @@ public class JobsControllerTests extends ControllerTestCase {
             .createdAt(null)
             .updatedAt(null)
             .status("running")
-            .log("Hello World! from test job!")
             .build();
 
     Job jobFailed =
@@ -300,7 +572,6 @@ public class JobsControllerTests extends ControllerTestCase {
             .createdAt(null)
             .updatedAt(null)
             .status("error")
-            .log("Hello World! from test job!\nFail!")
             .build();
 
     when(jobsRepository.save(any(Job.class))).thenReturn(jobStarted).thenReturn(jobFailed);
@@ -315,14 +586,394 @@ public class JobsControllerTests extends ControllerTestCase {
     String responseString = response.getResponse().getContentAsString();
     Job jobReturned = objectMapper.readValue(responseString, Job.class);
 
-    assertEquals("running", jobReturned.getStatus());
+    assertTrue(Set.of("queued", "running").contains(jobReturned.getStatus()));
+
+    await()
+        .atMost(1, SECONDS)
+        .untilAsserted(
+            () ->
+                verify(jobsRepository, times(1))
+                    .startIfLeaseHeld(argThat(sameIdAndStatusAs(jobStarted)), any()));
+
+    await()
+        .atMost(10, SECONDS)
+        .untilAsserted(
+            () ->
+                verify(jobsRepository, times(1))
+                    .finishIfLeaseHeld(argThat(sameIdAndStatusAs(jobFailed)), any()));
+
+    assertEquals(List.of("Hello World! from test job!", "Fail!"), loggedMessages());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void launch_test_job_is_rejected_when_rate_limited() throws Exception {
+
+    // arrange
+
+    doThrow(new JobRateLimitException("TestJob", 12))
+        .when(jobRateLimiter)
+        .acquire(eq("TestJob"), any());
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(post("/api/jobs/launch/testjob?fail=false&sleepMs=0").with(csrf()))
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string("Retry-After", "12"))
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("JobRateLimitException", json.get("type"));
+    assertEquals("Too many TestJob jobs launched, try again in 12 seconds", json.get("message"));
+    verify(jobsRepository, never()).save(any(Job.class));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_can_get_executor_status() throws Exception {
+
+    // act
+    MvcResult response =
+        mockMvc.perform(get("/api/jobs/executor")).andExpect(status().isOk()).andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals(4, json.get("maxPoolSize"));
+    assertEquals(100, json.get("queueCapacity"));
+    assertEquals(0, json.get("queuedCount"));
+    assertEquals(0, json.get("rejectedCount"));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_cannot_cancel_job_that_does_not_exist() throws Exception {
+
+    // arrange
+
+    when(jobsRepository.existsById(eq(7L))).thenReturn(false);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(post("/api/jobs/cancel?id=7").with(csrf()))
+            .andExpect(status().isNotFound())
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("Job with id 7 not found", json.get("message"));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_cannot_cancel_job_that_is_not_running() throws Exception {
+
+    // arrange
+
+    when(jobsRepository.existsById(eq(7L))).thenReturn(true);
 
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(post("/api/jobs/cancel?id=7").with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("Job with id 7 is not queued or running", json.get("message"));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_can_cancel_running_test_job() throws Exception {
+
+    // arrange
+
+    when(jobsRepository.existsById(eq(0L))).thenReturn(true);
+    mockMvc
+        .perform(post("/api/jobs/launch/testjob?fail=false&sleepMs=30000").with(csrf()))
+        .andExpect(status().isOk());
     await()
         .atMost(1, SECONDS)
-        .untilAsserted(() -> verify(jobsRepository, times(2)).save(eq(jobStarted)));
+        .untilAsserted(() -> verify(jobsRepository, times(1)).startIfLeaseHeld(any(), any()));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(post("/api/jobs/cancel?id=0").with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("Job with id 0 cancelled", json.get("message"));
+    await()
+        .atMost(5, SECONDS)
+        .untilAsserted(
+            () ->
+                verify(jobsRepository, atLeastOnce())
+                    .save(argThat(j -> "cancelled".equals(j.getStatus()))));
+    assertEquals(
+        List.of("Hello World! from test job!", "Job stopped: cancelled"), loggedMessages());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void test_job_is_stopped_when_it_times_out() throws Exception {
+
+    // act
+    mockMvc
+        .perform(
+            post("/api/jobs/launch/testjob?fail=false&sleepMs=30000&timeoutSeconds=0").with(csrf()))
+        .andExpect(status().isOk());
+
+    // assert
+    await()
+        .atMost(10, SECONDS)
+        .untilAsserted(
+            () ->
+                verify(jobsRepository, atLeastOnce())
+                    .save(argThat(j -> "timed_out".equals(j.getStatus()))));
+    assertEquals(
+        List.of("Hello World! from test job!", "Job stopped: timed_out"), loggedMessages());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void duplicate_launch_returns_test_job_already_in_flight() throws Exception {
+
+    // arrange
+
+    String key = JobService.coalesceKey("TestJob", Map.of("fail", false, "sleepMs", 100));
+    Job inFlight = Job.builder().id(5L).status("running").coalesceKey(key).build();
+    when(jobsRepository.findByCoalesceKey(eq(key))).thenReturn(Optional.of(inFlight));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                post("/api/jobs/launch/testjob?fail=false&sleepMs=100&coalesce=true").with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    String responseString = response.getResponse().getContentAsString();
+    assertEquals(mapper.writeValueAsString(inFlight), responseString);
+    verify(jobsRepository, never()).save(any(Job.class));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_can_queue_test_job() throws Exception {
+
+    // arrange
+
+    Job queued = Job.builder().id(3L).status("queued").jobType("TestJob").build();
+    when(jobQueueService.enqueue(
+            eq("TestJob"),
+            eq(Map.of("fail", true, "sleepMs", 100)),
+            eq(true),
+            eq(JobPriority.BULK)))
+        .thenReturn(queued);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                post("/api/jobs/launch/testjob/queued?fail=true&sleepMs=100&coalesce=true"
+                        + "&priority=BULK")
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    String responseString = response.getResponse().getContentAsString();
+    assertEquals(mapper.writeValueAsString(queued), responseString);
+  }
+
+  // the job also carries its lease and timing while it runs, which the test cannot predict
+  private static ArgumentMatcher<Job> sameIdAndStatusAs(Job expected) {
+    return job ->
+        job.getId() == expected.getId()
+            && Objects.equals(job.getCreatedBy(), expected.getCreatedBy())
+            && Objects.equals(job.getStatus(), expected.getStatus());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void bulk_test_job_runs_on_the_bulk_executor() throws Exception {
 
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                post("/api/jobs/launch/testjob?fail=false&sleepMs=10&priority=BULK").with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    String responseString = response.getResponse().getContentAsString();
+    Job jobReturned = objectMapper.readValue(responseString, Job.class);
+    assertEquals(JobPriority.BULK, jobReturned.getPriority());
     await()
         .atMost(10, SECONDS)
-        .untilAsserted(() -> verify(jobsRepository, times(3)).save(eq(jobFailed)));
+        .untilAsserted(
+            () ->
+                verify(jobsRepository, atLeastOnce())
+                    .save(argThat(j -> "complete".equals(j.getStatus()))));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_can_get_bulk_executor_status() throws Exception {
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/jobs/executor?priority=BULK"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals(1, json.get("maxPoolSize"));
+    assertEquals(1000, json.get("queueCapacity"));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  @SuppressWarnings("unchecked")
+  public void admin_can_start_a_workflow() throws Exception {
+
+    // arrange
+    List<WorkflowStep> steps =
+        List.of(
+            WorkflowStep.builder().name("import").jobType("TestJob").build(),
+            WorkflowStep.builder()
+                .name("cacheWarm")
+                .jobType("TestJob")
+                .dependsOn(List.of("import"))
+                .build());
+    when(workflowService.start(eq("nightly"), any()))
+        .thenReturn(Workflow.builder().id(3L).name("nightly").build());
+    ArgumentCaptor<List<WorkflowStep>> captor = ArgumentCaptor.forClass(List.class);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                post("/api/jobs/workflows?name=nightly")
+                    .with(csrf())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(steps)))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals(3, json.get("id"));
+    assertEquals("nightly", json.get("name"));
+    verify(workflowService).start(eq("nightly"), captor.capture());
+    assertEquals("cacheWarm", captor.getValue().get(1).getName());
+    assertEquals(List.of("import"), captor.getValue().get(1).getDependsOn());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void invalid_workflow_is_a_bad_request() throws Exception {
+
+    // arrange
+    when(workflowService.start(eq("nightly"), any()))
+        .thenThrow(new InvalidWorkflowException("a workflow needs at least one step"));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                post("/api/jobs/workflows?name=nightly")
+                    .with(csrf())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("[]"))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("InvalidWorkflowException", json.get("type"));
+    assertEquals("Invalid workflow: a workflow needs at least one step", json.get("message"));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_can_get_workflow_status() throws Exception {
+
+    // arrange
+    WorkflowStatus workflowStatus =
+        WorkflowStatus.builder().id(3L).name("nightly").status("running").steps(List.of()).build();
+    when(workflowService.getStatus(3L)).thenReturn(workflowStatus);
+
+    // act
+    MvcResult response =
+        mockMvc.perform(get("/api/jobs/workflows/{id}", 3L)).andExpect(status().isOk()).andReturn();
+
+    // assert
+    assertEquals(
+        objectMapper.writeValueAsString(workflowStatus),
+        response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_can_get_workflow_logs() throws Exception {
+
+    // arrange
+    List<Job> steps = List.of(Job.builder().id(10L).build());
+    when(workflowService.getSteps(3L)).thenReturn(steps);
+    doAnswer(
+            invocation -> {
+              invocation.getArgument(1, Writer.class).write("=== import (job 10): complete ===\n");
+              return null;
+            })
+        .when(workflowService)
+        .writeLogs(eq(steps), any(Writer.class));
+
+    // act & assert
+    mockMvc
+        .perform(get("/api/jobs/workflows/{id}/logs", 3L))
+        .andExpect(status().isOk())
+        .andExpect(content().string("=== import (job 10): complete ===\n"));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void workflow_logs_of_unknown_workflow_is_not_found() throws Exception {
+
+    // arrange
+    when(workflowService.getSteps(99L)).thenThrow(new EntityNotFoundException(Workflow.class, 99L));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/jobs/workflows/{id}/logs", 99L))
+            .andExpect(status().isNotFound())
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("Workflow with id 99 not found", json.get("message"));
+    verify(workflowService, never()).writeLogs(any(), any());
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<String> loggedMessages() {
+    ArgumentCaptor<List<JobLogLine>> captor = ArgumentCaptor.forClass(List.class);
+    verify(jobLogLinesRepository, atLeastOnce()).saveAll(captor.capture());
+    return captor.getAllValues().stream()
+        .flatMap(List::stream)
+        .map(JobLogLine::getMessage)
+        .toList();
   }
 }
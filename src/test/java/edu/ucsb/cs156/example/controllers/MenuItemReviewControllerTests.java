@@ -9,24 +9,36 @@ import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.MenuItemReview;
+import edu.ucsb.cs156.example.models.KeysetPage;
 import edu.ucsb.cs156.example.repositories.MenuItemReviewRepository;
 import edu.ucsb.cs156.example.repositories.UserRepository;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
@@ -36,6 +48,10 @@ import org.springframework.test.web.servlet.MvcResult;
 public class MenuItemReviewControllerTests extends ControllerTestCase {
   @MockBean MenuItemReviewRepository menuItemReviewRepository;
 
+  @MockBean JsonExportService jsonExportService;
+
+  @MockBean PartialUpdateService partialUpdateService;
+
   @MockBean UserRepository userRepository;
 
   // Authorization tests for /api/ucsbdates/admin/all
@@ -47,9 +63,15 @@ public class MenuItemReviewControllerTests extends ControllerTestCase {
         .andExpect(status().is(403)); // logged out users can't get all
   }
 
+  @Test
+  public void logged_out_users_cannot_get_a_page() throws Exception {
+    mockMvc.perform(get("/api/menuitemreviews/page")).andExpect(status().is(403));
+  }
+
   @WithMockUser(roles = {"USER"})
   @Test
   public void logged_in_users_can_get_all() throws Exception {
+    when(menuItemReviewRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
     mockMvc.perform(get("/api/menuitemreviews/all")).andExpect(status().is(200)); // logged
   }
 
@@ -161,7 +183,8 @@ public class MenuItemReviewControllerTests extends ControllerTestCase {
     ArrayList<MenuItemReview> expectedMenuItemReviews = new ArrayList<>();
     expectedMenuItemReviews.addAll(Arrays.asList(menuItemReview1, menuItemReview2));
 
-    when(menuItemReviewRepository.findAll()).thenReturn(expectedMenuItemReviews);
+    when(menuItemReviewRepository.findBy(any(Specification.class), any()))
+        .thenReturn(expectedMenuItemReviews);
 
     // act
     MvcResult response =
@@ -169,12 +192,103 @@ public class MenuItemReviewControllerTests extends ControllerTestCase {
 
     // assert
 
-    verify(menuItemReviewRepository, times(1)).findAll();
+    verify(menuItemReviewRepository, times(1)).findBy(any(Specification.class), any());
     String expectedJson = mapper.writeValueAsString(expectedMenuItemReviews);
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
   }
 
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void logged_in_user_can_get_a_page_sorted_by_stars() throws Exception {
+
+    // arrange
+
+    MenuItemReview review1 = MenuItemReview.builder().id(3L).stars(5).build();
+    MenuItemReview review2 = MenuItemReview.builder().id(1L).stars(4).build();
+    MenuItemReview review3 = MenuItemReview.builder().id(2L).stars(4).build();
+    when(menuItemReviewRepository.findBy(any(Specification.class), any()))
+        .thenReturn(List.of(review1, review2, review3));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/menuitemreviews/page?sort=stars&size=2&direction=DESC"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    String expectedJson =
+        mapper.writeValueAsString(
+            KeysetPage.<MenuItemReview>builder()
+                .content(List.of(review1, review2))
+                .nextCursor("NA.MQ")
+                .build());
+    String responseString = response.getResponse().getContentAsString();
+    assertEquals(expectedJson, responseString);
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_all_returns_at_most_max_size_reviews_and_a_cursor_for_the_rest()
+      throws Exception {
+
+    // arrange
+
+    List<MenuItemReview> reviews =
+        LongStream.rangeClosed(1, 1001)
+            .mapToObj(id -> MenuItemReview.builder().id(id).build())
+            .toList();
+    when(menuItemReviewRepository.findBy(any(Specification.class), any())).thenReturn(reviews);
+
+    // act
+    MvcResult response =
+        mockMvc.perform(get("/api/menuitemreviews/all")).andExpect(status().isOk()).andReturn();
+
+    // assert
+    String expectedJson = mapper.writeValueAsString(reviews.subList(0, 1000));
+    String responseString = response.getResponse().getContentAsString();
+    assertEquals(expectedJson, responseString);
+    assertEquals(
+        "MTAwMA.MTAwMA", response.getResponse().getHeader(ApiController.NEXT_CURSOR_HEADER));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void page_of_menuitemreviews_rejects_unknown_sort_key() throws Exception {
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/menuitemreviews/page?sort=comments"))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("InvalidSortKeyException", json.get("type"));
+    assertEquals(
+        "Invalid sort key: comments; sort by one of id, itemId, stars, dateReviewed",
+        json.get("message"));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void page_of_menuitemreviews_rejects_invalid_cursor() throws Exception {
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/menuitemreviews/page?sort=stars&cursor=bm90LWEtbnVtYmVy.MQ"))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("InvalidCursorException", json.get("type"));
+    assertEquals("Invalid cursor: bm90LWEtbnVtYmVy.MQ", json.get("message"));
+  }
+
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void an_admin_user_can_post_a_new_menuitemreview() throws Exception {
@@ -324,7 +438,7 @@ public class MenuItemReviewControllerTests extends ControllerTestCase {
 
     // assert
     verify(menuItemReviewRepository, times(1)).findById(15L);
-    verify(menuItemReviewRepository, times(1)).delete(any());
+    verify(menuItemReviewRepository, times(1)).delete(any(MenuItemReview.class));
 
     Map<String, Object> json = responseToJson(response);
     assertEquals("MenuItemReview with id 15 deleted", json.get("message"));
@@ -350,4 +464,226 @@ public class MenuItemReviewControllerTests extends ControllerTestCase {
     Map<String, Object> json = responseToJson(response);
     assertEquals("MenuItemReview with id 15 not found", json.get("message"));
   }
+
+  @Test
+  public void logged_out_users_cannot_export() throws Exception {
+    mockMvc.perform(get("/api/menuitemreviews/export")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  @SuppressWarnings("unchecked")
+  public void logged_in_users_can_export_all_menu_item_reviews() throws Exception {
+
+    // act
+    mockMvc.perform(get("/api/menuitemreviews/export")).andExpect(status().isOk());
+
+    // assert
+    ArgumentCaptor<Supplier<Stream<MenuItemReview>>> rows = ArgumentCaptor.forClass(Supplier.class);
+    verify(jsonExportService, times(1)).writeJsonArray(rows.capture(), any());
+    rows.getValue().get();
+    verify(menuItemReviewRepository, times(1)).streamAllByOrderByIdAsc();
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_by_id_returns_304_when_the_client_has_the_current_version() throws Exception {
+
+    // arrange
+
+    MenuItemReview current =
+        MenuItemReview.builder()
+            .id(7L)
+            .version(3L)
+            .lastModified(ZonedDateTime.parse("2025-01-02T03:04:05Z"))
+            .build();
+    when(menuItemReviewRepository.findById(eq(7L))).thenReturn(Optional.of(current));
+    String etag =
+        mockMvc
+            .perform(get("/api/menuitemreviews?id=7"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getHeader(HttpHeaders.ETAG);
+
+    // act
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/menuitemreviews?id=7").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andReturn();
+
+    // assert
+
+    assertEquals("", response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_all_returns_304_when_the_client_has_the_current_reviews() throws Exception {
+
+    // arrange
+
+    MenuItemReview current =
+        MenuItemReview.builder()
+            .id(7L)
+            .version(3L)
+            .lastModified(ZonedDateTime.parse("2025-01-02T03:04:05Z"))
+            .build();
+    when(menuItemReviewRepository.findBy(any(Specification.class), any()))
+        .thenReturn(List.of(current));
+    String etag =
+        mockMvc
+            .perform(get("/api/menuitemreviews/all"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getHeader(HttpHeaders.ETAG);
+
+    // act
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/menuitemreviews/all").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andReturn();
+
+    // assert
+
+    assertEquals("", response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void logged_in_regular_users_cannot_post_a_batch() throws Exception {
+    mockMvc
+        .perform(
+            post("/api/menuitemreviews/post/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("[]")
+                .with(csrf()))
+        .andExpect(status().is(403)); // only admins can post
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void an_admin_user_can_post_a_batch_of_menu_item_reviews() throws Exception {
+    // arrange
+
+    List<MenuItemReview> incoming =
+        List.of(
+            MenuItemReview.builder().id(17L).itemId(27L).stars(5).build(),
+            MenuItemReview.builder().id(18L).itemId(29L).stars(2).build());
+
+    List<MenuItemReview> unsaved =
+        List.of(
+            MenuItemReview.builder().itemId(27L).stars(5).build(),
+            MenuItemReview.builder().itemId(29L).stars(2).build());
+
+    List<MenuItemReview> saved =
+        List.of(
+            MenuItemReview.builder().id(1L).itemId(27L).stars(5).build(),
+            MenuItemReview.builder().id(2L).itemId(29L).stars(2).build());
+
+    when(menuItemReviewRepository.saveAll(eq(unsaved))).thenReturn(saved);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                post("/api/menuitemreviews/post/batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(incoming))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    // ids in the request are ignored
+    verify(menuItemReviewRepository, times(1)).saveAll(unsaved);
+    String expectedJson = mapper.writeValueAsString(saved);
+    String responseString = response.getResponse().getContentAsString();
+    assertEquals(expectedJson, responseString);
+  }
+
+  @Test
+  public void logged_out_users_cannot_patch() throws Exception {
+    mockMvc
+        .perform(
+            patch("/api/menuitemreviews?id=7")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("{}")
+                .with(csrf()))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_patch_some_fields() throws Exception {
+    // arrange
+
+    Map<String, Object> changes = Map.of("stars", 4);
+    when(partialUpdateService.update(eq(MenuItemReview.class), eq(7L), eq(changes)))
+        .thenReturn(true);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                patch("/api/menuitemreviews?id=7")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(changes))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(partialUpdateService, times(1)).update(MenuItemReview.class, 7L, changes);
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("MenuItemReview with id 7 updated", json.get("message"));
+  }
+
+  @Test
+  public void logged_out_users_cannot_bulk_delete() throws Exception {
+    mockMvc
+        .perform(
+            delete("/api/menuitemreviews/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("[1, 2]")
+                .with(csrf()))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_delete_many_menu_item_reviews_at_once() throws Exception {
+    // arrange
+
+    List<Long> ids = List.of(15L, 16L, 17L);
+    when(menuItemReviewRepository.deleteByIdIn(eq(ids))).thenReturn(2);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                delete("/api/menuitemreviews/bulk")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(ids))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(menuItemReviewRepository, times(1)).deleteByIdIn(ids);
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("2 MenuItemReview rows deleted", json.get("message"));
+    assertEquals(2, json.get("count"));
+  }
 }
@@ -9,24 +9,35 @@ import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.RecommendationRequest;
+import edu.ucsb.cs156.example.models.KeysetPage;
 import edu.ucsb.cs156.example.repositories.RecommendationRequestRepository;
 import edu.ucsb.cs156.example.repositories.UserRepository;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
@@ -37,6 +48,10 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
 
   @MockBean RecommendationRequestRepository recommendationRequestRepository;
 
+  @MockBean JsonExportService jsonExportService;
+
+  @MockBean PartialUpdateService partialUpdateService;
+
   @MockBean UserRepository userRepository;
 
   // Authorization tests for /api/recommendationrequest/admin/all
@@ -47,9 +62,16 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
         .andExpect(status().is(403)); // logged out users can't get all
   }
 
+  @Test
+  public void logged_out_users_cannot_get_a_page() throws Exception {
+    mockMvc.perform(get("/api/recommendationrequest/page")).andExpect(status().is(403));
+  }
+
   @WithMockUser(roles = {"USER"})
   @Test
   public void logged_in_users_can_get_all() throws Exception {
+    when(recommendationRequestRepository.findBy(any(Specification.class), any()))
+        .thenReturn(List.of());
     mockMvc.perform(get("/api/recommendationrequest/all")).andExpect(status().is(200)); // logged
   }
 
@@ -87,7 +109,8 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
     ArrayList<RecommendationRequest> expectedRequests = new ArrayList<>();
     expectedRequests.addAll(Arrays.asList(recommendationRequest1, recommendationRequest2));
 
-    when(recommendationRequestRepository.findAll()).thenReturn(expectedRequests);
+    when(recommendationRequestRepository.findBy(any(Specification.class), any()))
+        .thenReturn(expectedRequests);
 
     // act
     MvcResult response =
@@ -98,12 +121,54 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
 
     // assert
 
-    verify(recommendationRequestRepository, times(1)).findAll();
+    verify(recommendationRequestRepository, times(1)).findBy(any(Specification.class), any());
     String expectedJson = mapper.writeValueAsString(expectedRequests);
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
   }
 
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void logged_in_user_can_get_a_page_sorted_by_dateneeded() throws Exception {
+
+    // arrange
+
+    RecommendationRequest request1 =
+        RecommendationRequest.builder()
+            .id(2L)
+            .dateneeded(LocalDateTime.parse("2022-02-01T00:00:00"))
+            .build();
+    RecommendationRequest request2 =
+        RecommendationRequest.builder()
+            .id(1L)
+            .dateneeded(LocalDateTime.parse("2022-03-01T12:30:00"))
+            .build();
+    RecommendationRequest request3 =
+        RecommendationRequest.builder()
+            .id(3L)
+            .dateneeded(LocalDateTime.parse("2022-04-01T00:00:00"))
+            .build();
+    when(recommendationRequestRepository.findBy(any(Specification.class), any()))
+        .thenReturn(List.of(request1, request2, request3));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/recommendationrequest/page?sort=dateneeded&size=2"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    String expectedJson =
+        mapper.writeValueAsString(
+            KeysetPage.<RecommendationRequest>builder()
+                .content(List.of(request1, request2))
+                .nextCursor("MjAyMi0wMy0wMVQxMjozMA.MQ")
+                .build());
+    String responseString = response.getResponse().getContentAsString();
+    assertEquals(expectedJson, responseString);
+  }
+
   // Tests for get by id
   @Test
   public void logged_out_users_cannot_get_by_id() throws Exception {
@@ -254,7 +319,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
 
     // assert
     verify(recommendationRequestRepository, times(1)).findById(15L);
-    verify(recommendationRequestRepository, times(1)).delete(any());
+    verify(recommendationRequestRepository, times(1)).delete(any(RecommendationRequest.class));
 
     Map<String, Object> json = responseToJson(response);
     assertEquals("RecommendationRequest with id 15 deleted", json.get("message"));
@@ -379,4 +444,272 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
     Map<String, Object> json = responseToJson(response);
     assertEquals("RecommendationRequest with id 67 not found", json.get("message"));
   }
+
+  @Test
+  public void logged_out_users_cannot_export() throws Exception {
+    mockMvc.perform(get("/api/recommendationrequest/export")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  @SuppressWarnings("unchecked")
+  public void logged_in_users_can_export_all_recommendation_requests() throws Exception {
+
+    // act
+    mockMvc.perform(get("/api/recommendationrequest/export")).andExpect(status().isOk());
+
+    // assert
+    ArgumentCaptor<Supplier<Stream<RecommendationRequest>>> rows =
+        ArgumentCaptor.forClass(Supplier.class);
+    verify(jsonExportService, times(1)).writeJsonArray(rows.capture(), any());
+    rows.getValue().get();
+    verify(recommendationRequestRepository, times(1)).streamAllByOrderByIdAsc();
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_by_id_returns_304_when_the_client_has_the_current_version() throws Exception {
+
+    // arrange
+
+    RecommendationRequest current =
+        RecommendationRequest.builder()
+            .id(7L)
+            .version(3L)
+            .lastModified(ZonedDateTime.parse("2025-01-02T03:04:05Z"))
+            .build();
+    when(recommendationRequestRepository.findById(eq(7L))).thenReturn(Optional.of(current));
+    String etag =
+        mockMvc
+            .perform(get("/api/recommendationrequest?id=7"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getHeader(HttpHeaders.ETAG);
+
+    // act
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/recommendationrequest?id=7").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andReturn();
+
+    // assert
+
+    assertEquals("", response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_all_returns_304_when_the_client_has_the_current_requests() throws Exception {
+
+    // arrange
+
+    RecommendationRequest current =
+        RecommendationRequest.builder()
+            .id(7L)
+            .version(3L)
+            .lastModified(ZonedDateTime.parse("2025-01-02T03:04:05Z"))
+            .build();
+    when(recommendationRequestRepository.findBy(any(Specification.class), any()))
+        .thenReturn(List.of(current));
+    String etag =
+        mockMvc
+            .perform(get("/api/recommendationrequest/all"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getHeader(HttpHeaders.ETAG);
+
+    // act
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/recommendationrequest/all").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andReturn();
+
+    // assert
+
+    assertEquals("", response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void logged_in_regular_users_cannot_post_a_batch() throws Exception {
+    mockMvc
+        .perform(
+            post("/api/recommendationrequest/post/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("[]")
+                .with(csrf()))
+        .andExpect(status().is(403)); // only admins can post
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void an_admin_user_can_post_a_batch_of_recommendation_requests() throws Exception {
+    // arrange
+
+    List<RecommendationRequest> incoming =
+        List.of(
+            RecommendationRequest.builder()
+                .id(17L)
+                .requesteremail("student@ucsb.edu")
+                .professoremail("prof@ucsb.edu")
+                .build(),
+            RecommendationRequest.builder()
+                .id(18L)
+                .requesteremail("other@ucsb.edu")
+                .professoremail("prof@ucsb.edu")
+                .build());
+
+    List<RecommendationRequest> unsaved =
+        List.of(
+            RecommendationRequest.builder()
+                .requesteremail("student@ucsb.edu")
+                .professoremail("prof@ucsb.edu")
+                .build(),
+            RecommendationRequest.builder()
+                .requesteremail("other@ucsb.edu")
+                .professoremail("prof@ucsb.edu")
+                .build());
+
+    List<RecommendationRequest> saved =
+        List.of(
+            RecommendationRequest.builder()
+                .id(1L)
+                .requesteremail("student@ucsb.edu")
+                .professoremail("prof@ucsb.edu")
+                .build(),
+            RecommendationRequest.builder()
+                .id(2L)
+                .requesteremail("other@ucsb.edu")
+                .professoremail("prof@ucsb.edu")
+                .build());
+
+    when(recommendationRequestRepository.saveAll(eq(unsaved))).thenReturn(saved);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                post("/api/recommendationrequest/post/batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(incoming))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    // ids in the request are ignored
+    verify(recommendationRequestRepository, times(1)).saveAll(unsaved);
+    String expectedJson = mapper.writeValueAsString(saved);
+    String responseString = response.getResponse().getContentAsString();
+    assertEquals(expectedJson, responseString);
+  }
+
+  @Test
+  public void logged_out_users_cannot_patch() throws Exception {
+    mockMvc
+        .perform(
+            patch("/api/recommendationrequest?id=7")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("{}")
+                .with(csrf()))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_patch_some_fields() throws Exception {
+    // arrange
+
+    Map<String, Object> changes = Map.of("done", true);
+    when(partialUpdateService.update(eq(RecommendationRequest.class), eq(7L), eq(changes)))
+        .thenReturn(true);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                patch("/api/recommendationrequest?id=7")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(changes))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(partialUpdateService, times(1)).update(RecommendationRequest.class, 7L, changes);
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("RecommendationRequest with id 7 updated", json.get("message"));
+  }
+
+  @Test
+  public void logged_out_users_cannot_bulk_delete() throws Exception {
+    mockMvc
+        .perform(
+            delete("/api/recommendationrequest/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("[1, 2]")
+                .with(csrf()))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_delete_many_recommendation_requests_at_once() throws Exception {
+    // arrange
+
+    List<Long> ids = List.of(15L, 16L, 17L);
+    when(recommendationRequestRepository.deleteByIdIn(eq(ids))).thenReturn(2);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                delete("/api/recommendationrequest/bulk")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(ids))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(recommendationRequestRepository, times(1)).deleteByIdIn(ids);
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("2 RecommendationRequest rows deleted", json.get("message"));
+    assertEquals(2, json.get("count"));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_delete_done_recommendation_requests_made_before_a_date() throws Exception {
+    // arrange
+
+    LocalDateTime before = LocalDateTime.parse("2024-01-01T00:00:00");
+    when(recommendationRequestRepository.deleteDoneRequestedBefore(eq(before))).thenReturn(40);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                delete("/api/recommendationrequest/done?before=2024-01-01T00:00:00").with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(recommendationRequestRepository, times(1)).deleteDoneRequestedBefore(before);
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("40 RecommendationRequest rows deleted", json.get("message"));
+    assertEquals(40, json.get("count"));
+  }
 }
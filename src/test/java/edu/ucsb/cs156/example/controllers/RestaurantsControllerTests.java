@@ -1,31 +1,45 @@
 package edu.ucsb.cs156.example.controllers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.models.KeysetPage;
 import edu.ucsb.cs156.example.repositories.RestaurantRepository;
 import edu.ucsb.cs156.example.repositories.UserRepository;
+import edu.ucsb.cs156.example.services.JsonExportService;
+import edu.ucsb.cs156.example.services.PartialUpdateService;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
@@ -36,6 +50,10 @@ public class RestaurantsControllerTests extends ControllerTestCase {
 
   @MockBean RestaurantRepository restaurantRepository;
 
+  @MockBean JsonExportService jsonExportService;
+
+  @MockBean PartialUpdateService partialUpdateService;
+
   @MockBean UserRepository userRepository;
 
   // Authorization tests for /api/phones/admin/all
@@ -47,9 +65,15 @@ public class RestaurantsControllerTests extends ControllerTestCase {
         .andExpect(status().is(403)); // logged out users can't get all
   }
 
+  @Test
+  public void logged_out_users_cannot_get_a_page() throws Exception {
+    mockMvc.perform(get("/api/restaurants/page")).andExpect(status().is(403));
+  }
+
   @WithMockUser(roles = {"USER"})
   @Test
   public void logged_in_users_can_get_all() throws Exception {
+    when(restaurantRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
     mockMvc.perform(get("/api/restaurants/all")).andExpect(status().is(200)); // logged
   }
 
@@ -134,7 +158,8 @@ public class RestaurantsControllerTests extends ControllerTestCase {
     ArrayList<Restaurant> expectedRestaurants = new ArrayList<>();
     expectedRestaurants.addAll(Arrays.asList(restaurant1, restaurant2));
 
-    when(restaurantRepository.findAll()).thenReturn(expectedRestaurants);
+    when(restaurantRepository.findBy(any(Specification.class), any()))
+        .thenReturn(expectedRestaurants);
 
     // act
     MvcResult response =
@@ -142,12 +167,42 @@ public class RestaurantsControllerTests extends ControllerTestCase {
 
     // assert
 
-    verify(restaurantRepository, times(1)).findAll();
+    verify(restaurantRepository, times(1)).findBy(any(Specification.class), any());
     String expectedJson = mapper.writeValueAsString(expectedRestaurants);
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
   }
 
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void logged_in_user_can_get_a_page_sorted_by_name() throws Exception {
+
+    // arrange
+
+    Restaurant restaurant1 = Restaurant.builder().id(2L).name("Chipotle").build();
+    Restaurant restaurant2 = Restaurant.builder().id(1L).name("Freebirds").build();
+    Restaurant restaurant3 = Restaurant.builder().id(3L).name("Taco Bell").build();
+    when(restaurantRepository.findBy(any(Specification.class), any()))
+        .thenReturn(List.of(restaurant1, restaurant2, restaurant3));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/restaurants/page?sort=name&size=2"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    String expectedJson =
+        mapper.writeValueAsString(
+            KeysetPage.<Restaurant>builder()
+                .content(List.of(restaurant1, restaurant2))
+                .nextCursor("RnJlZWJpcmRz.MQ")
+                .build());
+    String responseString = response.getResponse().getContentAsString();
+    assertEquals(expectedJson, responseString);
+  }
+
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void an_admin_user_can_post_a_new_restaurant() throws Exception {
@@ -189,7 +244,7 @@ public class RestaurantsControllerTests extends ControllerTestCase {
 
     // assert
     verify(restaurantRepository, times(1)).findById(15L);
-    verify(restaurantRepository, times(1)).delete(any());
+    verify(restaurantRepository, times(1)).delete(any(Restaurant.class));
 
     Map<String, Object> json = responseToJson(response);
     assertEquals("Restaurant with id 15 deleted", json.get("message"));
@@ -280,4 +335,319 @@ public class RestaurantsControllerTests extends ControllerTestCase {
     Map<String, Object> json = responseToJson(response);
     assertEquals("Restaurant with id 67 not found", json.get("message"));
   }
+
+  @Test
+  public void logged_out_users_cannot_export() throws Exception {
+    mockMvc.perform(get("/api/restaurants/export")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  @SuppressWarnings("unchecked")
+  public void logged_in_users_can_export_all_restaurants() throws Exception {
+
+    // act
+    mockMvc.perform(get("/api/restaurants/export")).andExpect(status().isOk());
+
+    // assert
+    ArgumentCaptor<Supplier<Stream<Restaurant>>> rows = ArgumentCaptor.forClass(Supplier.class);
+    verify(jsonExportService, times(1)).writeJsonArray(rows.capture(), any());
+    rows.getValue().get();
+    verify(restaurantRepository, times(1)).streamAllByOrderByIdAsc();
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_by_id_returns_304_when_the_client_has_the_current_version() throws Exception {
+
+    // arrange
+
+    Restaurant current =
+        Restaurant.builder()
+            .id(7L)
+            .version(3L)
+            .lastModified(ZonedDateTime.parse("2025-01-02T03:04:05Z"))
+            .build();
+    when(restaurantRepository.findById(eq(7L))).thenReturn(Optional.of(current));
+    String etag =
+        mockMvc
+            .perform(get("/api/restaurants?id=7"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getHeader(HttpHeaders.ETAG);
+
+    // act
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/restaurants?id=7").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andReturn();
+
+    // assert
+
+    assertEquals("", response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_all_returns_304_when_the_client_has_the_current_restaurants() throws Exception {
+
+    // arrange
+
+    Restaurant current =
+        Restaurant.builder()
+            .id(7L)
+            .version(3L)
+            .lastModified(ZonedDateTime.parse("2025-01-02T03:04:05Z"))
+            .build();
+    when(restaurantRepository.findBy(any(Specification.class), any())).thenReturn(List.of(current));
+    String etag =
+        mockMvc
+            .perform(get("/api/restaurants/all"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getHeader(HttpHeaders.ETAG);
+
+    // act
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/restaurants/all").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andReturn();
+
+    // assert
+
+    assertEquals("", response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_by_id_sets_validators_that_let_browsers_revalidate() throws Exception {
+
+    // arrange
+
+    Restaurant restaurant =
+        Restaurant.builder()
+            .id(7L)
+            .version(3L)
+            .lastModified(ZonedDateTime.parse("2025-01-02T03:04:05Z"))
+            .build();
+    when(restaurantRepository.findById(eq(7L))).thenReturn(Optional.of(restaurant));
+
+    // act
+
+    MvcResult response =
+        mockMvc.perform(get("/api/restaurants?id=7")).andExpect(status().isOk()).andReturn();
+
+    // assert
+
+    assertEquals(
+        "Thu, 02 Jan 2025 03:04:05 GMT",
+        response.getResponse().getHeader(HttpHeaders.LAST_MODIFIED));
+    assertEquals("no-cache, private", response.getResponse().getHeader(HttpHeaders.CACHE_CONTROL));
+    mockMvc
+        .perform(
+            get("/api/restaurants?id=7")
+                .header(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 02 Jan 2025 03:04:05 GMT"))
+        .andExpect(status().isNotModified());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_by_id_returns_the_restaurant_again_once_it_has_changed() throws Exception {
+
+    // arrange
+
+    Restaurant before = Restaurant.builder().id(7L).name("Taco Bell").version(3L).build();
+    Restaurant after = Restaurant.builder().id(7L).name("Freebirds").version(4L).build();
+    when(restaurantRepository.findById(eq(7L)))
+        .thenReturn(Optional.of(before))
+        .thenReturn(Optional.of(after));
+    String etag =
+        mockMvc
+            .perform(get("/api/restaurants?id=7"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getHeader(HttpHeaders.ETAG);
+
+    // act
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/restaurants?id=7").header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+
+    assertEquals(mapper.writeValueAsString(after), response.getResponse().getContentAsString());
+    assertNull(response.getResponse().getHeader(HttpHeaders.LAST_MODIFIED));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void logged_in_regular_users_cannot_post_a_batch() throws Exception {
+    mockMvc
+        .perform(
+            post("/api/restaurants/post/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("[]")
+                .with(csrf()))
+        .andExpect(status().is(403)); // only admins can post
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void an_admin_user_can_post_a_batch_of_restaurants() throws Exception {
+    // arrange
+
+    List<Restaurant> incoming =
+        List.of(
+            Restaurant.builder().id(17L).name("Chipotle").description("Mexican").build(),
+            Restaurant.builder().id(18L).name("Freebirds").description("Burritos").build());
+
+    List<Restaurant> unsaved =
+        List.of(
+            Restaurant.builder().name("Chipotle").description("Mexican").build(),
+            Restaurant.builder().name("Freebirds").description("Burritos").build());
+
+    List<Restaurant> saved =
+        List.of(
+            Restaurant.builder().id(1L).name("Chipotle").description("Mexican").build(),
+            Restaurant.builder().id(2L).name("Freebirds").description("Burritos").build());
+
+    when(restaurantRepository.saveAll(eq(unsaved))).thenReturn(saved);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                post("/api/restaurants/post/batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(incoming))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    // ids in the request are ignored
+    verify(restaurantRepository, times(1)).saveAll(unsaved);
+    String expectedJson = mapper.writeValueAsString(saved);
+    String responseString = response.getResponse().getContentAsString();
+    assertEquals(expectedJson, responseString);
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void a_batch_of_more_than_max_size_restaurants_is_rejected() throws Exception {
+    // arrange
+
+    List<Restaurant> incoming =
+        IntStream.range(0, 1001)
+            .mapToObj(i -> Restaurant.builder().name("Restaurant " + i).build())
+            .toList();
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                post("/api/restaurants/post/batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(incoming))
+                    .with(csrf()))
+            .andExpect(status().is(413))
+            .andReturn();
+
+    // assert
+    verify(restaurantRepository, never()).saveAll(any());
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("BatchTooLargeException", json.get("type"));
+    assertEquals(
+        "Batch of 1001 rows is too large; send at most 1000 rows per batch", json.get("message"));
+  }
+
+  @Test
+  public void logged_out_users_cannot_patch() throws Exception {
+    mockMvc
+        .perform(
+            patch("/api/restaurants?id=7")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("{}")
+                .with(csrf()))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_patch_some_fields() throws Exception {
+    // arrange
+
+    Map<String, Object> changes = Map.of("description", "Burritos");
+    when(partialUpdateService.update(eq(Restaurant.class), eq(7L), eq(changes))).thenReturn(true);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                patch("/api/restaurants?id=7")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(changes))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(partialUpdateService, times(1)).update(Restaurant.class, 7L, changes);
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("Restaurant with id 7 updated", json.get("message"));
+  }
+
+  @Test
+  public void logged_out_users_cannot_bulk_delete() throws Exception {
+    mockMvc
+        .perform(
+            delete("/api/restaurants/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("[1, 2]")
+                .with(csrf()))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_delete_many_restaurants_at_once() throws Exception {
+    // arrange
+
+    List<Long> ids = List.of(15L, 16L, 17L);
+    when(restaurantRepository.deleteByIdIn(eq(ids))).thenReturn(2);
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                delete("/api/restaurants/bulk")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(ids))
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(restaurantRepository, times(1)).deleteByIdIn(ids);
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("2 Restaurant rows deleted", json.get("message"));
+    assertEquals(2, json.get("count"));
+  }
 }
@@ -6,6 +6,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.ucsb.cs156.example.entities.Restaurant;
 import edu.ucsb.cs156.example.repositories.RestaurantRepository;
@@ -13,6 +14,8 @@ import edu.ucsb.cs156.example.repositories.UserRepository;
 import edu.ucsb.cs156.example.services.CurrentUserService;
 import edu.ucsb.cs156.example.services.GrantedAuthoritiesService;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -86,4 +89,90 @@ public class RestaurantIT {
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
   }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void pages_sorted_by_name_list_restaurants_without_a_name_last() throws Exception {
+    // arrange
+
+    Restaurant chipotle = restaurantRepository.save(Restaurant.builder().name("Chipotle").build());
+    Restaurant unnamed1 = restaurantRepository.save(Restaurant.builder().build());
+    Restaurant arbys = restaurantRepository.save(Restaurant.builder().name("Arbys").build());
+    Restaurant unnamed2 = restaurantRepository.save(Restaurant.builder().build());
+
+    // act
+
+    List<Long> ascending = pageThroughIdsByName("ASC", 1);
+    List<Long> descending = pageThroughIdsByName("DESC", 1);
+
+    // assert
+
+    assertEquals(
+        List.of(arbys.getId(), chipotle.getId(), unnamed1.getId(), unnamed2.getId()), ascending);
+    assertEquals(
+        List.of(chipotle.getId(), arbys.getId(), unnamed2.getId(), unnamed1.getId()), descending);
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void pages_that_cross_from_named_to_unnamed_restaurants_skip_and_repeat_none()
+      throws Exception {
+    // arrange
+
+    Restaurant unnamed1 = restaurantRepository.save(Restaurant.builder().build());
+    Restaurant tacoBell1 =
+        restaurantRepository.save(Restaurant.builder().name("Taco Bell").build());
+    Restaurant arbys = restaurantRepository.save(Restaurant.builder().name("Arbys").build());
+    Restaurant unnamed2 = restaurantRepository.save(Restaurant.builder().build());
+    Restaurant tacoBell2 =
+        restaurantRepository.save(Restaurant.builder().name("Taco Bell").build());
+    Restaurant unnamed3 = restaurantRepository.save(Restaurant.builder().build());
+
+    List<Long> expectedAscending =
+        List.of(
+            arbys.getId(),
+            tacoBell1.getId(),
+            tacoBell2.getId(),
+            unnamed1.getId(),
+            unnamed2.getId(),
+            unnamed3.getId());
+    List<Long> expectedDescending =
+        List.of(
+            tacoBell2.getId(),
+            tacoBell1.getId(),
+            arbys.getId(),
+            unnamed3.getId(),
+            unnamed2.getId(),
+            unnamed1.getId());
+
+    for (int size = 1; size <= 4; size++) {
+      // act
+
+      List<Long> ascending = pageThroughIdsByName("ASC", size);
+      List<Long> descending = pageThroughIdsByName("DESC", size);
+
+      // assert
+
+      assertEquals(expectedAscending, ascending, "ascending, size " + size);
+      assertEquals(expectedDescending, descending, "descending, size " + size);
+    }
+  }
+
+  private List<Long> pageThroughIdsByName(String direction, int size) throws Exception {
+    List<Long> ids = new ArrayList<>();
+    String cursor = null;
+    do {
+      String url =
+          "/api/restaurants/page?sort=name&size=%d&direction=%s".formatted(size, direction);
+      MvcResult response =
+          mockMvc
+              .perform(cursor == null ? get(url) : get(url).param("cursor", cursor))
+              .andExpect(status().isOk())
+              .andReturn();
+      JsonNode page = mapper.readTree(response.getResponse().getContentAsString());
+      page.get("content").forEach(restaurant -> ids.add(restaurant.get("id").asLong()));
+      cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+    } while (cursor != null);
+    return ids;
+  }
 }
@@ -0,0 +1,226 @@
+package edu.ucsb.cs156.example.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.ucsb.cs156.example.config.JobExecutorConfig;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.embedded.EmbeddedWebServerFactoryCustomizerAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Compares platform and virtual threads with hundreds of blocking calls in flight at once.
+ *
+ * <p>Each request or job sleeps for {@link #BLOCKING_MS} to stand in for a JDBC call, and {@link
+ * #IN_FLIGHT} of them are kept in flight at a time:
+ *
+ * <ul>
+ *   <li>HTTP requests are sent to an embedded Tomcat with Spring Boot's default request threads (at
+ *       most 200 platform threads), and then with {@code spring.threads.virtual.enabled}. Past 200
+ *       requests in flight, platform threads make the rest wait for a thread to be free.
+ *   <li>Jobs are run on the job executor from {@link JobExecutorConfig}, with enough workers for
+ *       every job in flight (and room in its queue for a job handed over while a worker is still
+ *       finishing), on platform and then on virtual threads. Both finish in about the same time,
+ *       but with platform workers the JVM has to create a thread for each one.
+ * </ul>
+ *
+ * <p>Throughput, peak thread count and heap growth are logged for each run. Timings depend on the
+ * machine, so only the completed counts and the thread counts are asserted on.
+ *
+ * <p>Run with: {@code INTEGRATION=true mvn test-compile failsafe:integration-test
+ * -Dit.test=VirtualThreadsBenchmarkIT}
+ */
+@Slf4j
+public class VirtualThreadsBenchmarkIT {
+
+  private static final int IN_FLIGHT = 500;
+  private static final int TASKS = 5_000;
+  private static final long BLOCKING_MS = 50;
+
+  private record Result(
+      long elapsedMs, int completed, int peakPlatformThreads, long heapUsedBytes) {
+    double throughput() {
+      return completed * 1000.0 / Math.max(elapsedMs, 1);
+    }
+  }
+
+  /** A web application with a single endpoint that blocks like a database call. */
+  @Configuration
+  @ImportAutoConfiguration({
+    ServletWebServerFactoryAutoConfiguration.class,
+    EmbeddedWebServerFactoryCustomizerAutoConfiguration.class,
+    DispatcherServletAutoConfiguration.class,
+    WebMvcAutoConfiguration.class
+  })
+  @RestController
+  static class BlockingApp {
+    @GetMapping("/blocking")
+    public String blocking() throws InterruptedException {
+      Thread.sleep(BLOCKING_MS);
+      return "ok";
+    }
+  }
+
+  @Test
+  public void compare_platform_and_virtual_request_threads_at_high_concurrency() throws Exception {
+    Result platform = runRequests(false);
+    Result virtual = runRequests(true);
+
+    report("requests", "platform", platform);
+    report("requests", "virtual", virtual);
+
+    assertEquals(TASKS, platform.completed());
+    assertEquals(TASKS, virtual.completed());
+    assertTrue(virtual.peakPlatformThreads() < platform.peakPlatformThreads());
+  }
+
+  @Test
+  public void compare_platform_and_virtual_job_workers_at_high_concurrency() throws Exception {
+    Result platform = runJobs(false);
+    Result virtual = runJobs(true);
+
+    report("jobs", "platform", platform);
+    report("jobs", "virtual", virtual);
+
+    assertEquals(TASKS, platform.completed());
+    assertEquals(TASKS, virtual.completed());
+    assertTrue(virtual.peakPlatformThreads() < platform.peakPlatformThreads());
+  }
+
+  private void report(String work, String threadType, Result result) {
+    log.info(
+        "{} on {} threads ({} in flight): {} ms, {} per second, peak threads {}, heap used {} bytes",
+        work,
+        threadType,
+        IN_FLIGHT,
+        result.elapsedMs(),
+        "%.0f".formatted(result.throughput()),
+        result.peakPlatformThreads(),
+        result.heapUsedBytes());
+  }
+
+  private Result runRequests(boolean virtualThreads) throws Exception {
+    try (ConfigurableApplicationContext context =
+            new SpringApplicationBuilder(BlockingApp.class)
+                .run(
+                    "--server.port=0",
+                    "--spring.main.banner-mode=off",
+                    "--spring.threads.virtual.enabled=" + virtualThreads);
+        HttpClient client =
+            HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build()) {
+      int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+      HttpRequest request =
+          HttpRequest.newBuilder(URI.create("http://localhost:%d/blocking".formatted(port)))
+              .build();
+      return measure(
+          done -> {
+            try {
+              if (client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode() == 200) {
+                done.run();
+              }
+            } catch (Exception e) {
+              log.warn("Request failed: {}", e.toString());
+            }
+          });
+    }
+  }
+
+  private Result runJobs(boolean virtualThreads) {
+    Result[] result = new Result[1];
+    new ApplicationContextRunner()
+        .withUserConfiguration(JobExecutorConfig.class)
+        .withPropertyValues(
+            "app.jobs.executor.poolSize=" + IN_FLIGHT,
+            "app.jobs.executor.queueCapacity=" + IN_FLIGHT,
+            "spring.threads.virtual.enabled=" + virtualThreads)
+        .run(
+            context -> {
+              ThreadPoolTaskExecutor executor =
+                  context.getBean(JobExecutorConfig.JOB_EXECUTOR, ThreadPoolTaskExecutor.class);
+              result[0] =
+                  measure(
+                      done -> {
+                        CountDownLatch finished = new CountDownLatch(1);
+                        executor.execute(
+                            () -> {
+                              try {
+                                Thread.sleep(BLOCKING_MS);
+                                done.run();
+                              } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                              } finally {
+                                finished.countDown();
+                              }
+                            });
+                        finished.await();
+                      });
+            });
+    return result[0];
+  }
+
+  /** One blocking call, which runs {@code done} if it succeeded. */
+  private interface Call {
+    void run(Runnable done) throws Exception;
+  }
+
+  /** Make {@link #TASKS} calls, {@link #IN_FLIGHT} at a time, each from a virtual thread. */
+  private static Result measure(Call call) throws InterruptedException {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    Runtime runtime = Runtime.getRuntime();
+
+    System.gc();
+    threads.resetPeakThreadCount();
+    long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+
+    Semaphore inFlight = new Semaphore(IN_FLIGHT);
+    AtomicInteger completed = new AtomicInteger();
+    long start = System.nanoTime();
+    try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < TASKS; i++) {
+        inFlight.acquire();
+        callers.execute(
+            () -> {
+              try {
+                call.run(completed::incrementAndGet);
+              } catch (Exception e) {
+                log.warn("Call failed: {}", e.toString());
+              } finally {
+                inFlight.release();
+              }
+            });
+      }
+      callers.shutdown();
+      callers.awaitTermination(5, TimeUnit.MINUTES);
+    }
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+    int peakThreads = threads.getPeakThreadCount();
+
+    return new Result(elapsedMs, completed.get(), peakThreads, heapAfter - heapBefore);
+  }
+}
@@ -0,0 +1,277 @@
+package edu.ucsb.cs156.example.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import edu.ucsb.cs156.example.entities.UCSBDate;
+import edu.ucsb.cs156.example.errors.InvalidCursorException;
+import edu.ucsb.cs156.example.errors.InvalidSortKeyException;
+import edu.ucsb.cs156.example.models.KeysetPage;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+import org.hibernate.query.SortDirection;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.criteria.JpaOrder;
+import org.hibernate.query.criteria.JpaPath;
+import org.hibernate.query.criteria.JpaPredicate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.repository.query.FluentQuery.FetchableFluentQuery;
+
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class KeysetPagerTests {
+
+  private final KeysetPager<UCSBDate> pager =
+      KeysetPager.<UCSBDate>byId("id", UCSBDate::getId, Long::valueOf)
+          .sortKey("name", UCSBDate::getName, Function.identity())
+          .sortKey("localDateTime", UCSBDate::getLocalDateTime, LocalDateTime::parse);
+
+  private final JpaSpecificationExecutor<UCSBDate> repository =
+      mock(JpaSpecificationExecutor.class);
+
+  private final FetchableFluentQuery<UCSBDate> query =
+      mock(FetchableFluentQuery.class, RETURNS_SELF);
+
+  private final UCSBDate date1 = UCSBDate.builder().id(1L).name("firstDayOfClasses").build();
+  private final UCSBDate date2 = UCSBDate.builder().id(2L).name("lastDayOfClasses").build();
+  private final UCSBDate date3 = UCSBDate.builder().id(3L).name("noon on 4th of July").build();
+  private final UCSBDate unnamed4 = UCSBDate.builder().id(4L).build();
+  private final UCSBDate unnamed5 = UCSBDate.builder().id(5L).build();
+
+  private final Root<UCSBDate> root = mock(Root.class);
+  private final JpaPath idPath = mock(JpaPath.class);
+  private final JpaPath namePath = mock(JpaPath.class);
+  private final HibernateCriteriaBuilder cb = mock(HibernateCriteriaBuilder.class);
+  private final CriteriaQuery criteriaQuery = mock(CriteriaQuery.class);
+
+  @BeforeEach
+  public void setup() {
+    when(repository.findBy(any(Specification.class), any()))
+        .thenAnswer(invocation -> invocation.<Function>getArgument(1).apply(query));
+    when(root.get("id")).thenReturn(idPath);
+    when(root.get("name")).thenReturn(namePath);
+  }
+
+  private Specification<UCSBDate> capturedSpec() {
+    ArgumentCaptor<Specification> captor = ArgumentCaptor.forClass(Specification.class);
+    verify(repository).findBy(captor.capture(), any());
+    return captor.getValue();
+  }
+
+  private List<Specification> capturedSpecs() {
+    ArgumentCaptor<Specification> captor = ArgumentCaptor.forClass(Specification.class);
+    verify(repository, times(2)).findBy(captor.capture(), any());
+    return captor.getAllValues();
+  }
+
+  @Test
+  void first_page_is_sorted_by_id_and_has_a_cursor_when_there_are_more_rows() {
+    // Arrange
+    when(query.all()).thenReturn(List.of(date1, date2, date3));
+
+    // Act
+    KeysetPage<UCSBDate> page = pager.page(repository, null, Sort.Direction.ASC, null, 2);
+
+    // Assert
+    assertEquals(List.of(date1, date2), page.getContent());
+    assertEquals("Mg.Mg", page.getNextCursor());
+    verify(query).limit(3);
+    JpaOrder byId = mock(JpaOrder.class);
+    when(cb.sort(idPath, SortDirection.ASCENDING)).thenReturn(byId);
+    assertNull(capturedSpec().toPredicate(root, criteriaQuery, cb));
+    verify(criteriaQuery).orderBy(byId);
+  }
+
+  @Test
+  void last_page_has_no_cursor() {
+    // Arrange
+    when(query.all()).thenReturn(List.of(date1, date2), List.of());
+
+    // Act
+    KeysetPage<UCSBDate> page = pager.page(repository, "name", Sort.Direction.DESC, null, 2);
+
+    // Assert
+    assertEquals(List.of(date1, date2), page.getContent());
+    assertNull(page.getNextCursor());
+  }
+
+  @Test
+  void first_page_reads_the_rows_with_a_value_then_those_without() {
+    // Arrange
+    when(query.all()).thenReturn(List.of(date3), List.of(unnamed4, unnamed5));
+    JpaOrder byName = mock(JpaOrder.class);
+    JpaOrder byId = mock(JpaOrder.class);
+    JpaPredicate nameNotNull = mock(JpaPredicate.class);
+    JpaPredicate nameNull = mock(JpaPredicate.class);
+    when(cb.sort(namePath, SortDirection.DESCENDING)).thenReturn(byName);
+    when(cb.sort(idPath, SortDirection.DESCENDING)).thenReturn(byId);
+    when(cb.isNotNull(namePath)).thenReturn(nameNotNull);
+    when(cb.isNull(namePath)).thenReturn(nameNull);
+
+    // Act
+    KeysetPage<UCSBDate> page = pager.page(repository, "name", Sort.Direction.DESC, null, 2);
+
+    // Assert
+    assertEquals(List.of(date3, unnamed4), page.getContent());
+    assertEquals("~.NA", page.getNextCursor());
+    verify(query).limit(3);
+    verify(query).limit(2);
+    List<Specification> specs = capturedSpecs();
+    assertSame(nameNotNull, specs.get(0).toPredicate(root, criteriaQuery, cb));
+    verify(criteriaQuery).orderBy(byName, byId);
+    assertSame(nameNull, specs.get(1).toPredicate(root, criteriaQuery, cb));
+    verify(criteriaQuery).orderBy(byId);
+  }
+
+  @Test
+  void cursor_of_a_row_with_a_null_sort_value_marks_the_value_as_null() {
+    // Arrange
+    when(query.all()).thenReturn(List.of(date3), List.of(unnamed4, unnamed5));
+
+    // Act
+    KeysetPage<UCSBDate> page = pager.page(repository, "name", Sort.Direction.ASC, null, 2);
+
+    // Assert
+    assertEquals(List.of(date3, unnamed4), page.getContent());
+    assertEquals("~.NA", page.getNextCursor());
+  }
+
+  @Test
+  void cursor_with_a_null_sort_value_selects_the_later_rows_with_a_null_value() {
+    // Arrange
+    when(query.all()).thenReturn(List.of(unnamed5));
+    JpaPredicate idBeyond = mock(JpaPredicate.class);
+    JpaPredicate nameNull = mock(JpaPredicate.class);
+    JpaPredicate expected = mock(JpaPredicate.class);
+    when(cb.greaterThan(idPath, (Comparable) 4L)).thenReturn(idBeyond);
+    when(cb.isNull(namePath)).thenReturn(nameNull);
+    when(cb.and(nameNull, idBeyond)).thenReturn(expected);
+
+    // Act
+    KeysetPage<UCSBDate> page = pager.page(repository, "name", Sort.Direction.ASC, "~.NA", 2);
+
+    // Assert
+    assertEquals(List.of(unnamed5), page.getContent());
+    assertSame(expected, capturedSpec().toPredicate(root, criteriaQuery, cb));
+  }
+
+  @Test
+  void cursor_selects_the_rows_after_the_last_row_of_the_previous_page() {
+    // Arrange
+    when(query.all()).thenReturn(List.of(date3), List.of(unnamed4));
+    JpaPredicate idBeyond = mock(JpaPredicate.class);
+    JpaPredicate nameFrom = mock(JpaPredicate.class);
+    JpaPredicate nameBeyond = mock(JpaPredicate.class);
+    JpaPredicate beyond = mock(JpaPredicate.class);
+    JpaPredicate expected = mock(JpaPredicate.class);
+    JpaPredicate nameNull = mock(JpaPredicate.class);
+    when(cb.greaterThan(idPath, (Comparable) 2L)).thenReturn(idBeyond);
+    when(cb.greaterThanOrEqualTo(namePath, (Comparable) "lastDayOfClasses")).thenReturn(nameFrom);
+    when(cb.greaterThan(namePath, (Comparable) "lastDayOfClasses")).thenReturn(nameBeyond);
+    when(cb.or(nameBeyond, idBeyond)).thenReturn(beyond);
+    when(cb.and(nameFrom, beyond)).thenReturn(expected);
+    when(cb.isNull(namePath)).thenReturn(nameNull);
+
+    // Act
+    KeysetPage<UCSBDate> page =
+        pager.page(repository, "name", Sort.Direction.ASC, "bGFzdERheU9mQ2xhc3Nlcw.Mg", 2);
+
+    // Assert: the rows without a name all come after the cursor
+    assertEquals(List.of(date3, unnamed4), page.getContent());
+    List<Specification> specs = capturedSpecs();
+    assertSame(expected, specs.get(0).toPredicate(root, criteriaQuery, cb));
+    assertSame(nameNull, specs.get(1).toPredicate(root, criteriaQuery, cb));
+  }
+
+  @Test
+  void full_page_of_rows_with_a_value_reads_no_rows_without_one() {
+    // Arrange
+    when(query.all()).thenReturn(List.of(date1, date2, date3));
+
+    // Act
+    KeysetPage<UCSBDate> page = pager.page(repository, "name", Sort.Direction.ASC, "YQ.MQ", 2);
+
+    // Assert
+    assertEquals(List.of(date1, date2), page.getContent());
+    assertEquals("bGFzdERheU9mQ2xhc3Nlcw.Mg", page.getNextCursor());
+    verify(repository, times(1)).findBy(any(Specification.class), any());
+  }
+
+  @Test
+  void cursor_sorted_by_id_descending_compares_ids_only() {
+    // Arrange
+    when(query.all()).thenReturn(List.of(date1));
+    JpaPredicate expected = mock(JpaPredicate.class);
+    when(cb.lessThan(idPath, (Comparable) 2L)).thenReturn(expected);
+
+    // Act
+    pager.page(repository, "id", Sort.Direction.DESC, "Mg.Mg", 2);
+
+    // Assert
+    assertSame(expected, capturedSpec().toPredicate(root, criteriaQuery, cb));
+    verify(root, never()).get("name");
+  }
+
+  @Test
+  void cursor_sorted_descending_by_another_attribute_compares_both() {
+    // Arrange
+    JpaPredicate idBeyond = mock(JpaPredicate.class);
+    JpaPredicate nameFrom = mock(JpaPredicate.class);
+    JpaPredicate nameBeyond = mock(JpaPredicate.class);
+    JpaPredicate beyond = mock(JpaPredicate.class);
+    JpaPredicate expected = mock(JpaPredicate.class);
+    when(cb.lessThan(idPath, (Comparable) 2L)).thenReturn(idBeyond);
+    when(cb.lessThanOrEqualTo(namePath, (Comparable) "b")).thenReturn(nameFrom);
+    when(cb.lessThan(namePath, (Comparable) "b")).thenReturn(nameBeyond);
+    when(cb.or(nameBeyond, idBeyond)).thenReturn(beyond);
+    when(cb.and(nameFrom, beyond)).thenReturn(expected);
+
+    // Act
+    Specification<UCSBDate> spec = pager.after("name", Sort.Direction.DESC, "b", 2L);
+
+    // Assert
+    assertSame(expected, spec.toPredicate(root, criteriaQuery, cb));
+  }
+
+  @Test
+  void unknown_sort_key_is_rejected() {
+    // Act
+    InvalidSortKeyException e =
+        assertThrows(
+            InvalidSortKeyException.class,
+            () -> pager.page(repository, "quarterYYYYQ", Sort.Direction.ASC, null, 2));
+
+    // Assert
+    assertEquals(
+        "Invalid sort key: quarterYYYYQ; sort by one of id, name, localDateTime", e.getMessage());
+  }
+
+  @Test
+  void malformed_cursors_are_rejected() {
+    // Act & Assert
+    for (String cursor : List.of("Mg", "Mg.Mg.Mg", "!!.Mg", "Mg.eA", "eA.Mg")) {
+      InvalidCursorException e =
+          assertThrows(
+              InvalidCursorException.class,
+              () -> pager.page(repository, "localDateTime", Sort.Direction.ASC, cursor, 2));
+      assertEquals("Invalid cursor: " + cursor, e.getMessage());
+    }
+    verify(repository, never()).findBy(any(Specification.class), any());
+  }
+}
@@ -2,11 +2,23 @@ package edu.ucsb.cs156.example.services;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
 import edu.ucsb.cs156.example.repositories.JobsRepository;
+import edu.ucsb.cs156.example.services.jobs.JobLogArchiveService;
 import edu.ucsb.cs156.example.services.jobs.JobService;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -18,6 +30,10 @@ public class JobLogsServiceTests {
 
   @Mock private JobsRepository jobRepository;
 
+  @Mock private JobLogLinesRepository jobLogLinesRepository;
+
+  @Mock private JobLogArchiveService jobLogArchiveService;
+
   @InjectMocks private JobService jobService;
 
   @BeforeEach
@@ -25,8 +41,16 @@ public class JobLogsServiceTests {
     MockitoAnnotations.openMocks(this);
   }
 
+  private static String read(Reader reader) throws IOException {
+    StringWriter text = new StringWriter();
+    try (reader) {
+      reader.transferTo(text);
+    }
+    return text.toString();
+  }
+
   @Test
-  void test_getJobLogs_with_log() {
+  void test_openJobLogs_with_log() throws Exception {
     // Arrange
     Long jobId = 1L;
     Job job = Job.builder().build();
@@ -34,14 +58,74 @@ public class JobLogsServiceTests {
     when(jobRepository.findById(jobId)).thenReturn(Optional.of(job));
 
     // Act
-    String result = jobService.getJobLogs(jobId);
+    String result = read(jobService.openJobLogs(jobId));
 
     // Assert
     assertEquals("This is a job log", result);
   }
 
   @Test
-  void test_getJobLogs_with_null_log() {
+  void test_openJobLogs_from_log_lines() throws Exception {
+    // Arrange
+    Long jobId = 4L;
+    JobLogLine line0 = JobLogLine.builder().jobId(jobId).lineNumber(0).message("first").build();
+    JobLogLine line1 = JobLogLine.builder().jobId(jobId).lineNumber(1).message("second").build();
+    when(jobLogLinesRepository.findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+            jobId, 0L))
+        .thenReturn(List.of(line0, line1));
+
+    // Act
+    String result = read(jobService.openJobLogs(jobId));
+
+    // Assert
+    assertEquals("first\nsecond", result);
+    verify(jobRepository, never()).findById(jobId);
+  }
+
+  @Test
+  void test_openJobLogs_reads_the_log_lines_a_page_at_a_time() throws Exception {
+    // Arrange
+    Long jobId = 6L;
+    List<JobLogLine> firstPage = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      firstPage.add(JobLogLine.builder().jobId(jobId).lineNumber(i).message("line " + i).build());
+    }
+    JobLogLine last = JobLogLine.builder().jobId(jobId).lineNumber(500).message("last").build();
+    when(jobLogLinesRepository.findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+            jobId, 0L))
+        .thenReturn(firstPage);
+    when(jobLogLinesRepository.findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+            jobId, 500L))
+        .thenReturn(List.of(last));
+
+    // Act
+    Reader reader = jobService.openJobLogs(jobId);
+
+    // Assert: only the first page is read until the reader gets to the end of it
+    verify(jobLogLinesRepository, never())
+        .findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(jobId, 500L);
+    String result = read(reader);
+    assertTrue(result.startsWith("line 0\nline 1\n"));
+    assertTrue(result.endsWith("\nline 499\nlast"));
+  }
+
+  @Test
+  void test_openJobLogs_from_archive() throws Exception {
+    // Arrange
+    Long jobId = 5L;
+    when(jobLogArchiveService.open(jobId))
+        .thenReturn(Optional.of(new StringReader("first\nsecond")));
+
+    // Act
+    String result = read(jobService.openJobLogs(jobId));
+
+    // Assert
+    assertEquals("first\nsecond", result);
+    verify(jobRepository, never()).findById(jobId);
+  }
+
+  @Test
+  void test_openJobLogs_with_null_log() throws Exception {
     // Arrange
     Long jobId = 2L;
     Job job = Job.builder().build();
@@ -49,19 +133,19 @@ public class JobLogsServiceTests {
     when(jobRepository.findById(jobId)).thenReturn(Optional.of(job));
 
     // Act
-    String result = jobService.getJobLogs(jobId);
+    String result = read(jobService.openJobLogs(jobId));
 
     // Assert
     assertEquals("", result);
   }
 
   @Test
-  void test_getJobLogs_job_not_found() {
+  void test_openJobLogs_job_not_found() {
     // Arrange
     Long jobId = 3L;
     when(jobRepository.findById(jobId)).thenReturn(Optional.empty());
 
     // Act & Assert
-    assertThrows(IllegalArgumentException.class, () -> jobService.getJobLogs(jobId));
+    assertThrows(IllegalArgumentException.class, () -> jobService.openJobLogs(jobId));
   }
 }
@@ -0,0 +1,68 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import jakarta.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class JsonExportServiceTests {
+
+  @Mock private EntityManager entityManager;
+
+  @Spy private ObjectMapper mapper = new ObjectMapper();
+
+  @InjectMocks private JsonExportService jsonExportService;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+  }
+
+  @Test
+  void writeJsonArray_writes_each_row_and_detaches_it() throws Exception {
+    // Arrange
+    Restaurant r1 = Restaurant.builder().id(1L).name("Taco Bell").description("Mexican").build();
+    Restaurant r2 = Restaurant.builder().id(2L).name("Freebirds").description("Burritos").build();
+    AtomicBoolean closed = new AtomicBoolean();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    // Act
+    jsonExportService.writeJsonArray(
+        () -> Stream.of(r1, r2).onClose(() -> closed.set(true)), response);
+
+    // Assert
+    assertEquals(mapper.writeValueAsString(List.of(r1, r2)), response.getContentAsString());
+    assertEquals("application/json", response.getContentType());
+    assertTrue(closed.get());
+    verify(entityManager).detach(r1);
+    verify(entityManager).detach(r2);
+  }
+
+  @Test
+  void writeJsonArray_writes_an_empty_array_when_there_are_no_rows() throws Exception {
+    // Arrange
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    // Act
+    jsonExportService.writeJsonArray(Stream::empty, response);
+
+    // Assert
+    assertEquals("[]", response.getContentAsString());
+    verify(entityManager, never()).detach(any());
+  }
+}
@@ -0,0 +1,230 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucsb.cs156.example.entities.HelpRequest;
+import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.errors.InvalidPatchException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.beans.factory.ObjectProvider;
+
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class PartialUpdateServiceTests {
+
+  @Mock private EntityManager entityManager;
+
+  @Spy private ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+
+  @Mock private ObjectProvider<Validator> validator;
+
+  @InjectMocks private PartialUpdateService partialUpdateService;
+
+  private final CriteriaBuilder cb = mock(CriteriaBuilder.class);
+  private final CriteriaUpdate<HelpRequest> update = mock(CriteriaUpdate.class);
+  private final Root<HelpRequest> root = mock(Root.class);
+  private final Path path = mock(Path.class);
+  private final Query query = mock(Query.class);
+
+  private final Predicate idMatches = mock(Predicate.class);
+  private final Predicate anyDifferent = mock(Predicate.class);
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    when(entityManager.getCriteriaBuilder()).thenReturn(cb);
+    when(cb.createCriteriaUpdate(HelpRequest.class)).thenReturn(update);
+    when(update.from(HelpRequest.class)).thenReturn(root);
+    when(root.get(anyString())).thenReturn(path);
+    when(cb.equal(path, 7L)).thenReturn(idMatches);
+    when(entityManager.createQuery(update)).thenReturn(query);
+  }
+
+  @Test
+  void update_sets_only_the_given_fields_and_bumps_the_version() {
+    // Arrange
+    LocalDateTime requestTime = LocalDateTime.parse("2022-04-20T17:35:00");
+    Predicate isNull = mock(Predicate.class);
+    Predicate notEqual = mock(Predicate.class);
+    Predicate different = mock(Predicate.class);
+    Expression bumped = mock(Expression.class);
+    when(cb.isNull(path)).thenReturn(isNull);
+    when(cb.notEqual(path, requestTime)).thenReturn(notEqual);
+    when(cb.or(isNull, notEqual)).thenReturn(different);
+    when(cb.or(different)).thenReturn(anyDifferent);
+    when(cb.sum(path, 1L)).thenReturn(bumped);
+    when(query.executeUpdate()).thenReturn(1);
+
+    // Act
+    boolean updated =
+        partialUpdateService.update(
+            HelpRequest.class, 7L, Map.of("requestTime", "2022-04-20T17:35:00"));
+
+    // Assert
+    assertTrue(updated);
+    verify(root).get("requestTime");
+    verify(update).set(path, (Object) requestTime);
+    Path<Long> version = path;
+    verify(update).set(version, (Expression<? extends Long>) bumped);
+    verify(update).set(eq("lastModified"), any(ZonedDateTime.class));
+    verify(update).where(idMatches, anyDifferent);
+    verify(entityManager, never()).find(any(), any());
+  }
+
+  @Test
+  void update_to_null_only_matches_a_row_where_the_field_is_not_null() {
+    // Arrange
+    Predicate notNull = mock(Predicate.class);
+    when(cb.isNotNull(path)).thenReturn(notNull);
+    when(cb.or(notNull)).thenReturn(anyDifferent);
+    when(query.executeUpdate()).thenReturn(1);
+    Map<String, Object> changes = new HashMap<>();
+    changes.put("explanation", null);
+
+    // Act
+    boolean updated = partialUpdateService.update(HelpRequest.class, 7L, changes);
+
+    // Assert
+    assertTrue(updated);
+    verify(update).set(path, (Object) null);
+    verify(update).where(idMatches, anyDifferent);
+  }
+
+  @Test
+  void update_that_changes_nothing_returns_false() {
+    // Arrange
+    when(query.executeUpdate()).thenReturn(0);
+    when(entityManager.find(HelpRequest.class, 7L)).thenReturn(new HelpRequest());
+
+    // Act
+    boolean updated = partialUpdateService.update(HelpRequest.class, 7L, Map.of("solved", true));
+
+    // Assert
+    assertFalse(updated);
+  }
+
+  @Test
+  void update_of_a_row_that_does_not_exist_throws_not_found() {
+    // Arrange
+    when(query.executeUpdate()).thenReturn(0);
+
+    // Act
+    EntityNotFoundException e =
+        assertThrows(
+            EntityNotFoundException.class,
+            () -> partialUpdateService.update(HelpRequest.class, 7L, Map.of("solved", true)));
+
+    // Assert
+    assertEquals("HelpRequest with id 7 not found", e.getMessage());
+  }
+
+  @Test
+  void empty_update_writes_nothing() {
+    // Arrange
+    when(entityManager.find(HelpRequest.class, 7L)).thenReturn(new HelpRequest());
+
+    // Act
+    boolean updated = partialUpdateService.update(HelpRequest.class, 7L, Map.of());
+
+    // Assert
+    assertFalse(updated);
+    verify(entityManager, never()).createQuery(any(CriteriaUpdate.class));
+  }
+
+  @Test
+  void invalid_patches_are_rejected_before_anything_is_written() {
+    // Arrange
+    Map<Map<String, Object>, String> patches = new HashMap<>();
+    patches.put(Map.of("id", 8), "Cannot patch HelpRequest.id: there is no such editable field");
+    patches.put(
+        Map.of("version", 0), "Cannot patch HelpRequest.version: there is no such editable field");
+    patches.put(
+        Map.of("teamName", "f25-01"),
+        "Cannot patch HelpRequest.teamName: there is no such editable field");
+    patches.put(
+        Map.of("requestTime", "yesterday"),
+        "Cannot patch HelpRequest.requestTime: invalid value yesterday");
+    Map<String, Object> nullSolved = new HashMap<>();
+    nullSolved.put("solved", null);
+    patches.put(nullSolved, "Cannot patch HelpRequest.solved: it cannot be null");
+
+    // Act & Assert
+    patches.forEach(
+        (changes, message) -> {
+          InvalidPatchException e =
+              assertThrows(
+                  InvalidPatchException.class,
+                  () -> partialUpdateService.update(HelpRequest.class, 7L, changes));
+          assertEquals(message, e.getMessage());
+        });
+    verify(entityManager, never()).createQuery(any(CriteriaUpdate.class));
+  }
+
+  @Test
+  void values_that_break_a_constraint_are_rejected_before_anything_is_written() {
+    // Arrange
+    Validator fieldValidator = mock(Validator.class);
+    ConstraintViolation<HelpRequest> violation = mock(ConstraintViolation.class);
+    when(violation.getMessage()).thenReturn("must not be blank");
+    when(validator.getIfAvailable()).thenReturn(fieldValidator);
+    when(fieldValidator.validateValue(HelpRequest.class, "explanation", ""))
+        .thenReturn(Set.of(violation));
+
+    // Act
+    InvalidPatchException e =
+        assertThrows(
+            InvalidPatchException.class,
+            () -> partialUpdateService.update(HelpRequest.class, 7L, Map.of("explanation", "")));
+
+    // Assert
+    assertEquals("Cannot patch HelpRequest.explanation: must not be blank", e.getMessage());
+    verify(entityManager, never()).createQuery(any(CriteriaUpdate.class));
+  }
+
+  @Test
+  void values_that_pass_validation_are_written() {
+    // Arrange
+    Validator fieldValidator = mock(Validator.class);
+    when(validator.getIfAvailable()).thenReturn(fieldValidator);
+    when(fieldValidator.validateValue(HelpRequest.class, "solved", true)).thenReturn(Set.of());
+    when(cb.or(any(Predicate.class))).thenReturn(anyDifferent);
+    when(query.executeUpdate()).thenReturn(1);
+
+    // Act
+    boolean updated = partialUpdateService.update(HelpRequest.class, 7L, Map.of("solved", true));
+
+    // Assert
+    assertTrue(updated);
+    verify(fieldValidator).validateValue(HelpRequest.class, "solved", true);
+  }
+}
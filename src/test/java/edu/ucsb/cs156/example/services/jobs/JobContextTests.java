@@ -1,23 +1,481 @@
 package edu.ucsb.cs156.example.services.jobs;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
 
 public class JobContextTests {
+
+  @Mock private JobLogLinesRepository jobLogLinesRepository;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+  }
+
   @Test
   public void when_jobs_repository_is_null_does_not_save() throws Exception {
 
     // arrange
 
     Job job1 = Job.builder().build();
-    JobContext ctx = new JobContext(null, job1);
+    JobContext ctx = new JobContext(null, job1, 1, 0);
 
     // act
     ctx.log("This is a log message");
+    ctx.flush();
+
+    // assert
+    assertEquals(null, job1.getLog());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void log_lines_are_written_in_batches() throws Exception {
+
+    // arrange
+
+    Job job1 = Job.builder().id(17L).build();
+    JobContext ctx = new JobContext(jobLogLinesRepository, job1, 3, Long.MAX_VALUE);
+    ArgumentCaptor<List<JobLogLine>> captor = ArgumentCaptor.forClass(List.class);
+
+    // act
+
+    ctx.log("line 0");
+    ctx.log("line 1");
+    verify(jobLogLinesRepository, never()).saveAll(any());
+    ctx.log("line 2");
+    ctx.log("line 3");
+    ctx.flush();
+    ctx.flush();
+
+    // assert
+
+    verify(jobLogLinesRepository, times(2)).saveAll(captor.capture());
+    List<JobLogLine> firstBatch = captor.getAllValues().get(0);
+    List<JobLogLine> secondBatch = captor.getAllValues().get(1);
+
+    assertEquals(3, firstBatch.size());
+    assertEquals(17L, firstBatch.get(0).getJobId());
+    assertEquals(0L, firstBatch.get(0).getLineNumber());
+    assertEquals("line 0", firstBatch.get(0).getMessage());
+    assertEquals(2L, firstBatch.get(2).getLineNumber());
+    assertEquals("line 2", firstBatch.get(2).getMessage());
+
+    assertEquals(1, secondBatch.size());
+    assertEquals(3L, secondBatch.get(0).getLineNumber());
+    assertEquals("line 3", secondBatch.get(0).getMessage());
+  }
+
+  @Test
+  public void log_lines_are_written_when_flush_interval_has_passed() throws Exception {
+
+    // arrange
+
+    Job job1 = Job.builder().id(1L).build();
+    JobContext ctx = new JobContext(jobLogLinesRepository, job1, 100, 0);
+
+    // act
+
+    ctx.log("line 0");
+    ctx.log("line 1");
+
+    // assert
+
+    verify(jobLogLinesRepository, times(2)).saveAll(any());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void log_lines_stay_buffered_while_they_cannot_be_written() throws Exception {
+
+    // arrange
+
+    Job job1 = Job.builder().id(1L).build();
+    JobContext ctx = new JobContext(jobLogLinesRepository, job1, 1, Long.MAX_VALUE, 2, null);
+    when(jobLogLinesRepository.saveAll(any()))
+        .thenThrow(new DataAccessResourceFailureException("database is down"))
+        .thenReturn(List.of());
+    ArgumentCaptor<List<JobLogLine>> captor = ArgumentCaptor.forClass(List.class);
+
+    // act
+
+    ctx.log("line 0"); // write fails
+    ctx.log("line 1"); // not retried until the flush interval has passed
+    ctx.log("line 2"); // buffer is full, so line 0 is dropped
+    List<JobLogLine> buffered = ctx.getBufferedLines();
+    ctx.flush();
+
+    // assert
+
+    assertEquals(
+        List.of("line 1", "line 2"), buffered.stream().map(JobLogLine::getMessage).toList());
+    verify(jobLogLinesRepository, times(2)).saveAll(captor.capture());
+    assertEquals(buffered, captor.getAllValues().get(1));
+    assertEquals(List.of(), ctx.getBufferedLines());
+  }
+
+  @Test
+  public void final_flush_is_retried_until_the_lines_are_written() throws Exception {
+
+    // arrange
+
+    Job job1 = Job.builder().id(1L).build();
+    JobContext ctx = new JobContext(jobLogLinesRepository, job1, 100, Long.MAX_VALUE);
+    when(jobLogLinesRepository.saveAll(any()))
+        .thenThrow(new DataAccessResourceFailureException("database is down"))
+        .thenThrow(new DataAccessResourceFailureException("database is down"))
+        .thenReturn(List.of());
+
+    // act
+
+    ctx.log("line 0");
+    boolean written = ctx.flushFinal(3, 0);
+
+    // assert
+
+    assertTrue(written);
+    verify(jobLogLinesRepository, times(3)).saveAll(any());
+    assertEquals(List.of(), ctx.getBufferedLines());
+  }
+
+  @Test
+  public void final_flush_gives_up_after_the_last_attempt() throws Exception {
+
+    // arrange
+
+    Job job1 = Job.builder().id(1L).build();
+    JobContext ctx = new JobContext(jobLogLinesRepository, job1, 100, Long.MAX_VALUE);
+    when(jobLogLinesRepository.saveAll(any()))
+        .thenThrow(new DataAccessResourceFailureException("database is down"));
+
+    // act
+
+    ctx.log("line 0");
+    boolean written = ctx.flushFinal(2, 0);
+
+    // assert
+
+    assertFalse(written);
+    verify(jobLogLinesRepository, times(2)).saveAll(any());
+    assertEquals(1, ctx.getBufferedLines().size());
+  }
+
+  @Test
+  public void log_size_counts_the_bytes_of_lines_once_they_are_written() throws Exception {
+
+    // arrange
+
+    Job job1 = Job.builder().id(1L).build();
+    JobContext ctx = new JobContext(jobLogLinesRepository, job1, 2, Long.MAX_VALUE);
+    when(jobLogLinesRepository.saveAll(any()))
+        .thenThrow(new DataAccessResourceFailureException("database is down"))
+        .thenReturn(List.of());
+
+    // act
+
+    ctx.log("café"); // buffered
+    long buffered = ctx.getLogSize();
+    ctx.log("line"); // write fails
+    long failed = ctx.getLogSize();
+    ctx.flush();
+
+    // assert
+
+    assertEquals(0, buffered);
+    assertEquals(0, failed);
+    assertEquals(9, ctx.getLogSize());
+  }
+
+  @Test
+  public void flushIfDue_writes_lines_only_once_the_flush_interval_has_passed() throws Exception {
+
+    // arrange
+
+    JobContext notDue =
+        new JobContext(jobLogLinesRepository, Job.builder().id(1L).build(), 100, Long.MAX_VALUE);
+    JobContext due = new JobContext(jobLogLinesRepository, Job.builder().id(2L).build(), 100, 0);
+
+    // act
+
+    notDue.log("waiting");
+    notDue.flushIfDue();
+    due.flushIfDue();
+
+    // assert
+
+    verify(jobLogLinesRepository, never()).saveAll(any());
+    assertEquals(1, notDue.getBufferedLines().size());
+  }
+
+  @Test
+  public void checkCancelled_throws_once_job_is_cancelled() throws Exception {
+
+    // arrange
+
+    JobContext ctx = new JobContext(null, Job.builder().build(), 1, 0);
+
+    // act & assert
+
+    ctx.checkCancelled();
+    assertFalse(ctx.isCancelled());
+    assertTrue(ctx.cancel("cancelled"));
+    assertFalse(ctx.cancel("timed_out"));
+    JobCancelledException e = assertThrows(JobCancelledException.class, ctx::checkCancelled);
+    assertEquals("Job stopped: cancelled", e.getMessage());
+    assertEquals("cancelled", ctx.getCancelledStatus());
+  }
+
+  @Test
+  public void job_without_timeout_is_never_past_deadline() throws Exception {
+
+    // arrange
+
+    JobContext ctx = new JobContext(null, Job.builder().build(), 1, 0);
+
+    // act & assert
+
+    assertFalse(ctx.isPastDeadline(System.nanoTime()));
+    ctx.start();
+    assertFalse(ctx.isPastDeadline(Long.MAX_VALUE));
+    ctx.finish();
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<String> loggedMessages() {
+    ArgumentCaptor<List<JobLogLine>> captor = ArgumentCaptor.forClass(List.class);
+    verify(jobLogLinesRepository, atLeastOnce()).saveAll(captor.capture());
+    return captor.getAllValues().stream()
+        .flatMap(List::stream)
+        .map(JobLogLine::getMessage)
+        .toList();
+  }
+
+  @Test
+  public void parallelForEach_runs_subtasks_in_parallel() throws Exception {
+
+    // arrange
+
+    JobContext ctx = new JobContext(jobLogLinesRepository, Job.builder().id(1L).build(), 1, 0);
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    // act
+
+    ctx.parallelForEach(
+        List.of("a", "b"),
+        2,
+        item -> {
+          threads.add(Thread.currentThread().getName());
+          bothStarted.countDown();
+          // each subtask only finishes once the other has started
+          assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+        });
+
+    // assert
+
+    assertEquals(Set.of("job-1-subtask-0", "job-1-subtask-1"), threads);
+    assertEquals(List.of("Subtasks: 1 of 2 done", "Subtasks: 2 of 2 done"), loggedMessages());
+  }
+
+  @Test
+  public void parallelForEach_uses_virtual_threads_when_enabled() throws Exception {
+
+    // arrange
+
+    JobContext ctx =
+        new JobContext(
+            jobLogLinesRepository,
+            Job.builder().id(1L).build(),
+            1,
+            0,
+            JobContext.DEFAULT_BUFFER_CAPACITY,
+            null,
+            true);
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    // act
+
+    ctx.parallelForEach(
+        List.of("a", "b", "c", "d"),
+        2,
+        item -> {
+          assertTrue(Thread.currentThread().isVirtual());
+          threads.add(Thread.currentThread().getName());
+          bothStarted.countDown();
+          assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+        });
+
+    // assert
+
+    // at most parallelism threads, each reused for later subtasks
+    assertEquals(Set.of("job-1-subtask-0", "job-1-subtask-1"), threads);
+  }
+
+  @Test
+  public void parallelForEach_logs_progress_every_tenth() throws Exception {
+
+    // arrange
+
+    JobContext ctx = new JobContext(jobLogLinesRepository, Job.builder().build(), 1, 0);
+    List<Integer> items = IntStream.range(0, 100).boxed().toList();
+    Set<Integer> processed = ConcurrentHashMap.newKeySet();
+
+    // act
+
+    ctx.parallelForEach(items, 4, processed::add);
+
+    // assert
+
+    assertEquals(Set.copyOf(items), processed);
+    assertTrue(ctx.getSubtaskUsage().cpuNanos() >= 0);
+    List<String> messages = loggedMessages();
+    assertEquals(10, messages.size());
+    assertEquals("Subtasks: 10 of 100 done", messages.get(0));
+    assertEquals("Subtasks: 100 of 100 done", messages.get(9));
+  }
+
+  @Test
+  public void parallelForEach_rolls_up_failures() throws Exception {
+
+    // arrange
+
+    JobContext ctx = new JobContext(jobLogLinesRepository, Job.builder().build(), 1, 0);
+
+    // act
+
+    JobSubtasksFailedException e =
+        assertThrows(
+            JobSubtasksFailedException.class,
+            () ->
+                ctx.parallelForEach(
+                    List.of(0, 1),
+                    1,
+                    item -> {
+                      if (item == 0) {
+                        throw new Exception("boom");
+                      }
+                    }));
+
+    // assert
+
+    assertEquals("1 of 2 subtasks failed", e.getMessage());
+    assertEquals("boom", e.getCause().getMessage());
+    assertTrue(loggedMessages().contains("Subtask 0 failed: boom"));
+  }
+
+  @Test
+  public void parallelForEach_skips_remaining_subtasks_after_a_failure() throws Exception {
+
+    // arrange
+
+    JobContext ctx = new JobContext(jobLogLinesRepository, Job.builder().build(), 1, 0);
+    CountDownLatch release = new CountDownLatch(1);
+
+    // act
+
+    JobSubtasksFailedException e =
+        assertThrows(
+            JobSubtasksFailedException.class,
+            () ->
+                ctx.parallelForEach(
+                    List.of(0, 1, 2, 3),
+                    2,
+                    item -> {
+                      if (item == 0) {
+                        throw new Exception("boom");
+                      }
+                      // held until the failure stops it
+                      release.await();
+                    }));
+
+    // assert
+
+    assertEquals("1 of 4 subtasks failed", e.getMessage());
+    List<String> messages = loggedMessages();
+    assertEquals("Stopped 3 other subtasks after a failure", messages.get(messages.size() - 1));
+  }
+
+  @Test
+  public void parallelForEach_stops_when_job_is_cancelled() throws Exception {
+
+    // arrange
+
+    JobContext ctx = new JobContext(null, Job.builder().build(), 1, 0);
+    CountDownLatch release = new CountDownLatch(1);
+
+    // act
+
+    ctx.start();
+    assertThrows(
+        InterruptedException.class,
+        () ->
+            ctx.parallelForEach(
+                List.of(0),
+                1,
+                item -> {
+                  ctx.cancel("cancelled");
+                  release.await();
+                }));
+    ctx.finish();
 
     // assert
-    assertEquals("This is a log message", job1.getLog());
+
+    assertEquals("cancelled", ctx.getCancelledStatus());
+  }
+
+  @Test
+  public void parallelForEach_with_no_items_does_nothing() throws Exception {
+
+    // arrange
+
+    JobContext ctx = new JobContext(jobLogLinesRepository, Job.builder().build(), 1, 0);
+
+    // act
+
+    ctx.parallelForEach(List.of(), 4, item -> {});
+
+    // assert
+
+    verify(jobLogLinesRepository, never()).saveAll(any());
+  }
+
+  @Test
+  public void parallelForEach_rejects_invalid_parallelism() throws Exception {
+
+    // arrange
+
+    JobContext ctx = new JobContext(null, Job.builder().build(), 1, 0);
+
+    // act & assert
+
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class, () -> ctx.parallelForEach(List.of(1), 0, item -> {}));
+    assertEquals("parallelism must be at least 1", e.getMessage());
   }
 }
@@ -0,0 +1,117 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import edu.ucsb.cs156.example.models.JobEvent;
+import java.io.IOException;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+public class JobEventStreamServiceTests {
+
+  private final JobEventStreamService jobEventStreamService = new JobEventStreamService();
+
+  private static JobEvent event(long jobId, String jobType, Long createdById) {
+    return JobEvent.builder()
+        .jobId(jobId)
+        .status("running")
+        .jobType(jobType)
+        .createdById(createdById)
+        .build();
+  }
+
+  /** The job events sent to an emitter, which must have been sent {@code count} events. */
+  private static List<Object> sent(SseEmitter emitter, int count) throws IOException {
+    ArgumentCaptor<SseEventBuilder> captor = ArgumentCaptor.forClass(SseEventBuilder.class);
+    verify(emitter, times(count)).send(captor.capture());
+    return captor.getAllValues().stream()
+        .flatMap(event -> event.build().stream())
+        .map(data -> data.getData())
+        .filter(JobEvent.class::isInstance)
+        .toList();
+  }
+
+  @Test
+  void subscribe_registers_a_subscription() {
+    // Act
+    SseEmitter emitter = jobEventStreamService.subscribe("TestJob", null);
+
+    // Assert
+    assertEquals(0L, emitter.getTimeout());
+    assertEquals(1, jobEventStreamService.getSubscriptionCount());
+  }
+
+  @Test
+  void sendPendingEvents_sends_each_subscriber_the_events_it_asked_for() throws Exception {
+    // Arrange
+    SseEmitter all = mock(SseEmitter.class);
+    SseEmitter testJobs = mock(SseEmitter.class);
+    SseEmitter user5 = mock(SseEmitter.class);
+    jobEventStreamService.subscribe(null, null, all);
+    jobEventStreamService.subscribe("TestJob", null, testJobs);
+    jobEventStreamService.subscribe(null, 5L, user5);
+    JobEvent first = event(1L, "TestJob", 5L);
+    JobEvent second = event(2L, "OtherJob", 6L);
+    JobEvent third = event(3L, "TestJob", null);
+
+    // Act
+    jobEventStreamService.onJobEvent(first);
+    jobEventStreamService.onJobEvent(second);
+    jobEventStreamService.onJobEvent(third);
+    jobEventStreamService.sendPendingEvents();
+    jobEventStreamService.sendPendingEvents();
+
+    // Assert
+    assertEquals(List.of(first, second, third), sent(all, 3));
+    assertEquals(List.of(first, third), sent(testJobs, 2));
+    assertEquals(List.of(first), sent(user5, 1));
+    verify(all, never()).complete();
+    assertEquals(3, jobEventStreamService.getSubscriptionCount());
+  }
+
+  @Test
+  void sendPendingEvents_closes_stream_of_subscriber_that_fell_too_far_behind() throws Exception {
+    // Arrange
+    SseEmitter emitter = mock(SseEmitter.class);
+    jobEventStreamService.subscribe(null, null, emitter);
+
+    // Act
+    for (int i = 0; i <= JobEventStreamService.MAX_PENDING_EVENTS; i++) {
+      jobEventStreamService.onJobEvent(event(i, "TestJob", null));
+    }
+    jobEventStreamService.sendPendingEvents();
+
+    // Assert
+    assertEquals(
+        JobEventStreamService.MAX_PENDING_EVENTS,
+        sent(emitter, JobEventStreamService.MAX_PENDING_EVENTS + 1).size());
+    verify(emitter, times(1)).complete();
+    assertEquals(0, jobEventStreamService.getSubscriptionCount());
+  }
+
+  @Test
+  void sendPendingEvents_drops_subscription_when_client_has_gone_away() throws Exception {
+    // Arrange
+    SseEmitter emitter = mock(SseEmitter.class);
+    jobEventStreamService.subscribe(null, null, emitter);
+    IOException e = new IOException("Broken pipe");
+    doThrow(e).when(emitter).send(any(SseEventBuilder.class));
+    jobEventStreamService.onJobEvent(event(1L, "TestJob", null));
+
+    // Act
+    jobEventStreamService.sendPendingEvents();
+
+    // Assert
+    verify(emitter, times(1)).completeWithError(e);
+    assertEquals(0, jobEventStreamService.getSubscriptionCount());
+  }
+}
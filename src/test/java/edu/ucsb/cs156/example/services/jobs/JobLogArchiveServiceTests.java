@@ -0,0 +1,198 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobLogArchive;
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import edu.ucsb.cs156.example.repositories.JobLogArchivesRepository;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
+import edu.ucsb.cs156.example.repositories.JobsRepository;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class JobLogArchiveServiceTests {
+
+  @Mock private JobLogLinesRepository jobLogLinesRepository;
+
+  @Mock private JobLogArchivesRepository jobLogArchivesRepository;
+
+  @Mock private JobsRepository jobsRepository;
+
+  @Mock private JobLogArchiveService self;
+
+  @InjectMocks private JobLogArchiveService jobLogArchiveService;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    ReflectionTestUtils.setField(jobLogArchiveService, "minSize", 65536L);
+    ReflectionTestUtils.setField(jobLogArchiveService, "minAgeMinutes", 10L);
+    ReflectionTestUtils.setField(jobLogArchiveService, "batchSize", 2);
+    when(jobsRepository.findWithLargeLogForUpdate(7L, 65536L))
+        .thenReturn(Optional.of(Job.builder().id(7L).build()));
+  }
+
+  private static JobLogLine line(long lineNumber, String message) {
+    return JobLogLine.builder().jobId(7L).lineNumber(lineNumber).message(message).build();
+  }
+
+  private static String read(Reader reader) throws IOException {
+    StringWriter text = new StringWriter();
+    try (reader) {
+      reader.transferTo(text);
+    }
+    return text.toString();
+  }
+
+  @Test
+  void archive_compresses_the_log_and_deletes_its_lines() throws Exception {
+    // Arrange
+    String log = "x".repeat(10_000);
+    when(jobLogLinesRepository.streamByJobIdOrderByLineNumberAsc(7L))
+        .thenReturn(Stream.of(line(0, log), line(1, "café"), line(2, log)));
+    ArgumentCaptor<JobLogArchive> captor = ArgumentCaptor.forClass(JobLogArchive.class);
+
+    // Act
+    boolean archived = jobLogArchiveService.archive(7L);
+
+    // Assert
+    assertTrue(archived);
+    verify(jobLogArchivesRepository).save(captor.capture());
+    JobLogArchive archive = captor.getValue();
+    assertEquals(7L, archive.getJobId());
+    assertEquals(3, archive.getLineCount());
+    assertEquals(20_007, archive.getLogSize());
+    assertTrue(archive.getContent().length < 1000);
+    verify(jobLogLinesRepository, times(1)).deleteByJobIdIn(List.of(7L));
+    verify(jobsRepository, times(1)).clearLogSize(7L);
+
+    when(jobLogArchivesRepository.findById(7L)).thenReturn(Optional.of(archive));
+    assertEquals(log + "\ncafé\n" + log, read(jobLogArchiveService.open(7L).orElseThrow()));
+  }
+
+  @Test
+  void archive_skips_a_log_that_another_instance_is_archiving_or_has_archived() throws Exception {
+    // Arrange
+    when(jobsRepository.findWithLargeLogForUpdate(7L, 65536L)).thenReturn(Optional.empty());
+
+    // Act
+    boolean archived = jobLogArchiveService.archive(7L);
+
+    // Assert
+    assertFalse(archived);
+    verifyNoInteractions(jobLogLinesRepository, jobLogArchivesRepository);
+    verify(jobsRepository, never()).clearLogSize(7L);
+  }
+
+  @Test
+  void open_returns_empty_if_the_log_is_not_archived() {
+    // Act & Assert
+    assertEquals(Optional.empty(), jobLogArchiveService.open(7L));
+  }
+
+  @Test
+  void open_of_a_corrupt_archive_throws() {
+    // Arrange
+    when(jobLogArchivesRepository.findById(7L))
+        .thenReturn(
+            Optional.of(JobLogArchive.builder().jobId(7L).content(new byte[] {1, 2, 3}).build()));
+
+    // Act
+    UncheckedIOException e =
+        assertThrows(UncheckedIOException.class, () -> jobLogArchiveService.open(7L));
+
+    // Assert
+    assertEquals("Archived log of job 7 cannot be read", e.getMessage());
+  }
+
+  @Test
+  void read_of_a_truncated_archive_throws() throws Exception {
+    // Arrange
+    when(jobLogLinesRepository.streamByJobIdOrderByLineNumberAsc(7L))
+        .thenReturn(Stream.of(line(0, "x".repeat(10_000))));
+    ArgumentCaptor<JobLogArchive> captor = ArgumentCaptor.forClass(JobLogArchive.class);
+    jobLogArchiveService.archive(7L);
+    verify(jobLogArchivesRepository).save(captor.capture());
+    JobLogArchive archive = captor.getValue();
+    archive.setContent(Arrays.copyOf(archive.getContent(), archive.getContent().length - 10));
+    when(jobLogArchivesRepository.findById(7L)).thenReturn(Optional.of(archive));
+
+    Reader reader = jobLogArchiveService.open(7L).orElseThrow();
+
+    // Act & Assert
+    assertThrows(IOException.class, () -> read(reader));
+  }
+
+  @Test
+  void archiveLogs_archives_large_logs_in_batches() throws Exception {
+    // Arrange
+    when(jobsRepository.findIdsWithLargeLogs(
+            any(ZonedDateTime.class), eq(65536L), eq(PageRequest.of(0, 2))))
+        .thenReturn(List.of(1L, 2L), List.of(3L), List.of());
+    when(self.archive(any(Long.class))).thenReturn(true);
+
+    // Act
+    int archived = jobLogArchiveService.archiveLogs();
+
+    // Assert
+    assertEquals(3, archived);
+    verify(self, times(1)).archive(1L);
+    verify(self, times(1)).archive(2L);
+    verify(self, times(1)).archive(3L);
+  }
+
+  @Test
+  void archiveLogs_stops_when_another_instance_holds_every_job_of_a_batch() throws Exception {
+    // Arrange
+    when(jobsRepository.findIdsWithLargeLogs(any(), eq(65536L), any())).thenReturn(List.of(1L));
+    when(self.archive(1L)).thenReturn(false);
+
+    // Act
+    int archived = jobLogArchiveService.archiveLogs();
+
+    // Assert
+    assertEquals(0, archived);
+    verify(jobsRepository, times(1)).findIdsWithLargeLogs(any(), eq(65536L), any());
+  }
+
+  @Test
+  void archiveOnSchedule_archives_logs() throws Exception {
+    // Arrange
+    when(jobsRepository.findIdsWithLargeLogs(any(), eq(65536L), any()))
+        .thenReturn(List.of(1L), List.of());
+    when(self.archive(1L)).thenReturn(true);
+
+    // Act
+    jobLogArchiveService.archiveOnSchedule();
+
+    // Assert
+    verify(self, times(1)).archive(1L);
+    verify(jobsRepository, times(2)).findIdsWithLargeLogs(any(), eq(65536L), any());
+  }
+}
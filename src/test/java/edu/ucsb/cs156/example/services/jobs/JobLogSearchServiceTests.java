@@ -0,0 +1,191 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.JobLogMatch;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
+import edu.ucsb.cs156.example.repositories.JobsRepository;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class JobLogSearchServiceTests {
+
+  private static final Pattern ERROR = Pattern.compile("error");
+
+  @Mock private JobsRepository jobsRepository;
+
+  @Mock private JobLogLinesRepository jobLogLinesRepository;
+
+  @Mock private JobLogArchiveService jobLogArchiveService;
+
+  @Mock private JobService jobService;
+
+  @InjectMocks private JobLogSearchService jobLogSearchService;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+  }
+
+  private static JobLogLine line(long lineNumber, String message) {
+    return JobLogLine.builder().jobId(1L).lineNumber(lineNumber).message(message).build();
+  }
+
+  private static JobLogMatch match(long lineNumber, String message) {
+    return JobLogMatch.builder().lineNumber(lineNumber).message(message).build();
+  }
+
+  private void linesFrom(long lineNumber, JobLogLine... lines) {
+    when(jobLogLinesRepository.findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+            1L, lineNumber))
+        .thenReturn(List.of(lines));
+  }
+
+  @Test
+  void search_reads_the_log_lines_a_page_at_a_time_then_the_buffer() {
+    // Arrange
+    List<JobLogLine> firstPage =
+        LongStream.range(0, 500)
+            .mapToObj(i -> line(i, i == 3 ? "error at 3" : i == 499 ? null : "ok"))
+            .toList();
+    when(jobLogLinesRepository.findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+            1L, 0L))
+        .thenReturn(firstPage);
+    linesFrom(500L, line(500, "error at 500"));
+    when(jobService.getBufferedLogLines(1L))
+        .thenReturn(List.of(line(500, "error at 500"), line(501, "error at 501")));
+
+    // Act
+    List<JobLogMatch> matches = jobLogSearchService.search(1L, ERROR, 0, Long.MAX_VALUE, 10);
+
+    // Assert
+    assertEquals(
+        List.of(match(3, "error at 3"), match(500, "error at 500"), match(501, "error at 501")),
+        matches);
+    verify(jobLogArchiveService, never()).open(anyLong());
+    verify(jobsRepository, never()).findById(anyLong());
+  }
+
+  @Test
+  void search_stops_reading_lines_once_the_limit_is_reached() {
+    // Arrange
+    linesFrom(0L, line(0, "error 0"), line(1, "error 1"), line(2, "error 2"));
+    when(jobService.getBufferedLogLines(1L)).thenReturn(List.of(line(3, "error 3")));
+
+    // Act
+    List<JobLogMatch> matches = jobLogSearchService.search(1L, ERROR, 0, Long.MAX_VALUE, 2);
+
+    // Assert
+    assertEquals(List.of(match(0, "error 0"), match(1, "error 1")), matches);
+  }
+
+  @Test
+  void search_stops_reading_the_buffer_once_the_limit_is_reached() {
+    // Arrange
+    when(jobService.getBufferedLogLines(1L))
+        .thenReturn(List.of(line(0, "error 0"), line(1, "error 1")));
+
+    // Act
+    List<JobLogMatch> matches = jobLogSearchService.search(1L, ERROR, 0, Long.MAX_VALUE, 1);
+
+    // Assert
+    assertEquals(List.of(match(0, "error 0")), matches);
+    verify(jobLogArchiveService, never()).open(anyLong());
+  }
+
+  @Test
+  void search_only_looks_at_lines_in_the_range() {
+    // Arrange
+    linesFrom(2L, line(2, "error 2"), line(3, "error 3"), line(4, "error 4"));
+
+    // Act
+    List<JobLogMatch> matches = jobLogSearchService.search(1L, ERROR, 2, 3, 10);
+
+    // Assert
+    assertEquals(List.of(match(2, "error 2"), match(3, "error 3")), matches);
+  }
+
+  @Test
+  void search_reads_an_archived_log_a_line_at_a_time() {
+    // Arrange
+    when(jobLogArchiveService.open(1L))
+        .thenReturn(Optional.of(new StringReader("error 0\nok\nerror 2\nerror 3")));
+
+    // Act
+    List<JobLogMatch> matches = jobLogSearchService.search(1L, ERROR, 1, Long.MAX_VALUE, 1);
+
+    // Assert
+    assertEquals(List.of(match(2, "error 2")), matches);
+    verify(jobsRepository, never()).findById(anyLong());
+  }
+
+  @Test
+  void search_of_an_unreadable_archived_log_throws() {
+    // Arrange
+    Reader unreadable =
+        new Reader() {
+          @Override
+          public int read(char[] buffer, int offset, int length) throws IOException {
+            throw new IOException("Unexpected end of ZLIB input stream");
+          }
+
+          @Override
+          public void close() {}
+        };
+    when(jobLogArchiveService.open(1L)).thenReturn(Optional.of(unreadable));
+
+    // Act
+    UncheckedIOException e =
+        assertThrows(
+            UncheckedIOException.class,
+            () -> jobLogSearchService.search(1L, ERROR, 0, Long.MAX_VALUE, 10));
+
+    // Assert
+    assertEquals("Archived log of job 1 cannot be read", e.getMessage());
+  }
+
+  @Test
+  void search_falls_back_to_the_log_column_of_old_jobs() {
+    // Arrange
+    when(jobsRepository.findById(1L))
+        .thenReturn(Optional.of(Job.builder().id(1L).log("error 0\nok").build()));
+    when(jobsRepository.findById(2L)).thenReturn(Optional.of(Job.builder().id(2L).build()));
+
+    // Act
+    List<JobLogMatch> matches = jobLogSearchService.search(1L, ERROR, 0, Long.MAX_VALUE, 10);
+    List<JobLogMatch> noLog = jobLogSearchService.search(2L, ERROR, 0, Long.MAX_VALUE, 10);
+
+    // Assert
+    assertEquals(List.of(match(0, "error 0")), matches);
+    assertEquals(List.of(), noLog);
+    verify(jobLogArchiveService, times(1)).open(2L);
+  }
+
+  @Test
+  void search_of_unknown_job_throws() {
+    // Act & Assert
+    assertThrows(
+        EntityNotFoundException.class,
+        () -> jobLogSearchService.search(99L, ERROR, 0, Long.MAX_VALUE, 10));
+  }
+}
@@ -0,0 +1,233 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
+import edu.ucsb.cs156.example.repositories.JobsRepository;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+public class JobLogStreamServiceTests {
+
+  @Mock private JobsRepository jobsRepository;
+
+  @Mock private JobLogLinesRepository jobLogLinesRepository;
+
+  @Mock private JobLogArchiveService jobLogArchiveService;
+
+  @Mock private JobService jobService;
+
+  @InjectMocks private JobLogStreamService jobLogStreamService;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+  }
+
+  private static JobLogLine line(long lineNumber, String message) {
+    return JobLogLine.builder().jobId(1L).lineNumber(lineNumber).message(message).build();
+  }
+
+  private static String text(SseEventBuilder event) {
+    return event.build().stream().map(d -> d.getData().toString()).collect(Collectors.joining());
+  }
+
+  @Test
+  void subscribe_registers_a_subscription() {
+    // Act
+    SseEmitter emitter = jobLogStreamService.subscribe(1L, 0L);
+
+    // Assert
+    assertEquals(0L, emitter.getTimeout());
+    assertEquals(1, jobLogStreamService.getSubscriptionCount());
+  }
+
+  @Test
+  void poll_sends_new_lines_and_keeps_stream_open_while_job_is_running() throws Exception {
+    // Arrange
+    SseEmitter emitter = mock(SseEmitter.class);
+    jobLogStreamService.subscribe(1L, 0L, emitter);
+    when(jobsRepository.findStatusById(1L)).thenReturn(Optional.of("running"));
+    when(jobLogLinesRepository.findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+            1L, 0L))
+        .thenReturn(List.of(line(0, "first"), line(1, "second")));
+    ArgumentCaptor<SseEventBuilder> captor = ArgumentCaptor.forClass(SseEventBuilder.class);
+
+    // Act
+    jobLogStreamService.pollSubscriptions();
+    jobLogStreamService.pollSubscriptions();
+
+    // Assert
+    verify(emitter, times(2)).send(captor.capture());
+    assertEquals("id:0\nevent:log\ndata:first\n\n", text(captor.getAllValues().get(0)));
+    assertEquals("id:1\nevent:log\ndata:second\n\n", text(captor.getAllValues().get(1)));
+    verify(jobLogLinesRepository, times(1))
+        .findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(1L, 2L);
+    verify(emitter, never()).complete();
+    assertEquals(1, jobLogStreamService.getSubscriptionCount());
+  }
+
+  @Test
+  void poll_reads_lines_in_pages() throws Exception {
+    // Arrange
+    SseEmitter emitter = mock(SseEmitter.class);
+    jobLogStreamService.subscribe(1L, 0L, emitter);
+    List<JobLogLine> firstPage = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      firstPage.add(line(i, "line " + i));
+    }
+    when(jobsRepository.findStatusById(1L)).thenReturn(Optional.of("running"));
+    when(jobLogLinesRepository.findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+            1L, 0L))
+        .thenReturn(firstPage);
+    when(jobLogLinesRepository.findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+            1L, 500L))
+        .thenReturn(List.of(line(500, "last")));
+
+    // Act
+    jobLogStreamService.pollSubscriptions();
+
+    // Assert
+    verify(emitter, times(501)).send(any(SseEventBuilder.class));
+  }
+
+  @Test
+  void poll_sends_lines_still_buffered_on_this_instance_after_the_written_ones() throws Exception {
+    // Arrange
+    SseEmitter emitter = mock(SseEmitter.class);
+    jobLogStreamService.subscribe(1L, 0L, emitter);
+    when(jobsRepository.findStatusById(1L)).thenReturn(Optional.of("running"));
+    when(jobService.getBufferedLogLines(1L))
+        .thenReturn(List.of(line(1, "second")), List.of(line(1, "second"), line(2, "third")));
+    when(jobLogLinesRepository.findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+            1L, 0L))
+        .thenReturn(List.of(line(0, "first")));
+    ArgumentCaptor<SseEventBuilder> captor = ArgumentCaptor.forClass(SseEventBuilder.class);
+
+    // Act
+    jobLogStreamService.pollSubscriptions();
+    jobLogStreamService.pollSubscriptions();
+
+    // Assert
+    verify(emitter, times(3)).send(captor.capture());
+    assertEquals("id:0\nevent:log\ndata:first\n\n", text(captor.getAllValues().get(0)));
+    assertEquals("id:1\nevent:log\ndata:second\n\n", text(captor.getAllValues().get(1)));
+    assertEquals("id:2\nevent:log\ndata:third\n\n", text(captor.getAllValues().get(2)));
+  }
+
+  @Test
+  void poll_closes_stream_when_job_is_complete() throws Exception {
+    // Arrange
+    SseEmitter emitter = mock(SseEmitter.class);
+    jobLogStreamService.subscribe(1L, 3L, emitter);
+    when(jobsRepository.findStatusById(1L)).thenReturn(Optional.of("complete"));
+    when(jobLogLinesRepository.findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+            1L, 3L))
+        .thenReturn(List.of(line(3, "done")));
+    ArgumentCaptor<SseEventBuilder> captor = ArgumentCaptor.forClass(SseEventBuilder.class);
+
+    // Act
+    jobLogStreamService.pollSubscriptions();
+
+    // Assert
+    verify(emitter, times(2)).send(captor.capture());
+    assertEquals("id:3\nevent:log\ndata:done\n\n", text(captor.getAllValues().get(0)));
+    assertEquals("event:status\ndata:complete\n\n", text(captor.getAllValues().get(1)));
+    verify(emitter, times(1)).complete();
+    assertEquals(0, jobLogStreamService.getSubscriptionCount());
+  }
+
+  @Test
+  void poll_sends_the_rest_of_an_archived_log_before_closing_the_stream() throws Exception {
+    // Arrange
+    SseEmitter emitter = mock(SseEmitter.class);
+    jobLogStreamService.subscribe(1L, 1L, emitter);
+    when(jobsRepository.findStatusById(1L)).thenReturn(Optional.of("complete"));
+    when(jobLogArchiveService.open(1L)).thenReturn(Optional.of(new StringReader("zero\none\ntwo")));
+    ArgumentCaptor<SseEventBuilder> captor = ArgumentCaptor.forClass(SseEventBuilder.class);
+
+    // Act
+    jobLogStreamService.pollSubscriptions();
+
+    // Assert
+    verify(emitter, times(3)).send(captor.capture());
+    assertEquals("id:1\nevent:log\ndata:one\n\n", text(captor.getAllValues().get(0)));
+    assertEquals("id:2\nevent:log\ndata:two\n\n", text(captor.getAllValues().get(1)));
+    assertEquals("event:status\ndata:complete\n\n", text(captor.getAllValues().get(2)));
+    verify(emitter, times(1)).complete();
+  }
+
+  @Test
+  void poll_does_not_read_the_archive_while_job_is_running() throws Exception {
+    // Arrange
+    SseEmitter emitter = mock(SseEmitter.class);
+    jobLogStreamService.subscribe(1L, 0L, emitter);
+    when(jobsRepository.findStatusById(1L)).thenReturn(Optional.of("running"));
+
+    // Act
+    jobLogStreamService.pollSubscriptions();
+
+    // Assert
+    verify(jobLogArchiveService, never()).open(anyLong());
+    verify(emitter, never()).send(any(SseEventBuilder.class));
+  }
+
+  @Test
+  void poll_closes_stream_when_job_has_been_deleted() throws Exception {
+    // Arrange
+    SseEmitter emitter = mock(SseEmitter.class);
+    jobLogStreamService.subscribe(1L, 0L, emitter);
+    when(jobsRepository.findStatusById(1L)).thenReturn(Optional.empty());
+    ArgumentCaptor<SseEventBuilder> captor = ArgumentCaptor.forClass(SseEventBuilder.class);
+
+    // Act
+    jobLogStreamService.pollSubscriptions();
+
+    // Assert
+    verify(emitter, times(1)).send(captor.capture());
+    assertEquals("event:status\ndata:deleted\n\n", text(captor.getValue()));
+    verify(emitter, times(1)).complete();
+    assertEquals(0, jobLogStreamService.getSubscriptionCount());
+  }
+
+  @Test
+  void poll_drops_subscription_when_client_has_gone_away() throws Exception {
+    // Arrange
+    SseEmitter emitter = mock(SseEmitter.class);
+    jobLogStreamService.subscribe(1L, 0L, emitter);
+    IOException e = new IOException("Broken pipe");
+    when(jobsRepository.findStatusById(1L)).thenReturn(Optional.of("running"));
+    when(jobLogLinesRepository.findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+            1L, 0L))
+        .thenReturn(List.of(line(0, "first")));
+    doThrow(e).when(emitter).send(any(SseEventBuilder.class));
+
+    // Act
+    jobLogStreamService.pollSubscriptions();
+
+    // Assert
+    verify(emitter, times(1)).completeWithError(e);
+    assertEquals(0, jobLogStreamService.getSubscriptionCount());
+  }
+}
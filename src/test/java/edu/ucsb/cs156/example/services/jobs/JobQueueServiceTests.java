@@ -0,0 +1,430 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobPriority;
+import edu.ucsb.cs156.example.entities.User;
+import edu.ucsb.cs156.example.errors.JobRateLimitException;
+import edu.ucsb.cs156.example.jobs.TestJob;
+import edu.ucsb.cs156.example.jobs.TestJobFactory;
+import edu.ucsb.cs156.example.repositories.JobsRepository;
+import edu.ucsb.cs156.example.services.CurrentUserService;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class JobQueueServiceTests {
+
+  @Mock private JobsRepository jobsRepository;
+
+  @Mock private JobService jobService;
+
+  @Mock private CurrentUserService currentUserService;
+
+  @Mock private JobRateLimiter jobRateLimiter;
+
+  @Spy private ObjectMapper objectMapper = new ObjectMapper();
+
+  @Mock private JobQueueService self;
+
+  @InjectMocks private JobQueueService jobQueueService;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    jobQueueService.setJobFactories(List.of(new TestJobFactory()));
+    ReflectionTestUtils.setField(jobQueueService, "maxAttempts", 3);
+  }
+
+  private static Job queuedJob(long id, String jobType, String parameters) {
+    return Job.builder().id(id).status("running").jobType(jobType).parameters(parameters).build();
+  }
+
+  @Test
+  void enqueue_saves_job_with_its_parameters() throws Exception {
+    // Act
+    Job job = jobQueueService.enqueue("TestJob", Map.of("sleepMs", 10));
+
+    // Assert
+    assertEquals("queued", job.getStatus());
+    assertEquals("TestJob", job.getJobType());
+    assertEquals(JobPriority.INTERACTIVE, job.getPriority());
+    assertEquals("{\"sleepMs\":10}", job.getParameters());
+    assertNull(job.getCoalesceKey());
+    verify(jobService, times(1)).saveOrFindInFlight(job);
+  }
+
+  @Test
+  void enqueue_with_coalesce_returns_job_already_in_flight() throws Exception {
+    // Arrange
+    Job inFlight = queuedJob(7L, "TestJob", "{\"sleepMs\":10}");
+    String key = JobService.coalesceKey("TestJob", Map.of("sleepMs", 10));
+    when(jobService.findInFlight(key)).thenReturn(Optional.of(inFlight));
+
+    // Act
+    Job job = jobQueueService.enqueue("TestJob", Map.of("sleepMs", 10), true);
+
+    // Assert
+    assertSame(inFlight, job);
+    verifyNoInteractions(jobRateLimiter);
+    verify(jobService, never()).saveOrFindInFlight(any(Job.class));
+  }
+
+  @Test
+  void enqueue_gives_the_token_back_when_a_concurrent_launch_wins() throws Exception {
+    // Arrange
+    User user = User.builder().id(5L).build();
+    when(currentUserService.getUser()).thenReturn(user);
+    Job winner = queuedJob(7L, "TestJob", "{\"sleepMs\":10}");
+    when(jobService.saveOrFindInFlight(any(Job.class))).thenReturn(Optional.of(winner));
+
+    // Act
+    Job job = jobQueueService.enqueue("TestJob", Map.of("sleepMs", 10), true);
+
+    // Assert
+    assertSame(winner, job);
+    verify(jobRateLimiter, times(1)).acquire("TestJob", user);
+    verify(jobRateLimiter, times(1)).release(List.of("TestJob"), user);
+  }
+
+  @Test
+  void enqueue_when_rate_limited_queues_nothing() {
+    // Arrange
+    User user = User.builder().id(5L).build();
+    when(currentUserService.getUser()).thenReturn(user);
+    doThrow(new JobRateLimitException("TestJob", 7)).when(jobRateLimiter).acquire("TestJob", user);
+
+    // Act & Assert
+    assertThrows(
+        JobRateLimitException.class,
+        () -> jobQueueService.enqueue("TestJob", Map.of("sleepMs", 10)));
+    verify(jobService, never()).saveOrFindInFlight(any(Job.class));
+  }
+
+  @Test
+  void launchAll_takes_every_token_before_saving_any_job() {
+    // Arrange
+    User user = User.builder().id(5L).build();
+    Job first = Job.builder().jobType("TestJob").createdBy(user).build();
+    Job second = Job.builder().jobType("OtherJob").createdBy(user).build();
+    doThrow(new JobRateLimitException("OtherJob", 7))
+        .when(jobRateLimiter)
+        .acquire(List.of("TestJob", "OtherJob"), user);
+
+    // Act & Assert
+    assertThrows(
+        JobRateLimitException.class, () -> jobQueueService.launchAll(List.of(first, second)));
+    verify(jobService, never()).saveUnlessInFlight(any(Job.class));
+  }
+
+  @Test
+  void launchAll_gives_the_tokens_back_if_the_transaction_rolls_back() {
+    // Arrange
+    User user = User.builder().id(5L).build();
+    Job first = Job.builder().jobType("TestJob").stepName("a").createdBy(user).build();
+    Job second = Job.builder().jobType("TestJob").stepName("b").createdBy(user).build();
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      // Act
+      jobQueueService.launchAll(List.of(first, second));
+      List<TransactionSynchronization> synchronizations =
+          TransactionSynchronizationManager.getSynchronizations();
+      synchronizations.forEach(
+          s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+      // Assert
+      verify(jobService).saveUnlessInFlight(first);
+      verify(jobService).saveUnlessInFlight(second);
+      verify(jobRateLimiter).release(List.of("TestJob", "TestJob"), user);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  void launchAll_keeps_the_tokens_if_the_transaction_commits() {
+    // Arrange
+    User user = User.builder().id(5L).build();
+    Job job = Job.builder().jobType("TestJob").createdBy(user).build();
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      // Act
+      jobQueueService.launchAll(List.of(job));
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+      // Assert
+      verify(jobRateLimiter).acquire(List.of("TestJob"), user);
+      verify(jobRateLimiter, never()).release(any(), any());
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  void enqueue_rejects_unknown_job_type() {
+    // Act
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class, () -> jobQueueService.enqueue("NoSuchJob", Map.of()));
+
+    // Assert
+    assertEquals("Unknown job type: NoSuchJob", e.getMessage());
+    verify(jobsRepository, never()).save(any(Job.class));
+  }
+
+  @Test
+  void pollQueue_does_nothing_when_no_workers_are_idle() {
+    // Arrange
+    when(jobService.getIdleWorkerCount(any(JobPriority.class))).thenReturn(0);
+
+    // Act
+    jobQueueService.pollQueue();
+
+    // Assert
+    verify(self, never()).claimQueuedJobs(any(JobPriority.class), anyInt());
+  }
+
+  @Test
+  void pollQueue_runs_claimed_jobs() throws Exception {
+    // Arrange
+    Job job = queuedJob(1L, "TestJob", "{\"fail\":true,\"sleepMs\":5}");
+    when(jobService.getIdleWorkerCount(JobPriority.INTERACTIVE)).thenReturn(2);
+    when(self.claimQueuedJobs(JobPriority.INTERACTIVE, 2)).thenReturn(List.of(job));
+    when(jobService.runQueuedJob(eq(job), any(JobContextConsumer.class))).thenReturn(true);
+    ArgumentCaptor<JobContextConsumer> captor = ArgumentCaptor.forClass(JobContextConsumer.class);
+
+    // Act
+    jobQueueService.pollQueue();
+
+    // Assert
+    verify(jobService).runQueuedJob(eq(job), captor.capture());
+    assertInstanceOf(TestJob.class, captor.getValue());
+  }
+
+  @Test
+  void pollQueue_claims_bulk_jobs_for_idle_bulk_workers() {
+    // Arrange
+    Job job = queuedJob(1L, "TestJob", "{}");
+    when(jobService.getIdleWorkerCount(JobPriority.BULK)).thenReturn(1);
+    when(self.claimQueuedJobs(JobPriority.BULK, 1)).thenReturn(List.of(job));
+    when(jobService.runQueuedJob(eq(job), any(JobContextConsumer.class))).thenReturn(true);
+
+    // Act
+    jobQueueService.pollQueue();
+
+    // Assert
+    verify(self, never()).claimQueuedJobs(eq(JobPriority.INTERACTIVE), anyInt());
+    verify(jobService, times(1)).runQueuedJob(eq(job), any(JobContextConsumer.class));
+  }
+
+  @Test
+  void enqueue_with_priority_saves_it_on_the_job() throws Exception {
+    // Act
+    Job job = jobQueueService.enqueue("TestJob", Map.of(), false, JobPriority.BULK);
+
+    // Assert
+    assertEquals(JobPriority.BULK, job.getPriority());
+  }
+
+  @Test
+  void pollQueue_advances_workflow_steps_and_publishes_their_events() {
+    // Arrange
+    Job cancelled = Job.builder().id(1L).status("cancelled").build();
+    Job queued = Job.builder().id(2L).status("queued").build();
+    when(self.advanceWorkflowSteps()).thenReturn(List.of(cancelled, queued));
+
+    // Act
+    jobQueueService.pollQueue();
+
+    // Assert
+    verify(jobService, times(1)).publishEvent(cancelled);
+    verify(jobService, times(1)).publishEvent(queued);
+  }
+
+  @Test
+  void advanceWorkflowSteps_cancels_blocked_steps_then_queues_ready_ones() {
+    // Arrange
+    Job blocked = Job.builder().id(1L).status("waiting").build();
+    Job downstream = Job.builder().id(2L).status("waiting").build();
+    Job ready = Job.builder().id(3L).status("waiting").build();
+    when(jobsRepository.findBlockedWorkflowStepsForUpdate())
+        .thenReturn(List.of(blocked), List.of(downstream), List.of());
+    when(jobsRepository.findReadyWorkflowStepsForUpdate()).thenReturn(List.of(ready));
+
+    // Act
+    List<Job> steps = jobQueueService.advanceWorkflowSteps();
+
+    // Assert
+    assertEquals(List.of(blocked, downstream, ready), steps);
+    assertEquals("cancelled", blocked.getStatus());
+    assertEquals("cancelled", downstream.getStatus());
+    assertNotNull(downstream.getFinishedAt());
+    assertEquals("queued", ready.getStatus());
+    verify(jobsRepository, times(3)).findBlockedWorkflowStepsForUpdate();
+  }
+
+  @Test
+  void pollQueue_stops_when_executor_is_full() {
+    // Arrange
+    Job job1 = queuedJob(1L, "TestJob", "{}");
+    Job job2 = queuedJob(2L, "TestJob", "{}");
+    when(jobService.getIdleWorkerCount(JobPriority.INTERACTIVE)).thenReturn(2);
+    when(self.claimQueuedJobs(JobPriority.INTERACTIVE, 2)).thenReturn(List.of(job1, job2));
+    when(jobService.runQueuedJob(eq(job1), any(JobContextConsumer.class))).thenReturn(false);
+
+    // Act
+    jobQueueService.pollQueue();
+
+    // Assert
+    verify(jobService, never()).runQueuedJob(eq(job2), any(JobContextConsumer.class));
+  }
+
+  @Test
+  void pollQueue_fails_jobs_that_cannot_be_built() {
+    // Arrange
+    Job unknownType = queuedJob(1L, "NoSuchJob", "{}");
+    Job badParameters = queuedJob(2L, "TestJob", "not json");
+    when(jobService.getIdleWorkerCount(JobPriority.INTERACTIVE)).thenReturn(2);
+    when(self.claimQueuedJobs(JobPriority.INTERACTIVE, 2))
+        .thenReturn(List.of(unknownType, badParameters));
+    when(jobService.runQueuedJob(any(Job.class), any(JobContextConsumer.class))).thenReturn(true);
+    ArgumentCaptor<JobContextConsumer> captor = ArgumentCaptor.forClass(JobContextConsumer.class);
+
+    // Act
+    jobQueueService.pollQueue();
+
+    // Assert
+    verify(jobService, times(2)).runQueuedJob(any(Job.class), captor.capture());
+    JobContext ctx = mock(JobContext.class);
+    Exception e =
+        assertThrows(IllegalStateException.class, () -> captor.getAllValues().get(0).accept(ctx));
+    assertEquals("Unknown job type: NoSuchJob", e.getMessage());
+    assertThrows(Exception.class, () -> captor.getAllValues().get(1).accept(ctx));
+  }
+
+  @Test
+  void claimQueuedJobs_marks_jobs_as_running() {
+    // Arrange
+    Job job = Job.builder().id(1L).status("queued").jobType("TestJob").attempts(1).build();
+    when(jobsRepository.findQueuedForUpdate(JobPriority.INTERACTIVE, PageRequest.of(0, 3)))
+        .thenReturn(List.of(job));
+
+    // Act
+    List<Job> claimed = jobQueueService.claimQueuedJobs(JobPriority.INTERACTIVE, 3);
+
+    // Assert
+    assertEquals(List.of(job), claimed);
+    assertEquals("running", job.getStatus());
+    assertEquals(2, job.getAttempts());
+    verify(jobService, times(1)).acquireLease(job);
+  }
+
+  @Test
+  void recoverOnStartup_expires_own_leases_and_recovers_jobs() {
+    // Arrange
+    when(jobService.getInstanceId()).thenReturn("instance-1");
+    when(jobsRepository.expireLeases(eq("instance-1"), any(ZonedDateTime.class))).thenReturn(2);
+
+    // Act
+    jobQueueService.recoverOnStartup();
+
+    // Assert
+    verify(self, times(1)).recoverJobsWithExpiredLeases(any(ZonedDateTime.class));
+  }
+
+  @Test
+  void recoverOnStartup_with_nothing_to_recover() {
+    // Arrange
+    when(jobService.getInstanceId()).thenReturn("instance-1");
+
+    // Act
+    jobQueueService.recoverOnStartup();
+
+    // Assert
+    verify(jobsRepository, times(1)).expireLeases(eq("instance-1"), any(ZonedDateTime.class));
+    verify(jobService, never()).publishEvent(any());
+  }
+
+  @Test
+  void recoverExpiredLeases_publishes_an_event_for_each_recovered_job() {
+    // Arrange
+    Job requeued = Job.builder().id(1L).status("queued").build();
+    Job failed = Job.builder().id(2L).status("error").build();
+    when(self.recoverJobsWithExpiredLeases(any(ZonedDateTime.class)))
+        .thenReturn(List.of(requeued, failed));
+
+    // Act
+    jobQueueService.recoverExpiredLeases();
+
+    // Assert
+    verify(jobService, times(1)).publishEvent(requeued);
+    verify(jobService, times(1)).publishEvent(failed);
+  }
+
+  @Test
+  void recoverJobsWithExpiredLeases_requeues_durable_jobs_and_fails_the_rest() {
+    // Arrange
+    Job retry =
+        Job.builder()
+            .id(1L)
+            .status("running")
+            .parameters("{}")
+            .attempts(2)
+            .leaseOwner("instance-1")
+            .coalesceKey("TestJob:k")
+            .build();
+    Job exhausted = Job.builder().id(2L).status("running").parameters("{}").attempts(3).build();
+    Job inMemory =
+        Job.builder().id(3L).status("queued").jobType("TestJob").coalesceKey("TestJob:m").build();
+    ZonedDateTime now = ZonedDateTime.now();
+    when(jobsRepository.findExpiredLeasesForUpdate(now))
+        .thenReturn(List.of(retry, exhausted, inMemory));
+
+    // Act
+    List<Job> recovered = jobQueueService.recoverJobsWithExpiredLeases(now);
+
+    // Assert
+    assertEquals(List.of(retry, exhausted, inMemory), recovered);
+    assertEquals("queued", retry.getStatus());
+    assertEquals("TestJob:k", retry.getCoalesceKey());
+    assertNull(retry.getLeaseOwner());
+    assertNull(retry.getFinishedAt());
+    assertEquals(now, retry.getUpdatedAt());
+    assertEquals("error", exhausted.getStatus());
+    assertEquals(now, exhausted.getFinishedAt());
+    assertEquals(now, exhausted.getUpdatedAt());
+    assertEquals("error", inMemory.getStatus());
+    assertNull(inMemory.getCoalesceKey());
+    assertEquals(now, inMemory.getFinishedAt());
+  }
+}
@@ -0,0 +1,195 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import edu.ucsb.cs156.example.entities.User;
+import edu.ucsb.cs156.example.errors.JobRateLimitException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class JobRateLimiterTests {
+
+  private final JobRateLimiter jobRateLimiter = new JobRateLimiter();
+
+  private final MockEnvironment environment = new MockEnvironment();
+
+  private final AtomicLong nanos = new AtomicLong();
+
+  private final User alice = User.builder().id(1L).build();
+
+  private final User bob = User.builder().id(2L).build();
+
+  @BeforeEach
+  public void setup() {
+    ReflectionTestUtils.setField(jobRateLimiter, "environment", environment);
+    ReflectionTestUtils.setField(jobRateLimiter, "nanoClock", (LongSupplier) nanos::get);
+  }
+
+  private void advanceSeconds(long seconds) {
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+  }
+
+  @Test
+  void acquire_allows_a_burst_per_user_then_refills_over_time() {
+    // Arrange
+    environment.setProperty("app.jobs.rateLimit.perUserPerMinute", "6");
+    environment.setProperty("app.jobs.rateLimit.perUserBurst", "2");
+
+    // Act
+    jobRateLimiter.acquire("TestJob", alice);
+    jobRateLimiter.acquire("TestJob", alice);
+    advanceSeconds(5);
+    JobRateLimitException e =
+        assertThrows(JobRateLimitException.class, () -> jobRateLimiter.acquire("TestJob", alice));
+    jobRateLimiter.acquire("TestJob", bob);
+    advanceSeconds(5);
+    jobRateLimiter.acquire("TestJob", alice);
+
+    // Assert
+    assertEquals(5, e.getRetryAfterSeconds());
+    assertEquals("Too many TestJob jobs launched, try again in 5 seconds", e.getMessage());
+  }
+
+  @Test
+  void acquire_enforces_the_global_limit_without_using_up_the_users_token() {
+    // Arrange
+    environment.setProperty("app.jobs.rateLimit.perUserPerMinute", "1");
+    environment.setProperty("app.jobs.rateLimit.globalPerMinute", "6");
+
+    // Act
+    jobRateLimiter.acquire("TestJob", alice);
+    JobRateLimitException e =
+        assertThrows(JobRateLimitException.class, () -> jobRateLimiter.acquire("TestJob", bob));
+    advanceSeconds(10);
+    jobRateLimiter.acquire("TestJob", bob);
+
+    // Assert
+    assertEquals(10, e.getRetryAfterSeconds());
+  }
+
+  @Test
+  void acquire_shares_the_global_limit_between_job_types() {
+    // Arrange
+    environment.setProperty("app.jobs.rateLimit.globalPerMinute", "6");
+
+    // Act
+    jobRateLimiter.acquire("TestJob", alice);
+    JobRateLimitException e =
+        assertThrows(JobRateLimitException.class, () -> jobRateLimiter.acquire("BigJob", bob));
+
+    // Assert
+    assertEquals(10, e.getRetryAfterSeconds());
+    assertEquals("Too many BigJob jobs launched, try again in 10 seconds", e.getMessage());
+  }
+
+  @Test
+  void acquire_enforces_the_limit_of_a_job_type_for_all_users() {
+    // Arrange
+    environment.setProperty("app.jobs.rateLimit.globalPerMinute", "2");
+    environment.setProperty("app.jobs.rateLimit.globalBurst", "2");
+    environment.setProperty("app.jobs.rateLimit.types.BigJob.globalPerMinute", "1");
+
+    // Act
+    jobRateLimiter.acquire("BigJob", alice);
+    assertThrows(JobRateLimitException.class, () -> jobRateLimiter.acquire("BigJob", bob));
+
+    // Assert: the refused launch did not use up the global token
+    jobRateLimiter.acquire("TestJob", bob);
+    assertThrows(JobRateLimitException.class, () -> jobRateLimiter.acquire("TestJob", bob));
+  }
+
+  @Test
+  void acquire_for_several_launches_takes_all_of_the_tokens_or_none() {
+    // Arrange
+    environment.setProperty("app.jobs.rateLimit.perUserPerMinute", "2");
+    environment.setProperty("app.jobs.rateLimit.perUserBurst", "2");
+
+    // Act
+    assertThrows(
+        JobRateLimitException.class,
+        () -> jobRateLimiter.acquire(List.of("TestJob", "TestJob", "TestJob"), alice));
+
+    // Assert: the two tokens taken before the third was refused were given back
+    jobRateLimiter.acquire(List.of("TestJob", "TestJob"), alice);
+    assertThrows(JobRateLimitException.class, () -> jobRateLimiter.acquire("TestJob", alice));
+  }
+
+  @Test
+  void release_gives_back_the_tokens_of_launches_that_did_not_happen() {
+    // Arrange
+    environment.setProperty("app.jobs.rateLimit.perUserPerMinute", "1");
+    jobRateLimiter.acquire("TestJob", alice);
+
+    // Act
+    jobRateLimiter.release(List.of("TestJob"), alice);
+
+    // Assert
+    jobRateLimiter.acquire("TestJob", alice);
+    assertThrows(JobRateLimitException.class, () -> jobRateLimiter.acquire("TestJob", alice));
+  }
+
+  @Test
+  void acquire_drops_buckets_that_have_refilled() {
+    // Arrange
+    environment.setProperty("app.jobs.rateLimit.perUserPerMinute", "6");
+    environment.setProperty("app.jobs.rateLimit.perUserBurst", "2");
+    jobRateLimiter.acquire("TestJob", alice);
+    advanceSeconds(55);
+    jobRateLimiter.acquire("TestJob", bob);
+    jobRateLimiter.acquire("TestJob", bob);
+    assertEquals(2, jobRateLimiter.getBucketCount());
+
+    // Act: a minute after the first sweep, alice's bucket is full again but bob's is not
+    advanceSeconds(6);
+    jobRateLimiter.acquire("OtherJob", alice);
+
+    // Assert: the swept bucket is gone, the limits are not
+    assertEquals(2, jobRateLimiter.getBucketCount());
+    jobRateLimiter.acquire("TestJob", alice);
+    jobRateLimiter.acquire("TestJob", alice);
+    assertThrows(JobRateLimitException.class, () -> jobRateLimiter.acquire("TestJob", alice));
+  }
+
+  @Test
+  void acquire_keeps_no_buckets_for_limits_that_are_not_set() {
+    // Act
+    jobRateLimiter.acquire("TestJob", alice);
+    jobRateLimiter.release(List.of("TestJob"), alice);
+
+    // Assert
+    assertEquals(0, jobRateLimiter.getBucketCount());
+  }
+
+  @Test
+  void acquire_uses_the_limits_of_the_job_type_over_the_defaults() {
+    // Arrange
+    environment.setProperty("app.jobs.rateLimit.types.BigJob.perUserPerMinute", "1");
+
+    // Act
+    jobRateLimiter.acquire("BigJob", alice);
+    assertThrows(JobRateLimitException.class, () -> jobRateLimiter.acquire("BigJob", alice));
+
+    // Assert: no limit on other types
+    for (int i = 0; i < 100; i++) {
+      jobRateLimiter.acquire("TestJob", alice);
+    }
+  }
+
+  @Test
+  void acquire_does_not_limit_jobs_launched_by_the_application() {
+    // Arrange
+    environment.setProperty("app.jobs.rateLimit.globalPerMinute", "1");
+
+    // Act & Assert
+    for (int i = 0; i < 10; i++) {
+      jobRateLimiter.acquire("JobRetention", null);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import edu.ucsb.cs156.example.repositories.JobLogArchivesRepository;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
+import edu.ucsb.cs156.example.repositories.JobsRepository;
+import java.time.ZonedDateTime;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class JobRetentionServiceTests {
+
+  @Mock private JobsRepository jobsRepository;
+
+  @Mock private JobLogLinesRepository jobLogLinesRepository;
+
+  @Mock private JobLogArchivesRepository jobLogArchivesRepository;
+
+  @InjectMocks private JobRetentionService jobRetentionService;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    ReflectionTestUtils.setField(jobRetentionService, "cron", "0 0 3 * * *");
+    ReflectionTestUtils.setField(jobRetentionService, "maxAgeDays", 30);
+    ReflectionTestUtils.setField(jobRetentionService, "maxCountPerStatus", 5);
+    ReflectionTestUtils.setField(jobRetentionService, "batchSize", 2);
+  }
+
+  @Test
+  void sweep_deletes_old_jobs_in_batches() {
+    // Arrange
+    when(jobsRepository.findIdsByStatusInAndUpdatedAtBefore(
+            eq(JobService.TERMINAL_STATUSES), any(ZonedDateTime.class), eq(PageRequest.of(0, 2))))
+        .thenReturn(List.of(1L, 2L), List.of(3L), List.of());
+    when(jobsRepository.deleteByIdIn(List.of(1L, 2L))).thenReturn(2);
+    when(jobsRepository.deleteByIdIn(List.of(3L))).thenReturn(1);
+
+    // Act
+    int deleted = jobRetentionService.sweep();
+
+    // Assert
+    assertEquals(3, deleted);
+    verify(jobLogLinesRepository, times(1)).deleteByJobIdIn(List.of(1L, 2L));
+    verify(jobLogLinesRepository, times(1)).deleteByJobIdIn(List.of(3L));
+    verify(jobLogArchivesRepository, times(1)).deleteByJobIdIn(List.of(1L, 2L));
+    verify(jobLogArchivesRepository, times(1)).deleteByJobIdIn(List.of(3L));
+  }
+
+  @Test
+  void sweep_deletes_jobs_beyond_the_count_limit_for_each_status() {
+    // Arrange
+    when(jobsRepository.findIdsByStatusInAndUpdatedAtBefore(
+            eq(JobService.TERMINAL_STATUSES), any(ZonedDateTime.class), eq(PageRequest.of(0, 2))))
+        .thenReturn(List.of());
+    when(jobsRepository.findIdsByStatusNewestFirst("complete", PageRequest.of(5, 1)))
+        .thenReturn(List.of(10L));
+    when(jobsRepository.findIdsByStatusAndIdAtMost("complete", 10L, PageRequest.of(0, 2)))
+        .thenReturn(List.of(4L, 10L), List.of());
+    when(jobsRepository.deleteByIdIn(List.of(4L, 10L))).thenReturn(2);
+
+    // Act
+    int deleted = jobRetentionService.sweep();
+
+    // Assert
+    assertEquals(2, deleted);
+    verify(jobLogLinesRepository, times(1)).deleteByJobIdIn(List.of(4L, 10L));
+    verify(jobsRepository, never()).findIdsByStatusAndIdAtMost(eq("error"), any(Long.class), any());
+  }
+
+  @Test
+  void accept_runs_a_sweep_and_logs_the_result() {
+    // Arrange
+    JobContext ctx = mock(JobContext.class);
+    when(jobsRepository.findIdsByStatusInAndUpdatedAtBefore(
+            eq(JobService.TERMINAL_STATUSES), any(ZonedDateTime.class), eq(PageRequest.of(0, 2))))
+        .thenReturn(List.of());
+
+    // Act
+    jobRetentionService.accept(ctx);
+
+    // Assert
+    verify(jobsRepository, never()).deleteByIdIn(any());
+    verify(ctx, times(1)).log("Job retention sweep deleted 0 jobs");
+  }
+
+  @Test
+  void runs_as_a_recurring_job_on_the_configured_schedule() {
+    // Act & Assert
+    assertEquals("JobRetention", jobRetentionService.getName());
+    assertEquals("0 0 3 * * *", jobRetentionService.getCron());
+  }
+}
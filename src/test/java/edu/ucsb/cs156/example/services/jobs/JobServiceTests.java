@@ -0,0 +1,733 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobLogLine;
+import edu.ucsb.cs156.example.entities.JobPriority;
+import edu.ucsb.cs156.example.entities.User;
+import edu.ucsb.cs156.example.errors.JobQueueFullException;
+import edu.ucsb.cs156.example.errors.JobRateLimitException;
+import edu.ucsb.cs156.example.models.JobEvent;
+import edu.ucsb.cs156.example.models.JobExecutorStatus;
+import edu.ucsb.cs156.example.repositories.JobLogLinesRepository;
+import edu.ucsb.cs156.example.repositories.JobsRepository;
+import edu.ucsb.cs156.example.services.CurrentUserService;
+import edu.ucsb.cs156.example.services.jobs.ThreadUsageMeter.Usage;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class JobServiceTests {
+
+  @Mock private JobsRepository jobsRepository;
+
+  @Mock private JobLogLinesRepository jobLogLinesRepository;
+
+  @Mock private JobLogArchiveService jobLogArchiveService;
+
+  @Mock private CurrentUserService currentUserService;
+
+  @Mock private ApplicationEventPublisher eventPublisher;
+
+  @Mock private JobRateLimiter jobRateLimiter;
+
+  @Mock private ThreadPoolTaskExecutor jobExecutor;
+
+  @Mock private ThreadPoolTaskExecutor bulkJobExecutor;
+
+  @Mock private JobService self;
+
+  @InjectMocks private JobService jobService;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    ReflectionTestUtils.setField(jobService, "instanceId", "instance-1");
+    ReflectionTestUtils.setField(jobService, "leaseSeconds", 60L);
+    ReflectionTestUtils.setField(jobService, "defaultTimeoutSeconds", 3600L);
+    when(jobsRepository.startIfLeaseHeld(any(Job.class), eq("instance-1"))).thenReturn(1);
+    when(jobsRepository.finishIfLeaseHeld(any(Job.class), eq("instance-1"))).thenReturn(1);
+  }
+
+  @Test
+  void runAsJob_queues_the_job() {
+    // Act
+    Job job = jobService.runAsJob("TestJob", ctx -> {});
+
+    // Assert
+    assertEquals("queued", job.getStatus());
+    assertEquals("TestJob", job.getJobType());
+    assertNull(job.getParameters());
+    assertEquals("instance-1", job.getLeaseOwner());
+    assertTrue(job.getLeaseExpiresAt().isAfter(ZonedDateTime.now().plusSeconds(30)));
+    verify(self, times(1)).runJobAsync(any(JobContext.class), any(JobContextConsumer.class));
+  }
+
+  @Test
+  void runAsJob_when_executor_is_saturated_rejects_the_job() {
+    // Arrange
+    doThrow(new TaskRejectedException("queue full"))
+        .when(self)
+        .runJobAsync(any(JobContext.class), any(JobContextConsumer.class));
+
+    // Act
+    JobQueueFullException e =
+        assertThrows(JobQueueFullException.class, () -> jobService.runAsJob("TestJob", ctx -> {}));
+
+    // Assert
+    assertEquals("Job 0 rejected: job queue is full, try again later", e.getMessage());
+    verify(jobsRepository, times(2)).save(any(Job.class));
+    verify(jobRateLimiter, times(1)).release(List.of("TestJob"), null);
+    assertEquals(List.of("queued", "rejected"), publishedStatuses());
+    assertEquals(1L, jobService.getExecutorStatus(JobPriority.INTERACTIVE).getRejectedCount());
+    assertFalse(jobService.cancelJob(0L));
+  }
+
+  @Test
+  void runAsJob_when_rate_limited_launches_nothing() {
+    // Arrange
+    User user = User.builder().id(5L).build();
+    when(currentUserService.getUser()).thenReturn(user);
+    doThrow(new JobRateLimitException("TestJob", 7)).when(jobRateLimiter).acquire("TestJob", user);
+
+    // Act
+    JobRateLimitException e =
+        assertThrows(JobRateLimitException.class, () -> jobService.runAsJob("TestJob", ctx -> {}));
+
+    // Assert
+    assertEquals(7, e.getRetryAfterSeconds());
+    verify(jobsRepository, never()).save(any(Job.class));
+    verifyNoInteractions(self);
+  }
+
+  @Test
+  void runAsJob_with_coalesce_key_returns_job_in_flight() {
+    // Arrange
+    Job inFlight = Job.builder().id(3L).status("running").coalesceKey("TestJob:k").build();
+    when(jobsRepository.findByCoalesceKey("TestJob:k")).thenReturn(Optional.of(inFlight));
+
+    // Act
+    Job job =
+        jobService.runAsJob(
+            "TestJob", ctx -> {}, Duration.ofMinutes(1), "TestJob:k", JobPriority.INTERACTIVE);
+
+    // Assert
+    assertSame(inFlight, job);
+    verify(jobRateLimiter, never()).acquire(any(String.class), any());
+    verify(jobsRepository, never()).save(any(Job.class));
+    verify(self, never()).runJobAsync(any(JobContext.class), any(JobContextConsumer.class));
+  }
+
+  @Test
+  void runAsJob_gives_the_token_back_when_a_concurrent_launch_wins() {
+    // Arrange
+    User user = User.builder().id(5L).build();
+    when(currentUserService.getUser()).thenReturn(user);
+    Job winner = Job.builder().id(9L).status("queued").coalesceKey("TestJob:k").build();
+    when(jobsRepository.findByCoalesceKey("TestJob:k"))
+        .thenReturn(Optional.empty(), Optional.of(winner));
+    when(jobsRepository.save(any(Job.class)))
+        .thenThrow(new DataIntegrityViolationException("duplicate"));
+
+    // Act
+    Job job =
+        jobService.runAsJob(
+            "TestJob", ctx -> {}, Duration.ofMinutes(1), "TestJob:k", JobPriority.INTERACTIVE);
+
+    // Assert
+    assertSame(winner, job);
+    verify(jobRateLimiter, times(1)).acquire("TestJob", user);
+    verify(jobRateLimiter, times(1)).release(List.of("TestJob"), user);
+    verify(self, never()).runJobAsync(any(JobContext.class), any(JobContextConsumer.class));
+  }
+
+  @Test
+  void runAsJob_with_coalesce_key_starts_job_when_none_is_in_flight() {
+    // Arrange
+    when(jobsRepository.findByCoalesceKey("TestJob:k")).thenReturn(Optional.empty());
+
+    // Act
+    Job job =
+        jobService.runAsJob(
+            "TestJob", ctx -> {}, Duration.ofMinutes(1), "TestJob:k", JobPriority.INTERACTIVE);
+
+    // Assert
+    assertEquals("TestJob:k", job.getCoalesceKey());
+    verify(jobsRepository, times(1)).save(job);
+    verify(self, times(1)).runJobAsync(any(JobContext.class), any(JobContextConsumer.class));
+  }
+
+  @Test
+  void saveUnlessInFlight_returns_job_saved_by_a_concurrent_launch() {
+    // Arrange
+    Job job = Job.builder().status("queued").coalesceKey("TestJob:k").build();
+    Job winner = Job.builder().id(9L).status("queued").coalesceKey("TestJob:k").build();
+    when(jobsRepository.findByCoalesceKey("TestJob:k"))
+        .thenReturn(Optional.empty(), Optional.of(winner));
+    when(jobsRepository.save(job)).thenThrow(new DataIntegrityViolationException("duplicate"));
+
+    // Act & Assert
+    assertEquals(Optional.of(winner), jobService.saveUnlessInFlight(job));
+  }
+
+  @Test
+  void saveUnlessInFlight_returns_job_in_flight_without_saving() {
+    // Arrange
+    Job job = Job.builder().status("queued").coalesceKey("TestJob:k").build();
+    Job inFlight = Job.builder().id(9L).status("running").coalesceKey("TestJob:k").build();
+    when(jobsRepository.findByCoalesceKey("TestJob:k")).thenReturn(Optional.of(inFlight));
+
+    // Act & Assert
+    assertEquals(Optional.of(inFlight), jobService.saveUnlessInFlight(job));
+    verify(jobsRepository, never()).save(any(Job.class));
+  }
+
+  @Test
+  void saveUnlessInFlight_rethrows_when_no_job_is_in_flight() {
+    // Arrange
+    Job job = Job.builder().status("queued").coalesceKey("TestJob:k").build();
+    when(jobsRepository.findByCoalesceKey("TestJob:k")).thenReturn(Optional.empty());
+    when(jobsRepository.save(job)).thenThrow(new DataIntegrityViolationException("other"));
+
+    // Act & Assert
+    assertThrows(DataIntegrityViolationException.class, () -> jobService.saveUnlessInFlight(job));
+  }
+
+  @Test
+  void saveUnlessInFlight_rethrows_for_job_without_coalesce_key() {
+    // Arrange
+    Job job = Job.builder().status("queued").build();
+    when(jobsRepository.save(job)).thenThrow(new DataIntegrityViolationException("other"));
+
+    // Act & Assert
+    assertThrows(DataIntegrityViolationException.class, () -> jobService.saveUnlessInFlight(job));
+    verify(jobsRepository, never()).findByCoalesceKey(any());
+  }
+
+  @Test
+  void coalesceKey_does_not_depend_on_parameter_order() throws Exception {
+    // Arrange
+    Map<String, Object> ab = new LinkedHashMap<>();
+    ab.put("a", 1);
+    ab.put("b", 2);
+    Map<String, Object> ba = new LinkedHashMap<>();
+    ba.put("b", 2);
+    ba.put("a", 1);
+
+    // Act
+    String key = JobService.coalesceKey("TestJob", ab);
+
+    // Assert
+    assertTrue(key.startsWith("TestJob:"));
+    assertEquals(key, JobService.coalesceKey("TestJob", ba));
+    assertNotEquals(key, JobService.coalesceKey("TestJob", Map.of("a", 1, "b", 3)));
+    assertNotEquals(key, JobService.coalesceKey("OtherJob", ab));
+  }
+
+  @Test
+  void getDefaultTimeout_returns_configured_timeout() {
+    // Act & Assert
+    assertEquals(Duration.ofHours(1), jobService.getDefaultTimeout());
+  }
+
+  private JobContext context(Job job, Duration timeout) {
+    return new JobContext(jobLogLinesRepository, job, 1, 0, timeout);
+  }
+
+  @Test
+  void runJobAsync_completes_job() {
+    // Arrange
+    Job job = Job.builder().status("queued").coalesceKey("TestJob:k").build();
+
+    // Act
+    jobService.runJobAsync(context(job, null), ctx -> ctx.log("hello"));
+
+    // Assert
+    assertEquals("complete", job.getStatus());
+    assertNull(job.getCoalesceKey());
+    assertNotNull(job.getStartedAt());
+    assertNotNull(job.getFinishedAt());
+    assertNull(job.getQueueWaitMs());
+    assertTrue(job.getRunTimeMs() >= 0);
+    assertNull(job.getLeaseOwner());
+    assertNull(job.getLeaseExpiresAt());
+    assertEquals(5L, job.getLogSize());
+    verify(jobsRepository, times(1)).startIfLeaseHeld(job, "instance-1");
+    verify(jobsRepository, times(1)).finishIfLeaseHeld(job, "instance-1");
+    verify(jobsRepository, never()).save(job);
+    verify(jobLogLinesRepository, times(1)).saveAll(any());
+  }
+
+  @Test
+  void runJobAsync_publishes_an_event_for_each_status() {
+    // Arrange
+    Job job =
+        Job.builder()
+            .id(4L)
+            .status("queued")
+            .jobType("TestJob")
+            .createdBy(User.builder().id(5L).build())
+            .build();
+    ArgumentCaptor<JobEvent> captor = ArgumentCaptor.forClass(JobEvent.class);
+
+    // Act
+    jobService.runJobAsync(context(job, null), ctx -> {});
+
+    // Assert
+    verify(eventPublisher, times(2)).publishEvent(captor.capture());
+    assertEquals(List.of("running", "complete"), publishedStatuses());
+    JobEvent event = captor.getValue();
+    assertEquals(4L, event.getJobId());
+    assertEquals("TestJob", event.getJobType());
+    assertEquals(JobPriority.INTERACTIVE, event.getPriority());
+    assertEquals(5L, event.getCreatedById());
+    assertNotNull(event.getAt());
+  }
+
+  @Test
+  void runJobAsync_does_not_run_job_whose_lease_was_lost_before_it_started() {
+    // Arrange
+    Job job = Job.builder().id(4L).status("queued").build();
+    when(jobsRepository.startIfLeaseHeld(job, "instance-1")).thenReturn(0);
+    JobContextConsumer jobFunction = mock(JobContextConsumer.class);
+
+    // Act
+    jobService.runJobAsync(context(job, null), jobFunction);
+
+    // Assert
+    verifyNoInteractions(jobFunction);
+    verify(jobsRepository, never()).finishIfLeaseHeld(any(Job.class), any());
+    assertEquals(List.of(), publishedStatuses());
+  }
+
+  @Test
+  void runJobAsync_discards_result_when_lease_was_lost_before_it_finished() {
+    // Arrange
+    Job job = Job.builder().id(4L).status("queued").build();
+    when(jobsRepository.finishIfLeaseHeld(job, "instance-1")).thenReturn(0);
+
+    // Act
+    jobService.runJobAsync(context(job, null), ctx -> {});
+
+    // Assert
+    verify(jobsRepository, times(1)).finishIfLeaseHeld(job, "instance-1");
+    verify(jobsRepository, never()).save(job);
+    assertEquals(List.of("running"), publishedStatuses());
+  }
+
+  private List<String> publishedStatuses() {
+    ArgumentCaptor<JobEvent> captor = ArgumentCaptor.forClass(JobEvent.class);
+    verify(eventPublisher, atLeast(0)).publishEvent(captor.capture());
+    return captor.getAllValues().stream().map(JobEvent::getStatus).toList();
+  }
+
+  @Test
+  void runJobAsync_records_resources_used_by_the_job() {
+    // Arrange
+    ThreadUsageMeter meter = mock(ThreadUsageMeter.class);
+    when(meter.current()).thenReturn(new Usage(1_000_000, 100), new Usage(5_000_000, 600));
+    ReflectionTestUtils.setField(jobService, "threadUsageMeter", meter);
+    Job job = Job.builder().status("queued").createdAt(ZonedDateTime.now().minusSeconds(2)).build();
+
+    // Act
+    jobService.runJobAsync(context(job, null), ctx -> {});
+
+    // Assert
+    assertTrue(job.getQueueWaitMs() >= 2000);
+    assertEquals(4L, job.getCpuTimeMs());
+    assertEquals(500L, job.getAllocatedBytes());
+  }
+
+  @Test
+  void runJobAsync_leaves_unmeasured_resources_empty() {
+    // Arrange
+    ThreadUsageMeter meter = mock(ThreadUsageMeter.class);
+    when(meter.current()).thenReturn(new Usage(-1, -1));
+    ReflectionTestUtils.setField(jobService, "threadUsageMeter", meter);
+    Job job = Job.builder().status("queued").build();
+
+    // Act
+    jobService.runJobAsync(context(job, null), ctx -> {});
+
+    // Assert
+    assertNull(job.getCpuTimeMs());
+    assertNull(job.getAllocatedBytes());
+  }
+
+  @Test
+  void runJobAsync_marks_failed_job_as_error() {
+    // Arrange
+    Job job = Job.builder().status("queued").build();
+
+    // Act
+    jobService.runJobAsync(
+        context(job, null),
+        ctx -> {
+          throw new Exception("boom");
+        });
+
+    // Assert
+    assertEquals("error", job.getStatus());
+  }
+
+  @Test
+  void runJobAsync_does_not_run_job_cancelled_while_queued() {
+    // Arrange
+    Job job = Job.builder().status("queued").build();
+    JobContext context = context(job, null);
+    context.cancel("cancelled");
+    JobContextConsumer jobFunction = mock(JobContextConsumer.class);
+
+    // Act
+    jobService.runJobAsync(context, jobFunction);
+
+    // Assert
+    assertEquals("cancelled", job.getStatus());
+    verifyNoInteractions(jobFunction);
+    verify(jobsRepository, never()).startIfLeaseHeld(any(Job.class), any());
+    verify(jobsRepository, times(1)).finishIfLeaseHeld(job, "instance-1");
+  }
+
+  @Test
+  void runJobAsync_interrupts_job_when_it_is_cancelled() {
+    // Arrange
+    Job job = Job.builder().status("queued").build();
+
+    // Act
+    jobService.runJobAsync(
+        context(job, null),
+        ctx -> {
+          ctx.cancel("cancelled");
+          Thread.sleep(60_000);
+        });
+
+    // Assert
+    assertEquals("cancelled", job.getStatus());
+    assertFalse(Thread.currentThread().isInterrupted());
+  }
+
+  @Test
+  void runJobAsync_reports_cancellation_even_if_job_ignores_it() {
+    // Arrange
+    Job job = Job.builder().status("queued").build();
+
+    // Act
+    jobService.runJobAsync(context(job, null), ctx -> ctx.cancel("timed_out"));
+
+    // Assert
+    assertEquals("timed_out", job.getStatus());
+    assertFalse(Thread.currentThread().isInterrupted());
+  }
+
+  @Test
+  void cancelJob_cancels_a_queued_job_only_once() {
+    // Arrange
+    jobService.runAsJob("TestJob", ctx -> {});
+
+    // Act & Assert
+    assertTrue(jobService.cancelJob(0L));
+    assertFalse(jobService.cancelJob(0L));
+  }
+
+  @Test
+  void enforceTimeouts_stops_jobs_that_run_too_long() {
+    // Arrange
+    ArgumentCaptor<JobContext> captor = ArgumentCaptor.forClass(JobContext.class);
+    jobService.runAsJob("TestJob", ctx -> {}, Duration.ZERO);
+    verify(self).runJobAsync(captor.capture(), any(JobContextConsumer.class));
+    JobContext context = captor.getValue();
+
+    // Act
+    jobService.enforceTimeouts();
+    boolean cancelledBeforeStart = context.isCancelled();
+    context.start();
+    await().atMost(1, SECONDS).until(() -> context.isPastDeadline(System.nanoTime()));
+    jobService.enforceTimeouts();
+    context.finish();
+
+    // Assert
+    assertFalse(cancelledBeforeStart);
+    assertEquals("timed_out", context.getCancelledStatus());
+  }
+
+  @Test
+  void enforceTimeouts_leaves_jobs_within_their_timeout_alone() {
+    // Arrange
+    ArgumentCaptor<JobContext> captor = ArgumentCaptor.forClass(JobContext.class);
+    jobService.runAsJob("TestJob", ctx -> {}, Duration.ofHours(1));
+    verify(self).runJobAsync(captor.capture(), any(JobContextConsumer.class));
+    JobContext context = captor.getValue();
+
+    // Act
+    context.start();
+    jobService.enforceTimeouts();
+    context.finish();
+
+    // Assert
+    assertFalse(context.isCancelled());
+  }
+
+  @Test
+  void cancelJob_cancels_job_waiting_in_the_durable_queue() {
+    // Arrange
+    Job job = Job.builder().id(5L).status("cancelled").jobType("TestJob").build();
+    when(jobsRepository.cancelQueued(eq(5L), any(ZonedDateTime.class))).thenReturn(1);
+    when(jobsRepository.findById(5L)).thenReturn(Optional.of(job));
+
+    // Act & Assert
+    assertTrue(jobService.cancelJob(5L));
+    assertEquals(List.of("cancelled"), publishedStatuses());
+  }
+
+  @Test
+  void runQueuedJob_hands_job_to_the_executor() {
+    // Arrange
+    Job job = Job.builder().id(4L).status("running").jobType("TestJob").build();
+
+    // Act
+    boolean started = jobService.runQueuedJob(job, ctx -> {});
+
+    // Assert
+    assertTrue(started);
+    verify(self, times(1)).runJobAsync(any(JobContext.class), any(JobContextConsumer.class));
+    assertTrue(jobService.cancelJob(4L));
+  }
+
+  @Test
+  void runQueuedJob_puts_job_back_in_the_queue_when_executor_is_full() {
+    // Arrange
+    Job job = Job.builder().id(4L).status("running").jobType("TestJob").build();
+    jobService.acquireLease(job);
+    doThrow(new TaskRejectedException("queue full"))
+        .when(self)
+        .runJobAsync(any(JobContext.class), any(JobContextConsumer.class));
+
+    // Act
+    boolean started = jobService.runQueuedJob(job, ctx -> {});
+
+    // Assert
+    assertFalse(started);
+    assertEquals("queued", job.getStatus());
+    assertNull(job.getLeaseOwner());
+    verify(jobsRepository, times(1)).save(job);
+  }
+
+  @Test
+  void renewLeases_does_nothing_when_no_jobs_are_active() {
+    // Act
+    jobService.renewLeases();
+
+    // Assert
+    verify(jobsRepository, never()).renewLeases(any(), any(), any());
+  }
+
+  @Test
+  void renewLeases_renews_leases_on_active_jobs() {
+    // Arrange
+    Job job = jobService.runAsJob("TestJob", ctx -> {});
+    ZonedDateTime claimedUntil = job.getLeaseExpiresAt();
+    ArgumentCaptor<ZonedDateTime> expiresAt = ArgumentCaptor.forClass(ZonedDateTime.class);
+
+    // Act
+    jobService.renewLeases();
+
+    // Assert
+    verify(jobsRepository, times(1))
+        .renewLeases(eq("instance-1"), eq(Set.of(0L)), expiresAt.capture());
+    assertEquals(expiresAt.getValue(), job.getLeaseExpiresAt());
+    assertFalse(job.getLeaseExpiresAt().isBefore(claimedUntil));
+  }
+
+  @Test
+  void getIdleWorkerCount_counts_workers_that_are_free() {
+    // Arrange
+    when(jobExecutor.getMaxPoolSize()).thenReturn(4);
+    when(jobExecutor.getActiveCount()).thenReturn(1, 4);
+    when(jobExecutor.getQueueSize()).thenReturn(0, 2);
+
+    // Act & Assert
+    assertEquals(3, jobService.getIdleWorkerCount(JobPriority.INTERACTIVE));
+    assertEquals(0, jobService.getIdleWorkerCount(JobPriority.INTERACTIVE));
+    assertEquals("instance-1", jobService.getInstanceId());
+  }
+
+  @Test
+  void runAsJob_runs_bulk_jobs_on_the_bulk_executor() {
+    // Act
+    Job job =
+        jobService.runAsJob("TestJob", ctx -> {}, Duration.ofMinutes(1), null, JobPriority.BULK);
+
+    // Assert
+    assertEquals(JobPriority.BULK, job.getPriority());
+    verify(self, times(1)).runBulkJobAsync(any(JobContext.class), any(JobContextConsumer.class));
+    verify(self, never()).runJobAsync(any(JobContext.class), any(JobContextConsumer.class));
+  }
+
+  @Test
+  void runAsJob_counts_rejections_per_priority() {
+    // Arrange
+    doThrow(new TaskRejectedException("queue full"))
+        .when(self)
+        .runBulkJobAsync(any(JobContext.class), any(JobContextConsumer.class));
+
+    // Act
+    assertThrows(
+        JobQueueFullException.class,
+        () ->
+            jobService.runAsJob(
+                "TestJob", ctx -> {}, Duration.ofMinutes(1), null, JobPriority.BULK));
+
+    // Assert
+    assertEquals(1L, jobService.getExecutorStatus(JobPriority.BULK).getRejectedCount());
+    assertEquals(0L, jobService.getExecutorStatus(JobPriority.INTERACTIVE).getRejectedCount());
+  }
+
+  @Test
+  void runBulkJobAsync_runs_the_job() {
+    // Arrange
+    Job job = Job.builder().status("queued").priority(JobPriority.BULK).build();
+
+    // Act
+    jobService.runBulkJobAsync(context(job, null), ctx -> {});
+
+    // Assert
+    assertEquals("complete", job.getStatus());
+  }
+
+  @Test
+  void getIdleWorkerCount_for_bulk_jobs_uses_the_bulk_executor() {
+    // Arrange
+    when(bulkJobExecutor.getMaxPoolSize()).thenReturn(2);
+    when(bulkJobExecutor.getActiveCount()).thenReturn(1);
+    when(jobExecutor.getMaxPoolSize()).thenReturn(4);
+
+    // Act & Assert
+    assertEquals(1, jobService.getIdleWorkerCount(JobPriority.BULK));
+  }
+
+  private JobContext launchWithLogBuffer(long flushIntervalMs) {
+    ReflectionTestUtils.setField(jobService, "logBatchSize", 100);
+    ReflectionTestUtils.setField(jobService, "logFlushIntervalMs", flushIntervalMs);
+    ReflectionTestUtils.setField(jobService, "logBufferCapacity", 100);
+    ArgumentCaptor<JobContext> captor = ArgumentCaptor.forClass(JobContext.class);
+    jobService.runAsJob("TestJob", ctx -> {});
+    verify(self).runJobAsync(captor.capture(), any(JobContextConsumer.class));
+    return captor.getValue();
+  }
+
+  private static String read(Reader reader) throws IOException {
+    StringWriter text = new StringWriter();
+    try (reader) {
+      reader.transferTo(text);
+    }
+    return text.toString();
+  }
+
+  private static JobLogLine logLine(long lineNumber, String message) {
+    return JobLogLine.builder().jobId(0L).lineNumber(lineNumber).message(message).build();
+  }
+
+  @Test
+  void openJobLogs_merges_buffered_lines_with_written_ones() throws Exception {
+    // Arrange
+    JobContext context = launchWithLogBuffer(Long.MAX_VALUE);
+    context.log("line 0");
+    context.log("line 1");
+    context.log("line 2");
+    when(jobLogLinesRepository.findFirst500ByJobIdAndLineNumberGreaterThanEqualOrderByLineNumberAsc(
+            0L, 0L))
+        .thenReturn(List.of(), List.of(logLine(0, "line 0"), logLine(1, "line 1")));
+
+    // Act
+    String nothingWrittenYet = read(jobService.openJobLogs(0L));
+    String partlyWritten = read(jobService.openJobLogs(0L));
+
+    // Assert
+    assertEquals("line 0\nline 1\nline 2", nothingWrittenYet);
+    assertEquals("line 0\nline 1\nline 2", partlyWritten);
+    verify(jobLogLinesRepository, never()).saveAll(any());
+  }
+
+  @Test
+  void flushLogs_writes_buffered_lines_once_the_flush_interval_has_passed() {
+    // Arrange
+    JobContext context = launchWithLogBuffer(100);
+
+    // Act
+    context.log("first"); // the first line is written straight away
+    context.log("second");
+
+    // Assert
+    await()
+        .atMost(2, SECONDS)
+        .untilAsserted(
+            () -> {
+              jobService.flushLogs();
+              verify(jobLogLinesRepository, times(2)).saveAll(any());
+            });
+    assertEquals(List.of(), context.getBufferedLines());
+  }
+
+  @Test
+  void getExecutorStatus_reports_executor_state() {
+    // Arrange
+    when(jobExecutor.getPoolSize()).thenReturn(3);
+    when(jobExecutor.getMaxPoolSize()).thenReturn(4);
+    when(jobExecutor.getActiveCount()).thenReturn(2);
+    when(jobExecutor.getQueueSize()).thenReturn(5);
+    when(jobExecutor.getQueueCapacity()).thenReturn(100);
+
+    // Act
+    JobExecutorStatus status = jobService.getExecutorStatus(JobPriority.INTERACTIVE);
+
+    // Assert
+    JobExecutorStatus expected =
+        JobExecutorStatus.builder()
+            .poolSize(3)
+            .maxPoolSize(4)
+            .activeCount(2)
+            .queuedCount(5)
+            .queueCapacity(100)
+            .rejectedCount(0)
+            .build();
+    assertEquals(expected, status);
+  }
+}
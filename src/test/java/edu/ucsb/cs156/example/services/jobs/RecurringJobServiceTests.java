@@ -0,0 +1,213 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobPriority;
+import edu.ucsb.cs156.example.entities.RecurringJobTrigger;
+import edu.ucsb.cs156.example.errors.JobQueueFullException;
+import edu.ucsb.cs156.example.repositories.RecurringJobTriggersRepository;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+public class RecurringJobServiceTests {
+
+  @Mock private RecurringJobTriggersRepository triggersRepository;
+
+  @Mock private JobService jobService;
+
+  @InjectMocks private RecurringJobService recurringJobService;
+
+  private final RecurringJob warmCache = recurringJob("WarmCache", "0 * * * * *");
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    when(jobService.getDefaultTimeout()).thenReturn(Duration.ofHours(1));
+    recurringJobService.setRecurringJobs(List.of(warmCache));
+  }
+
+  private static RecurringJob recurringJob(String name, String cron) {
+    return new RecurringJob() {
+      @Override
+      public String getName() {
+        return name;
+      }
+
+      @Override
+      public String getCron() {
+        return cron;
+      }
+
+      @Override
+      public void accept(JobContext ctx) {}
+    };
+  }
+
+  private void triggerDueAt(ZonedDateTime dueAt) {
+    when(triggersRepository.findById("WarmCache"))
+        .thenReturn(
+            Optional.of(RecurringJobTrigger.builder().name("WarmCache").nextFireAt(dueAt).build()));
+  }
+
+  @Test
+  void fireDueJobs_creates_the_trigger_of_a_new_job() {
+    // Arrange
+    ArgumentCaptor<RecurringJobTrigger> captor = ArgumentCaptor.forClass(RecurringJobTrigger.class);
+
+    // Act
+    recurringJobService.fireDueJobs();
+
+    // Assert
+    verify(triggersRepository, times(1)).save(captor.capture());
+    assertEquals("WarmCache", captor.getValue().getName());
+    assertTrue(captor.getValue().getNextFireAt().isAfter(ZonedDateTime.now().minusSeconds(1)));
+    verify(jobService, never()).runAsJob(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void fireDueJobs_ignores_a_trigger_created_by_another_instance() {
+    // Arrange
+    when(triggersRepository.save(any(RecurringJobTrigger.class)))
+        .thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+    // Act
+    recurringJobService.fireDueJobs();
+
+    // Assert
+    verify(jobService, never()).runAsJob(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void fireDueJobs_does_nothing_before_the_next_fire_time() {
+    // Arrange
+    triggerDueAt(ZonedDateTime.now().plusMinutes(1));
+
+    // Act
+    recurringJobService.fireDueJobs();
+
+    // Assert
+    verify(triggersRepository, never()).claim(anyString(), any(), any());
+    verify(jobService, never()).runAsJob(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void fireDueJobs_starts_a_due_job_once_claimed() {
+    // Arrange
+    ZonedDateTime dueAt = ZonedDateTime.now().minusSeconds(5);
+    triggerDueAt(dueAt);
+    when(triggersRepository.claim(eq("WarmCache"), eq(dueAt), any(ZonedDateTime.class)))
+        .thenReturn(1);
+    when(jobService.runAsJob(
+            "WarmCache", warmCache, Duration.ofHours(1), "recurring:WarmCache", JobPriority.BULK))
+        .thenReturn(Job.builder().id(42L).build());
+    ArgumentCaptor<ZonedDateTime> nextFireAt = ArgumentCaptor.forClass(ZonedDateTime.class);
+
+    // Act
+    recurringJobService.fireDueJobs();
+
+    // Assert
+    verify(triggersRepository).claim(eq("WarmCache"), eq(dueAt), nextFireAt.capture());
+    assertTrue(nextFireAt.getValue().isAfter(dueAt));
+    verify(triggersRepository, times(1)).recordRun("WarmCache", 42L);
+  }
+
+  @Test
+  void fireDueJobs_does_not_start_a_job_claimed_by_another_instance() {
+    // Arrange
+    triggerDueAt(ZonedDateTime.now().minusSeconds(5));
+    when(triggersRepository.claim(anyString(), any(), any())).thenReturn(0);
+
+    // Act
+    recurringJobService.fireDueJobs();
+
+    // Assert
+    verify(jobService, never()).runAsJob(any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void fireDueJobs_skips_a_run_when_the_queue_is_full() {
+    // Arrange
+    triggerDueAt(ZonedDateTime.now().minusSeconds(5));
+    when(triggersRepository.claim(anyString(), any(), any())).thenReturn(1);
+    doThrow(new JobQueueFullException(7L))
+        .when(jobService)
+        .runAsJob(any(), any(), any(), any(), any());
+
+    // Act
+    recurringJobService.fireDueJobs();
+
+    // Assert
+    verify(triggersRepository, never()).recordRun(anyString(), anyLong());
+  }
+
+  @Test
+  void fireDueJobs_goes_on_to_the_next_job_when_one_fails() {
+    // Arrange
+    RecurringJob purgeSessions = recurringJob("PurgeSessions", "0 * * * * *");
+    recurringJobService.setRecurringJobs(List.of(warmCache, purgeSessions));
+    when(triggersRepository.findById("WarmCache"))
+        .thenThrow(new DataAccessResourceFailureException("database is down"));
+
+    // Act
+    recurringJobService.fireDueJobs();
+
+    // Assert
+    verify(triggersRepository, times(1)).findById("PurgeSessions");
+    verify(triggersRepository, times(1)).save(any(RecurringJobTrigger.class));
+  }
+
+  @Test
+  void disabled_jobs_are_not_scheduled() {
+    // Arrange
+    recurringJobService.setRecurringJobs(List.of(recurringJob("Disabled", "-")));
+
+    // Act
+    recurringJobService.fireDueJobs();
+
+    // Assert
+    verifyNoInteractions(triggersRepository);
+  }
+
+  @Test
+  void setRecurringJobs_rejects_an_invalid_cron_expression() {
+    // Act & Assert
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> recurringJobService.setRecurringJobs(List.of(recurringJob("Bad", "not a cron"))));
+  }
+
+  @Test
+  void setRecurringJobs_rejects_duplicate_names() {
+    // Act
+    IllegalStateException e =
+        assertThrows(
+            IllegalStateException.class,
+            () -> recurringJobService.setRecurringJobs(List.of(warmCache, warmCache)));
+
+    // Assert
+    assertEquals("Recurring job names must be unique", e.getMessage());
+  }
+}
@@ -0,0 +1,92 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.sun.management.ThreadMXBean;
+import edu.ucsb.cs156.example.services.jobs.ThreadUsageMeter.Usage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class ThreadUsageMeterTests {
+
+  @Mock private ThreadMXBean threads;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+  }
+
+  @Test
+  void current_reads_counters_of_current_thread() {
+    // Arrange
+    when(threads.isCurrentThreadCpuTimeSupported()).thenReturn(true);
+    when(threads.isThreadCpuTimeEnabled()).thenReturn(true);
+    when(threads.getCurrentThreadCpuTime()).thenReturn(1_000L);
+    when(threads.isThreadAllocatedMemorySupported()).thenReturn(true);
+    when(threads.isThreadAllocatedMemoryEnabled()).thenReturn(true);
+    when(threads.getCurrentThreadAllocatedBytes()).thenReturn(2_000L);
+
+    // Act
+    Usage usage = new ThreadUsageMeter(threads).current();
+
+    // Assert
+    assertEquals(new Usage(1_000L, 2_000L), usage);
+  }
+
+  @Test
+  void current_when_counters_are_unsupported() {
+    // Arrange
+    when(threads.isCurrentThreadCpuTimeSupported()).thenReturn(false);
+    when(threads.isThreadAllocatedMemorySupported()).thenReturn(false);
+
+    // Act
+    Usage usage = new ThreadUsageMeter(threads).current();
+
+    // Assert
+    assertEquals(new Usage(-1, -1), usage);
+  }
+
+  @Test
+  void current_when_counters_are_disabled() {
+    // Arrange
+    when(threads.isCurrentThreadCpuTimeSupported()).thenReturn(true);
+    when(threads.isThreadCpuTimeEnabled()).thenReturn(false);
+    when(threads.isThreadAllocatedMemorySupported()).thenReturn(true);
+    when(threads.isThreadAllocatedMemoryEnabled()).thenReturn(false);
+
+    // Act
+    Usage usage = new ThreadUsageMeter(threads).current();
+
+    // Assert
+    assertEquals(new Usage(-1, -1), usage);
+  }
+
+  @Test
+  void default_meter_measures_this_thread() {
+    // Act
+    Usage usage = new ThreadUsageMeter().current();
+
+    // Assert
+    assertTrue(usage.cpuNanos() >= 0);
+    assertTrue(usage.allocatedBytes() >= 0);
+  }
+
+  @Test
+  void usage_arithmetic_keeps_unknown_values_unknown() {
+    // Arrange
+    Usage start = new Usage(100, 1_000);
+    Usage end = new Usage(250, 4_000);
+
+    // Act & Assert
+    assertEquals(new Usage(150, 3_000), end.minus(start));
+    assertEquals(new Usage(-1, -1), new Usage(-1, -1).minus(start));
+    assertEquals(new Usage(-1, -1), end.minus(new Usage(-1, -1)));
+    assertEquals(new Usage(350, 5_000), end.plus(start));
+    assertEquals(new Usage(-1, -1), new Usage(-1, -1).plus(start));
+    assertEquals(new Usage(-1, -1), end.plus(new Usage(-1, -1)));
+  }
+}
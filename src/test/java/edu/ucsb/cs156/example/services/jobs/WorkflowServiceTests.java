@@ -0,0 +1,292 @@
+package edu.ucsb.cs156.example.services.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucsb.cs156.example.entities.Job;
+import edu.ucsb.cs156.example.entities.JobDependency;
+import edu.ucsb.cs156.example.entities.JobPriority;
+import edu.ucsb.cs156.example.entities.Workflow;
+import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.errors.InvalidWorkflowException;
+import edu.ucsb.cs156.example.errors.JobRateLimitException;
+import edu.ucsb.cs156.example.models.WorkflowStatus;
+import edu.ucsb.cs156.example.models.WorkflowStep;
+import edu.ucsb.cs156.example.repositories.JobDependenciesRepository;
+import edu.ucsb.cs156.example.repositories.JobsRepository;
+import edu.ucsb.cs156.example.repositories.WorkflowsRepository;
+import edu.ucsb.cs156.example.services.CurrentUserService;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class WorkflowServiceTests {
+
+  @Mock private WorkflowsRepository workflowsRepository;
+
+  @Mock private JobsRepository jobsRepository;
+
+  @Mock private JobDependenciesRepository jobDependenciesRepository;
+
+  @Mock private JobQueueService jobQueueService;
+
+  @Mock private JobService jobService;
+
+  @Mock private CurrentUserService currentUserService;
+
+  @InjectMocks private WorkflowService workflowService;
+
+  private final List<Job> savedJobs = new ArrayList<>();
+
+  @BeforeEach
+  public void setup() throws Exception {
+    MockitoAnnotations.openMocks(this);
+    Workflow workflow = Workflow.builder().id(3L).name("nightly").build();
+    when(workflowsRepository.save(any(Workflow.class))).thenReturn(workflow);
+    when(jobQueueService.newJob(anyString(), any(), anyBoolean(), any(JobPriority.class)))
+        .thenAnswer(
+            invocation ->
+                Job.builder()
+                    .status("queued")
+                    .jobType(invocation.getArgument(0))
+                    .priority(invocation.getArgument(3))
+                    .build());
+    AtomicLong nextId = new AtomicLong(10);
+    doAnswer(
+            invocation -> {
+              for (Job job : invocation.<List<Job>>getArgument(0)) {
+                job.setId(nextId.getAndIncrement());
+                savedJobs.add(job);
+              }
+              return null;
+            })
+        .when(jobQueueService)
+        .launchAll(any());
+  }
+
+  private static WorkflowStep step(String name, String... dependsOn) {
+    return WorkflowStep.builder()
+        .name(name)
+        .jobType("TestJob")
+        .dependsOn(List.of(dependsOn))
+        .build();
+  }
+
+  private static Job stepJob(long id, String name, String status) {
+    return Job.builder().id(id).workflowId(3L).stepName(name).status(status).build();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void start_saves_steps_after_their_dependencies() throws Exception {
+    // Arrange
+    WorkflowStep cacheWarm = step("cacheWarm", "aggregate");
+    WorkflowStep aggregate = step("aggregate", "importA", "importB");
+    WorkflowStep importA = step("importA");
+    WorkflowStep importB =
+        WorkflowStep.builder()
+            .name("importB")
+            .jobType("TestJob")
+            .parameters(new ObjectMapper().readTree("{\"sleepMs\":10}"))
+            .priority(JobPriority.BULK)
+            .build();
+    ArgumentCaptor<List<JobDependency>> captor = ArgumentCaptor.forClass(List.class);
+
+    // Act
+    Workflow workflow =
+        workflowService.start("nightly", List.of(cacheWarm, aggregate, importA, importB));
+
+    // Assert
+    assertEquals(3L, workflow.getId());
+    assertEquals(
+        List.of("importA", "importB", "aggregate", "cacheWarm"),
+        savedJobs.stream().map(Job::getStepName).toList());
+    assertEquals(
+        List.of("queued", "queued", "waiting", "waiting"),
+        savedJobs.stream().map(Job::getStatus).toList());
+    assertEquals(3L, savedJobs.get(0).getWorkflowId());
+    assertEquals(JobPriority.INTERACTIVE, savedJobs.get(0).getPriority());
+    assertEquals(JobPriority.BULK, savedJobs.get(1).getPriority());
+    verify(jobQueueService, times(1))
+        .newJob(eq("TestJob"), eq(importB.getParameters()), eq(false), eq(JobPriority.BULK));
+
+    verify(jobDependenciesRepository).saveAll(captor.capture());
+    assertEquals(
+        List.of(
+            JobDependency.builder().jobId(12L).dependsOnJobId(10L).build(),
+            JobDependency.builder().jobId(12L).dependsOnJobId(11L).build(),
+            JobDependency.builder().jobId(13L).dependsOnJobId(12L).build()),
+        captor.getValue());
+  }
+
+  @Test
+  void start_rejects_unknown_job_types() throws Exception {
+    // Arrange
+    when(jobQueueService.newJob(eq("NoSuchJob"), any(), anyBoolean(), any(JobPriority.class)))
+        .thenThrow(new IllegalArgumentException("Unknown job type: NoSuchJob"));
+    WorkflowStep unknown = WorkflowStep.builder().name("a").jobType("NoSuchJob").build();
+
+    // Act
+    InvalidWorkflowException e =
+        assertThrows(
+            InvalidWorkflowException.class,
+            () -> workflowService.start("nightly", List.of(unknown)));
+
+    // Assert
+    assertEquals("Invalid workflow: Unknown job type: NoSuchJob", e.getMessage());
+    verify(jobDependenciesRepository, never()).saveAll(any());
+  }
+
+  @Test
+  void start_launches_all_the_steps_together_so_the_whole_workflow_is_rate_limited()
+      throws Exception {
+    // Arrange
+    doThrow(new JobRateLimitException("TestJob", 7)).when(jobQueueService).launchAll(any());
+
+    // Act
+    assertThrows(
+        JobRateLimitException.class,
+        () -> workflowService.start("nightly", List.of(step("importA"))));
+
+    // Assert
+    verify(jobsRepository, never()).save(any(Job.class));
+    verify(jobDependenciesRepository, never()).saveAll(any());
+  }
+
+  @Test
+  void dependencyOrder_rejects_invalid_workflows() {
+    // Act & Assert
+    assertEquals(
+        "Invalid workflow: a workflow needs at least one step",
+        assertThrows(
+                InvalidWorkflowException.class, () -> WorkflowService.dependencyOrder(List.of()))
+            .getMessage());
+    assertEquals(
+        "Invalid workflow: every step needs a name",
+        assertThrows(
+                InvalidWorkflowException.class,
+                () -> WorkflowService.dependencyOrder(List.of(step(null))))
+            .getMessage());
+    assertEquals(
+        "Invalid workflow: duplicate step name a",
+        assertThrows(
+                InvalidWorkflowException.class,
+                () -> WorkflowService.dependencyOrder(List.of(step("a"), step("a"))))
+            .getMessage());
+    assertEquals(
+        "Invalid workflow: step a depends on unknown step b",
+        assertThrows(
+                InvalidWorkflowException.class,
+                () -> WorkflowService.dependencyOrder(List.of(step("a", "b"))))
+            .getMessage());
+    assertEquals(
+        "Invalid workflow: the dependencies between steps form a cycle",
+        assertThrows(
+                InvalidWorkflowException.class,
+                () ->
+                    WorkflowService.dependencyOrder(
+                        List.of(step("a"), step("b", "a", "c"), step("c", "b"))))
+            .getMessage());
+  }
+
+  @Test
+  void getStatus_reports_each_step_and_its_dependencies() {
+    // Arrange
+    when(workflowsRepository.findById(3L))
+        .thenReturn(Optional.of(Workflow.builder().id(3L).name("nightly").build()));
+    when(jobsRepository.findByWorkflowIdOrderByIdAsc(3L))
+        .thenReturn(
+            List.of(stepJob(10L, "import", "complete"), stepJob(11L, "cacheWarm", "queued")));
+    when(jobDependenciesRepository.findByJobIdIn(any()))
+        .thenReturn(List.of(JobDependency.builder().jobId(11L).dependsOnJobId(10L).build()));
+
+    // Act
+    WorkflowStatus status = workflowService.getStatus(3L);
+
+    // Assert
+    assertEquals("nightly", status.getName());
+    assertEquals("running", status.getStatus());
+    assertEquals(2, status.getSteps().size());
+    assertEquals(List.of(), status.getSteps().get(0).getDependsOn());
+    assertEquals("cacheWarm", status.getSteps().get(1).getName());
+    assertEquals(11L, status.getSteps().get(1).getJobId());
+    assertEquals("queued", status.getSteps().get(1).getStatus());
+    assertEquals(List.of("import"), status.getSteps().get(1).getDependsOn());
+    assertNull(status.getSteps().get(1).getStartedAt());
+  }
+
+  @Test
+  void getStatus_of_unknown_workflow_throws() {
+    // Act & Assert
+    assertThrows(EntityNotFoundException.class, () -> workflowService.getStatus(99L));
+  }
+
+  @Test
+  void workflowStatus_summarizes_step_statuses() {
+    // Act & Assert
+    assertEquals("error", WorkflowService.workflowStatus(List.of("complete", "timed_out")));
+    assertEquals("cancelled", WorkflowService.workflowStatus(List.of("complete", "cancelled")));
+    assertEquals("complete", WorkflowService.workflowStatus(List.of("complete", "complete")));
+    assertEquals("running", WorkflowService.workflowStatus(List.of("complete", "waiting")));
+  }
+
+  @Test
+  void writeLogs_writes_the_logs_of_each_step() throws Exception {
+    // Arrange
+    List<Job> steps =
+        List.of(stepJob(10L, "import", "complete"), stepJob(11L, "cacheWarm", "error"));
+    when(jobService.openJobLogs(10L)).thenReturn(new StringReader("imported"));
+    when(jobService.openJobLogs(11L)).thenReturn(new StringReader("boom"));
+    StringWriter logs = new StringWriter();
+
+    // Act
+    workflowService.writeLogs(steps, logs);
+
+    // Assert
+    assertEquals(
+        "=== import (job 10): complete ===\nimported\n=== cacheWarm (job 11): error ===\nboom",
+        logs.toString());
+  }
+
+  @Test
+  void getSteps_returns_the_jobs_of_the_workflow() {
+    // Arrange
+    List<Job> steps = List.of(stepJob(10L, "import", "complete"));
+    when(workflowsRepository.findById(3L))
+        .thenReturn(Optional.of(Workflow.builder().id(3L).name("nightly").build()));
+    when(jobsRepository.findByWorkflowIdOrderByIdAsc(3L)).thenReturn(steps);
+
+    // Act & Assert
+    assertEquals(steps, workflowService.getSteps(3L));
+  }
+
+  @Test
+  void getSteps_of_unknown_workflow_throws() {
+    // Act
+    assertThrows(EntityNotFoundException.class, () -> workflowService.getSteps(99L));
+
+    // Assert
+    verify(jobsRepository, never()).findByWorkflowIdOrderByIdAsc(99L);
+  }
+}